@@ -279,6 +279,14 @@ public final class AdministrationConnector implements
       return config.getKeyManagerProvider();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getInlineOperationTimeBudget()
+    {
+      // Administration operations are never run inline
+      return 0;
+    }
+
     /** {@inheritDoc} */
     @Override
     public DN getKeyManagerProviderDN()
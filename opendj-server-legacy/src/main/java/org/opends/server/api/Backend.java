@@ -52,6 +52,7 @@ import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.PersistentSearch;
 import org.opends.server.core.PersistentSearch.CancellationCallback;
+import org.opends.server.core.PersistentSearchRegistry;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.core.ServerContext;
 import org.opends.server.monitors.BackendMonitor;
@@ -111,6 +112,8 @@ public abstract class Backend<C extends Configuration>
 
   /** The set of persistent searches registered with this backend. */
   private final ConcurrentLinkedQueue<PersistentSearch> persistentSearches = new ConcurrentLinkedQueue<>();
+  /** The persistent searches registered with this backend, indexed for dispatching changes. */
+  private final PersistentSearchRegistry persistentSearchRegistry = new PersistentSearchRegistry();
 
   /**
    * Configure this backend based on the information in the provided configuration.
@@ -813,6 +816,7 @@ public abstract class Backend<C extends Configuration>
   public void registerPersistentSearch(PersistentSearch persistentSearch) throws DirectoryException
   {
     persistentSearches.add(persistentSearch);
+    persistentSearchRegistry.register(persistentSearch);
 
     persistentSearch.registerCancellationCallback(new CancellationCallback()
     {
@@ -820,6 +824,7 @@ public abstract class Backend<C extends Configuration>
       public void persistentSearchCancelled(PersistentSearch psearch)
       {
         persistentSearches.remove(psearch);
+        persistentSearchRegistry.deregister(psearch);
       }
     });
   }
@@ -836,6 +841,18 @@ public abstract class Backend<C extends Configuration>
     return persistentSearches;
   }
 
+  /**
+   * Returns the registry which dispatches the changes performed against this
+   * local backend to the persistent searches interested by them.
+   *
+   * @return the registry of the persistent searches currently active against
+   *         this local backend
+   */
+  public PersistentSearchRegistry getPersistentSearchRegistry()
+  {
+    return persistentSearchRegistry;
+  }
+
   /**
    * Sets the backend monitor for this backend.
    *
@@ -440,6 +440,19 @@ public abstract class ClientConnection
     return 0L;
   }
 
+  /**
+   * Indicates whether writing to the client is currently blocked, or the
+   * last write had to wait for the client to read the data already sent.
+   * The default implementation returns {@code false}.
+   *
+   * @return  {@code true} if sending a response to the client is likely
+   *          to block, or {@code false} otherwise.
+   */
+  public boolean isWriteBlocked()
+  {
+    return false;
+  }
+
   /**
    * Retrieves the total number of operations performed
    * on this connection.
@@ -1396,7 +1409,6 @@ public abstract class ClientConnection
   public Set<Group<?>> getGroups(Operation operation)
          throws DirectoryException
   {
-    // FIXME -- This probably isn't the most efficient implementation.
     DN authzDN;
     if (operation == null)
     {
@@ -1425,15 +1437,7 @@ public abstract class ClientConnection
       return Collections.<Group<?>>emptySet();
     }
 
-    HashSet<Group<?>> groupSet = new HashSet<>();
-    for (Group<?> g : DirectoryServer.getGroupManager().getGroupInstances())
-    {
-      if (g.isMember(userEntry))
-      {
-        groupSet.add(g);
-      }
-    }
-    return groupSet;
+    return DirectoryServer.getGroupManager().getGroups(userEntry);
   }
 
 
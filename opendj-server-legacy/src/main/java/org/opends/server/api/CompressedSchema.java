@@ -87,6 +87,27 @@ public class CompressedSchema
    */
   public final Attribute decodeAttribute(final ByteSequenceReader reader)
       throws DirectoryException
+  {
+    return decodeAttribute(reader, null);
+  }
+
+  /**
+   * Decodes the contents of the provided array as an attribute at the current
+   * position, if the type of the attribute is part of the provided set.
+   * Otherwise, the attribute is skipped.
+   *
+   * @param reader
+   *          The byte string reader containing the encoded entry.
+   * @param attributeTypes
+   *          The types of the attributes to decode, or {@code null} for
+   *          decoding all the attributes.
+   * @return The decoded attribute, or {@code null} if the attribute has been
+   *         skipped.
+   * @throws DirectoryException
+   *           If the attribute could not be decoded properly for some reason.
+   */
+  public final Attribute decodeAttribute(final ByteSequenceReader reader,
+      final Set<AttributeType> attributeTypes) throws DirectoryException
   {
     // First decode the encoded attribute description id.
     final int length = reader.readBERLength();
@@ -116,6 +137,15 @@ public class CompressedSchema
     // Determine the number of values for the attribute.
     final int numValues = reader.readBERLength();
 
+    if (attributeTypes != null && !attributeTypes.contains(attrType))
+    {
+      for (int i = 0; i < numValues; i++)
+      {
+        reader.skip(reader.readBERLength());
+      }
+      return null;
+    }
+
     // For the common case of a single value with no options, generate
     // less garbage.
     if (numValues == 1 && options.isEmpty())
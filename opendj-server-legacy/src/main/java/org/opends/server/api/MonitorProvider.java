@@ -36,12 +36,20 @@ import java.util.concurrent.TimeUnit;
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.OperationLatencies;
 import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeBuilder;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
 import org.opends.server.types.DirectoryConfig;
 import org.opends.server.types.InitializationException;
 import org.opends.server.types.ObjectClass;
+import org.opends.server.types.OperationType;
+import org.opends.server.util.LatencyHistogram;
 
 import static org.opends.server.util.ServerConstants.*;
+import static org.opends.server.util.StaticUtils.*;
 
 /**
  * This class defines the set of methods and structures that must be
@@ -198,6 +206,82 @@ public abstract class MonitorProvider<T extends MonitorProviderCfg>
 
 
 
+  /**
+   * Adds attributes describing the provided latency histogram to the
+   * provided monitor data: the number of recorded values
+   * ({@code <attrName>-count}), their average ({@code <attrName>-average}),
+   * their 50th, 90th, 99th and 99.9th percentiles ({@code <attrName>-p50}
+   * to {@code <attrName>-p999}), and the counts of the non-empty
+   * buckets ({@code <attrName>-histogram}, one value per bucket in the
+   * form "lowest-highest: count").
+   *
+   * @param monitorAttrs The monitor data to add the attributes to.
+   * @param attrName The prefix of the names of the attributes.
+   * @param histogram The latency histogram to describe.
+   */
+  protected final void addHistogramAttributes(
+      List<Attribute> monitorAttrs, String attrName,
+      LatencyHistogram histogram)
+  {
+    final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+    addIntegerAttribute(monitorAttrs, attrName + "-count", snapshot.getCount());
+    addIntegerAttribute(monitorAttrs, attrName + "-average", snapshot.getMean());
+    addIntegerAttribute(monitorAttrs, attrName + "-p50", snapshot.getValueAtPercentile(50));
+    addIntegerAttribute(monitorAttrs, attrName + "-p90", snapshot.getValueAtPercentile(90));
+    addIntegerAttribute(monitorAttrs, attrName + "-p99", snapshot.getValueAtPercentile(99));
+    addIntegerAttribute(monitorAttrs, attrName + "-p999", snapshot.getValueAtPercentile(99.9));
+
+    final String histogramAttrName = attrName + "-histogram";
+    final AttributeBuilder builder =
+        new AttributeBuilder(DirectoryServer.getAttributeTypeOrDefault(toLowerCase(histogramAttrName), histogramAttrName));
+    for (int i = 0; i < LatencyHistogram.NB_BUCKETS; i++)
+    {
+      final long count = snapshot.getBucketCount(i);
+      if (count != 0)
+      {
+        final String upperBound = i < LatencyHistogram.NB_BUCKETS - 1
+            ? String.valueOf(LatencyHistogram.getBucketUpperBound(i)) : "";
+        builder.add(LatencyHistogram.getBucketLowerBound(i) + "-" + upperBound + ": " + count);
+      }
+    }
+    if (!builder.isEmpty())
+    {
+      monitorAttrs.add(builder.toAttribute());
+    }
+  }
+
+  /**
+   * Adds attributes describing the histogram of the processing times of
+   * each operation type to the provided monitor data, as done by
+   * {@link #addHistogramAttributes(List, String, LatencyHistogram)}.
+   *
+   * @param monitorAttrs The monitor data to add the attributes to.
+   * @param latencies The processing times of each operation type.
+   */
+  protected final void addHistogramAttributes(
+      List<Attribute> monitorAttrs, OperationLatencies latencies)
+  {
+    for (OperationType type : OperationType.values())
+    {
+      final LatencyHistogram histogram = latencies.getHistogram(type);
+      if (histogram != null)
+      {
+        addHistogramAttributes(monitorAttrs,
+            OperationLatencies.getAttributeNamePrefix(type), histogram);
+      }
+    }
+  }
+
+  private void addIntegerAttribute(List<Attribute> monitorAttrs, String attrName, long value)
+  {
+    final AttributeType attrType =
+        DirectoryServer.getAttributeTypeOrDefault(toLowerCase(attrName), attrName,
+            DirectoryServer.getDefaultIntegerSyntax());
+    monitorAttrs.add(Attributes.create(attrType, String.valueOf(value)));
+  }
+
+
+
   /**
    * Retrieves a set of attributes containing monitor data that should
    * be returned to the client if the corresponding monitor entry is
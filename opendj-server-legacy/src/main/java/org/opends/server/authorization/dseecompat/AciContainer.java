@@ -34,13 +34,18 @@ import java.net.InetAddress;
 import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.api.ClientConnection;
 import org.opends.server.api.Group;
 import org.opends.server.controls.GetEffectiveRightsRequestControl;
 import org.opends.server.core.AddOperation;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.GroupManager;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.protocols.ldap.LDAPClientConnection;
 import org.opends.server.types.*;
@@ -59,6 +64,13 @@ implements AciTargetMatchContext, AciEvalContext {
      */
     private List<Aci> denyList, allowList;
 
+    /**
+     * The name of the operation attachment caching the DNs of the groups of
+     * the users evaluated during this operation.
+     */
+    private static final String ATTACHMENT_GROUP_DNS =
+        AciContainer.class.getName() + ".groupDNs";
+
     /**
      * The attribute type in the resource entry currently being evaluated.
      */
@@ -732,21 +744,39 @@ implements AciTargetMatchContext, AciEvalContext {
       return matched;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The groups of each user are retrieved once per operation from the group
+     * manager and cached in an operation attachment, so that evaluating
+     * several groupdn bind rules only performs lookups.
+     */
     @Override
     public boolean isMemberOf(Group<?> group) {
-        try {
-            if(useAuthzid) {
-                return group.isMember(this.authzid);
-            }
-            Entry e = getClientEntry();
-            if (e != null) {
-                return group.isMember(e);
-            }
-            return group.isMember(getClientDN());
-        } catch (DirectoryException ex) {
+        final DN userDN = useAuthzid ? this.authzid : getClientDN();
+        if (userDN == null) {
             return false;
         }
+
+        Map<DN, Set<DN>> groupDNsByUser = operation.getAttachment(ATTACHMENT_GROUP_DNS);
+        if (groupDNsByUser == null) {
+            groupDNsByUser = new HashMap<>();
+            operation.setAttachment(ATTACHMENT_GROUP_DNS, groupDNsByUser);
+        }
+        Set<DN> groupDNs = groupDNsByUser.get(userDN);
+        if (groupDNs == null) {
+            final GroupManager groupManager = DirectoryServer.getGroupManager();
+            final Entry e = getClientEntry();
+            final Set<Group<?>> groups = !useAuthzid && e != null
+                ? groupManager.getGroups(e)
+                : groupManager.getGroups(userDN);
+            groupDNs = new HashSet<>();
+            for (Group<?> g : groups) {
+                groupDNs.add(g.getGroupDN());
+            }
+            groupDNsByUser.put(userDN, groupDNs);
+        }
+        return groupDNs.contains(group.getGroupDN());
     }
 
   /**
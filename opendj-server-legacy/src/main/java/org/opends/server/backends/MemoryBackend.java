@@ -31,19 +31,31 @@ import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.opendj.ldap.ConditionResult;
+import org.forgerock.opendj.ldap.DecodeException;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.opendj.ldap.SearchScope;
+import org.forgerock.opendj.ldap.schema.MatchingRule;
 import org.opends.server.admin.std.server.MemoryBackendCfg;
 import org.opends.server.api.Backend;
 import org.opends.server.controls.SubtreeDeleteControl;
@@ -54,6 +66,7 @@ import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.core.ServerContext;
+import org.opends.server.types.Attribute;
 import org.opends.server.types.AttributeType;
 import org.opends.server.types.BackupConfig;
 import org.opends.server.types.BackupDirectory;
@@ -68,36 +81,39 @@ import org.opends.server.types.LDIFImportConfig;
 import org.opends.server.types.LDIFImportResult;
 import org.opends.server.types.RestoreConfig;
 import org.opends.server.types.SearchFilter;
+import org.opends.server.types.VirtualAttributeRule;
 import org.opends.server.util.LDIFException;
 import org.opends.server.util.LDIFReader;
 import org.opends.server.util.LDIFWriter;
 
 /**
- * This class defines a very simple backend that stores its information in
- * memory.  This is primarily intended for testing purposes with small data
- * sets, as it does not have any indexing mechanism such as would be required to
- * achieve high performance with large data sets.  It is also heavily
- * synchronized for simplicity at the expense of performance, rather than
- * providing a more fine-grained locking mechanism.
+ * This class defines a backend that stores its information in memory. There
+ * is no persistence of any kind: it is intended for testing purposes and for
+ * ephemeral data sets.
  * <BR><BR>
  * Entries stored in this backend are held in a
- * <CODE>LinkedHashMap&lt;DN,Entry&gt;</CODE> object, which ensures that the
- * order in which you iterate over the entries is the same as the order in which
- * they were inserted.  By combining this with the constraint that no entry can
- * be added before its parent, you can ensure that iterating through the entries
- * will always process the parent entries before their children, which is
- * important for both search result processing and LDIF exports.
+ * <CODE>ConcurrentSkipListMap&lt;ByteString,Entry&gt;</CODE> object, keyed by
+ * the normalized representation of their DN. This representation provides a
+ * hierarchical ordering: each entry is immediately followed by all its
+ * subordinate entries. Iterating over the entries therefore processes the
+ * parent entries before their children, which is important for both search
+ * result processing and LDIF exports, and the entries of a subtree are found
+ * in a single range of the map.
  * <BR><BR>
- * As mentioned above, no data indexing is performed, so all non-baseObject
- * searches require iteration through the entire data set.  If this is to become
- * a more general-purpose backend, then additional
- * <CODE>HashMap&lt;ByteString,Set&lt;DN&gt;&gt;</CODE> objects could be used
- * to provide that capability.
+ * Entries are read without any lock. Stored entries are never modified: write
+ * operations replace them in place, so that readers always find them, and are
+ * serialized by a write lock. Searches take the corresponding read lock only
+ * while collecting the entries within their scope, so that they return a
+ * consistent snapshot of the backend contents, then evaluate their filter and
+ * return the entries without holding any lock.
  * <BR><BR>
- * There is actually one index that does get maintained within this backend,
- * which is a mapping between the DN of an entry and the DNs of any immediate
- * children of that entry.  This is needed to efficiently determine whether an
- * entry has any children (which must not be the case for delete operations).
+ * Besides the mapping between the DN of an entry and the DNs of its immediate
+ * children, which is needed to efficiently determine whether an entry has any
+ * children (which must not be the case for delete operations), optional
+ * equality and presence indexes may be maintained for the configured attribute
+ * types. Searches whose filter can be evaluated with these indexes only
+ * evaluate the entries returned by the indexes instead of all the entries
+ * within their scope.
  */
 public class MemoryBackend
        extends Backend<MemoryBackendCfg>
@@ -119,8 +135,39 @@ public class MemoryBackend
   private final Set<String> supportedControls =
       Collections.singleton(OID_SUBTREE_DELETE_CONTROL);
 
-  /** The mapping between entry DNs and the corresponding entries. */
-  private LinkedHashMap<DN,Entry> entryMap;
+  /**
+   * The mapping between normalized entry DNs and the corresponding entries,
+   * which are never modified once stored.
+   */
+  private ConcurrentSkipListMap<ByteString,Entry> entryMap;
+
+  /** The number of entries in {@link #entryMap}, whose size is not computed in constant time. */
+  private volatile long entryCount;
+
+  /**
+   * Serializes the write operations, and allows searches to collect a
+   * consistent snapshot of the entries. Guards {@link #childDNs} and the
+   * indexes.
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** The attribute types indexed for equality. */
+  private Set<AttributeType> equalityIndexedTypes = Collections.emptySet();
+
+  /** The attribute types indexed for presence. */
+  private Set<AttributeType> presenceIndexedTypes = Collections.emptySet();
+
+  /**
+   * The equality indexes: for each indexed attribute type, the normalized DNs
+   * of the entries holding each normalized value.
+   */
+  private Map<AttributeType,Map<ByteString,Set<ByteString>>> equalityIndexes;
+
+  /**
+   * The presence indexes: for each indexed attribute type, the normalized DNs
+   * of the entries holding it.
+   */
+  private Map<AttributeType,Set<ByteString>> presenceIndexes;
 
 
 
@@ -148,6 +195,24 @@ public class MemoryBackend
     this.baseDNs = baseDNs;
   }
 
+  /**
+   * Set the attribute types indexed by this backend.  This is used by the
+   * unit tests to set the indexes without having to provide a configuration
+   * object when initializing the backend.  It must be called before the
+   * backend is opened.
+   *
+   * @param equalityIndexedTypes
+   *          The attribute types to index for equality.
+   * @param presenceIndexedTypes
+   *          The attribute types to index for presence.
+   */
+  public void setIndexedAttributeTypes(Set<AttributeType> equalityIndexedTypes,
+      Set<AttributeType> presenceIndexedTypes)
+  {
+    this.equalityIndexedTypes = getIndexableTypes(equalityIndexedTypes, true);
+    this.presenceIndexedTypes = getIndexableTypes(presenceIndexedTypes, false);
+  }
+
   /** {@inheritDoc} */
   @Override
   public void configureBackend(MemoryBackendCfg config, ServerContext serverContext) throws ConfigException
@@ -158,12 +223,33 @@ public class MemoryBackend
       DN[] baseDNs = new DN[cfg.getBaseDN().size()];
       cfg.getBaseDN().toArray(baseDNs);
       setBaseDNs(baseDNs);
+      setIndexedAttributeTypes(cfg.getEqualityIndexedAttribute(), cfg.getPresenceIndexedAttribute());
+    }
+  }
+
+  /**
+   * Operational attribute types are not indexed, and equality indexes require
+   * an equality matching rule which applies to the syntax of the attribute.
+   */
+  private static Set<AttributeType> getIndexableTypes(Set<AttributeType> types, boolean forEquality)
+  {
+    final Set<AttributeType> indexableTypes = new HashSet<>();
+    for (AttributeType type : types)
+    {
+      final MatchingRule rule = type.getEqualityMatchingRule();
+      if (!type.isOperational()
+          && (!forEquality
+              || (rule != null && rule.getSyntax().getOID().equals(type.getSyntax().getOID()))))
+      {
+        indexableTypes.add(type);
+      }
     }
+    return indexableTypes;
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void openBackend()
+  public void openBackend()
        throws ConfigException, InitializationException
   {
     // We won't support anything other than exactly one base DN in this
@@ -176,11 +262,30 @@ public class MemoryBackend
       throw new ConfigException(message);
     }
 
-    baseDNSet = new HashSet<>();
-    Collections.addAll(baseDNSet, baseDNs);
-
-    entryMap = new LinkedHashMap<>();
-    childDNs = new HashMap<>();
+    lock.writeLock().lock();
+    try
+    {
+      baseDNSet = new HashSet<>();
+      Collections.addAll(baseDNSet, baseDNs);
+
+      entryMap = new ConcurrentSkipListMap<>();
+      entryCount = 0;
+      childDNs = new HashMap<>();
+      equalityIndexes = new HashMap<>();
+      for (AttributeType type : equalityIndexedTypes)
+      {
+        equalityIndexes.put(type, new HashMap<ByteString, Set<ByteString>>());
+      }
+      presenceIndexes = new HashMap<>();
+      for (AttributeType type : presenceIndexedTypes)
+      {
+        presenceIndexes.put(type, new HashSet<ByteString>());
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
 
     for (DN dn : baseDNs)
     {
@@ -204,15 +309,32 @@ public class MemoryBackend
   /**
    * Removes any data that may have been stored in this backend.
    */
-  public synchronized void clearMemoryBackend()
+  public void clearMemoryBackend()
   {
-    entryMap.clear();
-    childDNs.clear();
+    lock.writeLock().lock();
+    try
+    {
+      entryMap.clear();
+      entryCount = 0;
+      childDNs.clear();
+      for (Map<ByteString, Set<ByteString>> index : equalityIndexes.values())
+      {
+        index.clear();
+      }
+      for (Set<ByteString> index : presenceIndexes.values())
+      {
+        index.clear();
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void closeBackend()
+  public void closeBackend()
   {
     clearMemoryBackend();
 
@@ -238,11 +360,11 @@ public class MemoryBackend
 
   /** {@inheritDoc} */
   @Override
-  public synchronized long getEntryCount()
+  public long getEntryCount()
   {
     if (entryMap != null)
     {
-      return entryMap.size();
+      return entryCount;
     }
 
     return -1;
@@ -258,7 +380,7 @@ public class MemoryBackend
 
   /** {@inheritDoc} */
   @Override
-  public synchronized ConditionResult hasSubordinates(DN entryDN)
+  public ConditionResult hasSubordinates(DN entryDN)
          throws DirectoryException
   {
     long ret = getNumberOfSubordinates(entryDN, false);
@@ -283,38 +405,41 @@ public class MemoryBackend
     return getNumberOfSubordinates(parentDN, false);
   }
 
-  private synchronized long getNumberOfSubordinates(DN entryDN, boolean includeSubtree) throws DirectoryException
+  private long getNumberOfSubordinates(DN entryDN, boolean includeSubtree) throws DirectoryException
   {
-    // Try to look up the immediate children for the DN
-    final Set<DN> children = childDNs.get(entryDN);
-    if (children == null)
+    lock.readLock().lock();
+    try
     {
-      if(entryMap.get(entryDN) != null)
+      // Try to look up the immediate children for the DN
+      final Set<DN> children = childDNs.get(entryDN);
+      if (children == null)
       {
-        // The entry does exist but just no children.
-        return 0;
+        if (entryExists(entryDN))
+        {
+          // The entry does exist but just no children.
+          return 0;
+        }
+        return -1;
       }
-      return -1;
-    }
 
-    if(!includeSubtree)
-    {
-      return children.size();
+      if (!includeSubtree)
+      {
+        return children.size();
+      }
+      // All the subordinates are in the range following the entry
+      return getSubtree(entryDN).size() - 1;
     }
-    long count = 0;
-    for (DN child : children)
+    finally
     {
-      count += getNumberOfSubordinates(child, true);
-      count++;
+      lock.readLock().unlock();
     }
-    return count;
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized Entry getEntry(DN entryDN)
+  public Entry getEntry(DN entryDN)
   {
-    Entry entry = entryMap.get(entryDN);
+    Entry entry = entryMap.get(entryDN.toNormalizedByteString());
     if (entry != null)
     {
       entry = entry.duplicate(true);
@@ -325,225 +450,404 @@ public class MemoryBackend
 
   /** {@inheritDoc} */
   @Override
-  public synchronized boolean entryExists(DN entryDN)
+  public boolean entryExists(DN entryDN)
   {
-    return entryMap.containsKey(entryDN);
+    return entryMap.containsKey(entryDN.toNormalizedByteString());
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void addEntry(Entry entry, AddOperation addOperation)
+  public void addEntry(Entry entry, AddOperation addOperation)
          throws DirectoryException
   {
     Entry e = entry.duplicate(false);
 
-    // See if the target entry already exists.  If so, then fail.
-    DN entryDN = e.getName();
-    if (entryMap.containsKey(entryDN))
+    lock.writeLock().lock();
+    try
     {
-      throw new DirectoryException(ResultCode.ENTRY_ALREADY_EXISTS,
-          ERR_MEMORYBACKEND_ENTRY_ALREADY_EXISTS.get(entryDN));
-    }
+      // See if the target entry already exists.  If so, then fail.
+      DN entryDN = e.getName();
+      if (entryExists(entryDN))
+      {
+        throw new DirectoryException(ResultCode.ENTRY_ALREADY_EXISTS,
+            ERR_MEMORYBACKEND_ENTRY_ALREADY_EXISTS.get(entryDN));
+      }
 
 
-    // If the entry is one of the base DNs, then add it.
-    if (baseDNSet.contains(entryDN))
-    {
-      entryMap.put(entryDN, e);
-      return;
-    }
+      // If the entry is one of the base DNs, then add it.
+      if (baseDNSet.contains(entryDN))
+      {
+        putEntry(e);
+        return;
+      }
 
 
-    // Get the parent DN and ensure that it exists in the backend.
-    DN parentDN = entryDN.getParentDNInSuffix();
-    if (parentDN == null)
-    {
-      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
-          ERR_MEMORYBACKEND_ENTRY_DOESNT_BELONG.get(entryDN));
-    }
-    else if (! entryMap.containsKey(parentDN))
-    {
-      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
-          ERR_MEMORYBACKEND_PARENT_DOESNT_EXIST.get(entryDN, parentDN));
-    }
+      // Get the parent DN and ensure that it exists in the backend.
+      DN parentDN = entryDN.getParentDNInSuffix();
+      if (parentDN == null)
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+            ERR_MEMORYBACKEND_ENTRY_DOESNT_BELONG.get(entryDN));
+      }
+      else if (! entryExists(parentDN))
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+            ERR_MEMORYBACKEND_PARENT_DOESNT_EXIST.get(entryDN, parentDN));
+      }
+
+      putEntry(e);
+      HashSet<DN> children = childDNs.get(parentDN);
+      if (children == null)
+      {
+        children = new HashSet<>();
+        childDNs.put(parentDN, children);
+      }
 
-    entryMap.put(entryDN, e);
-    HashSet<DN> children = childDNs.get(parentDN);
-    if (children == null)
+      children.add(entryDN);
+    }
+    finally
     {
-      children = new HashSet<>();
-      childDNs.put(parentDN, children);
+      lock.writeLock().unlock();
     }
-
-    children.add(entryDN);
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void deleteEntry(DN entryDN,
-                                       DeleteOperation deleteOperation)
+  public void deleteEntry(DN entryDN, DeleteOperation deleteOperation)
          throws DirectoryException
   {
-    // Make sure the entry exists.  If not, then throw an exception.
-    if (! entryMap.containsKey(entryDN))
+    lock.writeLock().lock();
+    try
     {
-      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
-          ERR_BACKEND_ENTRY_DOESNT_EXIST.get(entryDN, getBackendID()));
-    }
+      // Make sure the entry exists.  If not, then throw an exception.
+      if (! entryExists(entryDN))
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+            ERR_BACKEND_ENTRY_DOESNT_EXIST.get(entryDN, getBackendID()));
+      }
 
 
-    // Check to see if the entry contains a subtree delete control.
-    boolean subtreeDelete = deleteOperation != null
-        && deleteOperation.getRequestControl(SubtreeDeleteControl.DECODER) != null;
+      // Check to see if the entry contains a subtree delete control.
+      boolean subtreeDelete = deleteOperation != null
+          && deleteOperation.getRequestControl(SubtreeDeleteControl.DECODER) != null;
 
-    HashSet<DN> children = childDNs.get(entryDN);
-    if (subtreeDelete)
-    {
-      if (children != null)
+      HashSet<DN> children = childDNs.get(entryDN);
+      if (subtreeDelete)
       {
-        HashSet<DN> childrenCopy = new HashSet<>(children);
-        for (DN childDN : childrenCopy)
+        if (children != null)
         {
-          try
+          HashSet<DN> childrenCopy = new HashSet<>(children);
+          for (DN childDN : childrenCopy)
           {
-            deleteEntry(childDN, null);
-          }
-          catch (Exception e)
-          {
-            // This shouldn't happen, but we want the delete to continue anyway
-            // so just ignore it if it does for some reason.
-            logger.traceException(e);
+            try
+            {
+              deleteEntry(childDN, null);
+            }
+            catch (Exception e)
+            {
+              // This shouldn't happen, but we want the delete to continue anyway
+              // so just ignore it if it does for some reason.
+              logger.traceException(e);
+            }
           }
         }
       }
-    }
-    else
-    {
-      // Make sure the entry doesn't have any children.  If it does, then throw
-      // an exception.
-      if (children != null && !children.isEmpty())
+      else
       {
-        throw new DirectoryException(ResultCode.NOT_ALLOWED_ON_NONLEAF,
-            ERR_MEMORYBACKEND_CANNOT_DELETE_ENTRY_WITH_CHILDREN.get(entryDN));
+        // Make sure the entry doesn't have any children.  If it does, then throw
+        // an exception.
+        if (children != null && !children.isEmpty())
+        {
+          throw new DirectoryException(ResultCode.NOT_ALLOWED_ON_NONLEAF,
+              ERR_MEMORYBACKEND_CANNOT_DELETE_ENTRY_WITH_CHILDREN.get(entryDN));
+        }
       }
-    }
 
 
-    // Remove the entry from the backend.  Also remove the reference to it from
-    // its parent, if applicable.
-    childDNs.remove(entryDN);
-    entryMap.remove(entryDN);
+      // Remove the entry from the backend.  Also remove the reference to it from
+      // its parent, if applicable.
+      childDNs.remove(entryDN);
+      removeEntry(entryDN);
 
-    DN parentDN = entryDN.getParentDNInSuffix();
-    if (parentDN != null)
-    {
-      HashSet<DN> parentsChildren = childDNs.get(parentDN);
-      if (parentsChildren != null)
+      DN parentDN = entryDN.getParentDNInSuffix();
+      if (parentDN != null)
       {
-        parentsChildren.remove(entryDN);
-        if (parentsChildren.isEmpty())
+        HashSet<DN> parentsChildren = childDNs.get(parentDN);
+        if (parentsChildren != null)
         {
-          childDNs.remove(parentDN);
+          parentsChildren.remove(entryDN);
+          if (parentsChildren.isEmpty())
+          {
+            childDNs.remove(parentDN);
+          }
         }
       }
     }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void replaceEntry(Entry oldEntry, Entry newEntry,
+  public void replaceEntry(Entry oldEntry, Entry newEntry,
       ModifyOperation modifyOperation) throws DirectoryException
   {
     Entry e = newEntry.duplicate(false);
 
-    // Make sure the entry exists.  If not, then throw an exception.
-    DN entryDN = e.getName();
-    if (! entryMap.containsKey(entryDN))
+    lock.writeLock().lock();
+    try
     {
-      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
-          ERR_BACKEND_ENTRY_DOESNT_EXIST.get(entryDN, getBackendID()));
-    }
+      // Make sure the entry exists.  If not, then throw an exception.
+      DN entryDN = e.getName();
+      if (! entryExists(entryDN))
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+            ERR_BACKEND_ENTRY_DOESNT_EXIST.get(entryDN, getBackendID()));
+      }
 
 
-    // Replace the old entry with the new one.
-    entryMap.put(entryDN, e);
+      // Replace the old entry with the new one, which must remain visible to
+      // the readers not holding the lock.
+      putEntry(e);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void renameEntry(DN currentDN, Entry entry,
-                                       ModifyDNOperation modifyDNOperation)
+  public void renameEntry(DN currentDN, Entry entry,
+                          ModifyDNOperation modifyDNOperation)
          throws DirectoryException
   {
     Entry e = entry.duplicate(false);
 
-    // Make sure that the target entry exists.
-    if (! entryMap.containsKey(currentDN))
+    lock.writeLock().lock();
+    try
     {
-      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
-          ERR_BACKEND_ENTRY_DOESNT_EXIST.get(currentDN, getBackendID()));
-    }
+      // Make sure that the target entry exists.
+      if (! entryExists(currentDN))
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+            ERR_BACKEND_ENTRY_DOESNT_EXIST.get(currentDN, getBackendID()));
+      }
 
 
-    // Make sure that the target entry doesn't have any children.
-    HashSet<DN> children  = childDNs.get(currentDN);
-    if (children != null)
-    {
-      if (children.isEmpty())
+      // Make sure that the target entry doesn't have any children.
+      HashSet<DN> children  = childDNs.get(currentDN);
+      if (children != null)
       {
-        childDNs.remove(currentDN);
+        if (children.isEmpty())
+        {
+          childDNs.remove(currentDN);
+        }
+        else
+        {
+          throw new DirectoryException(ResultCode.NOT_ALLOWED_ON_NONLEAF,
+              ERR_MEMORYBACKEND_CANNOT_RENAME_ENRY_WITH_CHILDREN.get(currentDN));
+        }
       }
-      else
+
+
+      // Make sure that no entry exists with the new DN.
+      if (entryExists(e.getName()))
       {
-        throw new DirectoryException(ResultCode.NOT_ALLOWED_ON_NONLEAF,
-            ERR_MEMORYBACKEND_CANNOT_RENAME_ENRY_WITH_CHILDREN.get(currentDN));
+        throw new DirectoryException(ResultCode.ENTRY_ALREADY_EXISTS,
+            ERR_MEMORYBACKEND_ENTRY_ALREADY_EXISTS.get(e.getName()));
       }
-    }
 
 
-    // Make sure that no entry exists with the new DN.
-    if (entryMap.containsKey(e.getName()))
+      // Make sure that the new DN is in this backend.
+      boolean matchFound = false;
+      for (DN dn : baseDNs)
+      {
+        if (dn.isAncestorOf(e.getName()))
+        {
+          matchFound = true;
+          break;
+        }
+      }
+
+      if (! matchFound)
+      {
+        throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+            ERR_MEMORYBACKEND_CANNOT_RENAME_TO_ANOTHER_BACKEND.get(currentDN));
+      }
+
+
+      // Make sure that the parent of the new entry exists.
+      DN parentDN = e.getName().getParentDNInSuffix();
+      if (parentDN == null || !entryExists(parentDN))
+      {
+        throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+            ERR_MEMORYBACKEND_RENAME_PARENT_DOESNT_EXIST.get(currentDN, parentDN));
+      }
+
+
+      // Add the new entry before deleting the current one, so that the readers
+      // not holding the lock always find the entry under one of its DNs.
+      addEntry(e, null);
+      deleteEntry(currentDN, null);
+    }
+    finally
     {
-      throw new DirectoryException(ResultCode.ENTRY_ALREADY_EXISTS,
-          ERR_MEMORYBACKEND_ENTRY_ALREADY_EXISTS.get(e.getName()));
+      lock.writeLock().unlock();
     }
+  }
 
+  /**
+   * Stores an entry, replacing the entry with the same DN if any, and indexes
+   * it. Must be called while holding the write lock.
+   */
+  private void putEntry(Entry entry)
+  {
+    final ByteString key = entry.getName().toNormalizedByteString();
+    final Entry previousEntry = entryMap.put(key, entry);
+    if (previousEntry == null)
+    {
+      entryCount++;
+    }
+    updateIndexes(key, previousEntry, entry);
+  }
 
-    // Make sure that the new DN is in this backend.
-    boolean matchFound = false;
-    for (DN dn : baseDNs)
+  /** Removes an entry and its index keys. Must be called while holding the write lock. */
+  private void removeEntry(DN entryDN)
+  {
+    final ByteString key = entryDN.toNormalizedByteString();
+    final Entry entry = entryMap.remove(key);
+    if (entry != null)
+    {
+      entryCount--;
+      updateIndexes(key, entry, null);
+    }
+  }
+
+  /**
+   * Updates the index keys of an entry, applying only the differences between
+   * its old and new versions.
+   *
+   * @param key
+   *          the normalized DN of the entry
+   * @param oldEntry
+   *          the entry previously stored under this key, or {@code null}
+   * @param newEntry
+   *          the entry now stored under this key, or {@code null}
+   */
+  private void updateIndexes(ByteString key, Entry oldEntry, Entry newEntry)
+  {
+    for (Map.Entry<AttributeType, Set<ByteString>> mapEntry : presenceIndexes.entrySet())
     {
-      if (dn.isAncestorOf(e.getName()))
+      final AttributeType type = mapEntry.getKey();
+      final boolean wasPresent = oldEntry != null && oldEntry.hasAttribute(type);
+      final boolean isPresent = newEntry != null && newEntry.hasAttribute(type);
+      if (isPresent && !wasPresent)
       {
-        matchFound = true;
-        break;
+        mapEntry.getValue().add(key);
+      }
+      else if (wasPresent && !isPresent)
+      {
+        mapEntry.getValue().remove(key);
       }
     }
 
-    if (! matchFound)
+    for (Map.Entry<AttributeType, Map<ByteString, Set<ByteString>>> mapEntry : equalityIndexes.entrySet())
     {
-      throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
-          ERR_MEMORYBACKEND_CANNOT_RENAME_TO_ANOTHER_BACKEND.get(currentDN));
+      final AttributeType type = mapEntry.getKey();
+      final Map<ByteString, Set<ByteString>> index = mapEntry.getValue();
+      final Set<ByteString> oldValues = getNormalizedValues(type, oldEntry);
+      final Set<ByteString> newValues = getNormalizedValues(type, newEntry);
+      for (ByteString value : oldValues)
+      {
+        if (!newValues.contains(value))
+        {
+          final Set<ByteString> keys = index.get(value);
+          if (keys != null)
+          {
+            keys.remove(key);
+            if (keys.isEmpty())
+            {
+              index.remove(value);
+            }
+          }
+        }
+      }
+      for (ByteString value : newValues)
+      {
+        if (!oldValues.contains(value))
+        {
+          Set<ByteString> keys = index.get(value);
+          if (keys == null)
+          {
+            keys = new HashSet<>();
+            index.put(value, keys);
+          }
+          keys.add(key);
+        }
+      }
     }
+  }
 
-
-    // Make sure that the parent of the new entry exists.
-    DN parentDN = e.getName().getParentDNInSuffix();
-    if (parentDN == null || !entryMap.containsKey(parentDN))
+  private static Set<ByteString> getNormalizedValues(AttributeType type, Entry entry)
+  {
+    final List<Attribute> attributes = entry != null ? entry.getAttribute(type) : null;
+    if (attributes == null || attributes.isEmpty())
     {
-      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
-          ERR_MEMORYBACKEND_RENAME_PARENT_DOESNT_EXIST.get(currentDN, parentDN));
+      return Collections.emptySet();
+    }
+    final Set<ByteString> values = new HashSet<>();
+    for (Attribute attribute : attributes)
+    {
+      for (ByteString value : attribute)
+      {
+        final ByteString normalizedValue = normalize(type, value);
+        if (normalizedValue != null)
+        {
+          values.add(normalizedValue);
+        }
+      }
     }
+    return values;
+  }
 
+  private static ByteString normalize(AttributeType type, ByteString value)
+  {
+    try
+    {
+      return type.getEqualityMatchingRule().normalizeAttributeValue(value);
+    }
+    catch (DecodeException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
 
-    // Delete the current entry and add the new one.
-    deleteEntry(currentDN, null);
-    addEntry(e, null);
+  /**
+   * Returns the entries of the subtree rooted at the provided DN, in
+   * hierarchical order. Their normalized DNs are prefixed by the normalized DN
+   * of the base entry followed by the RDN separator, which is the lowest byte.
+   */
+  private NavigableMap<ByteString, Entry> getSubtree(DN baseDN)
+  {
+    final ByteString baseKey = baseDN.toNormalizedByteString();
+    if (baseKey.length() == 0)
+    {
+      return entryMap;
+    }
+    final ByteString upperBound = new ByteStringBuilder(baseKey.length() + 1)
+        .appendBytes(baseKey)
+        .appendByte((byte) (DN.NORMALIZED_RDN_SEPARATOR + 1))
+        .toByteString();
+    return entryMap.subMap(baseKey, true, upperBound, false);
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void search(SearchOperation searchOperation)
+  public void search(SearchOperation searchOperation)
          throws DirectoryException
   {
     // Get the base DN, scope, and filter for the search.
@@ -553,13 +857,13 @@ public class MemoryBackend
 
 
     // Make sure the base entry exists if it's supposed to be in this backend.
-    Entry baseEntry = entryMap.get(baseDN);
+    Entry baseEntry = entryMap.get(baseDN.toNormalizedByteString());
     if (baseEntry == null && handlesEntry(baseDN))
     {
       DN matchedDN = baseDN.getParentDNInSuffix();
       while (matchedDN != null)
       {
-        if (entryMap.containsKey(matchedDN))
+        if (entryExists(matchedDN))
         {
           break;
         }
@@ -590,18 +894,164 @@ public class MemoryBackend
     }
     else
     {
-      // Walk through all entries and send the ones that match.
-      for (Entry e : entryMap.values())
+      // Walk through the entries collected within the scope and send the ones
+      // that match, without holding the lock.
+      for (Entry e : getEntriesInScope(baseDN, scope, filter))
       {
         e = e.duplicate(true);
-        if (e.matchesBaseAndScope(baseDN, scope) && filter.matchesEntry(e))
+        if (filter.matchesEntry(e)
+            && !searchOperation.returnEntry(e, new LinkedList<Control>()))
+        {
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a consistent snapshot of the entries within the provided scope,
+   * in hierarchical order. Only the entries returned by the indexes are
+   * returned when the filter can be evaluated with the indexes.
+   */
+  private List<Entry> getEntriesInScope(DN baseDN, SearchScope scope, SearchFilter filter)
+  {
+    final List<Entry> entries = new ArrayList<>();
+    lock.readLock().lock();
+    try
+    {
+      final Set<ByteString> candidates = getCandidates(filter);
+      if (candidates != null)
+      {
+        for (ByteString key : new TreeSet<>(candidates))
+        {
+          final Entry entry = entryMap.get(key);
+          if (entry.matchesBaseAndScope(baseDN, scope))
+          {
+            entries.add(entry);
+          }
+        }
+      }
+      else if (scope == SearchScope.SINGLE_LEVEL)
+      {
+        final Set<DN> children = childDNs.get(baseDN);
+        if (children != null)
         {
-          searchOperation.returnEntry(e, new LinkedList<Control>());
+          final Set<ByteString> keys = new TreeSet<>();
+          for (DN childDN : children)
+          {
+            keys.add(childDN.toNormalizedByteString());
+          }
+          for (ByteString key : keys)
+          {
+            entries.add(entryMap.get(key));
+          }
+        }
+      }
+      else
+      {
+        for (Entry entry : getSubtree(baseDN).values())
+        {
+          if (entry.matchesBaseAndScope(baseDN, scope))
+          {
+            entries.add(entry);
+          }
+        }
+      }
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the normalized DNs of the entries which may match the provided
+   * filter according to the indexes, or {@code null} if the filter cannot be
+   * evaluated with the indexes. Must be called while holding the read lock.
+   */
+  private Set<ByteString> getCandidates(SearchFilter filter)
+  {
+    switch (filter.getFilterType())
+    {
+    case EQUALITY:
+      final Map<ByteString, Set<ByteString>> equalityIndex = equalityIndexes.get(filter.getAttributeType());
+      if (equalityIndex == null || hasVirtualAttributeRule(filter.getAttributeType()))
+      {
+        return null;
+      }
+      final ByteString normalizedValue = normalize(filter.getAttributeType(), filter.getAssertionValue());
+      if (normalizedValue == null)
+      {
+        return null;
+      }
+      return emptyIfNull(equalityIndex.get(normalizedValue));
+
+    case PRESENT:
+      final Set<ByteString> presenceIndex = presenceIndexes.get(filter.getAttributeType());
+      if (presenceIndex == null || hasVirtualAttributeRule(filter.getAttributeType()))
+      {
+        return null;
+      }
+      return presenceIndex;
+
+    case AND:
+      // The entries must match every component: the smallest candidate set is enough
+      Set<ByteString> smallest = null;
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        final Set<ByteString> candidates = getCandidates(component);
+        if (candidates != null && (smallest == null || candidates.size() < smallest.size()))
+        {
+          smallest = candidates;
+        }
+      }
+      return smallest;
+
+    case OR:
+      // The entries may match any component: every component must be indexed
+      final Set<ByteString> union = new HashSet<>();
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        final Set<ByteString> candidates = getCandidates(component);
+        if (candidates == null)
+        {
+          return null;
         }
+        union.addAll(candidates);
       }
+      return union;
+
+    default:
+      return null;
     }
   }
 
+  private static Set<ByteString> emptyIfNull(Set<ByteString> keys)
+  {
+    return keys != null ? keys : Collections.<ByteString> emptySet();
+  }
+
+  /**
+   * Indicates whether virtual values may be computed for the provided
+   * attribute type or one of its subtypes: these values are not indexed.
+   */
+  private static boolean hasVirtualAttributeRule(AttributeType type)
+  {
+    final Collection<VirtualAttributeRule> rules = DirectoryServer.getVirtualAttributes();
+    for (VirtualAttributeRule rule : rules)
+    {
+      for (AttributeType t = rule.getAttributeType(); t != null; t = t.getSuperiorType())
+      {
+        if (t.equals(type))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /** {@inheritDoc} */
   @Override
   public Set<String> getSupportedControls()
@@ -633,7 +1083,7 @@ public class MemoryBackend
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void exportLDIF(LDIFExportConfig exportConfig)
+  public void exportLDIF(LDIFExportConfig exportConfig)
          throws DirectoryException
   {
     // Create the LDIF writer.
@@ -651,11 +1101,22 @@ public class MemoryBackend
     }
 
 
-    // Walk through all the entries and write them to LDIF.
+    // Take a consistent snapshot of the entries, then write them to LDIF.
+    final List<Entry> entries;
+    lock.readLock().lock();
+    try
+    {
+      entries = new ArrayList<>(entryMap.values());
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+
     DN entryDN = null;
     try
     {
-      for (Entry entry : entryMap.values())
+      for (Entry entry : entries)
       {
         entryDN = entry.getName();
         ldifWriter.writeEntry(entry);
@@ -674,8 +1135,22 @@ public class MemoryBackend
 
   /** {@inheritDoc} */
   @Override
-  public synchronized LDIFImportResult importLDIF(LDIFImportConfig importConfig, ServerContext serverContext)
+  public LDIFImportResult importLDIF(LDIFImportConfig importConfig, ServerContext serverContext)
       throws DirectoryException
+  {
+    // Other operations must not see a partially imported backend
+    lock.writeLock().lock();
+    try
+    {
+      return importLDIF(importConfig);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private LDIFImportResult importLDIF(LDIFImportConfig importConfig) throws DirectoryException
   {
     clearMemoryBackend();
 
@@ -463,6 +463,15 @@ public final class JEStorage implements Storage, Backupable, ConfigurationChange
       }
     }
 
+    @Override
+    public List<ByteString> readAll(final TreeName treeName, final List<? extends ByteSequence> sortedKeys)
+    {
+      try (Cursor<ByteString, ByteString> cursor = openCursor(treeName))
+      {
+        return StorageUtils.readAll(cursor, sortedKeys);
+      }
+    }
+
     @Override
     public boolean update(final TreeName treeName, final ByteSequence key, final UpdateFunction f)
     {
@@ -546,6 +555,12 @@ public final class JEStorage implements Storage, Backupable, ConfigurationChange
       return delegate.read(treeName, key);
     }
 
+    @Override
+    public List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys)
+    {
+      return delegate.readAll(treeName, sortedKeys);
+    }
+
     @Override
     public Cursor<ByteString, ByteString> openCursor(TreeName treeName)
     {
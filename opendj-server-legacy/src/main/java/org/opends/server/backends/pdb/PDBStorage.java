@@ -549,6 +549,15 @@ public final class PDBStorage implements Storage, Backupable, ConfigurationChang
       }
     }
 
+    @Override
+    public List<ByteString> readAll(final TreeName treeName, final List<? extends ByteSequence> sortedKeys)
+    {
+      try (Cursor<ByteString, ByteString> cursor = openCursor(treeName))
+      {
+        return StorageUtils.readAll(cursor, sortedKeys);
+      }
+    }
+
     @Override
     public boolean update(final TreeName treeName, final ByteSequence key, final UpdateFunction f)
     {
@@ -639,6 +648,12 @@ public final class PDBStorage implements Storage, Backupable, ConfigurationChang
       return delegate.read(treeName, key);
     }
 
+    @Override
+    public List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys)
+    {
+      return delegate.readAll(treeName, sortedKeys);
+    }
+
     @Override
     public Cursor<ByteString, ByteString> openCursor(TreeName treeName)
     {
@@ -253,6 +253,9 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
   private IndexingOptions indexingOptions;
   private final State state;
 
+  /** Cardinality estimates used to plan the evaluation of search filters against this index. */
+  private volatile IndexStatistics statistics = new IndexStatistics();
+
   AttributeIndex(BackendIndexCfg config, State state, EntryContainer entryContainer) throws ConfigException
   {
     this.entryContainer = entryContainer;
@@ -375,6 +378,15 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
     return config.getAttribute();
   }
 
+  /**
+   * Get the cardinality estimates of this attribute index.
+   * @return The cardinality estimates of this attribute index.
+   */
+  IndexStatistics getStatistics()
+  {
+    return statistics;
+  }
+
   /**
    * Return the indexing options of this AttributeIndex.
    *
@@ -831,6 +843,7 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
       config = newConfiguration;
       indexingOptions = newIndexingOptions;
       indexIdToIndexes = Collections.unmodifiableMap(newIndexIdToIndexes);
+      statistics = new IndexStatistics();
 
       // We get exclusive lock to ensure that no query is actually using the indexes that will be deleted.
       entryContainer.lock();
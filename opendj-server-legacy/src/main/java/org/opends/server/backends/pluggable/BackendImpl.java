@@ -121,7 +121,8 @@ public abstract class BackendImpl<C extends PluggableBackendCfg> extends Backend
       OID_PAGED_RESULTS_CONTROL,
       OID_MANAGE_DSAIT_CONTROL,
       OID_SERVER_SIDE_SORT_REQUEST_CONTROL,
-      OID_VLV_REQUEST_CONTROL);
+      OID_VLV_REQUEST_CONTROL,
+      OID_PARALLEL_SEARCH_CONTROL);
 
   /**
    * Begin a Backend API method that accesses the {@link EntryContainer} for <code>entryDN</code>
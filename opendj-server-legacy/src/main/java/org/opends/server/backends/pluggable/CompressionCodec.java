@@ -0,0 +1,466 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.opends.server.admin.std.meta.PluggableBackendCfgDefn.EntriesCompressionAlgorithm;
+
+/**
+ * Algorithm used for compressing the entries stored in the id2entry tree.
+ * <p>
+ * The identifier of the codec is recorded in the format byte of every compressed entry, so that entries compressed
+ * with different codecs may coexist in the same tree. The {@link #DEFLATE} codec uses the historical format version
+ * of the entries, which keeps the entries it compresses readable by previous versions.
+ */
+abstract class CompressionCodec
+{
+  /** Deflate, each entry being compressed on its own. */
+  static final CompressionCodec DEFLATE = new DeflateCodec(DnKeyFormat.FORMAT_VERSION, false);
+  /** Fast LZ4 block compression, each entry being compressed on its own. */
+  static final CompressionCodec LZ4 = new LZ4Codec((byte) 0x02);
+  /** Deflate with a preset dictionary trained from a sample of the entries of the backend. */
+  static final CompressionCodec DEFLATE_WITH_DICTIONARY = new DeflateCodec((byte) 0x03, true);
+
+  private static final CompressionCodec[] CODECS = { DEFLATE, LZ4, DEFLATE_WITH_DICTIONARY };
+
+  private final byte id;
+
+  private CompressionCodec(byte id)
+  {
+    this.id = id;
+  }
+
+  /**
+   * Returns the codec whose identifier is provided.
+   *
+   * @param id
+   *          the codec identifier, as read from the format byte of an entry
+   * @return the codec, or {@code null} if no codec has this identifier
+   */
+  static CompressionCodec forID(byte id)
+  {
+    for (CompressionCodec codec : CODECS)
+    {
+      if (codec.id == id)
+      {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the codec implementing the configured compression algorithm.
+   *
+   * @param algorithm
+   *          the configured compression algorithm
+   * @return the codec implementing the algorithm
+   */
+  static CompressionCodec forAlgorithm(EntriesCompressionAlgorithm algorithm)
+  {
+    switch (algorithm)
+    {
+    case LZ4:
+      return LZ4;
+    case DEFLATE_WITH_DICTIONARY:
+      return DEFLATE_WITH_DICTIONARY;
+    default:
+      return DEFLATE;
+    }
+  }
+
+  /**
+   * Returns the identifier of this codec, recorded in the format byte of the entries it compresses.
+   *
+   * @return the identifier of this codec
+   */
+  final byte getID()
+  {
+    return id;
+  }
+
+  /**
+   * Indicates whether this codec needs a dictionary for compressing and decompressing data.
+   *
+   * @return {@code true} if this codec needs a dictionary
+   */
+  abstract boolean usesDictionary();
+
+  /**
+   * Compresses the provided data.
+   *
+   * @param data
+   *          the data to compress
+   * @param dictionary
+   *          the dictionary to use, or {@code null} if this codec does not use a dictionary
+   * @param output
+   *          the buffer where to append the compressed data
+   */
+  abstract void compress(ByteStringBuilder data, byte[] dictionary, ByteStringBuilder output);
+
+  /**
+   * Decompresses the provided data.
+   *
+   * @param compressedData
+   *          the data to decompress
+   * @param dictionary
+   *          the dictionary which was used for compressing the data, or {@code null} if this codec does not use a
+   *          dictionary
+   * @param uncompressedSize
+   *          the size of the data once decompressed
+   * @param output
+   *          the buffer where to append the decompressed data
+   * @throws DataFormatException
+   *           if the compressed data is corrupted
+   */
+  abstract void decompress(ByteStringBuilder compressedData, byte[] dictionary, int uncompressedSize,
+      ByteStringBuilder output) throws DataFormatException;
+
+  /** Deflate compression, reusing a deflater and an inflater per thread. */
+  private static final class DeflateCodec extends CompressionCodec
+  {
+    private static final int BUFFER_SIZE = 1024;
+
+    private final boolean usesDictionary;
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+    {
+      @Override
+      protected Deflater initialValue()
+      {
+        return new Deflater();
+      }
+    };
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>()
+    {
+      @Override
+      protected Inflater initialValue()
+      {
+        return new Inflater();
+      }
+    };
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>()
+    {
+      @Override
+      protected byte[] initialValue()
+      {
+        return new byte[BUFFER_SIZE];
+      }
+    };
+
+    private DeflateCodec(byte id, boolean usesDictionary)
+    {
+      super(id);
+      this.usesDictionary = usesDictionary;
+    }
+
+    @Override
+    boolean usesDictionary()
+    {
+      return usesDictionary;
+    }
+
+    @Override
+    void compress(ByteStringBuilder data, byte[] dictionary, ByteStringBuilder output)
+    {
+      final Deflater deflater = deflaters.get();
+      final byte[] buffer = buffers.get();
+      try
+      {
+        if (dictionary != null)
+        {
+          deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(data.getBackingArray(), 0, data.length());
+        deflater.finish();
+        while (!deflater.finished())
+        {
+          final int length = deflater.deflate(buffer);
+          output.appendBytes(buffer, 0, length);
+        }
+      }
+      finally
+      {
+        deflater.reset();
+      }
+    }
+
+    @Override
+    void decompress(ByteStringBuilder compressedData, byte[] dictionary, int uncompressedSize,
+        ByteStringBuilder output) throws DataFormatException
+    {
+      final Inflater inflater = inflaters.get();
+      final byte[] buffer = buffers.get();
+      try
+      {
+        inflater.setInput(compressedData.getBackingArray(), 0, compressedData.length());
+        while (!inflater.finished())
+        {
+          final int length = inflater.inflate(buffer);
+          if (length == 0)
+          {
+            if (inflater.needsDictionary() && dictionary != null)
+            {
+              inflater.setDictionary(dictionary);
+            }
+            else if (inflater.needsInput() || inflater.needsDictionary())
+            {
+              throw new DataFormatException("Truncated compressed data");
+            }
+          }
+          output.appendBytes(buffer, 0, length);
+        }
+      }
+      finally
+      {
+        inflater.reset();
+      }
+    }
+  }
+
+  /**
+   * Pure Java implementation of the LZ4 block format.
+   * <p>
+   * The compressor looks for matches with a single hash table probe per position, which makes it much faster than
+   * Deflate, both for compressing and decompressing, at the cost of a lower compression ratio.
+   */
+  private static final class LZ4Codec extends CompressionCodec
+  {
+    private static final int MIN_MATCH = 4;
+    /** The last literals of a block must hold at least this number of bytes. */
+    private static final int LAST_LITERALS = 5;
+    /** A match must start at least this number of bytes before the end of a block. */
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0x0F;
+
+    private final ThreadLocal<int[]> hashTables = new ThreadLocal<int[]>()
+    {
+      @Override
+      protected int[] initialValue()
+      {
+        return new int[1 << HASH_LOG];
+      }
+    };
+
+    private LZ4Codec(byte id)
+    {
+      super(id);
+    }
+
+    @Override
+    boolean usesDictionary()
+    {
+      return false;
+    }
+
+    @Override
+    void compress(ByteStringBuilder data, byte[] dictionary, ByteStringBuilder output)
+    {
+      final byte[] src = data.getBackingArray();
+      final int srcLength = data.length();
+      final byte[] dst = new byte[srcLength + srcLength / 255 + 16];
+      final int[] hashTable = hashTables.get();
+      Arrays.fill(hashTable, -1);
+
+      int anchor = 0;
+      int dstPos = 0;
+      if (srcLength > MF_LIMIT)
+      {
+        final int matchLimit = srcLength - LAST_LITERALS;
+        final int mfLimit = srcLength - MF_LIMIT;
+        int srcPos = 0;
+        while (srcPos < mfLimit)
+        {
+          final int sequence = readInt(src, srcPos);
+          final int hash = hash(sequence);
+          int ref = hashTable[hash];
+          hashTable[hash] = srcPos;
+          if (ref < 0 || srcPos - ref > MAX_DISTANCE || readInt(src, ref) != sequence)
+          {
+            srcPos++;
+            continue;
+          }
+
+          // Extend the match backwards, then forwards
+          while (srcPos > anchor && ref > 0 && src[srcPos - 1] == src[ref - 1])
+          {
+            srcPos--;
+            ref--;
+          }
+          int matchLength = MIN_MATCH;
+          while (srcPos + matchLength < matchLimit && src[srcPos + matchLength] == src[ref + matchLength])
+          {
+            matchLength++;
+          }
+
+          dstPos = writeLiterals(src, anchor, srcPos - anchor, matchLength - MIN_MATCH, dst, dstPos);
+          dst[dstPos++] = (byte) (srcPos - ref);
+          dst[dstPos++] = (byte) ((srcPos - ref) >>> 8);
+          if (matchLength - MIN_MATCH >= RUN_MASK)
+          {
+            dstPos = writeLength(matchLength - MIN_MATCH - RUN_MASK, dst, dstPos);
+          }
+          srcPos += matchLength;
+          anchor = srcPos;
+        }
+      }
+      dstPos = writeLiterals(src, anchor, srcLength - anchor, 0, dst, dstPos);
+      output.appendBytes(dst, 0, dstPos);
+    }
+
+    @Override
+    void decompress(ByteStringBuilder compressedData, byte[] dictionary, int uncompressedSize,
+        ByteStringBuilder output) throws DataFormatException
+    {
+      final byte[] src = compressedData.getBackingArray();
+      final int srcLength = compressedData.length();
+      final byte[] dst = new byte[uncompressedSize];
+      int srcPos = 0;
+      int dstPos = 0;
+      while (true)
+      {
+        if (srcPos >= srcLength)
+        {
+          throw new DataFormatException("Truncated LZ4 block");
+        }
+        final int token = src[srcPos++] & 0xFF;
+
+        int literalLength = token >>> 4;
+        if (literalLength == RUN_MASK)
+        {
+          int b;
+          do
+          {
+            if (srcPos >= srcLength)
+            {
+              throw new DataFormatException("Truncated LZ4 block");
+            }
+            b = src[srcPos++] & 0xFF;
+            literalLength += b;
+          }
+          while (b == 0xFF);
+        }
+        if (literalLength > srcLength - srcPos || literalLength > uncompressedSize - dstPos)
+        {
+          throw new DataFormatException("Invalid LZ4 literal length " + literalLength);
+        }
+        System.arraycopy(src, srcPos, dst, dstPos, literalLength);
+        srcPos += literalLength;
+        dstPos += literalLength;
+        if (srcPos == srcLength)
+        {
+          // The last sequence only holds literals
+          break;
+        }
+
+        if (srcLength - srcPos < 2)
+        {
+          throw new DataFormatException("Truncated LZ4 block");
+        }
+        final int offset = (src[srcPos] & 0xFF) | (src[srcPos + 1] & 0xFF) << 8;
+        srcPos += 2;
+        if (offset == 0 || offset > dstPos)
+        {
+          throw new DataFormatException("Invalid LZ4 match offset " + offset);
+        }
+
+        int matchLength = token & RUN_MASK;
+        if (matchLength == RUN_MASK)
+        {
+          int b;
+          do
+          {
+            if (srcPos >= srcLength)
+            {
+              throw new DataFormatException("Truncated LZ4 block");
+            }
+            b = src[srcPos++] & 0xFF;
+            matchLength += b;
+          }
+          while (b == 0xFF);
+        }
+        matchLength += MIN_MATCH;
+        if (matchLength > uncompressedSize - dstPos)
+        {
+          throw new DataFormatException("Invalid LZ4 match length " + matchLength);
+        }
+
+        // Matches may overlap the bytes they produce, so copy byte per byte
+        for (int ref = dstPos - offset, end = dstPos + matchLength; dstPos < end;)
+        {
+          dst[dstPos++] = dst[ref++];
+        }
+      }
+
+      if (dstPos != uncompressedSize)
+      {
+        throw new DataFormatException("LZ4 block decompressed to " + dstPos + " bytes instead of " + uncompressedSize);
+      }
+      output.appendBytes(dst, 0, dstPos);
+    }
+
+    /** Writes the token of a sequence followed by its literals. */
+    private static int writeLiterals(byte[] src, int from, int literalLength, int matchLength, byte[] dst,
+        int dstPos)
+    {
+      final int tokenPos = dstPos++;
+      dst[tokenPos] = (byte) (Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchLength, RUN_MASK));
+      if (literalLength >= RUN_MASK)
+      {
+        dstPos = writeLength(literalLength - RUN_MASK, dst, dstPos);
+      }
+      System.arraycopy(src, from, dst, dstPos, literalLength);
+      return dstPos + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dstPos)
+    {
+      while (length >= 0xFF)
+      {
+        dst[dstPos++] = (byte) 0xFF;
+        length -= 0xFF;
+      }
+      dst[dstPos++] = (byte) length;
+      return dstPos;
+    }
+
+    private static int readInt(byte[] src, int pos)
+    {
+      return (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8 | (src[pos + 2] & 0xFF) << 16 | src[pos + 3] << 24;
+    }
+
+    private static int hash(int sequence)
+    {
+      return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+  }
+}
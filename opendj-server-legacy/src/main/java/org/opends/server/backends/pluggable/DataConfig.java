@@ -36,8 +36,10 @@ import org.opends.server.types.EntryEncodeConfig;
  */
 final class DataConfig
 {
-  /** Indicates whether data should be compressed before writing to the storage. */
-  private final boolean compressed;
+  /** The codec used for compressing data before writing to the storage, or null if data must not be compressed. */
+  private final CompressionCodec compressionCodec;
+  /** The dictionaries used by the compression codec. */
+  private final PersistentCompressionDictionaries compressionDictionaries;
 
   /** The configuration to use when encoding entries in the tree. */
   private final EntryEncodeConfig encodeConfig;
@@ -53,7 +55,26 @@ final class DataConfig
    */
   DataConfig(boolean compressed, boolean compactEncoding, CompressedSchema compressedSchema)
   {
-    this.compressed = compressed;
+    this(compressed ? CompressionCodec.DEFLATE : null, compactEncoding, compressedSchema, null);
+  }
+
+  /**
+   * Construct a new DataConfig object with the specified settings.
+   *
+   * @param compressionCodec the codec used for compressing data, or {@code null}
+   * if data should not be compressed.
+   * @param compactEncoding true if data should be encoded in compact form,
+   * false if not.
+   * @param compressedSchema the compressed schema manager to use.  It must not
+   * be {@code null} if compactEncoding is {@code true}.
+   * @param compressionDictionaries the dictionaries used by the compression
+   * codec, may be {@code null} if the codec does not use dictionaries.
+   */
+  DataConfig(CompressionCodec compressionCodec, boolean compactEncoding, CompressedSchema compressedSchema,
+      PersistentCompressionDictionaries compressionDictionaries)
+  {
+    this.compressionCodec = compressionCodec;
+    this.compressionDictionaries = compressionDictionaries;
 
     if (compressedSchema == null)
     {
@@ -73,7 +94,27 @@ final class DataConfig
    */
   boolean isCompressed()
   {
-    return compressed;
+    return compressionCodec != null;
+  }
+
+  /**
+   * Get the codec used for compressing data before writing to the tree.
+   * @return the codec used for compressing data, or {@code null} if data
+   * should not be compressed.
+   */
+  CompressionCodec getCompressionCodec()
+  {
+    return compressionCodec;
+  }
+
+  /**
+   * Get the dictionaries used by the compression codec.
+   * @return the dictionaries used by the compression codec, or {@code null}
+   * if there is none.
+   */
+  PersistentCompressionDictionaries getCompressionDictionaries()
+  {
+    return compressionDictionaries;
   }
 
   /**
@@ -94,7 +135,7 @@ final class DataConfig
   {
     final StringBuilder builder = new StringBuilder();
     builder.append("DataConfig(compressed=");
-    builder.append(compressed);
+    builder.append(isCompressed());
     builder.append(", ");
     encodeConfig.toString(builder);
     builder.append(")");
@@ -30,17 +30,28 @@ import static org.forgerock.util.Reject.*;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.State.IndexFlag.*;
+import static org.opends.server.util.StaticUtils.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteSequenceReader;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.forgerock.util.promise.NeverThrowsException;
 import org.opends.server.backends.pluggable.CursorTransformer.ValueTransformer;
 import org.opends.server.backends.pluggable.EntryIDSet.EntryIDSetCodec;
 import org.opends.server.backends.pluggable.State.IndexFlag;
 import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Importer;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
@@ -51,16 +62,30 @@ import org.opends.server.backends.pluggable.spi.WriteableTransaction;
  * Represents an index implemented by a tree in which each key maps to a set of entry IDs. The key
  * is a byte array, and is constructed from some normalized form of an attribute value (or fragment
  * of a value) appearing in the entry.
+ * <p>
+ * Indexes using the segmented layout store each key in a header record, under the escaped key followed by a
+ * terminator. The header holds the entry IDs of the key while there are few of them. Once there are more than
+ * {@link #MAX_INLINE_IDS}, the header only holds their number, and the IDs are split into segment records by ID range,
+ * under the header key followed by the segment number. Updating a large key then only rewrites its header and the
+ * segments holding the added or deleted IDs, instead of the whole ID list.
  */
 class DefaultIndex extends AbstractTree implements Index
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** Maximum number of entry IDs stored in the header record of a key when using the segmented layout. */
+  static final int MAX_INLINE_IDS = 256;
+  /** Number of low-order bits of the entry IDs sharing the same segment. */
+  static final int SEGMENT_BITS = 12;
+  /** First byte of the header records whose entry IDs are stored in segments. It is never the first byte of a codec. */
+  private static final byte SEGMENTED_HEADER = (byte) 0xFE;
+
   /** The limit on the number of entry IDs that may be indexed by one key. */
   private final State state;
   private final EntryContainer entryContainer;
   private int indexEntryLimit;
   private EntryIDSetCodec codec;
+  private volatile boolean segmented;
 
   /**
    * A flag to indicate if this index should be trusted to be consistent with the entries tree.
@@ -101,7 +126,8 @@ class DefaultIndex extends AbstractTree implements Index
   final void afterOpen(WriteableTransaction txn, boolean createOnDemand)
   {
     final EnumSet<IndexFlag> flags = state.getIndexFlags(txn, getName());
-    codec = flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+    codec = getCodec(flags);
+    segmented = flags.contains(SEGMENTED);
     trusted = flags.contains(TRUSTED);
     if (!trusted && entryContainer.getHighestEntryID(txn).longValue() == 0)
     {
@@ -111,9 +137,67 @@ class DefaultIndex extends AbstractTree implements Index
     }
   }
 
+  private static EntryIDSetCodec getCodec(EnumSet<IndexFlag> flags)
+  {
+    if (flags.contains(BITMAP))
+    {
+      return CODEC_V3;
+    }
+    return flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+  }
+
+  /**
+   * Switches this index to the compressed bitmap encoding. This must only be invoked when the index
+   * tree is empty, for example while it is being rebuilt, because existing records are not converted.
+   *
+   * @param txn
+   *          a non null transaction
+   * @throws StorageRuntimeException
+   *           If an error occurs in the storage.
+   */
+  final synchronized void useBitmapEncoding(WriteableTransaction txn) throws StorageRuntimeException
+  {
+    state.addFlagsToIndex(txn, getName(), BITMAP);
+    codec = CODEC_V3;
+  }
+
+  /**
+   * Switches this index to the segmented layout. This must only be invoked when the index tree is empty, for example
+   * while it is being rebuilt, because existing records are not converted.
+   *
+   * @param txn
+   *          a non null transaction
+   * @throws StorageRuntimeException
+   *           If an error occurs in the storage.
+   */
+  final synchronized void useSegmentedLayout(WriteableTransaction txn) throws StorageRuntimeException
+  {
+    state.addFlagsToIndex(txn, getName(), SEGMENTED);
+    segmented = true;
+  }
+
+  EntryIDSetCodec getCodec()
+  {
+    return codec;
+  }
+
+  boolean usesBitmapEncoding()
+  {
+    return codec == CODEC_V3;
+  }
+
+  boolean isSegmented()
+  {
+    return segmented;
+  }
+
   @Override
   public String valueToString(ByteString value)
   {
+    if (segmented && isSegmentedHeader(value))
+    {
+      return "[SEGMENTED] " + getSegmentedHeaderCount(value);
+    }
     StringBuilder sb = new StringBuilder();
     final EntryIDSet eIDSet = decodeValue(ByteString.empty(), value);
     eIDSet.toString(sb);
@@ -132,6 +216,10 @@ class DefaultIndex extends AbstractTree implements Index
   public final Cursor<ByteString, EntryIDSet> openCursor(ReadableTransaction txn)
   {
     checkNotNull(txn, "txn must not be null");
+    if (segmented)
+    {
+      return new SegmentedIndexCursor(txn);
+    }
     return CursorTransformer.transformValues(txn.openCursor(getName()),
         new ValueTransformer<ByteString, ByteString, EntryIDSet, NeverThrowsException>()
         {
@@ -163,6 +251,12 @@ class DefaultIndex extends AbstractTree implements Index
       return;
     }
 
+    if (segmented)
+    {
+      updateSegmented(txn, key, deletedIDs, addedIDs);
+      return;
+    }
+
     /*
      * Avoid taking a write lock on a record which has hit all IDs because it is likely to be a
      * point of contention.
@@ -204,6 +298,384 @@ class DefaultIndex extends AbstractTree implements Index
     });
   }
 
+  private void updateSegmented(WriteableTransaction txn, ByteString key, EntryIDSet deletedIDs, EntryIDSet addedIDs)
+  {
+    final ByteString headerKey = toHeaderKey(key);
+    // Avoid taking a write lock on a record which has hit all IDs because it is likely to be a point of contention.
+    final ByteString header = txn.read(getName(), headerKey);
+    if (header != null && !isSegmentedHeader(header) && !decodeValue(key, header).isDefined())
+    {
+      return;
+    }
+
+    /*
+     * The header record is always updated first: this takes a write lock on it, which serializes the concurrent
+     * updates of the key, including the updates of its segments and of the number of IDs stored in the header.
+     */
+    final HeaderUpdate headerUpdate = new HeaderUpdate(txn, key, deletedIDs, addedIDs);
+    txn.update(getName(), headerKey, headerUpdate);
+    if (headerUpdate.idsToSegment != null)
+    {
+      putSegments(txn, headerKey, headerUpdate.idsToSegment);
+    }
+    else if (headerUpdate.segmentedCount >= 0)
+    {
+      updateSegments(txn, key, headerKey, headerUpdate.segmentedCount, deletedIDs, addedIDs);
+    }
+  }
+
+  /**
+   * Updates the header record of a key. The whole update is done here when the IDs are stored inline, otherwise the
+   * header record is only locked, and the segments must be updated next.
+   */
+  private final class HeaderUpdate implements UpdateFunction
+  {
+    private final WriteableTransaction txn;
+    private final ByteString key;
+    private final EntryIDSet deletedIDs;
+    private final EntryIDSet addedIDs;
+    /** The IDs to store in segments because they do not fit inline anymore, or {@code null}. */
+    private EntryIDSet idsToSegment;
+    /** The number of IDs of the key before the update if it is segmented, -1 otherwise. */
+    private long segmentedCount;
+
+    private HeaderUpdate(WriteableTransaction txn, ByteString key, EntryIDSet deletedIDs, EntryIDSet addedIDs)
+    {
+      this.txn = txn;
+      this.key = key;
+      this.deletedIDs = deletedIDs;
+      this.addedIDs = addedIDs;
+    }
+
+    @Override
+    public ByteSequence computeNewValue(ByteSequence oldValue)
+    {
+      // May be invoked several times by the storage
+      idsToSegment = null;
+      segmentedCount = -1;
+      if (oldValue == null)
+      {
+        if (trusted)
+        {
+          if (deletedIDs != null)
+          {
+            logIndexCorruptError(txn, key);
+          }
+          if (isNotEmpty(addedIDs))
+          {
+            return toHeaderValue(addedIDs);
+          }
+        }
+        return null; // no change.
+      }
+
+      final ByteString header = oldValue.toByteString();
+      if (isSegmentedHeader(header))
+      {
+        segmentedCount = getSegmentedHeaderCount(header);
+        return oldValue;
+      }
+      final EntryIDSet entryIDSet = computeEntryIDSet(key, header, deletedIDs, addedIDs);
+      return entryIDSet.size() == 0 ? null : toHeaderValue(entryIDSet);
+    }
+
+    private ByteString toHeaderValue(EntryIDSet entryIDSet)
+    {
+      if (!entryIDSet.isDefined() || entryIDSet.size() <= MAX_INLINE_IDS)
+      {
+        return toValue(entryIDSet);
+      }
+      idsToSegment = entryIDSet;
+      return toSegmentedHeader(entryIDSet.size());
+    }
+  }
+
+  /**
+   * Updates the segments of a key holding the added or deleted IDs, then the number of IDs stored in the header
+   * record. The caller must have locked the header record.
+   */
+  private void updateSegments(WriteableTransaction txn, ByteString key, ByteString headerKey, long count,
+      EntryIDSet deletedIDs, EntryIDSet addedIDs)
+  {
+    if (addedIDs != null && indexEntryLimit > 0)
+    {
+      final long nbDeleted = deletedIDs != null ? deletedIDs.size() : 0;
+      if (count + addedIDs.size() - nbDeleted >= indexEntryLimit)
+      {
+        deleteSegments(txn, headerKey);
+        txn.put(getName(), headerKey, toValue(newUndefinedSetWithKey(key)));
+        if (logger.isTraceEnabled())
+        {
+          logger.trace("Index entry exceeded in index %s. " + "Limit: %d. ID list size: %d.\nKey:%s", getName(),
+              indexEntryLimit, count + addedIDs.size() - nbDeleted, key.toHexPlusAsciiString(4));
+        }
+        return;
+      }
+    }
+
+    // Only rewrite the segments holding the added or deleted IDs.
+    final Map<Long, EntryIDSet> addedIDsBySegment = splitIntoSegments(addedIDs);
+    final Map<Long, EntryIDSet> deletedIDsBySegment = splitIntoSegments(deletedIDs);
+    final TreeSet<Long> segments = new TreeSet<>(addedIDsBySegment.keySet());
+    segments.addAll(deletedIDsBySegment.keySet());
+    long newCount = count;
+    for (Long segment : segments)
+    {
+      final SegmentUpdate segmentUpdate =
+          new SegmentUpdate(key, deletedIDsBySegment.get(segment), addedIDsBySegment.get(segment));
+      txn.update(getName(), toSegmentKey(headerKey, segment), segmentUpdate);
+      newCount += segmentUpdate.sizeDelta;
+    }
+
+    // The header record is already locked
+    if (newCount > 0)
+    {
+      txn.put(getName(), headerKey, toSegmentedHeader(newCount));
+    }
+    else
+    {
+      txn.delete(getName(), headerKey);
+    }
+  }
+
+  /** Updates a segment of a key, computing the change in the number of IDs it holds. */
+  private final class SegmentUpdate implements UpdateFunction
+  {
+    private final ByteString key;
+    private final EntryIDSet deletedIDs;
+    private final EntryIDSet addedIDs;
+    private long sizeDelta;
+
+    private SegmentUpdate(ByteString key, EntryIDSet deletedIDs, EntryIDSet addedIDs)
+    {
+      this.key = key;
+      this.deletedIDs = deletedIDs;
+      this.addedIDs = addedIDs;
+    }
+
+    @Override
+    public ByteSequence computeNewValue(ByteSequence oldValue)
+    {
+      final EntryIDSet entryIDSet = oldValue != null ? decodeValue(key, oldValue.toByteString()) : newDefinedSet();
+      final long oldSize = entryIDSet.size();
+      if (addedIDs != null)
+      {
+        entryIDSet.addAll(addedIDs);
+      }
+      if (deletedIDs != null)
+      {
+        entryIDSet.removeAll(deletedIDs);
+      }
+      sizeDelta = entryIDSet.size() - oldSize;
+      return entryIDSet.size() > 0 ? toValue(entryIDSet) : null;
+    }
+  }
+
+  /** Stores the provided entry ID set in the segments of a key, the header record being written separately. */
+  private void putSegments(WriteableTransaction txn, ByteString headerKey, EntryIDSet entryIDSet)
+  {
+    for (Map.Entry<Long, EntryIDSet> segment : splitIntoSegments(entryIDSet).entrySet())
+    {
+      txn.put(getName(), toSegmentKey(headerKey, segment.getKey()), toValue(segment.getValue()));
+    }
+  }
+
+  private void deleteSegments(WriteableTransaction txn, ByteString headerKey)
+  {
+    final List<ByteString> segmentKeys = new ArrayList<>();
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      boolean found = cursor.positionToKeyOrNext(headerKey);
+      while (found && cursor.getKey().startsWith(headerKey))
+      {
+        if (cursor.getKey().length() > headerKey.length())
+        {
+          segmentKeys.add(cursor.getKey());
+        }
+        found = cursor.next();
+      }
+    }
+    for (ByteString segmentKey : segmentKeys)
+    {
+      txn.delete(getName(), segmentKey);
+    }
+  }
+
+  /**
+   * Writes an encoded entry ID set produced by an import, splitting it into segments if needed.
+   *
+   * @param importer
+   *          the importer writing into the index tree
+   * @param key
+   *          the index key
+   * @param value
+   *          the entry ID set encoded with the codec of this index
+   */
+  void importPut(Importer importer, ByteSequence key, ByteString value)
+  {
+    if (!segmented)
+    {
+      importer.put(getName(), key, value);
+      return;
+    }
+
+    final ByteString headerKey = toHeaderKey(key);
+    final EntryIDSet entryIDSet = decodeValue(key, value);
+    if (!entryIDSet.isDefined() || entryIDSet.size() <= MAX_INLINE_IDS)
+    {
+      importer.put(getName(), headerKey, value);
+      return;
+    }
+    importer.put(getName(), headerKey, toSegmentedHeader(entryIDSet.size()));
+    for (Map.Entry<Long, EntryIDSet> segment : splitIntoSegments(entryIDSet).entrySet())
+    {
+      importer.put(getName(), toSegmentKey(headerKey, segment.getKey()), toValue(segment.getValue()));
+    }
+  }
+
+  /** Splits the provided entry ID set by segment, in segment order. */
+  private static Map<Long, EntryIDSet> splitIntoSegments(EntryIDSet entryIDSet)
+  {
+    final Map<Long, EntryIDSet> segments = new LinkedHashMap<>();
+    if (isNullOrEmpty(entryIDSet))
+    {
+      return segments;
+    }
+    final long[] ids = entryIDSet.toLongArray();
+    int start = 0;
+    while (start < ids.length)
+    {
+      final long segment = ids[start] >>> SEGMENT_BITS;
+      int end = start + 1;
+      while (end < ids.length && (ids[end] >>> SEGMENT_BITS) == segment)
+      {
+        end++;
+      }
+      segments.put(segment, newDefinedSet(Arrays.copyOfRange(ids, start, end)));
+      start = end;
+    }
+    return segments;
+  }
+
+  private EntryIDSet getSegmented(ReadableTransaction txn, ByteSequence key)
+  {
+    final ByteString headerKey = toHeaderKey(key);
+    final ByteString header = txn.read(getName(), headerKey);
+    if (header == null)
+    {
+      return trusted ? newDefinedSet() : newUndefinedSet();
+    }
+    return isSegmentedHeader(header) ? readSegments(txn, key, headerKey) : decodeValue(key, header);
+  }
+
+  /** Reads and merges all the segments of a key. */
+  private EntryIDSet readSegments(ReadableTransaction txn, ByteSequence key, ByteString headerKey)
+  {
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      cursor.positionToKeyOrNext(headerKey);
+      return readSegments(cursor, key, headerKey);
+    }
+  }
+
+  /**
+   * Reads and merges the segments following the header record of a key, leaving the cursor positioned on the next
+   * record.
+   */
+  private EntryIDSet readSegments(Cursor<ByteString, ByteString> cursor, ByteSequence key, ByteString headerKey)
+  {
+    final List<EntryIDSet> segments = new ArrayList<>();
+    boolean found = cursor.isDefined();
+    while (found && cursor.getKey().startsWith(headerKey))
+    {
+      if (cursor.getKey().length() == headerKey.length() + LONG_SIZE)
+      {
+        segments.add(decodeValue(key, cursor.getValue()));
+      }
+      found = cursor.next();
+    }
+    return newSetFromUnion(segments);
+  }
+
+  /**
+   * Returns the key of the header record of the provided index key. Zero bytes are escaped as 0x00 0xFF, and the key
+   * is terminated by 0x00 0x00, so that header keys sort like the index keys, and are never a prefix of each other.
+   */
+  static ByteString toHeaderKey(ByteSequence key)
+  {
+    final ByteStringBuilder builder = new ByteStringBuilder(key.length() + 2 + LONG_SIZE);
+    for (int i = 0; i < key.length(); i++)
+    {
+      final byte b = key.byteAt(i);
+      builder.appendByte(b);
+      if (b == 0)
+      {
+        builder.appendByte(0xFF);
+      }
+    }
+    return builder.appendByte(0).appendByte(0).toByteString();
+  }
+
+  private static ByteString toSegmentKey(ByteString headerKey, long segment)
+  {
+    return new ByteStringBuilder(headerKey.length() + LONG_SIZE).appendBytes(headerKey).appendLong(segment)
+        .toByteString();
+  }
+
+  /**
+   * Returns the length of the header key which the provided record key starts with, or -1 if there is none.
+   */
+  private static int getHeaderKeyLength(ByteSequence recordKey)
+  {
+    for (int i = 0; i < recordKey.length() - 1; i++)
+    {
+      if (recordKey.byteAt(i) == 0)
+      {
+        if (recordKey.byteAt(i + 1) == 0)
+        {
+          return i + 2;
+        }
+        // Skip the escaped zero
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the index key from the header key which the provided record key starts with. */
+  private static ByteString fromHeaderKey(ByteSequence recordKey, int headerKeyLength)
+  {
+    final ByteStringBuilder builder = new ByteStringBuilder(headerKeyLength);
+    for (int i = 0; i < headerKeyLength - 2; i++)
+    {
+      final byte b = recordKey.byteAt(i);
+      builder.appendByte(b);
+      if (b == 0)
+      {
+        // Skip the escape byte
+        i++;
+      }
+    }
+    return builder.toByteString();
+  }
+
+  private static boolean isSegmentedHeader(ByteString value)
+  {
+    return value.length() > 0 && value.byteAt(0) == SEGMENTED_HEADER;
+  }
+
+  private static long getSegmentedHeaderCount(ByteString header)
+  {
+    final ByteSequenceReader reader = header.asReader();
+    reader.skip(1);
+    return reader.readCompactUnsignedLong();
+  }
+
+  private static ByteString toSegmentedHeader(long count)
+  {
+    return new ByteStringBuilder().appendByte(SEGMENTED_HEADER).appendCompactUnsigned(count).toByteString();
+  }
+
   private static boolean isNullOrEmpty(EntryIDSet entryIDSet)
   {
     return entryIDSet == null || entryIDSet.size() == 0;
@@ -259,6 +731,10 @@ class DefaultIndex extends AbstractTree implements Index
   {
     try
     {
+      if (segmented)
+      {
+        return getSegmented(txn, key);
+      }
       ByteString value = txn.read(getName(), key);
       if (value != null)
       {
@@ -306,4 +782,167 @@ class DefaultIndex extends AbstractTree implements Index
   {
     return trusted;
   }
+
+  /**
+   * Cursor over the keys of an index using the segmented layout, merging the segments of each key. It skips over the
+   * segment records, only stopping on header records.
+   */
+  private final class SegmentedIndexCursor implements Cursor<ByteString, EntryIDSet>
+  {
+    private final Cursor<ByteString, ByteString> cursor;
+    private ByteString key;
+    private EntryIDSet value;
+    /** Whether the underlying cursor has already moved past the records of the current key. */
+    private boolean cursorAhead;
+
+    private SegmentedIndexCursor(ReadableTransaction txn)
+    {
+      this.cursor = txn.openCursor(getName());
+    }
+
+    @Override
+    public boolean next()
+    {
+      if (!cursorAhead && !cursor.next())
+      {
+        return clear();
+      }
+      return loadNextHeader();
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return key != null;
+    }
+
+    @Override
+    public ByteString getKey() throws NoSuchElementException
+    {
+      if (key == null)
+      {
+        throw new NoSuchElementException();
+      }
+      return key;
+    }
+
+    @Override
+    public EntryIDSet getValue() throws NoSuchElementException
+    {
+      if (key == null)
+      {
+        throw new NoSuchElementException();
+      }
+      return value;
+    }
+
+    @Override
+    public boolean positionToKey(ByteSequence key)
+    {
+      final ByteString headerKey = toHeaderKey(key);
+      if (!cursor.positionToKey(headerKey))
+      {
+        return clear();
+      }
+      return load(cursor.getKey().toByteString(), headerKey.length());
+    }
+
+    @Override
+    public boolean positionToKeyOrNext(ByteSequence key)
+    {
+      if (!cursor.positionToKeyOrNext(toHeaderKey(key)))
+      {
+        return clear();
+      }
+      return loadNextHeader();
+    }
+
+    @Override
+    public boolean positionToLastKey()
+    {
+      if (!cursor.positionToLastKey())
+      {
+        return clear();
+      }
+      final int headerKeyLength = getHeaderKeyLength(cursor.getKey());
+      if (headerKeyLength < 0)
+      {
+        return clear();
+      }
+      return positionToKey(fromHeaderKey(cursor.getKey(), headerKeyLength));
+    }
+
+    /** The segments are not index keys, so this walks through the keys from the first one. */
+    @Override
+    public boolean positionToIndex(int index)
+    {
+      if (index < 0 || !positionToKeyOrNext(ByteString.empty()))
+      {
+        return clear();
+      }
+      for (int i = 0; i < index; i++)
+      {
+        if (!next())
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void delete() throws NoSuchElementException, UnsupportedOperationException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close()
+    {
+      cursor.close();
+    }
+
+    /** Moves the underlying cursor to the first header record at or after its current position. */
+    private boolean loadNextHeader()
+    {
+      boolean found = cursor.isDefined();
+      while (found)
+      {
+        final int headerKeyLength = getHeaderKeyLength(cursor.getKey());
+        if (headerKeyLength == cursor.getKey().length())
+        {
+          return load(cursor.getKey().toByteString(), headerKeyLength);
+        }
+        // Segment without header, which may happen if the index is corrupted.
+        found = cursor.next();
+      }
+      return clear();
+    }
+
+    private boolean load(ByteString headerKey, int headerKeyLength)
+    {
+      key = fromHeaderKey(headerKey, headerKeyLength);
+      final ByteString header = cursor.getValue();
+      if (isSegmentedHeader(header))
+      {
+        cursor.next();
+        value = readSegments(cursor, key, headerKey);
+        cursorAhead = true;
+      }
+      else
+      {
+        value = decodeValue(key, header);
+        cursorAhead = false;
+      }
+      return true;
+    }
+
+    private boolean clear()
+    {
+      key = null;
+      value = null;
+      cursorAhead = false;
+      return false;
+    }
+  }
 }
@@ -42,10 +42,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -73,6 +75,7 @@ import org.opends.server.api.EntryCache;
 import org.opends.server.api.VirtualAttributeProvider;
 import org.opends.server.api.plugin.PluginResult.SubordinateDelete;
 import org.opends.server.api.plugin.PluginResult.SubordinateModifyDN;
+import org.opends.server.backends.pluggable.ParallelSearchEvaluator.CandidateEvaluator;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
@@ -135,6 +138,8 @@ public class EntryContainer
   private static final String REFERRAL_TREE_NAME = REFERRAL_INDEX_NAME;
   /** The name of the state tree. */
   private static final String STATE_TREE_NAME = STATE_INDEX_NAME;
+  /** Maximum number of candidate entries read at once from id2entry when processing an indexed search. */
+  private static final int CANDIDATE_ENTRIES_BATCH_SIZE = 64;
 
   /** The attribute index configuration manager. */
   private final AttributeIndexCfgManager attributeIndexCfgManager;
@@ -448,10 +453,7 @@ public class EntryContainer
     boolean shouldCreate = accessMode.isWriteable();
     try
     {
-      DataConfig entryDataConfig = new DataConfig(
-          config.isEntriesCompressed(), config.isCompactEncoding(), rootContainer.getCompressedSchema());
-
-      id2entry = new ID2Entry(getIndexName(ID2ENTRY_TREE_NAME), entryDataConfig);
+      id2entry = new ID2Entry(getIndexName(ID2ENTRY_TREE_NAME), newDataConfig(config));
       id2entry.open(txn, shouldCreate);
       id2childrenCount.open(txn, shouldCreate);
       dn2id.open(txn, shouldCreate);
@@ -1176,6 +1178,13 @@ public class EntryContainer
     int lookthroughCount = 0;
     int lookthroughLimit = searchOperation.getClientConnection().getLookthroughLimit();
 
+    final ParallelSearchEvaluator parallelEvaluator = getParallelSearchEvaluator(searchOperation);
+    final int maxBatchSize = getMaxCandidateBatchSize(parallelEvaluator);
+    final ByteString[] batchKeys = new ByteString[maxBatchSize];
+    final long[] batchEntryIDs = new long[maxBatchSize];
+    final Entry[] batchEntries = new Entry[maxBatchSize];
+    final boolean[] batchMatches = new boolean[maxBatchSize];
+
     try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(dn2id.getName()))
     {
       // Initialize the cursor very close to the starting value.
@@ -1184,37 +1193,59 @@ public class EntryContainer
       // Step forward until we pass the ending value.
       while (success && cursor.getKey().compareTo(end) < 0)
       {
-        if (lookthroughLimit > 0 && lookthroughCount > lookthroughLimit)
+        // Gather a batch of subordinate entries.
+        int batchSize = getCandidateBatchSize(maxBatchSize, searchOperation, pageRequest);
+        if (lookthroughLimit > 0)
+        {
+          batchSize = Math.max(Math.min(batchSize, lookthroughLimit - lookthroughCount + 1), 1);
+        }
+        int batchLength = 0;
+        do
         {
-          // Lookthrough limit exceeded
-          searchOperation.setResultCode(ResultCode.ADMIN_LIMIT_EXCEEDED);
-          searchOperation.appendErrorMessage(NOTE_LOOKTHROUGH_LIMIT_EXCEEDED.get(lookthroughLimit));
-          return;
+          boolean isInScope =
+              searchScope != SearchScope.SINGLE_LEVEL
+                  // Check if this entry is an immediate child.
+                  || findDNKeyParent(cursor.getKey()) == baseDNKey.length();
+          if (isInScope)
+          {
+            batchKeys[batchLength] = cursor.getKey();
+            batchEntryIDs[batchLength] = new EntryID(cursor.getValue()).longValue();
+            batchLength++;
+          }
+
+          // Move to the next record.
+          success = cursor.next();
         }
+        while (success && cursor.getKey().compareTo(end) < 0 && batchLength < batchSize);
 
-        // We have found a subordinate entry.
-        EntryID entryID = new EntryID(cursor.getValue());
-        boolean isInScope =
-            searchScope != SearchScope.SINGLE_LEVEL
-                // Check if this entry is an immediate child.
-                || findDNKeyParent(cursor.getKey()) == baseDNKey.length();
-        if (isInScope)
+        // Like getEntry() callers, fail the search if a candidate cannot be read.
+        evaluateCandidates(txn, parallelEvaluator, batchEntryIDs, batchLength, true, false, manageDsaIT,
+            searchOperation, batchEntries, batchMatches);
+
+        // Process the candidate entries.
+        for (int i = 0; i < batchLength; i++)
         {
-          // Process the candidate entry.
-          final Entry entry = getEntry(txn, entryID);
+          if (lookthroughLimit > 0 && lookthroughCount > lookthroughLimit)
+          {
+            // Lookthrough limit exceeded
+            searchOperation.setResultCode(ResultCode.ADMIN_LIMIT_EXCEEDED);
+            searchOperation.appendErrorMessage(NOTE_LOOKTHROUGH_LIMIT_EXCEEDED.get(lookthroughLimit));
+            return;
+          }
+
+          final Entry entry = batchEntries[i];
           if (entry != null)
           {
             lookthroughCount++;
 
-            if ((manageDsaIT || entry.getReferralURLs() == null)
-                && searchOperation.getFilter().matchesEntry(entry))
+            if (batchMatches[i])
             {
               if (pageRequest != null
                   && searchOperation.getEntriesSent() == pageRequest.getSize())
               {
                 // The current page is full.
                 // Set the cookie to remember where we were.
-                ByteString cookie = cursor.getKey();
+                ByteString cookie = batchKeys[i];
                 Control control = new PagedResultsControl(pageRequest.isCritical(), 0, cookie);
                 searchOperation.getResponseControls().add(control);
                 return;
@@ -1229,12 +1260,9 @@ public class EntryContainer
               }
             }
           }
-        }
-
-        searchOperation.checkIfCanceled(false);
 
-        // Move to the next record.
-        success = cursor.next();
+          searchOperation.checkIfCanceled(false);
+        }
       }
     }
     catch (StorageRuntimeException e)
@@ -1280,13 +1308,78 @@ public class EntryContainer
     return entry;
   }
 
+  /**
+   * Fetches the candidate entries whose IDs are in the provided range of the provided array.
+   * <p>
+   * Entries missing from the entry cache are read from id2entry in a single ordered pass over the tree, then put in
+   * the cache. Candidates which could not be fetched this way are left {@code null} in the returned array, and must be
+   * read one by one with {@link #getEntry(ReadableTransaction, EntryID)}: this can be a missing entry, or a corrupted
+   * entry preventing the read of the whole batch.
+   *
+   * @param txn a non null transaction
+   * @param entryIDs
+   *          the candidate entry IDs, in any order
+   * @param from
+   *          the index of the first candidate to fetch, inclusive
+   * @param to
+   *          the index of the last candidate to fetch, exclusive
+   * @param entries
+   *          the array where to store the fetched entries, at position {@code i - from}
+   */
+  private void prefetchEntries(ReadableTransaction txn, long[] entryIDs, int from, int to, Entry[] entries)
+  {
+    Arrays.fill(entries, null);
+    final EntryCache<?> entryCache = getEntryCache();
+    final List<EntryID> entryIDsToRead = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++)
+    {
+      entries[i - from] = entryCache.getEntry(backendID, entryIDs[i]);
+      if (entries[i - from] == null)
+      {
+        entryIDsToRead.add(new EntryID(entryIDs[i]));
+      }
+    }
+    if (entryIDsToRead.size() < 2)
+    {
+      // Nothing to gain over a simple read
+      return;
+    }
+
+    Collections.sort(entryIDsToRead);
+    final List<Entry> readEntries;
+    try
+    {
+      readEntries = id2entry.get(txn, entryIDsToRead);
+    }
+    catch (Exception e)
+    {
+      // Entries will be read one by one, skipping the faulty ones
+      logger.traceException(e);
+      return;
+    }
+    for (int i = from; i < to; i++)
+    {
+      if (entries[i - from] == null)
+      {
+        final Entry entry = readEntries.get(Collections.binarySearch(entryIDsToRead, new EntryID(entryIDs[i])));
+        if (entry != null)
+        {
+          // Put the entry in the cache making sure not to overwrite a newer copy
+          // that may have been inserted since the time we read the cache.
+          entryCache.putEntryIfAbsent(entry, backendID, entryIDs[i]);
+          entries[i - from] = entry;
+        }
+      }
+    }
+  }
+
   /**
    * We were able to obtain a set of candidate entry IDs for the search from the indexes.
    * <p>
    * Here we are relying on ID order to ensure children are returned after their parents.
    * <ul>
    * <li>Iterate through the candidate IDs
-   * <li>fetch entry by ID from cache or id2entry
+   * <li>fetch entry by ID from cache or id2entry, reading the candidates by batches
    * <li>put the entry in the cache if not present
    * <li>discard entries that are not in scope
    * <li>return entry if it matches the filter
@@ -1347,48 +1440,49 @@ public class EntryContainer
     // Iterate through the index candidates.
     if (continueSearch)
     {
-      final SearchFilter filter = searchOperation.getFilter();
-      for (int i = findStartIndex(beginEntryID, entryIDReorderedSet); i < entryIDReorderedSet.length; i++)
+      final ParallelSearchEvaluator parallelEvaluator = getParallelSearchEvaluator(searchOperation);
+      final int maxBatchSize = getMaxCandidateBatchSize(parallelEvaluator);
+      final long[] batchEntryIDs = new long[maxBatchSize];
+      final Entry[] batchEntries = new Entry[maxBatchSize];
+      final boolean[] batchMatches = new boolean[maxBatchSize];
+      int batchStart = findStartIndex(beginEntryID, entryIDReorderedSet);
+      while (continueSearch && batchStart < entryIDReorderedSet.length)
       {
-        EntryID entryID = new EntryID(entryIDReorderedSet[i]);
-        Entry entry;
-        try
+        final int batchLength = Math.min(getCandidateBatchSize(maxBatchSize, searchOperation, pageRequest),
+            entryIDReorderedSet.length - batchStart);
+        System.arraycopy(entryIDReorderedSet, batchStart, batchEntryIDs, 0, batchLength);
+        batchStart += batchLength;
+        // Candidates which cannot be read are skipped, as they may have been deleted since the index was read.
+        evaluateCandidates(txn, parallelEvaluator, batchEntryIDs, batchLength, candidatesAreInScope, true,
+            manageDsaIT, searchOperation, batchEntries, batchMatches);
+
+        // Process the candidate entries.
+        for (int i = 0; continueSearch && i < batchLength; i++)
         {
-          entry = getEntry(txn, entryID);
-        }
-        catch (Exception e)
-        {
-          logger.traceException(e);
-          continue;
-        }
-
-        // Process the candidate entry.
-        if (entry != null
-              && isInScope(candidatesAreInScope, searchScope, aBaseDN, entry)
-              && (manageDsaIT || entry.getReferralURLs() == null)
-              && filter.matchesEntry(entry))
+          if (batchMatches[i])
           {
             if (pageRequest != null
                 && searchOperation.getEntriesSent() == pageRequest.getSize())
             {
               // The current page is full.
               // Set the cookie to remember where we were.
-              ByteString cookie = entryID.toByteString();
+              ByteString cookie = new EntryID(batchEntryIDs[i]).toByteString();
               Control control = new PagedResultsControl(pageRequest.isCritical(), 0, cookie);
               searchOperation.getResponseControls().add(control);
               return;
             }
 
-            if (!searchOperation.returnEntry(entry, null))
+            if (!searchOperation.returnEntry(batchEntries[i], null))
             {
               // We have been told to discontinue processing of the
               // search. This could be due to size limit exceeded or
               // operation cancelled.
-              break;
+              continueSearch = false;
             }
           }
+        }
+        searchOperation.checkIfCanceled(false);
       }
-      searchOperation.checkIfCanceled(false);
     }
 
     // Before we return success from the search we must ensure the base entry
@@ -1429,6 +1523,302 @@ public class EntryContainer
     return 0;
   }
 
+  private boolean isMatchingCandidate(Entry entry, boolean candidatesAreInScope, boolean manageDsaIT,
+      SearchOperation searchOperation) throws DirectoryException
+  {
+    return entry != null
+        && isInScope(candidatesAreInScope, searchOperation.getScope(), searchOperation.getBaseDN(), entry)
+        && (manageDsaIT || entry.getReferralURLs() == null)
+        && searchOperation.getFilter().matchesEntry(entry);
+  }
+
+  private static int getMaxCandidateBatchSize(ParallelSearchEvaluator parallelEvaluator)
+  {
+    return parallelEvaluator != null ? parallelEvaluator.getWindowSize() : CANDIDATE_ENTRIES_BATCH_SIZE;
+  }
+
+  /**
+   * Returns the number of candidates to evaluate at once, so that no more candidates are read than needed for
+   * reaching the size limit or filling the current page when they all match.
+   */
+  private static int getCandidateBatchSize(int maxBatchSize, SearchOperation searchOperation,
+      PagedResultsControl pageRequest)
+  {
+    // One more matching candidate is needed for knowing the limit is exceeded or the page is full.
+    int batchSize = maxBatchSize;
+    if (searchOperation.getSizeLimit() > 0)
+    {
+      batchSize = Math.min(batchSize, searchOperation.getSizeLimit() - searchOperation.getEntriesSent() + 1);
+    }
+    if (pageRequest != null)
+    {
+      batchSize = Math.min(batchSize, pageRequest.getSize() - searchOperation.getEntriesSent() + 1);
+    }
+    return Math.max(batchSize, 1);
+  }
+
+  /**
+   * Returns the evaluator to use for evaluating in parallel the candidate entries of the provided search.
+   * <p>
+   * Parallel evaluation must be enabled in the backend configuration, and requested with the parallel search control
+   * by a client having the unindexed-search privilege.
+   *
+   * @return the evaluator to use, or {@code null} if the candidate entries must be evaluated by the current thread
+   */
+  private ParallelSearchEvaluator getParallelSearchEvaluator(SearchOperation searchOperation)
+  {
+    final ParallelSearchEvaluator evaluator = rootContainer.getParallelSearchEvaluator();
+    if (evaluator != null
+        && hasRequestControl(searchOperation, ServerConstants.OID_PARALLEL_SEARCH_CONTROL)
+        && searchOperation.getClientConnection().hasPrivilege(Privilege.UNINDEXED_SEARCH, searchOperation))
+    {
+      return evaluator;
+    }
+    return null;
+  }
+
+  /**
+   * Fetches the candidate entries whose IDs are provided, and evaluates them against the search.
+   *
+   * @param txn a non null transaction
+   * @param parallelEvaluator
+   *          the evaluator to use for evaluating the candidates in parallel, or {@code null} for evaluating them with
+   *          the current thread
+   * @param entryIDs
+   *          the candidate entry IDs, in any order
+   * @param nbCandidates
+   *          the number of candidate entry IDs in the array
+   * @param candidatesAreInScope
+   *          true if it is certain that every candidate entry is in the search scope.
+   * @param skipFaultyCandidates
+   *          true if the candidate entries which cannot be fetched must be ignored like missing entries, false if
+   *          the evaluation must fail
+   * @param manageDsaIT
+   *          true if the search has the ManageDsaIT request control
+   * @param searchOperation
+   *          the search operation
+   * @param entries
+   *          the array where to store the candidate entries, or {@code null} for the missing ones
+   * @param matches
+   *          the array where to store whether the candidate entries must be returned
+   * @throws DirectoryException
+   *           If an error prevented the candidates from being evaluated
+   */
+  private void evaluateCandidates(ReadableTransaction txn, ParallelSearchEvaluator parallelEvaluator,
+      final long[] entryIDs, int nbCandidates, final boolean candidatesAreInScope, final boolean skipFaultyCandidates,
+      final boolean manageDsaIT, final SearchOperation searchOperation, final Entry[] entries,
+      final boolean[] matches) throws DirectoryException
+  {
+    final Set<AttributeType> filterAttributeTypes = getFilterAttributeTypes(searchOperation.getFilter());
+    if (parallelEvaluator == null)
+    {
+      evaluateCandidateRange(txn, entryIDs, 0, nbCandidates, candidatesAreInScope, skipFaultyCandidates, manageDsaIT,
+          searchOperation, filterAttributeTypes, entries, matches);
+      return;
+    }
+
+    parallelEvaluator.evaluate(nbCandidates, new CandidateEvaluator()
+    {
+      @Override
+      public void evaluate(ReadableTransaction rangeTxn, int from, int to) throws Exception
+      {
+        evaluateCandidateRange(rangeTxn, entryIDs, from, to, candidatesAreInScope, skipFaultyCandidates,
+            manageDsaIT, searchOperation, filterAttributeTypes, entries, matches);
+      }
+    });
+  }
+
+  private void evaluateCandidateRange(ReadableTransaction txn, long[] entryIDs, int from, int to,
+      boolean candidatesAreInScope, boolean skipFaultyCandidates, boolean manageDsaIT,
+      SearchOperation searchOperation, Set<AttributeType> filterAttributeTypes, Entry[] entries, boolean[] matches)
+      throws DirectoryException
+  {
+    if (filterAttributeTypes != null
+        && evaluateCandidateRangePartially(txn, entryIDs, from, to, candidatesAreInScope, skipFaultyCandidates,
+            manageDsaIT, searchOperation, filterAttributeTypes, entries, matches))
+    {
+      return;
+    }
+
+    final Entry[] prefetchedEntries = new Entry[to - from];
+    prefetchEntries(txn, entryIDs, from, to, prefetchedEntries);
+    for (int i = from; i < to; i++)
+    {
+      Entry entry = prefetchedEntries[i - from];
+      if (entry == null)
+      {
+        try
+        {
+          entry = getEntry(txn, new EntryID(entryIDs[i]));
+        }
+        catch (Exception e)
+        {
+          if (!skipFaultyCandidates)
+          {
+            throw e;
+          }
+          logger.traceException(e);
+        }
+      }
+      entries[i] = entry;
+      matches[i] = isMatchingCandidate(entry, candidatesAreInScope, manageDsaIT, searchOperation);
+    }
+  }
+
+  /**
+   * Evaluates the candidates whose IDs are in the provided range, only decoding the attributes needed for evaluating
+   * the search filter.
+   * <p>
+   * Candidates missing from the entry cache are read from id2entry in a single ordered pass over the tree, then
+   * partially decoded: only the candidates matching the search are fully decoded and put in the entry cache. The
+   * partially decoded entries of the other candidates are stored in the provided array, where they only serve for
+   * counting the candidates looked through.
+   *
+   * @return {@code false} if the candidates could not be read, and must be evaluated one by one
+   */
+  private boolean evaluateCandidateRangePartially(ReadableTransaction txn, long[] entryIDs, int from, int to,
+      boolean candidatesAreInScope, boolean skipFaultyCandidates, boolean manageDsaIT,
+      SearchOperation searchOperation, Set<AttributeType> filterAttributeTypes, Entry[] entries, boolean[] matches)
+      throws DirectoryException
+  {
+    final EntryCache<?> entryCache = getEntryCache();
+    final List<EntryID> entryIDsToRead = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++)
+    {
+      entries[i] = entryCache.getEntry(backendID, entryIDs[i]);
+      if (entries[i] == null)
+      {
+        entryIDsToRead.add(new EntryID(entryIDs[i]));
+      }
+    }
+
+    Collections.sort(entryIDsToRead);
+    final List<ByteString> values;
+    try
+    {
+      values = id2entry.readAll(txn, entryIDsToRead);
+    }
+    catch (StorageRuntimeException e)
+    {
+      logger.traceException(e);
+      return false;
+    }
+
+    for (int i = from; i < to; i++)
+    {
+      if (entries[i] != null)
+      {
+        matches[i] = isMatchingCandidate(entries[i], candidatesAreInScope, manageDsaIT, searchOperation);
+        continue;
+      }
+
+      final EntryID entryID = new EntryID(entryIDs[i]);
+      final ByteString value = values.get(Collections.binarySearch(entryIDsToRead, entryID));
+      try
+      {
+        final Entry partialEntry = id2entry.decodePartially(entryID, value, filterAttributeTypes);
+        if (!isMatchingCandidate(partialEntry, candidatesAreInScope, manageDsaIT, searchOperation))
+        {
+          entries[i] = partialEntry;
+          matches[i] = false;
+          continue;
+        }
+
+        final Entry entry = id2entry.decode(entryID, value);
+        // Put the entry in the cache making sure not to overwrite a newer copy
+        // that may have been inserted since the time we read the cache.
+        entryCache.putEntryIfAbsent(entry, backendID, entryIDs[i]);
+        entries[i] = entry;
+        matches[i] = isMatchingCandidate(entry, candidatesAreInScope, manageDsaIT, searchOperation);
+      }
+      catch (DirectoryException e)
+      {
+        if (!skipFaultyCandidates)
+        {
+          throw e;
+        }
+        logger.traceException(e);
+        entries[i] = null;
+        matches[i] = false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the types of the attributes needed for evaluating the provided search filter against the candidate
+   * entries, which is enough for deciding whether a candidate must be returned.
+   * <p>
+   * The subtypes of the filter attribute types are included, as well as the type of the referral attribute which is
+   * checked for every candidate. The DN and the object classes of the candidates are always decoded.
+   *
+   * @param filter
+   *          the search filter
+   * @return the attribute types, or {@code null} if the candidates must be fully decoded, for example because the
+   *         filter refers to a virtual or a collective attribute, whose values are not stored with the entries
+   */
+  private static Set<AttributeType> getFilterAttributeTypes(SearchFilter filter)
+  {
+    final Set<AttributeType> attributeTypes = new HashSet<>();
+    if (!addFilterAttributeTypes(filter, attributeTypes))
+    {
+      return null;
+    }
+    for (AttributeType attributeType : new ArrayList<>(attributeTypes))
+    {
+      attributeTypes.addAll(getSchema().getSubTypes(attributeType));
+    }
+    for (AttributeType attributeType : attributeTypes)
+    {
+      if (attributeType.isCollective())
+      {
+        return null;
+      }
+    }
+    for (VirtualAttributeRule rule : getVirtualAttributes())
+    {
+      if (attributeTypes.contains(rule.getAttributeType()))
+      {
+        return null;
+      }
+    }
+    attributeTypes.add(getAttributeTypeOrDefault(ServerConstants.ATTR_REFERRAL_URL));
+    return attributeTypes;
+  }
+
+  private static boolean addFilterAttributeTypes(SearchFilter filter, Set<AttributeType> attributeTypes)
+  {
+    switch (filter.getFilterType())
+    {
+    case AND:
+    case OR:
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        if (!addFilterAttributeTypes(component, attributeTypes))
+        {
+          return false;
+        }
+      }
+      return true;
+
+    case NOT:
+      return addFilterAttributeTypes(filter.getNotComponent(), attributeTypes);
+
+    case EXTENSIBLE_MATCH:
+      if (filter.getAttributeType() == null || filter.getDNAttributes())
+      {
+        // Any attribute of the entry may match
+        return false;
+      }
+      attributeTypes.add(filter.getAttributeType());
+      return true;
+
+    default:
+      attributeTypes.add(filter.getAttributeType());
+      return true;
+    }
+  }
+
   private boolean isInScope(boolean candidatesAreInScope, SearchScope searchScope, DN aBaseDN, Entry entry)
   {
     DN entryDN = entry.getName();
@@ -2396,6 +2786,11 @@ public class EntryContainer
    * @return true if the operation has the ManageDsaIT request control, or false if not.
    */
   private static boolean isManageDsaITOperation(Operation operation)
+  {
+    return hasRequestControl(operation, ServerConstants.OID_MANAGE_DSAIT_CONTROL);
+  }
+
+  private static boolean hasRequestControl(Operation operation, String oid)
   {
     if(operation != null)
     {
@@ -2404,7 +2799,7 @@ public class EntryContainer
       {
         for (Control control : controls)
         {
-          if (ServerConstants.OID_MANAGE_DSAIT_CONTROL.equals(control.getOID()))
+          if (oid.equals(control.getOID()))
           {
             return true;
           }
@@ -2493,6 +2888,14 @@ public class EntryContainer
     return true;
   }
 
+  private DataConfig newDataConfig(PluggableBackendCfg cfg)
+  {
+    final CompressionCodec compressionCodec =
+        cfg.isEntriesCompressed() ? CompressionCodec.forAlgorithm(cfg.getEntriesCompressionAlgorithm()) : null;
+    return new DataConfig(compressionCodec, cfg.isCompactEncoding(), rootContainer.getCompressedSchema(),
+        rootContainer.getCompressionDictionaries());
+  }
+
   @Override
   public ConfigChangeResult applyConfigurationChange(final PluggableBackendCfg cfg)
   {
@@ -2506,9 +2909,7 @@ public class EntryContainer
         @Override
         public void run(WriteableTransaction txn) throws Exception
         {
-          DataConfig entryDataConfig = new DataConfig(cfg.isEntriesCompressed(),
-              cfg.isCompactEncoding(), rootContainer.getCompressedSchema());
-          id2entry.setDataConfig(entryDataConfig);
+          id2entry.setDataConfig(newDataConfig(cfg));
 
           EntryContainer.this.config = cfg;
         }
@@ -2655,11 +3056,25 @@ public class EntryContainer
     final SearchFilter filter = searchOperation.getFilter();
 
     final TreeMap<ByteString, EntryID> sortMap = new TreeMap<>();
-    for (EntryID id : entryIDSet)
+    final long[] entryIDs = entryIDSet.toLongArray();
+    final Entry[] prefetchedEntries = new Entry[CANDIDATE_ENTRIES_BATCH_SIZE];
+    for (int i = 0; i < entryIDs.length; i++)
     {
+      final int batchIndex = i % CANDIDATE_ENTRIES_BATCH_SIZE;
+      if (batchIndex == 0)
+      {
+        prefetchEntries(txn, entryIDs, i, Math.min(i + CANDIDATE_ENTRIES_BATCH_SIZE, entryIDs.length),
+            prefetchedEntries);
+      }
+
+      final EntryID id = new EntryID(entryIDs[i]);
       try
       {
-        Entry e = getEntry(txn, id);
+        Entry e = prefetchedEntries[batchIndex];
+        if (e == null)
+        {
+          e = getEntry(txn, id);
+        }
         if (e.matchesBaseAndScope(baseDN, scope) && filter.matchesEntry(e))
         {
           sortMap.put(encodeVLVKey(sortOrder, e, id.longValue()), id);
@@ -0,0 +1,908 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.forgerock.util.Reject.*;
+
+import java.util.Arrays;
+
+import org.forgerock.opendj.ldap.ByteSequenceReader;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+/**
+ * Compressed bitmap of entry IDs, using Roaring-style containers.
+ * <p>
+ * Entry IDs are partitioned by their upper 48 bits. Each partition is stored in a container holding the lower 16 bits
+ * of its IDs: either a sorted array when the partition is sparse, or a fixed size bitmap of 1024 words when it is
+ * dense. Intersection, union and difference are computed container by container, and word by word for dense
+ * containers, without materializing the IDs.
+ * <p>
+ * This class is not thread safe.
+ */
+final class EntryIDBitmap
+{
+  /** Maximum number of values held by an array container before it is converted to a bitmap container. */
+  private static final int MAX_ARRAY_CARDINALITY = 4096;
+  private static final int BITMAP_WORDS = 1024;
+  private static final byte ARRAY_CONTAINER = 0;
+  private static final byte BITMAP_CONTAINER = 1;
+  private static final long[] EMPTY_LONG_ARRAY = new long[0];
+
+  /** High 48 bits of the IDs held by each container, sorted in ascending order. */
+  private long[] keys;
+  private Container[] containers;
+  private int nbContainers;
+
+  private EntryIDBitmap(long[] keys, Container[] containers, int nbContainers)
+  {
+    this.keys = keys;
+    this.containers = containers;
+    this.nbContainers = nbContainers;
+  }
+
+  EntryIDBitmap()
+  {
+    this(EMPTY_LONG_ARRAY, new Container[0], 0);
+  }
+
+  /**
+   * Creates a bitmap holding the provided entry IDs.
+   *
+   * @param entryIDs
+   *          entry IDs sorted in ascending order
+   * @return a new bitmap containing the provided entry IDs
+   */
+  static EntryIDBitmap valueOf(long... entryIDs)
+  {
+    checkNotNull(entryIDs, "entryIDs must not be null");
+    final EntryIDBitmap bitmap = new EntryIDBitmap();
+    int start = 0;
+    while (start < entryIDs.length)
+    {
+      final long key = highBits(entryIDs[start]);
+      int end = start + 1;
+      while (end < entryIDs.length && highBits(entryIDs[end]) == key)
+      {
+        end++;
+      }
+      bitmap.append(key, newContainer(entryIDs, start, end));
+      start = end;
+    }
+    return bitmap;
+  }
+
+  private static Container newContainer(long[] entryIDs, int start, int end)
+  {
+    final int cardinality = end - start;
+    if (cardinality <= MAX_ARRAY_CARDINALITY)
+    {
+      final char[] values = new char[cardinality];
+      for (int i = 0; i < cardinality; i++)
+      {
+        values[i] = lowBits(entryIDs[start + i]);
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+    final long[] words = new long[BITMAP_WORDS];
+    for (int i = start; i < end; i++)
+    {
+      final char low = lowBits(entryIDs[i]);
+      words[low >>> 6] |= 1L << low;
+    }
+    return new BitmapContainer(words, cardinality);
+  }
+
+  private static long highBits(long id)
+  {
+    return id >>> 16;
+  }
+
+  private static char lowBits(long id)
+  {
+    return (char) (id & 0xFFFF);
+  }
+
+  long cardinality()
+  {
+    long cardinality = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      cardinality += containers[i].cardinality;
+    }
+    return cardinality;
+  }
+
+  boolean isEmpty()
+  {
+    return nbContainers == 0;
+  }
+
+  long first()
+  {
+    return (keys[0] << 16) | containers[0].first();
+  }
+
+  long last()
+  {
+    return (keys[nbContainers - 1] << 16) | containers[nbContainers - 1].last();
+  }
+
+  boolean contains(long id)
+  {
+    final int pos = findContainer(highBits(id));
+    return pos >= 0 && containers[pos].contains(lowBits(id));
+  }
+
+  boolean add(long id)
+  {
+    final long key = highBits(id);
+    final int pos = findContainer(key);
+    if (pos >= 0)
+    {
+      final Container container = containers[pos];
+      final int cardinality = container.cardinality;
+      containers[pos] = container.add(lowBits(id));
+      return containers[pos].cardinality != cardinality;
+    }
+    insertContainerAt(-(pos + 1), key, new ArrayContainer(new char[] { lowBits(id) }, 1));
+    return true;
+  }
+
+  boolean remove(long id)
+  {
+    final int pos = findContainer(highBits(id));
+    if (pos < 0)
+    {
+      return false;
+    }
+    final Container container = containers[pos];
+    final int cardinality = container.cardinality;
+    final Container updated = container.remove(lowBits(id));
+    if (updated.cardinality == 0)
+    {
+      removeContainerAt(pos);
+    }
+    else
+    {
+      containers[pos] = updated;
+    }
+    return updated.cardinality != cardinality;
+  }
+
+  /**
+   * Returns the intersection of this bitmap with the provided one.
+   *
+   * @param that
+   *          the bitmap to intersect with
+   * @return a new bitmap containing the IDs present in both bitmaps
+   */
+  EntryIDBitmap and(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(
+        new long[Math.min(nbContainers, that.nbContainers)],
+        new Container[Math.min(nbContainers, that.nbContainers)], 0);
+    int i = 0, j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        j++;
+      }
+      else
+      {
+        final Container container = containers[i].and(that.containers[j]);
+        if (container.cardinality > 0)
+        {
+          result.append(keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the union of this bitmap with the provided one.
+   *
+   * @param that
+   *          the bitmap to merge with
+   * @return a new bitmap containing the IDs present in either bitmap
+   */
+  EntryIDBitmap or(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(
+        new long[nbContainers + that.nbContainers], new Container[nbContainers + that.nbContainers], 0);
+    int i = 0, j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        result.append(keys[i], containers[i].copy());
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        result.append(that.keys[j], that.containers[j].copy());
+        j++;
+      }
+      else
+      {
+        result.append(keys[i], containers[i].or(that.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    for (; i < nbContainers; i++)
+    {
+      result.append(keys[i], containers[i].copy());
+    }
+    for (; j < that.nbContainers; j++)
+    {
+      result.append(that.keys[j], that.containers[j].copy());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the difference of this bitmap with the provided one.
+   *
+   * @param that
+   *          the bitmap containing the IDs to exclude
+   * @return a new bitmap containing the IDs of this bitmap which are not present in the provided one
+   */
+  EntryIDBitmap andNot(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(new long[nbContainers], new Container[nbContainers], 0);
+    int j = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      while (j < that.nbContainers && that.keys[j] < keys[i])
+      {
+        j++;
+      }
+      final Container container = j < that.nbContainers && that.keys[j] == keys[i]
+          ? containers[i].andNot(that.containers[j])
+          : containers[i].copy();
+      if (container.cardinality > 0)
+      {
+        result.append(keys[i], container);
+      }
+    }
+    return result;
+  }
+
+  EntryIDBitmap copy()
+  {
+    final Container[] copies = new Container[nbContainers];
+    for (int i = 0; i < nbContainers; i++)
+    {
+      copies[i] = containers[i].copy();
+    }
+    return new EntryIDBitmap(Arrays.copyOf(keys, nbContainers), copies, nbContainers);
+  }
+
+  /**
+   * Returns the IDs contained in this bitmap.
+   *
+   * @return a new array containing the IDs in ascending order
+   */
+  long[] toArray()
+  {
+    final long cardinality = cardinality();
+    if (cardinality == 0)
+    {
+      return EMPTY_LONG_ARRAY;
+    }
+    final long[] ids = new long[(int) cardinality];
+    int pos = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      pos = containers[i].fill(keys[i] << 16, ids, pos);
+    }
+    return ids;
+  }
+
+  /**
+   * Appends the serialized form of this bitmap to the provided builder.
+   * <p>
+   * The number of containers is written first, then for each container: the delta of its key with the previous
+   * one, its type, its cardinality and its content (the sorted lower 16 bits for array containers, the 1024 words for
+   * bitmap containers).
+   *
+   * @param builder
+   *          the builder where to append the bitmap
+   * @return the provided builder
+   */
+  ByteStringBuilder encode(ByteStringBuilder builder)
+  {
+    builder.appendCompactUnsigned(nbContainers);
+    long previousKey = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      builder.appendCompactUnsigned(keys[i] - previousKey);
+      previousKey = keys[i];
+      containers[i].encode(builder);
+    }
+    return builder;
+  }
+
+  int getEstimatedEncodedSize()
+  {
+    int size = ByteStringBuilder.MAX_COMPACT_SIZE;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      size += ByteStringBuilder.MAX_COMPACT_SIZE * 2 + 1 + containers[i].getEncodedSize();
+    }
+    return size;
+  }
+
+  /**
+   * Reads a bitmap previously serialized with {@link #encode(ByteStringBuilder)}.
+   *
+   * @param reader
+   *          the reader positioned at the beginning of the serialized bitmap
+   * @return the decoded bitmap
+   */
+  static EntryIDBitmap decode(ByteSequenceReader reader)
+  {
+    final int nbContainers = reader.readCompactUnsignedInt();
+    final EntryIDBitmap bitmap = new EntryIDBitmap(new long[nbContainers], new Container[nbContainers], 0);
+    long key = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      key += reader.readCompactUnsignedLong();
+      final byte type = reader.readByte();
+      final int cardinality = reader.readCompactUnsignedInt();
+      if (type == BITMAP_CONTAINER)
+      {
+        final long[] words = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++)
+        {
+          words[w] = reader.readLong();
+        }
+        bitmap.append(key, new BitmapContainer(words, cardinality));
+      }
+      else
+      {
+        final char[] values = new char[cardinality];
+        for (int v = 0; v < cardinality; v++)
+        {
+          values[v] = (char) reader.readShort();
+        }
+        bitmap.append(key, new ArrayContainer(values, cardinality));
+      }
+    }
+    return bitmap;
+  }
+
+  private int findContainer(long key)
+  {
+    return Arrays.binarySearch(keys, 0, nbContainers, key);
+  }
+
+  /** Appends a container whose key is greater than all the keys of this bitmap. */
+  private void append(long key, Container container)
+  {
+    ensureCapacity(nbContainers + 1);
+    keys[nbContainers] = key;
+    containers[nbContainers] = container;
+    nbContainers++;
+  }
+
+  private void insertContainerAt(int pos, long key, Container container)
+  {
+    ensureCapacity(nbContainers + 1);
+    System.arraycopy(keys, pos, keys, pos + 1, nbContainers - pos);
+    System.arraycopy(containers, pos, containers, pos + 1, nbContainers - pos);
+    keys[pos] = key;
+    containers[pos] = container;
+    nbContainers++;
+  }
+
+  private void removeContainerAt(int pos)
+  {
+    System.arraycopy(keys, pos + 1, keys, pos, nbContainers - pos - 1);
+    System.arraycopy(containers, pos + 1, containers, pos, nbContainers - pos - 1);
+    nbContainers--;
+    containers[nbContainers] = null;
+  }
+
+  private void ensureCapacity(int capacity)
+  {
+    if (keys.length < capacity)
+    {
+      final int newCapacity = Math.max(capacity, keys.length * 2);
+      keys = Arrays.copyOf(keys, newCapacity);
+      containers = Arrays.copyOf(containers, newCapacity);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "EntryIDBitmap[containers=" + nbContainers + ", cardinality=" + cardinality() + "]";
+  }
+
+  /** Holds the lower 16 bits of the IDs sharing the same upper 48 bits. */
+  private static abstract class Container
+  {
+    int cardinality;
+
+    Container(int cardinality)
+    {
+      this.cardinality = cardinality;
+    }
+
+    abstract boolean contains(char value);
+
+    /** Returns the container holding the value, which may be this container. */
+    abstract Container add(char value);
+
+    /** Returns the container without the value, which may be this container. */
+    abstract Container remove(char value);
+
+    abstract Container and(Container that);
+
+    abstract Container or(Container that);
+
+    abstract Container andNot(Container that);
+
+    abstract Container copy();
+
+    abstract char first();
+
+    abstract char last();
+
+    /** Writes the IDs of this container to the array, returns the position following the last written ID. */
+    abstract int fill(long high, long[] ids, int pos);
+
+    abstract void encode(ByteStringBuilder builder);
+
+    abstract int getEncodedSize();
+  }
+
+  /** Sparse container storing up to {@value #MAX_ARRAY_CARDINALITY} sorted values. */
+  private static final class ArrayContainer extends Container
+  {
+    private char[] values;
+
+    ArrayContainer(char[] values, int cardinality)
+    {
+      super(cardinality);
+      this.values = values;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      int pos = Arrays.binarySearch(values, 0, cardinality, value);
+      if (pos >= 0)
+      {
+        return this;
+      }
+      if (cardinality == MAX_ARRAY_CARDINALITY)
+      {
+        return toBitmapContainer().add(value);
+      }
+      pos = -(pos + 1);
+      if (cardinality == values.length)
+      {
+        values = Arrays.copyOf(values, Math.min(Math.max(4, cardinality * 2), MAX_ARRAY_CARDINALITY));
+      }
+      System.arraycopy(values, pos, values, pos + 1, cardinality - pos);
+      values[pos] = value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      final int pos = Arrays.binarySearch(values, 0, cardinality, value);
+      if (pos >= 0)
+      {
+        System.arraycopy(values, pos + 1, values, pos, cardinality - pos - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      final char[] result = new char[cardinality];
+      int n = 0;
+      if (that instanceof ArrayContainer)
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        int i = 0, j = 0;
+        while (i < cardinality && j < other.cardinality)
+        {
+          if (values[i] < other.values[j])
+          {
+            i++;
+          }
+          else if (values[i] > other.values[j])
+          {
+            j++;
+          }
+          else
+          {
+            result[n++] = values[i];
+            i++;
+            j++;
+          }
+        }
+      }
+      else
+      {
+        for (int i = 0; i < cardinality; i++)
+        {
+          if (that.contains(values[i]))
+          {
+            result[n++] = values[i];
+          }
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      if (that instanceof BitmapContainer)
+      {
+        return that.or(this);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      final char[] result = new char[cardinality + other.cardinality];
+      int i = 0, j = 0, n = 0;
+      while (i < cardinality && j < other.cardinality)
+      {
+        if (values[i] < other.values[j])
+        {
+          result[n++] = values[i++];
+        }
+        else if (values[i] > other.values[j])
+        {
+          result[n++] = other.values[j++];
+        }
+        else
+        {
+          result[n++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      while (i < cardinality)
+      {
+        result[n++] = values[i++];
+      }
+      while (j < other.cardinality)
+      {
+        result[n++] = other.values[j++];
+      }
+      final ArrayContainer merged = new ArrayContainer(result, n);
+      return n > MAX_ARRAY_CARDINALITY ? merged.toBitmapContainer() : merged;
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final char[] result = new char[cardinality];
+      int n = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        if (!that.contains(values[i]))
+        {
+          result[n++] = values[i];
+        }
+      }
+      return new ArrayContainer(result, n);
+    }
+
+    @Override
+    Container copy()
+    {
+      return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+    }
+
+    @Override
+    char first()
+    {
+      return values[0];
+    }
+
+    @Override
+    char last()
+    {
+      return values[cardinality - 1];
+    }
+
+    @Override
+    int fill(long high, long[] ids, int pos)
+    {
+      for (int i = 0; i < cardinality; i++)
+      {
+        ids[pos++] = high | values[i];
+      }
+      return pos;
+    }
+
+    @Override
+    void encode(ByteStringBuilder builder)
+    {
+      builder.appendByte(ARRAY_CONTAINER);
+      builder.appendCompactUnsigned(cardinality);
+      for (int i = 0; i < cardinality; i++)
+      {
+        builder.appendShort(values[i]);
+      }
+    }
+
+    @Override
+    int getEncodedSize()
+    {
+      return cardinality * 2;
+    }
+
+    private BitmapContainer toBitmapContainer()
+    {
+      final long[] words = new long[BITMAP_WORDS];
+      for (int i = 0; i < cardinality; i++)
+      {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+      return new BitmapContainer(words, cardinality);
+    }
+  }
+
+  /** Dense container storing its values as a 65536 bits bitmap. */
+  private static final class BitmapContainer extends Container
+  {
+    private final long[] words;
+
+    BitmapContainer(long[] words, int cardinality)
+    {
+      super(cardinality);
+      this.words = words;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      final long word = words[value >>> 6];
+      final long updated = word | (1L << value);
+      if (word != updated)
+      {
+        words[value >>> 6] = updated;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      final long word = words[value >>> 6];
+      final long updated = word & ~(1L << value);
+      if (word != updated)
+      {
+        words[value >>> 6] = updated;
+        cardinality--;
+        if (cardinality <= MAX_ARRAY_CARDINALITY)
+        {
+          return toArrayContainer(words, cardinality);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      if (that instanceof ArrayContainer)
+      {
+        return that.and(this);
+      }
+      final long[] otherWords = ((BitmapContainer) that).words;
+      final long[] result = new long[BITMAP_WORDS];
+      int n = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        result[i] = words[i] & otherWords[i];
+        n += Long.bitCount(result[i]);
+      }
+      return normalize(result, n);
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      final long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+      int n = 0;
+      if (that instanceof BitmapContainer)
+      {
+        final long[] otherWords = ((BitmapContainer) that).words;
+        for (int i = 0; i < BITMAP_WORDS; i++)
+        {
+          result[i] |= otherWords[i];
+          n += Long.bitCount(result[i]);
+        }
+        return new BitmapContainer(result, n);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      n = cardinality;
+      for (int i = 0; i < other.cardinality; i++)
+      {
+        final char value = other.values[i];
+        final long word = result[value >>> 6];
+        final long updated = word | (1L << value);
+        if (word != updated)
+        {
+          result[value >>> 6] = updated;
+          n++;
+        }
+      }
+      return new BitmapContainer(result, n);
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+      int n = 0;
+      if (that instanceof BitmapContainer)
+      {
+        final long[] otherWords = ((BitmapContainer) that).words;
+        for (int i = 0; i < BITMAP_WORDS; i++)
+        {
+          result[i] &= ~otherWords[i];
+          n += Long.bitCount(result[i]);
+        }
+        return normalize(result, n);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      n = cardinality;
+      for (int i = 0; i < other.cardinality; i++)
+      {
+        final char value = other.values[i];
+        final long word = result[value >>> 6];
+        final long updated = word & ~(1L << value);
+        if (word != updated)
+        {
+          result[value >>> 6] = updated;
+          n--;
+        }
+      }
+      return normalize(result, n);
+    }
+
+    @Override
+    Container copy()
+    {
+      return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS), cardinality);
+    }
+
+    @Override
+    char first()
+    {
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        if (words[i] != 0)
+        {
+          return (char) (i * 64 + Long.numberOfTrailingZeros(words[i]));
+        }
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    char last()
+    {
+      for (int i = BITMAP_WORDS - 1; i >= 0; i--)
+      {
+        if (words[i] != 0)
+        {
+          return (char) (i * 64 + 63 - Long.numberOfLeadingZeros(words[i]));
+        }
+      }
+      throw new IllegalStateException();
+    }
+
+    @Override
+    int fill(long high, long[] ids, int pos)
+    {
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          ids[pos++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return pos;
+    }
+
+    @Override
+    void encode(ByteStringBuilder builder)
+    {
+      builder.appendByte(BITMAP_CONTAINER);
+      builder.appendCompactUnsigned(cardinality);
+      for (long word : words)
+      {
+        builder.appendLong(word);
+      }
+    }
+
+    @Override
+    int getEncodedSize()
+    {
+      return BITMAP_WORDS * 8;
+    }
+
+    private static Container normalize(long[] words, int cardinality)
+    {
+      return cardinality <= MAX_ARRAY_CARDINALITY
+          ? toArrayContainer(words, cardinality)
+          : new BitmapContainer(words, cardinality);
+    }
+
+    private static ArrayContainer toArrayContainer(long[] words, int cardinality)
+    {
+      final char[] values = new char[cardinality];
+      int n = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          values[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+  }
+}
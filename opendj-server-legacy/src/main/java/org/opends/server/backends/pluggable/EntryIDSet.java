@@ -29,10 +29,14 @@ package org.opends.server.backends.pluggable;
 import static org.forgerock.util.Reject.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 
 import org.forgerock.opendj.ldap.ByteSequence;
 import org.forgerock.opendj.ldap.ByteSequenceReader;
@@ -50,10 +54,16 @@ final class EntryIDSet implements Iterable<EntryID>
 {
   public static final EntryIDSetCodec CODEC_V1 = new EntryIDSetCodecV1();
   public static final EntryIDSetCodec CODEC_V2 = new EntryIDSetCodecV2();
+  public static final EntryIDSetCodec CODEC_V3 = new EntryIDSetCodecV3();
 
   private static final ByteSequence NO_KEY = ByteString.valueOfUtf8("<none>");
   private static final long[] EMPTY_LONG_ARRAY = new long[0];
   private static final long[] NO_ENTRY_IDS_RANGE = new long[] { 0, 0 };
+  /**
+   * Size ratio above which two sets are intersected by searching the IDs of the smallest one in the largest one,
+   * rather than by walking both of them.
+   */
+  private static final int SKEWED_INTERSECTION_RATIO = 32;
 
   /** Interface for EntryIDSet concrete implementations. */
   private interface EntryIDSetImplementor extends Iterable<EntryID>
@@ -287,6 +297,131 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Concrete implementation representing a set of EntryIDs stored in a compressed bitmap. Set operations between two
+   * bitmap based sets are performed container by container without materializing the IDs.
+   */
+  private static final class BitmapImpl implements EntryIDSetImplementor
+  {
+    private EntryIDBitmap bitmap;
+
+    /** Lazily materialized IDs, reset whenever the bitmap is modified. */
+    private long[] entryIDs;
+
+    BitmapImpl(EntryIDBitmap bitmap)
+    {
+      Reject.ifNull(bitmap, "bitmap must not be null");
+      this.bitmap = bitmap;
+    }
+
+    @Override
+    public long size()
+    {
+      return entryIDs != null ? entryIDs.length : bitmap.cardinality();
+    }
+
+    @Override
+    public void toString(StringBuilder buffer)
+    {
+      buffer.append("[COUNT:").append(size()).append("]");
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return true;
+    }
+
+    @Override
+    public boolean add(EntryID entryID)
+    {
+      return modified(bitmap.add(entryID.longValue()));
+    }
+
+    @Override
+    public boolean remove(EntryID entryID)
+    {
+      return modified(bitmap.remove(entryID.longValue()));
+    }
+
+    private boolean modified(boolean modified)
+    {
+      if (modified)
+      {
+        entryIDs = null;
+      }
+      return modified;
+    }
+
+    @Override
+    public boolean contains(EntryID entryID)
+    {
+      return bitmap.contains(entryID.longValue());
+    }
+
+    @Override
+    public void addAll(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        bitmap = bitmap.or(((BitmapImpl) that.concreteImpl).bitmap);
+        entryIDs = null;
+        return;
+      }
+      for (long id : that.getIDs())
+      {
+        modified(bitmap.add(id));
+      }
+    }
+
+    @Override
+    public void removeAll(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        bitmap = bitmap.andNot(((BitmapImpl) that.concreteImpl).bitmap);
+        entryIDs = null;
+        return;
+      }
+      for (long id : that.getIDs())
+      {
+        modified(bitmap.remove(id));
+      }
+    }
+
+    @Override
+    public Iterator<EntryID> iterator()
+    {
+      return new IDSetIterator(getIDs());
+    }
+
+    @Override
+    public Iterator<EntryID> iterator(EntryID begin)
+    {
+      return new IDSetIterator(getIDs(), begin == null ? 0 : begin.longValue());
+    }
+
+    @Override
+    public long[] getRange()
+    {
+      if (!bitmap.isEmpty())
+      {
+        return new long[] { bitmap.first(), bitmap.last() };
+      }
+      return NO_ENTRY_IDS_RANGE;
+    }
+
+    @Override
+    public long[] getIDs()
+    {
+      if (entryIDs == null)
+      {
+        entryIDs = bitmap.toArray();
+      }
+      return entryIDs;
+    }
+  }
+
   /**
    * Concrete implementation where the EntryIDs are not defined, for example when the index entry
    * limit has been exceeded.
@@ -565,6 +700,41 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Compressed bitmap EntryIDSet codec implementation. IDs are stored as the serialized form of an
+   * {@link EntryIDBitmap} so that they can be decoded directly into a bitmap based {@link EntryIDSet}, on which
+   * intersections, unions and differences are computed word by word.
+   */
+  private static final class EntryIDSetCodecV3 implements EntryIDSetCodec
+  {
+    private static final byte UNDEFINED_SET = (byte) 0xFF;
+
+    @Override
+    public ByteString encode(EntryIDSet idSet)
+    {
+      checkNotNull(idSet, "idSet must not be null");
+      if (!idSet.isDefined())
+      {
+        return ByteString.valueOfBytes(new byte[] { UNDEFINED_SET });
+      }
+      final EntryIDBitmap bitmap = idSet.getBitmap();
+      final ByteStringBuilder builder = new ByteStringBuilder(bitmap.getEstimatedEncodedSize());
+      return ByteString.wrap(bitmap.encode(builder).getBackingArray(), 0, builder.length());
+    }
+
+    @Override
+    public EntryIDSet decode(ByteSequence key, ByteString value)
+    {
+      checkNotNull(key, "key must not be null");
+      checkNotNull(value, "value must not be null");
+      if (value.byteAt(0) == UNDEFINED_SET)
+      {
+        return newUndefinedSetWithKey(key);
+      }
+      return new EntryIDSet(new BitmapImpl(EntryIDBitmap.decode(value.asReader())));
+    }
+  }
+
   static EntryIDSet newUndefinedSet()
   {
     return newUndefinedSetWithKey(NO_KEY);
@@ -592,8 +762,214 @@ final class EntryIDSet implements Iterable<EntryID>
     return new EntryIDSet(new DefinedImpl(entryIDs));
   }
 
+  /**
+   * Creates a new defined entry ID set with the specified sorted entryIDs, backed by a compressed bitmap.
+   * <p>
+   * If the provided array is not sorted, then the resulting EntryIDSet will misbehave.
+   *
+   * @param entryIDs
+   *          Sorted Entry IDs contained in the set.
+   * @return A new defined {@link EntryIDSet} containing the provided entryIDs
+   * @throws NullPointerException
+   *           if entryIDs is null
+   */
+  static EntryIDSet newBitmapSet(long... entryIDs)
+  {
+    checkNotNull(entryIDs, "ids must not be null");
+    return new EntryIDSet(new BitmapImpl(EntryIDBitmap.valueOf(entryIDs)));
+  }
+
+  /**
+   * Creates a new set of entry IDs that is the intersection of several entry ID sets. Undefined sets are ignored since
+   * they may contain any entry ID.
+   * <p>
+   * The defined sets are intersected smallest first by leapfrogging over their IDs: each candidate ID of the smallest
+   * set is searched forward in the other sets, skipping over the IDs lower than the candidate without visiting them.
+   * The skipping happens over the decoded sets: each index record holds the whole ID set of a key, so the records of
+   * all the provided sets have already been read and decoded by the caller.
+   *
+   * @param sets
+   *          A list of entry ID sets.
+   * @return The intersection of the provided entry ID sets, or an undefined set if none of the provided sets is
+   *         defined.
+   */
+  static EntryIDSet newSetFromIntersection(List<EntryIDSet> sets)
+  {
+    checkNotNull(sets, "sets must not be null");
+
+    final List<EntryIDSet> definedSets = new ArrayList<>(sets.size());
+    for (EntryIDSet set : sets)
+    {
+      if (set.isDefined())
+      {
+        if (set.size() == 0)
+        {
+          return newDefinedSet();
+        }
+        definedSets.add(set);
+      }
+    }
+    if (definedSets.isEmpty())
+    {
+      return newUndefinedSet();
+    }
+    Collections.sort(definedSets, BY_SIZE);
+
+    if (containsOnlyBitmapSets(definedSets))
+    {
+      EntryIDBitmap intersection = definedSets.get(0).getBitmap().copy();
+      for (int i = 1; i < definedSets.size() && !intersection.isEmpty(); i++)
+      {
+        intersection = intersection.and(definedSets.get(i).getBitmap());
+      }
+      return new EntryIDSet(new BitmapImpl(intersection));
+    }
+
+    final IDCursor[] cursors = new IDCursor[definedSets.size()];
+    for (int i = 0; i < cursors.length; i++)
+    {
+      cursors[i] = new IDCursor(definedSets.get(i).getIDs());
+    }
+    return newDefinedSet(leapfrogIntersection(cursors));
+  }
+
+  private static final Comparator<EntryIDSet> BY_SIZE = new Comparator<EntryIDSet>()
+  {
+    @Override
+    public int compare(EntryIDSet o1, EntryIDSet o2)
+    {
+      return Long.compare(o1.size(), o2.size());
+    }
+  };
+
+  /** Cursor over a sorted array of IDs, able to skip forward to a given ID with a galloping search. */
+  private static final class IDCursor
+  {
+    private final long[] ids;
+    private int pos;
+
+    IDCursor(long[] ids)
+    {
+      this.ids = ids;
+    }
+
+    boolean isValid()
+    {
+      return pos < ids.length;
+    }
+
+    long current()
+    {
+      return ids[pos];
+    }
+
+    boolean next()
+    {
+      pos++;
+      return isValid();
+    }
+
+    /**
+     * Positions this cursor on the first ID greater than or equal to the target.
+     *
+     * @return {@code false} if there is no such ID
+     */
+    boolean seekTo(long target)
+    {
+      if (!isValid() || ids[pos] >= target)
+      {
+        return isValid();
+      }
+      int bound = 1;
+      while (pos + bound < ids.length && ids[pos + bound] < target)
+      {
+        bound <<= 1;
+      }
+      final int low = pos + (bound >>> 1);
+      final int high = Math.min(pos + bound, ids.length - 1);
+      final int found = Arrays.binarySearch(ids, low, high + 1, target);
+      pos = found >= 0 ? found : -(found + 1);
+      return isValid();
+    }
+  }
+
+  private static long[] leapfrogIntersection(IDCursor... cursors)
+  {
+    final IDCursor lead = cursors[0];
+    long[] target = new long[lead.ids.length];
+    int count = 0;
+    candidates:
+    while (lead.isValid())
+    {
+      final long candidate = lead.current();
+      for (int i = 1; i < cursors.length; i++)
+      {
+        if (!cursors[i].seekTo(candidate))
+        {
+          break candidates;
+        }
+        final long found = cursors[i].current();
+        if (found != candidate)
+        {
+          // Skip the lead cursor up to the ID found in this cursor.
+          lead.seekTo(found);
+          continue candidates;
+        }
+      }
+      target[count++] = candidate;
+      lead.next();
+    }
+    return count < target.length ? Arrays.copyOf(target, count) : target;
+  }
+
+  /** Merges several sorted and possibly overlapping ID sets with a k-way merge, removing duplicates. */
+  private static long[] mergeSortedIDs(List<EntryIDSet> sets, int maxSize)
+  {
+    final PriorityQueue<IDCursor> queue = new PriorityQueue<>(sets.size(), new Comparator<IDCursor>()
+    {
+      @Override
+      public int compare(IDCursor o1, IDCursor o2)
+      {
+        return Long.compare(o1.current(), o2.current());
+      }
+    });
+    for (EntryIDSet set : sets)
+    {
+      if (set.size() != 0)
+      {
+        queue.add(new IDCursor(set.getIDs()));
+      }
+    }
+
+    final long[] merged = new long[maxSize];
+    int count = 0;
+    while (!queue.isEmpty())
+    {
+      final IDCursor cursor = queue.poll();
+      final long id = cursor.current();
+      if (count == 0 || merged[count - 1] != id)
+      {
+        merged[count++] = id;
+      }
+      if (cursor.next())
+      {
+        queue.add(cursor);
+      }
+    }
+    return count < merged.length ? Arrays.copyOf(merged, count) : merged;
+  }
+
   private static long[] intersection(long[] set1, long[] set2)
   {
+    if (set1.length > set2.length * SKEWED_INTERSECTION_RATIO)
+    {
+      return leapfrogIntersection(new IDCursor(set2), new IDCursor(set1));
+    }
+    else if (set2.length > set1.length * SKEWED_INTERSECTION_RATIO)
+    {
+      return leapfrogIntersection(new IDCursor(set1), new IDCursor(set2));
+    }
+
     long[] target = new long[Math.min(set1.length, set2.length)];
 
     int index1, index2, ci;
@@ -653,6 +1029,16 @@ final class EntryIDSet implements Iterable<EntryID>
       return newUndefinedSet();
     }
 
+    if (containsOnlyBitmapSets(sets))
+    {
+      EntryIDBitmap union = new EntryIDBitmap();
+      for (EntryIDSet l : sets)
+      {
+        union = union.or(((BitmapImpl) l.concreteImpl).bitmap);
+      }
+      return new EntryIDSet(new BitmapImpl(union));
+    }
+
     boolean needSort = false;
     long[] n = new long[count];
     int pos = 0;
@@ -660,14 +1046,15 @@ final class EntryIDSet implements Iterable<EntryID>
     {
       if (l.size() != 0)
       {
-        needSort |= pos > 0 && l.iterator().next().longValue() < n[pos - 1];
+        needSort |= pos > 0 && l.getIDs()[0] < n[pos - 1];
         System.arraycopy(l.getIDs(), 0, n, pos, l.getIDs().length);
         pos += l.size();
       }
     }
     if (needSort)
     {
-      Arrays.sort(n);
+      // Overlapping sets: merge them rather than sorting the concatenation.
+      return newDefinedSet(mergeSortedIDs(sets, count));
     }
 
     long[] n1 = new long[n.length];
@@ -687,6 +1074,18 @@ final class EntryIDSet implements Iterable<EntryID>
     return newDefinedSet(Arrays.copyOf(n1, j));
   }
 
+  private static boolean containsOnlyBitmapSets(List<EntryIDSet> sets)
+  {
+    for (EntryIDSet set : sets)
+    {
+      if (!(set.concreteImpl instanceof BitmapImpl))
+      {
+        return false;
+      }
+    }
+    return !sets.isEmpty();
+  }
+
   private EntryIDSetImplementor concreteImpl;
 
   private EntryIDSet(EntryIDSetImplementor concreteImpl)
@@ -829,7 +1228,9 @@ final class EntryIDSet implements Iterable<EntryID>
     checkNotNull(that, "that must not be null");
     if (!concreteImpl.isDefined())
     {
-      if ( that.isDefined() ) {
+      if (that.concreteImpl instanceof BitmapImpl) {
+        concreteImpl = new BitmapImpl(that.getBitmap().copy());
+      } else if ( that.isDefined() ) {
         // NOTE: It's ok to share the same array instance here thanks to the copy-on-write
         // performed by the implementation.
         concreteImpl = new DefinedImpl(that.getIDs());
@@ -843,6 +1244,12 @@ final class EntryIDSet implements Iterable<EntryID>
       return;
     }
 
+    if (concreteImpl instanceof BitmapImpl || that.concreteImpl instanceof BitmapImpl)
+    {
+      concreteImpl = new BitmapImpl(getBitmap().and(that.getBitmap()));
+      return;
+    }
+
     final boolean thatSetOverlap = compareForOverlap(getRange(), that.getRange()) == 0;
     if (thatSetOverlap)
     {
@@ -899,6 +1306,16 @@ final class EntryIDSet implements Iterable<EntryID>
     return concreteImpl.getIDs();
   }
 
+  /** Returns the IDs of this defined set as a bitmap, which must not be modified by the caller. */
+  private EntryIDBitmap getBitmap()
+  {
+    if (concreteImpl instanceof BitmapImpl)
+    {
+      return ((BitmapImpl) concreteImpl).bitmap;
+    }
+    return EntryIDBitmap.valueOf(concreteImpl.getIDs());
+  }
+
   private long[] getRange()
   {
     return concreteImpl.getRange();
@@ -33,10 +33,10 @@ import static org.opends.server.core.DirectoryServer.*;
 import static org.opends.server.backends.pluggable.CursorTransformer.transformKeysAndValues;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.zip.DataFormatException;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterOutputStream;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.io.ASN1;
@@ -49,12 +49,14 @@ import org.forgerock.opendj.ldap.DecodeException;
 import org.forgerock.util.Function;
 import org.forgerock.util.Reject;
 import org.opends.server.api.CompressedSchema;
+import org.opends.server.backends.pluggable.PersistentCompressionDictionaries.CompressionDictionary;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.opends.server.backends.pluggable.spi.TreeName;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
 import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.AttributeType;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
 import org.opends.server.types.LDAPException;
@@ -137,12 +139,14 @@ class ID2Entry extends AbstractTree
       compressedEntryBuffer.clearAndTruncate(maxBufferSize, BUFFER_INIT_SIZE);
     }
 
-    private Entry decode(ByteString bytes, CompressedSchema compressedSchema)
-        throws DirectoryException, DecodeException, IOException
+    private Entry decode(ByteString bytes, CompressedSchema compressedSchema,
+        PersistentCompressionDictionaries compressionDictionaries, Set<AttributeType> attributeTypes)
+        throws DirectoryException, DecodeException, IOException, DataFormatException
     {
-      // Get the format version.
+      // Get the format version, which identifies the compression codec.
       byte formatVersion = bytes.byteAt(0);
-      if(formatVersion != DnKeyFormat.FORMAT_VERSION)
+      CompressionCodec codec = CompressionCodec.forID(formatVersion);
+      if (codec == null)
       {
         throw DecodeException.error(ERR_INCOMPATIBLE_ENTRY_VERSION.get(formatVersion));
       }
@@ -156,30 +160,31 @@ class ID2Entry extends AbstractTree
       if(uncompressedSize > 0)
       {
         // It was compressed.
-        reader.readOctetString(compressedEntryBuffer);
-
-        OutputStream decompressor = null;
-        try
+        CompressionDictionary dictionary = null;
+        if (codec.usesDictionary())
         {
-          // TODO: Should handle the case where uncompress fails
-          decompressor = new InflaterOutputStream(entryBuffer.asOutputStream());
-          compressedEntryBuffer.copyTo(decompressor);
-        }
-        finally {
-          closeSilently(decompressor);
+          int dictionaryID = (int) reader.readInteger();
+          dictionary = compressionDictionaries != null ? compressionDictionaries.getDictionary(dictionaryID) : null;
+          if (dictionary == null)
+          {
+            throw DecodeException.error(ERR_COMPRESSION_DICTIONARY_NOT_FOUND.get(dictionaryID));
+          }
         }
+        reader.readOctetString(compressedEntryBuffer);
+        codec.decompress(compressedEntryBuffer, dictionary != null ? dictionary.getBytes() : null,
+            uncompressedSize, entryBuffer);
 
         // Since we are used the cached buffers (ByteStringBuilders),
         // the decoded attribute values will not refer back to the
         // original buffer.
-        return Entry.decode(entryBuffer.asReader(), compressedSchema);
+        return Entry.decode(entryBuffer.asReader(), compressedSchema, attributeTypes);
       }
       else
       {
         // Since we don't have to do any decompression, we can just decode
         // the entry directly.
         ByteString encodedEntry = reader.readOctetString();
-        return Entry.decode(encodedEntry.asReader(), compressedSchema);
+        return Entry.decode(encodedEntry.asReader(), compressedSchema, attributeTypes);
       }
     }
 
@@ -194,27 +199,37 @@ class ID2Entry extends AbstractTree
       // Encode the entry for later use.
       entry.encode(entryBuffer, dataConfig.getEntryEncodeConfig());
 
-      // First write the DB format version byte.
-      encodedBuffer.appendByte(DnKeyFormat.FORMAT_VERSION);
+      CompressionCodec codec = dataConfig.getCompressionCodec();
+      CompressionDictionary dictionary = null;
+      if (codec != null && codec.usesDictionary())
+      {
+        PersistentCompressionDictionaries dictionaries = dataConfig.getCompressionDictionaries();
+        dictionary = dictionaries != null ? dictionaries.getCurrentDictionary() : null;
+        if (dictionary == null)
+        {
+          // No dictionary has been trained yet.
+          codec = CompressionCodec.DEFLATE;
+        }
+      }
+
+      // First write the DB format version byte, which identifies the compression codec.
+      encodedBuffer.appendByte(codec != null ? codec.getID() : DnKeyFormat.FORMAT_VERSION);
 
       try
       {
         // Then start the ASN1 sequence.
         writer.writeStartSequence(TAG_TREE_ENTRY);
 
-        if (dataConfig.isCompressed())
+        if (codec != null)
         {
-          OutputStream compressor = null;
-          try {
-            compressor = new DeflaterOutputStream(compressedEntryBuffer.asOutputStream());
-            entryBuffer.copyTo(compressor);
-          }
-          finally {
-            closeSilently(compressor);
-          }
+          codec.compress(entryBuffer, dictionary != null ? dictionary.getBytes() : null, compressedEntryBuffer);
 
           // Compression needed and successful.
           writer.writeInteger(entryBuffer.length());
+          if (dictionary != null)
+          {
+            writer.writeInteger(dictionary.getID());
+          }
           writer.writeOctetString(compressedEntryBuffer);
         }
         else
@@ -266,6 +281,9 @@ class ID2Entry extends AbstractTree
    * <pre>
    * ByteString ::= [APPLICATION 0] IMPLICIT SEQUENCE {
    *  uncompressedSize      INTEGER,      -- A zero value means not compressed.
+   *  dictionaryID          INTEGER OPTIONAL,
+   *                                      -- Present only for the compression
+   *                                         codecs using a dictionary.
    *  dataBytes             OCTET STRING  -- Optionally compressed encoding of
    *                                         the data bytes.
    * }
@@ -281,8 +299,14 @@ class ID2Entry extends AbstractTree
    * }
    * </pre>
    *
+   * The ByteString is preceded by a format byte identifying the codec used for
+   * compressing the data bytes.
+   *
    * @param bytes A byte array containing the encoded tree value.
    * @param compressedSchema The compressed schema manager to use when decoding.
+   * @param compressionDictionaries The dictionaries used for compressing the
+   * entries, may be {@code null} if the entries have not been compressed with a
+   * dictionary.
    * @return The decoded entry.
    * @throws DecodeException If the data is not in the expected ASN.1 encoding
    * format.
@@ -294,13 +318,27 @@ class ID2Entry extends AbstractTree
    * @throws IOException if an error occurs while reading the ASN1 sequence.
    */
   static Entry entryFromDatabase(ByteString bytes,
-      CompressedSchema compressedSchema) throws DirectoryException,
-      DecodeException, LDAPException, DataFormatException, IOException
+      CompressedSchema compressedSchema, PersistentCompressionDictionaries compressionDictionaries)
+      throws DirectoryException, DecodeException, LDAPException, DataFormatException, IOException
   {
     EntryCodec codec = acquireEntryCodec();
     try
     {
-      return codec.decode(bytes, compressedSchema);
+      return codec.decode(bytes, compressedSchema, compressionDictionaries, null);
+    }
+    finally
+    {
+      codec.release();
+    }
+  }
+
+  private Entry entryFromDatabase(ByteString bytes, Set<AttributeType> attributeTypes) throws Exception
+  {
+    EntryCodec codec = acquireEntryCodec();
+    try
+    {
+      return codec.decode(bytes, dataConfig.getEntryEncodeConfig().getCompressedSchema(),
+          dataConfig.getCompressionDictionaries(), attributeTypes);
     }
     finally
     {
@@ -393,11 +431,161 @@ class ID2Entry extends AbstractTree
     }
   }
 
+  /**
+   * Fetch several records from the entry tree.
+   * <p>
+   * The records are read in a single ordered pass over the tree, which is much cheaper than reading each of them
+   * separately when the entry IDs are close to each other.
+   *
+   * @param txn a non null transaction
+   * @param sortedEntryIDs The desired entry IDs, sorted in ascending order.
+   * @return The requested entries, in the same order as the provided entry IDs, with a null entry for each entry ID
+   *         having no record.
+   * @throws DirectoryException If a problem occurs while getting one of the entries.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  List<Entry> get(ReadableTransaction txn, List<EntryID> sortedEntryIDs)
+      throws DirectoryException, StorageRuntimeException
+  {
+    final List<ByteString> values = readAll(txn, sortedEntryIDs);
+    final List<Entry> entries = new ArrayList<>(values.size());
+    for (int i = 0; i < values.size(); i++)
+    {
+      entries.add(decode(sortedEntryIDs.get(i), values.get(i)));
+    }
+    return entries;
+  }
+
+  /**
+   * Fetch several encoded records from the entry tree, without decoding them.
+   * <p>
+   * The records are read in a single ordered pass over the tree, see {@link #get(ReadableTransaction, List)}.
+   *
+   * @param txn a non null transaction
+   * @param sortedEntryIDs The desired entry IDs, sorted in ascending order.
+   * @return The requested records, in the same order as the provided entry IDs, with a null record for each entry ID
+   *         having no record.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  List<ByteString> readAll(ReadableTransaction txn, List<EntryID> sortedEntryIDs) throws StorageRuntimeException
+  {
+    final List<ByteString> keys = new ArrayList<>(sortedEntryIDs.size());
+    for (EntryID entryID : sortedEntryIDs)
+    {
+      keys.add(entryID.toByteString());
+    }
+    return txn.readAll(getName(), keys);
+  }
+
+  /**
+   * Decodes a record read from the entry tree, and processes the virtual attributes of the decoded entry.
+   *
+   * @param entryID The entry ID of the record.
+   * @param value The record, may be null.
+   * @return The decoded entry, or null if the record is null.
+   * @throws DirectoryException If the record cannot be decoded.
+   */
+  Entry decode(EntryID entryID, ByteString value) throws DirectoryException
+  {
+    try
+    {
+      return get0(value);
+    }
+    catch (Exception e)
+    {
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), ERR_ENTRY_DATABASE_CORRUPT.get(entryID));
+    }
+  }
+
+  /**
+   * Decodes the DN, the object classes and the provided attributes of a record read from the entry tree.
+   * <p>
+   * The values of the other attributes are skipped, and the virtual attributes are not processed: the decoded entry
+   * is only suitable for evaluating a search filter on the provided attributes, and must neither be cached nor
+   * returned to clients.
+   *
+   * @param entryID The entry ID of the record.
+   * @param value The record, may be null.
+   * @param attributeTypes The types of the attributes to decode, including the subtypes if they are needed.
+   * @return The partially decoded entry, or null if the record is null.
+   * @throws DirectoryException If the record cannot be decoded.
+   */
+  Entry decodePartially(EntryID entryID, ByteString value, Set<AttributeType> attributeTypes)
+      throws DirectoryException
+  {
+    if (value == null)
+    {
+      return null;
+    }
+    try
+    {
+      return entryFromDatabase(value, attributeTypes);
+    }
+    catch (Exception e)
+    {
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), ERR_ENTRY_DATABASE_CORRUPT.get(entryID));
+    }
+  }
+
   Cursor<EntryID, Entry> openCursor(ReadableTransaction txn)
   {
     return transformKeysAndValues(txn.openCursor(getName()), TO_ENTRY_ID, TO_ENTRY);
   }
 
+  /**
+   * Reads a sample of the entries of this tree, spread over the whole range of entry IDs, and encodes them
+   * without compression.
+   *
+   * @param txn a non null transaction
+   * @param maxSamples The maximum number of entries to read.
+   * @param samples The list where to add the encoded entries.
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  void sampleEntries(ReadableTransaction txn, int maxSamples, List<ByteString> samples)
+      throws StorageRuntimeException
+  {
+    try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      if (!cursor.next())
+      {
+        return;
+      }
+      final long firstID = new EntryID(cursor.getKey()).longValue();
+      cursor.positionToLastKey();
+      final long lastID = new EntryID(cursor.getKey()).longValue();
+
+      final ByteStringBuilder buffer = new ByteStringBuilder();
+      ByteString previousKey = null;
+      for (int i = 0; i < maxSamples; i++)
+      {
+        final long targetID = firstID + (lastID - firstID) * i / maxSamples;
+        if (!cursor.positionToKeyOrNext(new EntryID(targetID).toByteString()))
+        {
+          break;
+        }
+        if (cursor.getKey().equals(previousKey))
+        {
+          // Fewer entries than samples in this range of IDs
+          continue;
+        }
+        previousKey = cursor.getKey();
+
+        try
+        {
+          final Entry entry = entryFromDatabase(cursor.getValue(),
+              dataConfig.getEntryEncodeConfig().getCompressedSchema(), dataConfig.getCompressionDictionaries());
+          buffer.clear();
+          entry.encode(buffer, dataConfig.getEntryEncodeConfig());
+          samples.add(buffer.toByteString());
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+        }
+      }
+    }
+  }
+
   /**
    * Check that a record entry exists in the entry tree.
    *
@@ -421,7 +609,8 @@ class ID2Entry extends AbstractTree
     {
       return null;
     }
-    final Entry entry = entryFromDatabase(value, dataConfig.getEntryEncodeConfig().getCompressedSchema());
+    final Entry entry = entryFromDatabase(value, dataConfig.getEntryEncodeConfig().getCompressedSchema(),
+        dataConfig.getCompressionDictionaries());
     entry.processVirtualAttributes();
     return entry;
   }
@@ -295,7 +295,20 @@ class IndexBuffer
     public void put(Index index, ByteString key, EntryID entryID)
     {
       Reject.ifFalse(this.expectedEntryID.equals(entryID), "Unexpected entryID");
-      txn.put(index.getName(), key, encodedEntryID);
+      txn.put(index.getName(), key, encodeEntryID(index));
+    }
+
+    private ByteString encodeEntryID(Index index)
+    {
+      if (index instanceof DefaultIndex)
+      {
+        final EntryIDSetCodec codec = ((DefaultIndex) index).getCodec();
+        if (codec != CODEC_V2)
+        {
+          return codec.encode(EntryIDSet.newDefinedSet(expectedEntryID.longValue()));
+        }
+      }
+      return encodedEntryID;
     }
 
     @Override
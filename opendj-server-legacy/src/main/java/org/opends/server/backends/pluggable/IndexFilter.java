@@ -30,6 +30,7 @@ import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.EntryIDSet.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -52,6 +53,13 @@ class IndexFilter
    */
   private static final int FILTER_CANDIDATE_THRESHOLD = 10;
 
+  /**
+   * Estimated cost of reading an entry from the entry tree and matching it against the filter, relatively to the
+   * cost of reading an entry ID from an index. Filter components expected to return more than this ratio times the
+   * number of current candidates are not evaluated against the indexes.
+   */
+  private static final int INDEX_READ_TO_ENTRY_READ_COST_RATIO = 1000;
+
   /** Limit on the number of entry IDs that may be retrieved by cursoring through an index. */
   static final int CURSOR_ENTRY_LIMIT = 100000;
 
@@ -174,6 +182,11 @@ class IndexFilter
 
   /**
    * Evaluate a logical AND search filter against the indexes.
+   * <p>
+   * Components are evaluated in increasing order of their estimated number of candidates, as learnt by the
+   * {@link IndexStatistics} of the attribute indexes. When no estimate is available, the faster components (equality,
+   * presence, approx) are evaluated before the others. The slow range filters (greater-or-equal, less-or-equal) are
+   * evaluated last.
    *
    * @param andFilter The AND search filter to be evaluated.
    * @return A set of entry IDs representing candidate entries.
@@ -181,11 +194,8 @@ class IndexFilter
   private EntryIDSet evaluateLogicalAndFilter(SearchFilter andFilter)
   {
     // Put the slow range filters (greater-or-equal, less-or-equal)
-    // into a hash map, the faster components (equality, presence, approx)
-    // into one list and the remainder into another list.
-
-    ArrayList<SearchFilter> fastComps = new ArrayList<>();
-    ArrayList<SearchFilter> otherComps = new ArrayList<>();
+    // into a hash map, and the remainder into the list of planned components.
+    ArrayList<PlannedFilter> plannedComps = new ArrayList<>();
     HashMap<AttributeType, ArrayList<SearchFilter>> rangeComps = new HashMap<>();
 
     for (SearchFilter filter : andFilter.getFilterComponents())
@@ -203,30 +213,26 @@ class IndexFilter
         }
         rangeList.add(filter);
       }
-      else if (filterType == FilterType.EQUALITY ||
-           filterType == FilterType.PRESENT ||
-           filterType == FilterType.APPROXIMATE_MATCH)
-      {
-        fastComps.add(filter);
-      }
       else
       {
-        otherComps.add(filter);
+        boolean isFast = filterType == FilterType.EQUALITY ||
+            filterType == FilterType.PRESENT ||
+            filterType == FilterType.APPROXIMATE_MATCH;
+        plannedComps.add(new PlannedFilter(filter, estimateCardinality(filter), isFast ? 0 : 1));
       }
     }
+    // Sort is stable: components without estimate keep their relative order.
+    Collections.sort(plannedComps);
 
     EntryIDSet results = newUndefinedSet();
-    // First, process the fast components.
-    results = applyFiltersUntilThreshold(results, fastComps);
-    // Next, process the other (non-range) components.
-    results = applyFiltersUntilThreshold(results, otherComps);
+    results = applyFiltersUntilThreshold(results, plannedComps);
 
     if ( isBelowFilterThreshold(results) || rangeComps.isEmpty() ) {
       return results;
     }
 
     // Next, process range component pairs like (cn>=A)(cn<=B).
-    ArrayList<SearchFilter> remainComps = new ArrayList<>();
+    ArrayList<PlannedFilter> remainComps = new ArrayList<>();
     for (Map.Entry<AttributeType, ArrayList<SearchFilter>> rangeEntry : rangeComps.entrySet())
     {
       ArrayList<SearchFilter> rangeList = rangeEntry.getValue();
@@ -261,25 +267,123 @@ class IndexFilter
       else
       {
         // Add to the remaining range components to be processed.
-        remainComps.addAll(rangeList);
+        for (SearchFilter filter : rangeList)
+        {
+          remainComps.add(new PlannedFilter(filter, estimateCardinality(filter), 0));
+        }
       }
     }
 
     // Finally, process the remaining slow range components.
+    Collections.sort(remainComps);
     return applyFiltersUntilThreshold(results, remainComps);
   }
 
-  private EntryIDSet applyFiltersUntilThreshold(EntryIDSet results, ArrayList<SearchFilter> filters)
+  private EntryIDSet applyFiltersUntilThreshold(EntryIDSet results, ArrayList<PlannedFilter> filters)
   {
-    for(SearchFilter filter : filters) {
+    for (PlannedFilter planned : filters) {
       if (isBelowFilterThreshold(results)) {
         return results;
       }
-      results.retainAll(evaluateFilter(filter));
+      if (isCheaperToFilterCandidates(results, planned.estimate))
+      {
+        // Reading this index would cost more than filtering the current candidates.
+        if (buffer != null)
+        {
+          planned.filter.toString(buffer);
+          buffer.append("[SKIPPED]");
+          IndexStatistics.estimateToString(buffer, planned.estimate);
+        }
+        continue;
+      }
+      results.retainAll(evaluateFilter(planned.filter));
+      if (buffer != null)
+      {
+        IndexStatistics.estimateToString(buffer, planned.estimate);
+      }
     }
     return results;
   }
 
+  private static boolean isCheaperToFilterCandidates(EntryIDSet candidates, long estimate)
+  {
+    return candidates.isDefined()
+        && estimate != IndexStatistics.UNKNOWN
+        && estimate / INDEX_READ_TO_ENTRY_READ_COST_RATIO > candidates.size();
+  }
+
+  /**
+   * Returns the number of candidates the provided filter is expected to produce.
+   *
+   * @param filter the filter to be evaluated.
+   * @return the estimated number of candidates, {@link Long#MAX_VALUE} if the filter is not expected to be indexed or
+   *         {@link IndexStatistics#UNKNOWN}
+   */
+  private long estimateCardinality(SearchFilter filter)
+  {
+    final IndexFilterType indexFilterType = toIndexFilterType(filter.getFilterType());
+    if (indexFilterType == null)
+    {
+      return IndexStatistics.UNKNOWN;
+    }
+    final AttributeIndex attributeIndex = entryContainer.getAttributeIndex(filter.getAttributeType());
+    if (attributeIndex == null)
+    {
+      return Long.MAX_VALUE;
+    }
+    return attributeIndex.getStatistics().estimate(indexFilterType, filter);
+  }
+
+  private static IndexFilterType toIndexFilterType(FilterType filterType)
+  {
+    switch (filterType)
+    {
+    case EQUALITY:
+      return IndexFilterType.EQUALITY;
+    case GREATER_OR_EQUAL:
+      return IndexFilterType.GREATER_OR_EQUAL;
+    case SUBSTRING:
+      return IndexFilterType.SUBSTRING;
+    case LESS_OR_EQUAL:
+      return IndexFilterType.LESS_OR_EQUAL;
+    case PRESENT:
+      return IndexFilterType.PRESENCE;
+    case APPROXIMATE_MATCH:
+      return IndexFilterType.APPROXIMATE;
+    default:
+      return null;
+    }
+  }
+
+  /** A component of an AND filter along with its estimated number of candidates. */
+  private static final class PlannedFilter implements Comparable<PlannedFilter>
+  {
+    private final SearchFilter filter;
+    private final long estimate;
+    /** Tie breaker used when the estimates are equal or unknown: lower ranks are evaluated first. */
+    private final int rank;
+
+    PlannedFilter(SearchFilter filter, long estimate, int rank)
+    {
+      this.filter = filter;
+      this.estimate = estimate;
+      this.rank = rank;
+    }
+
+    @Override
+    public int compareTo(PlannedFilter o)
+    {
+      final int cmp = Long.compare(sortableEstimate(), o.sortableEstimate());
+      return cmp != 0 ? cmp : Integer.compare(rank, o.rank);
+    }
+
+    /** Components without estimate are evaluated after the ones known to be selective. */
+    private long sortableEstimate()
+    {
+      return estimate == IndexStatistics.UNKNOWN ? Long.MAX_VALUE - 1 : estimate;
+    }
+  }
+
   static boolean isBelowFilterThreshold(EntryIDSet set)
   {
     return set.isDefined() && set.size() <= FILTER_CANDIDATE_THRESHOLD;
@@ -323,7 +427,10 @@ class IndexFilter
     if (attributeIndex != null)
     {
       final IndexQueryFactoryImpl indexQueryFactory = new IndexQueryFactoryImpl(txn, attributeIndex);
-      return attributeIndex.evaluateFilter(indexQueryFactory, indexFilterType, filter, buffer, monitor);
+      final EntryIDSet results =
+          attributeIndex.evaluateFilter(indexQueryFactory, indexFilterType, filter, buffer, monitor);
+      attributeIndex.getStatistics().record(indexFilterType, filter, results);
+      return results;
     }
 
     if (monitor.isFilterUseEnabled())
@@ -31,7 +31,9 @@ import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.IndexFilter.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.forgerock.i18n.LocalizableMessageBuilder;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
@@ -93,10 +95,10 @@ final class IndexQueryFactoryImpl implements IndexQueryFactory<IndexQuery>
     @Override
     public EntryIDSet evaluate(LocalizableMessageBuilder debugMessage, StringBuilder indexNameOut)
     {
-      final EntryIDSet entryIDs = newUndefinedSet();
+      EntryIDSet entryIDs = newUndefinedSet();
       for (IndexQuery query : subIndexQueries)
       {
-        entryIDs.retainAll(query.evaluate(debugMessage, indexNameOut));
+        entryIDs = newSetFromIntersection(Arrays.asList(entryIDs, query.evaluate(debugMessage, indexNameOut)));
         if (isBelowFilterThreshold(entryIDs))
         {
           break;
@@ -132,16 +134,39 @@ final class IndexQueryFactoryImpl implements IndexQueryFactory<IndexQuery>
     @Override
     public EntryIDSet evaluate(LocalizableMessageBuilder debugMessage, StringBuilder indexNameOut)
     {
-      final EntryIDSet entryIDs = newDefinedSet();
+      final List<EntryIDSet> candidateSets = new ArrayList<>(subIndexQueries.size());
+      EntryIDSet undefinedSet = null;
+      long nbCandidates = 0;
       for (IndexQuery query : subIndexQueries)
       {
-        entryIDs.addAll(query.evaluate(debugMessage, indexNameOut));
-        if (entryIDs.isDefined() && entryIDs.size() >= CURSOR_ENTRY_LIMIT)
+        final EntryIDSet entryIDs = query.evaluate(debugMessage, indexNameOut);
+        if (undefinedSet != null)
         {
-          break;
+          // The union is undefined, the remaining queries are only evaluated for their diagnostic output.
+          continue;
+        }
+        if (!entryIDs.isDefined())
+        {
+          undefinedSet = entryIDs;
+          candidateSets.clear();
+          continue;
+        }
+        candidateSets.add(entryIDs);
+        nbCandidates += entryIDs.size();
+        if (nbCandidates >= CURSOR_ENTRY_LIMIT)
+        {
+          // Sets may overlap: merge them to know the actual number of candidates.
+          final EntryIDSet union = newSetFromUnion(candidateSets);
+          if (union.size() >= CURSOR_ENTRY_LIMIT)
+          {
+            return union;
+          }
+          candidateSets.clear();
+          candidateSets.add(union);
+          nbCandidates = union.size();
         }
       }
-      return entryIDs;
+      return undefinedSet != null ? undefinedSet : newSetFromUnion(candidateSets);
     }
 
     @Override
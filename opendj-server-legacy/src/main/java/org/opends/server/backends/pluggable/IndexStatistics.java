@@ -0,0 +1,261 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.opends.server.backends.pluggable.AttributeIndex.IndexFilterType;
+import org.opends.server.types.SearchFilter;
+
+/**
+ * Cardinality estimates for the keys of an attribute index, used to plan the evaluation of search filters.
+ * <p>
+ * Estimates are learnt from the entry ID sets returned by the index queries: the number of IDs returned by the most
+ * recently evaluated filters is sampled, and a small log2 histogram of the number of IDs returned is kept per type of
+ * index. Undefined sets (index entry limit exceeded) are estimated as {@link Long#MAX_VALUE}.
+ * <p>
+ * Estimates are only kept in memory and are lost on restart or index reconfiguration. Because a filter estimated to be
+ * unselective may not be evaluated anymore, estimates never refresh themselves: a sampled estimate expires after it
+ * has been used {@value #MAX_ESTIMATE_USES} times, and a histogram based estimate is reported as {@link #UNKNOWN} once
+ * every {@value #MAX_ESTIMATE_USES} estimates without any new record. This forces a regular evaluation of the filters,
+ * whose results refresh the estimates. In addition, histograms are halved every {@value #HISTOGRAM_DECAY_PERIOD}
+ * records so that old results fade out after the index content has changed.
+ * <p>
+ * This class is thread safe, and does not serialize the threads evaluating filters: once the maximum number of sampled
+ * filters is reached, recording a new filter evicts the least recently used of a few sampled filters, which
+ * approximates evicting the least recently used filter.
+ */
+final class IndexStatistics
+{
+  /** Returned when nothing is known about the cardinality of a filter. */
+  static final long UNKNOWN = -1;
+
+  /** Maximum number of filters for which the cardinality is sampled. */
+  static final int MAX_SAMPLED_FILTERS = 512;
+  /** Number of sampled filters among which the least recently used one is evicted. */
+  private static final int EVICTION_CANDIDATES = 8;
+  /** Bucket {@code i} counts the sets holding [2^(i-1), 2^i) IDs, the last bucket counts undefined sets. */
+  private static final int NB_BUCKETS = 65;
+  private static final int UNDEFINED_BUCKET = NB_BUCKETS - 1;
+  /** Number of times an estimate can be used before the filter must be evaluated again to refresh it. */
+  static final int MAX_ESTIMATE_USES = 64;
+  /** Number of records after which the counts of a histogram are halved. */
+  static final int HISTOGRAM_DECAY_PERIOD = 256;
+
+  private final Map<IndexFilterType, Histogram> histograms = new EnumMap<>(IndexFilterType.class);
+  private final ConcurrentMap<SearchFilter, Sample> sampledFilters = new ConcurrentHashMap<>();
+
+  /** The cardinality sampled for a filter. */
+  private static final class Sample
+  {
+    private final long cardinality;
+    private final AtomicInteger remainingUses = new AtomicInteger(MAX_ESTIMATE_USES);
+    /** When this sample was last recorded or used, in nanoseconds. Only used to pick a sample to evict. */
+    private volatile long lastUsed = System.nanoTime();
+
+    private Sample(long cardinality)
+    {
+      this.cardinality = cardinality;
+    }
+  }
+
+  /** The log2 histogram of the cardinalities returned by one type of index. */
+  private static final class Histogram
+  {
+    private final AtomicLongArray counts = new AtomicLongArray(NB_BUCKETS);
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong estimatesSinceLastRecord = new AtomicLong();
+
+    private void record(long cardinality)
+    {
+      counts.incrementAndGet(bucketOf(cardinality));
+      estimatesSinceLastRecord.set(0);
+      if (records.incrementAndGet() % HISTOGRAM_DECAY_PERIOD == 0)
+      {
+        for (int i = 0; i < NB_BUCKETS; i++)
+        {
+          final long count = counts.get(i);
+          // Concurrent increments may be lost here, this is fine for an estimate
+          counts.addAndGet(i, -(count / 2));
+        }
+      }
+    }
+
+    private long estimate()
+    {
+      if (estimatesSinceLastRecord.incrementAndGet() >= MAX_ESTIMATE_USES)
+      {
+        estimatesSinceLastRecord.set(0);
+        return UNKNOWN;
+      }
+      return estimateFromHistogram(counts);
+    }
+  }
+
+  IndexStatistics()
+  {
+    for (IndexFilterType type : IndexFilterType.values())
+    {
+      histograms.put(type, new Histogram());
+    }
+  }
+
+  /**
+   * Records the result of the evaluation of a filter against this index.
+   *
+   * @param indexFilterType
+   *          the type of index used to evaluate the filter
+   * @param filter
+   *          the evaluated filter
+   * @param result
+   *          the candidate entry IDs returned by the index
+   */
+  void record(IndexFilterType indexFilterType, SearchFilter filter, EntryIDSet result)
+  {
+    final long cardinality = result.isDefined() ? result.size() : Long.MAX_VALUE;
+    histograms.get(indexFilterType).record(cardinality);
+    if (sampledFilters.put(filter, new Sample(cardinality)) == null && sampledFilters.size() > MAX_SAMPLED_FILTERS)
+    {
+      evictLeastRecentlyUsedCandidate();
+    }
+  }
+
+  /** Evicts the least recently used of the first few sampled filters, which are in no particular order. */
+  private void evictLeastRecentlyUsedCandidate()
+  {
+    Map.Entry<SearchFilter, Sample> eldest = null;
+    final Iterator<Map.Entry<SearchFilter, Sample>> it = sampledFilters.entrySet().iterator();
+    for (int i = 0; i < EVICTION_CANDIDATES && it.hasNext(); i++)
+    {
+      final Map.Entry<SearchFilter, Sample> candidate = it.next();
+      if (eldest == null || candidate.getValue().lastUsed - eldest.getValue().lastUsed < 0)
+      {
+        eldest = candidate;
+      }
+    }
+    if (eldest != null)
+    {
+      sampledFilters.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  /**
+   * Returns the estimated number of entry IDs the index will return for the provided filter. Each call counts as a
+   * use of the estimate: {@link #UNKNOWN} is regularly returned so that the caller evaluates the filter again.
+   *
+   * @param indexFilterType
+   *          the type of index which would be used to evaluate the filter
+   * @param filter
+   *          the filter to evaluate
+   * @return the estimated number of entry IDs, {@link Long#MAX_VALUE} if the index is expected to return an undefined
+   *         set, or {@link #UNKNOWN} if there is no statistic available yet
+   */
+  long estimate(IndexFilterType indexFilterType, SearchFilter filter)
+  {
+    final Sample sampled = sampledFilters.get(filter);
+    if (sampled != null)
+    {
+      if (sampled.remainingUses.decrementAndGet() > 0)
+      {
+        sampled.lastUsed = System.nanoTime();
+        return sampled.cardinality;
+      }
+      // Expired: the filter will be evaluated again and its new result recorded
+      sampledFilters.remove(filter, sampled);
+      return UNKNOWN;
+    }
+    return histograms.get(indexFilterType).estimate();
+  }
+
+  /** Returns the median of the histogram, using the upper bound of the median bucket. */
+  private static long estimateFromHistogram(AtomicLongArray histogram)
+  {
+    long total = 0;
+    final long[] counts = new long[NB_BUCKETS];
+    for (int i = 0; i < NB_BUCKETS; i++)
+    {
+      counts[i] = histogram.get(i);
+      total += counts[i];
+    }
+    if (total == 0)
+    {
+      return UNKNOWN;
+    }
+
+    long seen = 0;
+    for (int i = 0; i < UNDEFINED_BUCKET; i++)
+    {
+      seen += counts[i];
+      if (seen * 2 >= total)
+      {
+        return i == 0 ? 0 : (1L << i) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  private static int bucketOf(long cardinality)
+  {
+    if (cardinality == Long.MAX_VALUE)
+    {
+      return UNDEFINED_BUCKET;
+    }
+    return Math.min(64 - Long.numberOfLeadingZeros(cardinality), UNDEFINED_BUCKET - 1);
+  }
+
+  /**
+   * Appends a short description of an estimate to the provided buffer.
+   *
+   * @param buffer
+   *          the buffer where to append the description
+   * @param estimate
+   *          an estimate as returned by {@link #estimate(IndexFilterType, SearchFilter)}
+   */
+  static void estimateToString(StringBuilder buffer, long estimate)
+  {
+    buffer.append("[ESTIMATE:");
+    if (estimate == UNKNOWN)
+    {
+      buffer.append("UNKNOWN");
+    }
+    else if (estimate == Long.MAX_VALUE)
+    {
+      buffer.append("LIMIT-EXCEEDED");
+    }
+    else
+    {
+      buffer.append(estimate);
+    }
+    buffer.append("]");
+  }
+}
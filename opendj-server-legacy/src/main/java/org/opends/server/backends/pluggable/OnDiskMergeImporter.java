@@ -685,6 +685,7 @@ final class OnDiskMergeImporter
 
     private final EntryContainer entryContainer;
     private final CompressedSchema schema;
+    private final PersistentCompressionDictionaries compressionDictionaries;
     private final Importer importer;
     private final ExecutorService executor;
     private final long nbTotalEntries;
@@ -698,6 +699,7 @@ final class OnDiskMergeImporter
       this.entryContainer = entryContainer;
       this.importer = importer;
       this.schema = entryContainer.getRootContainer().getCompressedSchema();
+      this.compressionDictionaries = entryContainer.getRootContainer().getCompressionDictionaries();
       // by default (unfortunately) the ThreadPoolExecutor will throw an exception when queue is full.
       this.executor =
           new ThreadPoolExecutor(nbThread, nbThread, 0, TimeUnit.SECONDS,
@@ -742,7 +744,7 @@ final class OnDiskMergeImporter
               try
               {
                 entryProcessor.processEntry(entryContainer,
-                    new EntryID(key), ID2Entry.entryFromDatabase(value, schema));
+                    new EntryID(key), ID2Entry.entryFromDatabase(value, schema, compressionDictionaries));
                 nbEntriesProcessed.incrementAndGet();
               }
               catch (Exception e)
@@ -956,6 +958,7 @@ final class OnDiskMergeImporter
     {
       entryContainer.delete(asWriteableTransaction(importer));
       visitIndexes(entryContainer, setTrust(false, importer));
+      visitIndexes(entryContainer, keepIndexLayout(importer));
     }
 
     abstract Callable<Void> newPhaseTwoTask(TreeName treeName, Chunk source, PhaseTwoProgressReporter progressReporter);
@@ -982,6 +985,11 @@ final class OnDiskMergeImporter
     final Callable<Void> newChunkCopierTask(TreeName treeName, final Chunk source,
         PhaseTwoProgressReporter progressReporter)
     {
+      final DefaultIndex index = getIndex(entryContainers.get(treeName.getBaseDN()), treeName);
+      if (index != null && index.isSegmented())
+      {
+        return new SegmentedIndexCopierTask(progressReporter, source, index, importer);
+      }
       return new ChunkCopierTask(progressReporter, source, treeName, importer);
     }
 
@@ -1146,6 +1154,17 @@ final class OnDiskMergeImporter
       return importer.read(treeName, key);
     }
 
+    @Override
+    public List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys)
+    {
+      final List<ByteString> values = new ArrayList<>(sortedKeys.size());
+      for (ByteSequence key : sortedKeys)
+      {
+        values.add(read(treeName, key));
+      }
+      return values;
+    }
+
     @Override
     public Cursor<ByteString, ByteString> openCursor(TreeName treeName)
     {
@@ -1180,6 +1199,9 @@ final class OnDiskMergeImporter
     {
       visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, setTrust(false, importer)));
       visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, deleteDatabase(importer)));
+      visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, useBitmapEncoding(importer)));
+      visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, useSegmentedLayout(importer)));
+      visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, useRankDirectory(importer)));
     }
 
     @Override
@@ -1311,6 +1333,12 @@ final class OnDiskMergeImporter
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys)
+    {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public boolean update(TreeName treeName, ByteSequence key, UpdateFunction f)
     {
@@ -2231,6 +2259,37 @@ final class OnDiskMergeImporter
     }
   }
 
+  /** Task to copy one {@link Chunk} into an index using the segmented layout, splitting the large entry ID sets. */
+  private static final class SegmentedIndexCopierTask implements Callable<Void>
+  {
+    private final PhaseTwoProgressReporter reporter;
+    private final DefaultIndex index;
+    private final Importer destination;
+    private final Chunk source;
+
+    SegmentedIndexCopierTask(PhaseTwoProgressReporter reporter, Chunk source, DefaultIndex index,
+        Importer destination)
+    {
+      this.source = source;
+      this.index = index;
+      this.destination = destination;
+      this.reporter = reporter;
+    }
+
+    @Override
+    public Void call()
+    {
+      try (final SequentialCursor<ByteString, ByteString> sourceCursor = trackCursorProgress(reporter, source.flip()))
+      {
+        while (sourceCursor.next())
+        {
+          index.importPut(destination, sourceCursor.getKey(), sourceCursor.getValue());
+        }
+      }
+      return null;
+    }
+  }
+
   /** Task to copy VLV's counter chunks into a database tree. */
   private static final class VLVIndexImporterTask implements Callable<Void>
   {
@@ -2252,13 +2311,30 @@ final class OnDiskMergeImporter
     {
       try (final SequentialCursor<ByteString, ByteString> sourceCursor = trackCursorProgress(reporter, source.flip()))
       {
-        final long nbRecords = copyIntoChunk(sourceCursor, asChunk(vlvIndex.getName(), destination));
+        final VLVRankDirectory.RankImporter ranks = vlvIndex.newRankImporter(destination);
+        final Chunk vlvChunk = asChunk(vlvIndex.getName(), destination);
+        final long nbRecords =
+            ranks != null ? copyIntoChunk(sourceCursor, vlvChunk, ranks) : copyIntoChunk(sourceCursor, vlvChunk);
         vlvIndex.importCount(destination, nbRecords);
         return null;
       }
     }
   }
 
+  private static long copyIntoChunk(SequentialCursor<ByteString, ByteString> source, Chunk destination,
+      VLVRankDirectory.RankImporter ranks)
+  {
+    long nbRecords = 0;
+    while (source.next())
+    {
+      destination.put(source.getKey(), source.getValue());
+      ranks.add(source.getKey());
+      nbRecords++;
+    }
+    ranks.close();
+    return nbRecords;
+  }
+
   private static long copyIntoChunk(SequentialCursor<ByteString, ByteString> source, Chunk destination)
   {
     long nbRecords = 0;
@@ -3529,6 +3605,182 @@ final class OnDiskMergeImporter
     }
   }
 
+  private static IndexVisitor keepIndexLayout(Importer importer)
+  {
+    return new IndexLayoutKeeper(importer);
+  }
+
+  /**
+   * Record again the layout of the visited indexes in the state tree. A full import clears the state tree along with
+   * the other trees of the entry container, but the indexes keep the layout they were opened with: new records must
+   * still be readable after a restart.
+   */
+  private static final class IndexLayoutKeeper implements IndexVisitor
+  {
+    private final Importer importer;
+
+    IndexLayoutKeeper(Importer importer)
+    {
+      this.importer = importer;
+    }
+
+    @Override
+    public void visitAttributeIndex(Index index)
+    {
+      if (index instanceof DefaultIndex)
+      {
+        final DefaultIndex defaultIndex = (DefaultIndex) index;
+        final WriteableTransaction txn = asWriteableTransaction(importer);
+        if (defaultIndex.usesBitmapEncoding())
+        {
+          defaultIndex.useBitmapEncoding(txn);
+        }
+        if (defaultIndex.isSegmented())
+        {
+          defaultIndex.useSegmentedLayout(txn);
+        }
+      }
+    }
+
+    @Override
+    public void visitVLVIndex(VLVIndex index)
+    {
+      if (index.isRanked())
+      {
+        index.useRankDirectory(asWriteableTransaction(importer));
+      }
+    }
+
+    @Override
+    public void visitSystemIndex(Tree index)
+    {
+      // System indexes don't store entry ID sets
+    }
+  }
+
+  private static IndexVisitor useBitmapEncoding(Importer importer)
+  {
+    return new BitmapEncodingUpgrader(importer);
+  }
+
+  /**
+   * Switch the visited attribute indexes to the compressed bitmap encoding. Indexes must have been emptied first, this
+   * is how existing indexes are migrated when they are rebuilt.
+   */
+  private static final class BitmapEncodingUpgrader implements IndexVisitor
+  {
+    private final Importer importer;
+
+    BitmapEncodingUpgrader(Importer importer)
+    {
+      this.importer = importer;
+    }
+
+    @Override
+    public void visitAttributeIndex(Index index)
+    {
+      if (index instanceof DefaultIndex && !((DefaultIndex) index).usesBitmapEncoding())
+      {
+        ((DefaultIndex) index).useBitmapEncoding(asWriteableTransaction(importer));
+        logger.info(NOTE_REBUILD_INDEX_BITMAP_ENCODING_603, index.getName());
+      }
+    }
+
+    @Override
+    public void visitVLVIndex(VLVIndex index)
+    {
+      // VLV indexes don't store entry ID sets
+    }
+
+    @Override
+    public void visitSystemIndex(Tree index)
+    {
+      // System indexes don't store entry ID sets
+    }
+  }
+
+  private static IndexVisitor useSegmentedLayout(Importer importer)
+  {
+    return new SegmentedLayoutUpgrader(importer);
+  }
+
+  /**
+   * Switch the visited attribute indexes to the segmented layout. Indexes must have been emptied first, this is how
+   * existing indexes are migrated when they are rebuilt.
+   */
+  private static final class SegmentedLayoutUpgrader implements IndexVisitor
+  {
+    private final Importer importer;
+
+    SegmentedLayoutUpgrader(Importer importer)
+    {
+      this.importer = importer;
+    }
+
+    @Override
+    public void visitAttributeIndex(Index index)
+    {
+      if (index instanceof DefaultIndex && !((DefaultIndex) index).isSegmented())
+      {
+        ((DefaultIndex) index).useSegmentedLayout(asWriteableTransaction(importer));
+        logger.info(NOTE_REBUILD_INDEX_SEGMENTED_LAYOUT_604, index.getName());
+      }
+    }
+
+    @Override
+    public void visitVLVIndex(VLVIndex index)
+    {
+      // VLV indexes don't store entry ID sets
+    }
+
+    @Override
+    public void visitSystemIndex(Tree index)
+    {
+      // System indexes don't store entry ID sets
+    }
+  }
+
+  private static IndexVisitor useRankDirectory(Importer importer)
+  {
+    return new RankDirectoryUpgrader(importer);
+  }
+
+  /**
+   * Start maintaining the rank directory of the visited VLV indexes. Indexes must have been emptied first, this is how
+   * existing indexes are migrated when they are rebuilt.
+   */
+  private static final class RankDirectoryUpgrader implements IndexVisitor
+  {
+    private final Importer importer;
+
+    RankDirectoryUpgrader(Importer importer)
+    {
+      this.importer = importer;
+    }
+
+    @Override
+    public void visitAttributeIndex(Index index)
+    {
+      // Attribute indexes don't have a rank directory
+    }
+
+    @Override
+    public void visitVLVIndex(VLVIndex index)
+    {
+      if (!index.isRanked())
+      {
+        index.useRankDirectory(asWriteableTransaction(importer));
+        logger.info(NOTE_REBUILD_VLV_INDEX_RANK_DIRECTORY_605, index.getName());
+      }
+    }
+
+    @Override
+    public void visitSystemIndex(Tree index)
+    {
+      // System indexes don't have a rank directory
+    }
+  }
+
   private static IndexVisitor visitOnlyDegraded(IndexVisitor delegate)
   {
     return new DegradedIndexFilter(delegate);
@@ -3716,6 +3968,17 @@ final class OnDiskMergeImporter
       return importer.read(treeName, key);
     }
 
+    @Override
+    public List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys)
+    {
+      final List<ByteString> values = new ArrayList<>(sortedKeys.size());
+      for (ByteSequence key : sortedKeys)
+      {
+        values.add(importer.read(treeName, key));
+      }
+      return values;
+    }
+
     @Override
     public void put(TreeName treeName, ByteSequence key, ByteSequence value)
     {
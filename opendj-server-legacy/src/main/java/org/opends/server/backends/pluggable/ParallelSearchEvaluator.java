@@ -0,0 +1,226 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.opends.messages.BackendMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.opends.server.backends.pluggable.spi.ReadOperation;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.DirectoryException;
+
+/**
+ * Evaluates the candidate entries of a search with a pool of threads.
+ * <p>
+ * The thread processing the search hands over windows of candidates: each window is split into ranges of candidates
+ * which are fetched and matched against the search filter concurrently, each range within its own read transaction.
+ * Once the whole window has been evaluated, the thread processing the search returns the matching entries in the
+ * candidates order, enforcing the size and time limits, the paging and the cancellation exactly as it does when
+ * evaluating the candidates by itself.
+ */
+final class ParallelSearchEvaluator
+{
+  /** Evaluates a range of candidates of the current window. */
+  interface CandidateEvaluator
+  {
+    /**
+     * Fetches and evaluates the candidates of the current window whose position is in the provided range.
+     *
+     * @param txn
+     *          the read transaction to use for fetching the candidates
+     * @param from
+     *          the position of the first candidate to evaluate, inclusive
+     * @param to
+     *          the position of the last candidate to evaluate, exclusive
+     * @throws Exception
+     *           if the candidates could not be evaluated
+     */
+    void evaluate(ReadableTransaction txn, int from, int to) throws Exception;
+  }
+
+  /** Number of candidates evaluated by each task. */
+  private static final int CANDIDATES_PER_TASK = 128;
+
+  private final Storage storage;
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a new evaluator.
+   *
+   * @param backendID
+   *          the backend identifier, used for naming the threads
+   * @param storage
+   *          the storage from where to read the candidates
+   * @param nbThreads
+   *          the number of threads evaluating the candidates
+   */
+  ParallelSearchEvaluator(final String backendID, Storage storage, int nbThreads)
+  {
+    this.storage = storage;
+    this.pool = new ForkJoinPool(nbThreads, new ForkJoinWorkerThreadFactory()
+    {
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+      {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Parallel search evaluation " + backendID + " " + thread.getPoolIndex());
+        return thread;
+      }
+    }, null, false);
+  }
+
+  /**
+   * Returns the number of threads evaluating the candidates.
+   *
+   * @return the number of threads evaluating the candidates
+   */
+  int getNbThreads()
+  {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Returns the number of candidates which should be handed over at once to this evaluator, so that every thread
+   * has some work to do.
+   *
+   * @return the number of candidates of a window
+   */
+  int getWindowSize()
+  {
+    return CANDIDATES_PER_TASK * pool.getParallelism();
+  }
+
+  /**
+   * Evaluates the candidates of a window, and waits for the end of their evaluation.
+   *
+   * @param nbCandidates
+   *          the number of candidates in the window
+   * @param evaluator
+   *          the evaluator of the candidates
+   * @throws DirectoryException
+   *           if a candidate could not be evaluated
+   */
+  void evaluate(int nbCandidates, CandidateEvaluator evaluator) throws DirectoryException
+  {
+    final EvaluationTask task = new EvaluationTask(evaluator, 0, nbCandidates);
+    try
+    {
+      invoke(task);
+    }
+    catch (StorageRuntimeException e)
+    {
+      if (e.getCause() instanceof DirectoryException)
+      {
+        throw (DirectoryException) e.getCause();
+      }
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+          ERR_PARALLEL_SEARCH_EVALUATION_FAILED.get(stackTraceToSingleLineString(e)), e);
+    }
+  }
+
+  private void invoke(EvaluationTask task)
+  {
+    try
+    {
+      pool.invoke(task);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // This evaluator has been shutdown since the search started
+      task.evaluate();
+    }
+  }
+
+  /** Stops the threads of this evaluator. */
+  void shutdown()
+  {
+    pool.shutdown();
+  }
+
+  /** Splits a range of candidates until it is small enough to be evaluated by a single thread. */
+  private final class EvaluationTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final CandidateEvaluator evaluator;
+    private final int from;
+    private final int to;
+
+    private EvaluationTask(CandidateEvaluator evaluator, int from, int to)
+    {
+      this.evaluator = evaluator;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (to - from > CANDIDATES_PER_TASK)
+      {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new EvaluationTask(evaluator, from, middle), new EvaluationTask(evaluator, middle, to));
+      }
+      else
+      {
+        evaluate();
+      }
+    }
+
+    private void evaluate()
+    {
+      try
+      {
+        storage.read(new ReadOperation<Void>()
+        {
+          @Override
+          public Void run(ReadableTransaction txn) throws Exception
+          {
+            evaluator.evaluate(txn, from, to);
+            return null;
+          }
+        });
+      }
+      catch (StorageRuntimeException e)
+      {
+        throw e;
+      }
+      catch (Exception e)
+      {
+        throw new StorageRuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.spi.AccessMode;
+import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+
+/**
+ * This class manages the dictionaries used for compressing the entries of a backend, which are persisted in a tree
+ * next to the compressed schema.
+ * <p>
+ * Dictionaries are identified by an integer which is recorded with each entry compressed with a dictionary.
+ * Dictionaries are never removed, so that entries compressed with an old dictionary remain readable once a new
+ * dictionary has been trained.
+ */
+final class PersistentCompressionDictionaries
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The name of the tree used to store the compression dictionaries. */
+  private static final String DB_NAME_DICTIONARIES = "compression_dictionaries";
+  /** The compression dictionaries tree. */
+  private static final TreeName dictionariesTreeName = new TreeName("compressed_schema", DB_NAME_DICTIONARIES);
+
+  /** Maximum size of a dictionary: Deflate cannot reference data further away than 32KB. */
+  static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+  /** Minimum number of entries needed for training a dictionary. */
+  static final int MIN_TRAINING_SAMPLES = 100;
+  /** Maximum number of entries used for training a dictionary. */
+  static final int MAX_TRAINING_SAMPLES = 2000;
+
+  /** Length of the byte sequences whose frequency is measured while training a dictionary. */
+  private static final int GRAM_LENGTH = 8;
+  /** Length of the segments of sample data which are candidates for being part of a dictionary. */
+  private static final int SEGMENT_LENGTH = 64;
+  private static final int HASH_LOG = 20;
+
+  /** A compression dictionary. */
+  static final class CompressionDictionary
+  {
+    private final int id;
+    private final byte[] bytes;
+
+    private CompressionDictionary(int id, byte[] bytes)
+    {
+      this.id = id;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns the identifier of this dictionary.
+     *
+     * @return the identifier of this dictionary
+     */
+    int getID()
+    {
+      return id;
+    }
+
+    /**
+     * Returns the content of this dictionary.
+     *
+     * @return the content of this dictionary
+     */
+    byte[] getBytes()
+    {
+      return bytes;
+    }
+  }
+
+  private final Map<Integer, CompressionDictionary> dictionaries = new ConcurrentHashMap<>();
+  /** The most recently trained dictionary, used for compressing entries. */
+  private volatile CompressionDictionary currentDictionary;
+
+  /**
+   * Creates a new instance of this compression dictionaries manager.
+   *
+   * @param txn a non null transaction
+   * @param accessMode specifies how the storage has been opened (read only or read/write)
+   * @throws StorageRuntimeException
+   *           If a problem occurs while loading the dictionaries from the tree.
+   */
+  PersistentCompressionDictionaries(WriteableTransaction txn, AccessMode accessMode) throws StorageRuntimeException
+  {
+    load(txn, accessMode.isWriteable());
+  }
+
+  private void load(WriteableTransaction txn, boolean shouldCreate) throws StorageRuntimeException
+  {
+    txn.openTree(dictionariesTreeName, shouldCreate);
+    try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(dictionariesTreeName))
+    {
+      while (cursor.next())
+      {
+        register(new CompressionDictionary(cursor.getKey().toInt(), cursor.getValue().toByteArray()));
+      }
+    }
+    catch (StorageRuntimeException e)
+    {
+      if (shouldCreate)
+      {
+        throw e;
+      }
+      // The tree does not exist in read-only storages where no dictionary has ever been trained
+      logger.traceException(e);
+    }
+  }
+
+  /**
+   * Makes the provided dictionary available for decompressing entries, and for compressing entries if it is the most
+   * recently trained dictionary.
+   *
+   * @param dictionary
+   *          the dictionary, which must have been stored
+   */
+  synchronized void register(CompressionDictionary dictionary)
+  {
+    dictionaries.put(dictionary.getID(), dictionary);
+    if (currentDictionary == null || dictionary.getID() > currentDictionary.getID())
+    {
+      currentDictionary = dictionary;
+    }
+  }
+
+  /**
+   * Returns the dictionary whose identifier is provided.
+   *
+   * @param id
+   *          the identifier of the dictionary
+   * @return the dictionary, or {@code null} if there is no such dictionary
+   */
+  CompressionDictionary getDictionary(int id)
+  {
+    return dictionaries.get(id);
+  }
+
+  /**
+   * Returns the dictionary to use for compressing entries.
+   *
+   * @return the most recently trained dictionary, or {@code null} if no dictionary has been trained yet
+   */
+  CompressionDictionary getCurrentDictionary()
+  {
+    return currentDictionary;
+  }
+
+  /**
+   * Trains a new dictionary from the provided sample data.
+   * <p>
+   * The new dictionary is neither stored nor registered: it must be {@link #store(WriteableTransaction,
+   * CompressionDictionary) stored}, then {@link #register(CompressionDictionary) registered} once the transaction
+   * storing it has been committed.
+   *
+   * @param samples
+   *          the sample data, typically encoded entries
+   * @return the new dictionary, or {@code null} if there is not enough sample data for training a dictionary
+   */
+  CompressionDictionary train(List<? extends ByteSequence> samples)
+  {
+    if (samples.size() < MIN_TRAINING_SAMPLES)
+    {
+      return null;
+    }
+    final CompressionDictionary current = currentDictionary;
+    final int id = current != null ? current.getID() + 1 : 1;
+    return new CompressionDictionary(id, train(samples, MAX_DICTIONARY_SIZE));
+  }
+
+  /**
+   * Stores a dictionary.
+   *
+   * @param txn a non null transaction
+   * @param dictionary
+   *          the dictionary to store
+   * @throws StorageRuntimeException
+   *           If an error occurs while storing the dictionary
+   */
+  void store(WriteableTransaction txn, CompressionDictionary dictionary) throws StorageRuntimeException
+  {
+    txn.put(dictionariesTreeName, ByteString.valueOfInt(dictionary.getID()), ByteString.wrap(dictionary.getBytes()));
+  }
+
+  /**
+   * Builds a dictionary out of the segments of sample data holding the byte sequences which are the most widely
+   * shared among the samples.
+   * <p>
+   * The number of samples holding each sequence of {@value #GRAM_LENGTH} bytes is first counted. The samples are then
+   * cut into segments scored by the counts of the sequences they hold, and the best segments are selected, skipping
+   * the segments mostly made of sequences already selected. The best segments are placed at the end of the
+   * dictionary, where referencing them costs the least.
+   *
+   * @param samples
+   *          the sample data
+   * @param maxSize
+   *          the maximum size of the dictionary
+   * @return the dictionary
+   */
+  static byte[] train(List<? extends ByteSequence> samples, int maxSize)
+  {
+    final int[] counts = new int[1 << HASH_LOG];
+    final int[] lastSample = new int[1 << HASH_LOG];
+    final List<byte[]> data = new ArrayList<>(samples.size());
+    for (int i = 0; i < samples.size(); i++)
+    {
+      final byte[] sample = samples.get(i).toByteArray();
+      data.add(sample);
+      for (int pos = 0; pos + GRAM_LENGTH <= sample.length; pos++)
+      {
+        final int hash = hashGram(sample, pos);
+        // Count each sequence once per sample
+        if (lastSample[hash] != i + 1)
+        {
+          lastSample[hash] = i + 1;
+          counts[hash]++;
+        }
+      }
+    }
+
+    final List<Segment> segments = new ArrayList<>();
+    for (byte[] sample : data)
+    {
+      for (int from = 0; from + GRAM_LENGTH <= sample.length; from += SEGMENT_LENGTH / 2)
+      {
+        final int to = Math.min(from + SEGMENT_LENGTH, sample.length);
+        final long score = score(sample, from, to, counts, null);
+        if (score > 0)
+        {
+          segments.add(new Segment(sample, from, to, score));
+        }
+      }
+    }
+    Collections.sort(segments, new Comparator<Segment>()
+    {
+      @Override
+      public int compare(Segment s1, Segment s2)
+      {
+        return Long.compare(s2.score, s1.score);
+      }
+    });
+
+    final boolean[] selectedGrams = new boolean[1 << HASH_LOG];
+    final List<Segment> selected = new ArrayList<>();
+    int size = 0;
+    for (Segment segment : segments)
+    {
+      if (size + segment.length() > maxSize)
+      {
+        continue;
+      }
+      if (score(segment.sample, segment.from, segment.to, counts, selectedGrams) * 2 < segment.score)
+      {
+        // Most of this segment is already in the dictionary
+        continue;
+      }
+      for (int pos = segment.from; pos + GRAM_LENGTH <= segment.to; pos++)
+      {
+        selectedGrams[hashGram(segment.sample, pos)] = true;
+      }
+      selected.add(segment);
+      size += segment.length();
+      if (size + GRAM_LENGTH > maxSize)
+      {
+        break;
+      }
+    }
+
+    final byte[] dictionary = new byte[size];
+    int pos = 0;
+    for (int i = selected.size() - 1; i >= 0; i--)
+    {
+      final Segment segment = selected.get(i);
+      System.arraycopy(segment.sample, segment.from, dictionary, pos, segment.length());
+      pos += segment.length();
+    }
+    return dictionary;
+  }
+
+  /** Sums the counts of the sequences shared by several samples, ignoring the already selected ones if provided. */
+  private static long score(byte[] sample, int from, int to, int[] counts, boolean[] ignoredGrams)
+  {
+    long score = 0;
+    for (int pos = from; pos + GRAM_LENGTH <= to; pos++)
+    {
+      final int hash = hashGram(sample, pos);
+      if (counts[hash] > 1 && (ignoredGrams == null || !ignoredGrams[hash]))
+      {
+        score += counts[hash];
+      }
+    }
+    return score;
+  }
+
+  private static int hashGram(byte[] data, int pos)
+  {
+    long gram = 0;
+    for (int i = 0; i < GRAM_LENGTH; i++)
+    {
+      gram = (gram << 8) | (data[pos + i] & 0xFF);
+    }
+    return (int) ((gram * 0x9E3779B97F4A7C15L) >>> (64 - HASH_LOG));
+  }
+
+  /** A segment of sample data which may be part of a dictionary. */
+  private static final class Segment
+  {
+    private final byte[] sample;
+    private final int from;
+    private final int to;
+    private final long score;
+
+    private Segment(byte[] sample, int from, int to, long score)
+    {
+      this.sample = sample;
+      this.from = from;
+      this.to = to;
+      this.score = score;
+    }
+
+    private int length()
+    {
+      return to - from;
+    }
+  }
+}
@@ -42,10 +42,13 @@ import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.meta.PluggableBackendCfgDefn.EntriesCompressionAlgorithm;
 import org.opends.server.admin.std.server.PluggableBackendCfg;
 import org.opends.server.api.CompressedSchema;
+import org.opends.server.backends.pluggable.PersistentCompressionDictionaries.CompressionDictionary;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
@@ -88,6 +91,11 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
   /** The compressed schema manager for this backend. */
   private PersistentCompressedSchema compressedSchema;
+  /** The dictionaries used for compressing the entries of this backend. */
+  private PersistentCompressionDictionaries compressionDictionaries;
+
+  /** Evaluates the candidates of the searches requesting parallel evaluation, or null if disabled. */
+  private volatile ParallelSearchEvaluator parallelSearchEvaluator;
 
   /**
    * Creates a new RootContainer object representing a storage.
@@ -106,10 +114,27 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
     getMonitorProvider().enableFilterUseStats(config.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(config.getIndexFilterAnalyzerMaxFilters());
+    parallelSearchEvaluator = newParallelSearchEvaluator(config.getParallelSearchThreads());
 
     config.addPluggableChangeListener(this);
   }
 
+  private ParallelSearchEvaluator newParallelSearchEvaluator(int nbThreads)
+  {
+    return nbThreads > 0 ? new ParallelSearchEvaluator(backendId, storage, nbThreads) : null;
+  }
+
+  /**
+   * Returns the evaluator to use for the searches requesting parallel evaluation of their candidates.
+   *
+   * @return the evaluator to use for the searches requesting parallel evaluation of their candidates,
+   *         or {@code null} if parallel evaluation is disabled for this backend
+   */
+  ParallelSearchEvaluator getParallelSearchEvaluator()
+  {
+    return parallelSearchEvaluator;
+  }
+
   /**
    * Returns the underlying storage engine.
    *
@@ -141,9 +166,14 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
         public void run(WriteableTransaction txn) throws Exception
         {
           compressedSchema = new PersistentCompressedSchema(storage, txn, accessMode);
+          compressionDictionaries = new PersistentCompressionDictionaries(txn, accessMode);
           openAndRegisterEntryContainers(txn, config.getBaseDN(), accessMode);
         }
       });
+      if (accessMode.isWriteable())
+      {
+        trainCompressionDictionaryIfNeeded(config);
+      }
     }
     catch(StorageRuntimeException e)
     {
@@ -259,6 +289,71 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     return compressedSchema;
   }
 
+  /**
+   * Retrieves the dictionaries used for compressing the entries of this backend.
+   *
+   * @return The dictionaries used for compressing the entries of this backend.
+   */
+  PersistentCompressionDictionaries getCompressionDictionaries()
+  {
+    return compressionDictionaries;
+  }
+
+  /**
+   * Trains a dictionary from a sample of the entries of this backend if the entries must be compressed with a
+   * dictionary, and no dictionary has been trained yet. Until then, entries are compressed without dictionary.
+   */
+  private synchronized void trainCompressionDictionaryIfNeeded(PluggableBackendCfg cfg)
+  {
+    if (!cfg.isEntriesCompressed()
+        || cfg.getEntriesCompressionAlgorithm() != EntriesCompressionAlgorithm.DEFLATE_WITH_DICTIONARY
+        || compressionDictionaries.getCurrentDictionary() != null)
+    {
+      return;
+    }
+
+    try
+    {
+      final List<ByteString> samples = storage.read(new ReadOperation<List<ByteString>>()
+      {
+        @Override
+        public List<ByteString> run(ReadableTransaction txn) throws Exception
+        {
+          final List<ByteString> samples = new ArrayList<>();
+          final int samplesPerEntryContainer =
+              PersistentCompressionDictionaries.MAX_TRAINING_SAMPLES / Math.max(1, entryContainers.size());
+          for (EntryContainer ec : entryContainers.values())
+          {
+            ec.getID2Entry().sampleEntries(txn, samplesPerEntryContainer, samples);
+          }
+          return samples;
+        }
+      });
+
+      final CompressionDictionary dictionary = compressionDictionaries.train(samples);
+      if (dictionary == null)
+      {
+        // Not enough entries yet
+        return;
+      }
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          compressionDictionaries.store(txn, dictionary);
+        }
+      });
+      compressionDictionaries.register(dictionary);
+      logger.info(NOTE_COMPRESSION_DICTIONARY_TRAINED, dictionary.getBytes().length, samples.size(), backendId);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_COMPRESSION_DICTIONARY_TRAINING_FAILED, backendId, stackTraceToSingleLineString(e));
+    }
+  }
+
   /**
    * Get the BackendMonitor object used by this root container.
    *
@@ -337,6 +432,10 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
       }
     }
     config.removePluggableChangeListener(this);
+    if (parallelSearchEvaluator != null)
+    {
+      parallelSearchEvaluator.shutdown();
+    }
     if (storage != null)
     {
       storage.close();
@@ -456,6 +555,20 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     getMonitorProvider().enableFilterUseStats(configuration.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(configuration.getIndexFilterAnalyzerMaxFilters());
 
+    final ParallelSearchEvaluator oldEvaluator = parallelSearchEvaluator;
+    final int nbThreads = configuration.getParallelSearchThreads();
+    if (nbThreads != (oldEvaluator != null ? oldEvaluator.getNbThreads() : 0))
+    {
+      parallelSearchEvaluator = newParallelSearchEvaluator(nbThreads);
+      if (oldEvaluator != null)
+      {
+        // Searches still using the old evaluator will evaluate their remaining candidates by themselves
+        oldEvaluator.shutdown();
+      }
+    }
+
+    trainCompressionDictionaryIfNeeded(configuration);
+
     return new ConfigChangeResult();
   }
 
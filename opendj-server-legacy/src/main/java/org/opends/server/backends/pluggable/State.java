@@ -65,7 +65,16 @@ class State extends AbstractTree
     TRUSTED(0x01),
 
     /** Use compact encoding for indexes' ID storage. */
-    COMPACTED(0x02);
+    COMPACTED(0x02),
+
+    /** Use compressed bitmap encoding for indexes' ID storage. */
+    BITMAP(0x04),
+
+    /** Split the IDs of large index keys into segments stored in separate records. */
+    SEGMENTED(0x08),
+
+    /** Maintain a rank directory of the VLV indexes' keys. */
+    RANKED(0x10);
 
     static final EnumSet<IndexFlag> ALL_FLAGS = EnumSet.allOf(IndexFlag.class);
 
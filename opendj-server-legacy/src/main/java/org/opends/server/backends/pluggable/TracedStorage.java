@@ -25,6 +25,7 @@
  */
 package org.opends.server.backends.pluggable;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -306,6 +307,15 @@ final class TracedStorage implements Storage
       return value;
     }
 
+    @Override
+    public List<ByteString> readAll(final TreeName name, final List<? extends ByteSequence> sortedKeys)
+    {
+      traceEnter("readAll", "name", name, "nbKeys", sortedKeys.size());
+      final List<ByteString> values = txn.readAll(name, sortedKeys);
+      traceLeave("readAll", "name", name, "nbKeys", sortedKeys.size());
+      return values;
+    }
+
     private int id()
     {
       return System.identityHashCode(this);
@@ -392,6 +402,15 @@ final class TracedStorage implements Storage
       return value;
     }
 
+    @Override
+    public List<ByteString> readAll(final TreeName name, final List<? extends ByteSequence> sortedKeys)
+    {
+      traceEnter("readAll", "name", name, "nbKeys", sortedKeys.size());
+      final List<ByteString> values = txn.readAll(name, sortedKeys);
+      traceLeave("readAll", "name", name, "nbKeys", sortedKeys.size());
+      return values;
+    }
+
     @Override
     public boolean update(final TreeName name, final ByteSequence key, final UpdateFunction f)
     {
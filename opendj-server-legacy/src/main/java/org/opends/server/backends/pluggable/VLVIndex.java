@@ -33,6 +33,7 @@ import static org.opends.server.util.StaticUtils.*;
 import java.io.Closeable;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -97,6 +98,8 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
 
   /** The count of entries in this index. */
   private final ShardedCounter counter;
+  /** The rank directory of this index, only maintained when {@link #ranked} is true. */
+  private final VLVRankDirectory rankDirectory;
 
   private DN baseDN;
   private SearchScope scope;
@@ -111,6 +114,8 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
    * A flag to indicate if this vlvIndex should be trusted to be consistent with the entries tree.
    */
   private boolean trusted;
+  /** A flag to indicate if the rank directory of this vlvIndex is maintained and can be used. */
+  private volatile boolean ranked;
 
   VLVIndex(final BackendVLVIndexCfg config, final State state, final Storage storage,
       final EntryContainer entryContainer, final WriteableTransaction txn) throws StorageRuntimeException,
@@ -118,6 +123,8 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
   {
     super(new TreeName(entryContainer.getTreePrefix(), "vlv." + config.getName()));
     this.counter = new ShardedCounter(new TreeName(entryContainer.getTreePrefix(), "counter.vlv." + config.getName()));
+    this.rankDirectory =
+        new VLVRankDirectory(new TreeName(entryContainer.getTreePrefix(), "rank.vlv." + config.getName()), getName());
     this.config = config;
     this.baseDN = config.getBaseDN();
     this.scope = convertScope(config.getScope());
@@ -135,14 +142,23 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
 
     this.sortOrder = new SortOrder(parseSortKeys(config.getSortOrder()));
     this.state = state;
-    this.trusted = state.getIndexFlags(txn, getName()).contains(IndexFlag.TRUSTED);
-    if (!trusted && entryContainer.getHighestEntryID(txn).longValue() == 0)
+    final EnumSet<IndexFlag> flags = state.getIndexFlags(txn, getName());
+    this.trusted = flags.contains(IndexFlag.TRUSTED);
+    this.ranked = flags.contains(IndexFlag.RANKED);
+    if (entryContainer.getHighestEntryID(txn).longValue() == 0)
     {
       /*
        * If there are no entries in the entry container then there is no reason why this vlvIndex
-       * can't be upgraded to trusted.
+       * can't be upgraded to trusted, nor why its rank directory can't be maintained.
        */
-      setTrusted(txn, true);
+      if (!trusted)
+      {
+        setTrusted(txn, true);
+      }
+      if (!ranked)
+      {
+        useRankDirectory(txn);
+      }
     }
 
     this.config.addChangeListener(this);
@@ -167,12 +183,14 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
   void afterOpen(final WriteableTransaction txn, boolean createOnDemand) throws StorageRuntimeException
   {
     counter.open(txn, createOnDemand);
+    rankDirectory.open(txn, createOnDemand);
   }
 
   @Override
   void beforeDelete(WriteableTransaction txn) throws StorageRuntimeException
   {
     counter.delete(txn);
+    rankDirectory.delete(txn);
   }
 
   void importCount(Importer importer, long count)
@@ -180,6 +198,18 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     counter.importPut(importer, COUNT_KEY, count);
   }
 
+  /**
+   * Returns an importer of the rank directory of this index.
+   *
+   * @param importer
+   *          the importer writing this index
+   * @return an importer of the rank directory, or {@code null} if the rank directory of this index is not maintained
+   */
+  VLVRankDirectory.RankImporter newRankImporter(Importer importer)
+  {
+    return ranked ? rankDirectory.newImporter(importer) : null;
+  }
+
   @Override
   public synchronized boolean isConfigurationChangeAcceptable(final BackendVLVIndexCfg cfg,
       final List<LocalizableMessage> unacceptableReasons)
@@ -348,6 +378,26 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     return trusted;
   }
 
+  boolean isRanked()
+  {
+    return ranked;
+  }
+
+  /**
+   * Starts maintaining the rank directory of this index. This must only be invoked when the index is empty, for
+   * example while it is being rebuilt, because the rank directory is not built from the existing records.
+   *
+   * @param txn
+   *          a non null transaction
+   * @throws StorageRuntimeException
+   *           If an error occurs in the storage.
+   */
+  synchronized void useRankDirectory(final WriteableTransaction txn) throws StorageRuntimeException
+  {
+    state.addFlagsToIndex(txn, getName(), IndexFlag.RANKED);
+    ranked = true;
+  }
+
   synchronized void setTrusted(final WriteableTransaction txn, final boolean trusted) throws StorageRuntimeException
   {
     this.trusted = trusted;
@@ -446,21 +496,34 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     final Iterator<ByteString> di = iteratorFor(deletedKeys);
     ByteString nextDeletedKey = nextOrNull(di);
 
+    final VLVRankDirectory.Updater ranks = ranked ? rankDirectory.newUpdater(txn) : null;
     while (nextAddedKey != null || nextDeletedKey != null)
     {
       if (nextDeletedKey == null || (nextAddedKey != null && nextAddedKey.compareTo(nextDeletedKey) < 0))
       {
         txn.put(getName(), nextAddedKey, toValue());
+        if (ranks != null)
+        {
+          ranks.update(nextAddedKey, 1);
+        }
         nextAddedKey = nextOrNull(ai);
         counter.addCount(txn, COUNT_KEY, 1);
       }
       else
       {
         txn.delete(getName(), nextDeletedKey);
+        if (ranks != null)
+        {
+          ranks.update(nextDeletedKey, -1);
+        }
         nextDeletedKey = nextOrNull(di);
         counter.addCount(txn, COUNT_KEY, -1);
       }
     }
+    if (ranks != null)
+    {
+      ranks.close();
+    }
   }
 
   private Iterator<ByteString> iteratorFor(final TreeSet<ByteString> sortValues)
@@ -533,6 +596,11 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     final ByteString assertion = vlvRequest.getGreaterThanOrEqualAssertion();
     final ByteSequence encodedTargetAssertion =
         encodeTargetAssertion(sortOrder, assertion, searchOperation, currentCount);
+    if (ranked)
+    {
+      return evaluateVLVRequestByAssertionWithRanks(txn, searchOperation, vlvRequest, currentCount,
+          encodedTargetAssertion);
+    }
     try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
     {
       final LinkedList<Long> selectedIDs = new LinkedList<>();
@@ -590,6 +658,37 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     }
   }
 
+  /**
+   * Same as {@link #evaluateVLVRequestByAssertion}, but uses the rank directory to find the position of the target
+   * entry instead of iterating from the start of the index.
+   */
+  private EntryIDSet evaluateVLVRequestByAssertionWithRanks(final ReadableTransaction txn,
+      final SearchOperation searchOperation, final VLVRequestControl vlvRequest, final int currentCount,
+      final ByteSequence encodedTargetAssertion)
+  {
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      long[] selectedIDs = new long[0];
+      int targetPosition = (int) rankDirectory.positionToKeyOrNext(txn, cursor, encodedTargetAssertion);
+      if (targetPosition >= 0)
+      {
+        final int startPos = Math.max(0, targetPosition - vlvRequest.getBeforeCount());
+        if (startPos == targetPosition || rankDirectory.positionToIndex(txn, cursor, startPos))
+        {
+          selectedIDs = readRange(cursor, targetPosition - startPos + 1 + vlvRequest.getAfterCount(), null);
+        }
+      }
+      else
+      {
+        // Treat a non-matching assertion as matching beyond the end of the index.
+        targetPosition = currentCount;
+      }
+      searchOperation.addResponseControl(new VLVResponseControl(targetPosition + 1, currentCount,
+          LDAPResultCode.SUCCESS));
+      return newDefinedSet(selectedIDs);
+    }
+  }
+
   private long[] toPrimitiveLongArray(final List<Long> entryIDs)
   {
     final long[] result = new long[entryIDs.size()];
@@ -682,7 +781,7 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
     {
       final long[] selectedIDs;
-      if (cursor.positionToIndex(startPos))
+      if (positionToIndex(txn, cursor, startPos))
       {
         selectedIDs = readRange(cursor, count, debugBuilder);
       }
@@ -695,6 +794,12 @@ class VLVIndex extends AbstractTree implements ConfigurationChangeListener<Backe
     }
   }
 
+  private boolean positionToIndex(final ReadableTransaction txn, final Cursor<ByteString, ByteString> cursor,
+      final int index)
+  {
+    return ranked ? rankDirectory.positionToIndex(txn, cursor, index) : cursor.positionToIndex(index);
+  }
+
   private long[] readRange(final Cursor<ByteString, ByteString> cursor, final int count,
       final StringBuilder debugBuilder)
   {
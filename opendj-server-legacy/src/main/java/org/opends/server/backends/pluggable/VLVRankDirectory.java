@@ -0,0 +1,508 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteSequenceReader;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Importer;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.UpdateFunction;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+
+/**
+ * Sparse rank directory of a VLV index, used to find the key at a given position of the VLV index, or the position of
+ * a given key, without iterating over all the keys preceding it.
+ * <p>
+ * The keys of the VLV index are partitioned into buckets of consecutive keys. Each bucket is stored in a record whose
+ * key is the upper bound of the bucket, and whose value holds the number of VLV keys in the bucket followed by the
+ * upper bound of the previous bucket. A bucket contains the VLV keys which are greater than the upper bound of the
+ * previous bucket and lower than or equal to its own upper bound. The upper bound of the last bucket is raised when
+ * greater keys are added, so that all the VLV keys belong to a bucket. Buckets are split when they grow bigger than
+ * {@link #MAX_BUCKET_SIZE}, and removed when they become empty.
+ * <p>
+ * Locating a position then costs one read per bucket preceding it plus a walk inside its bucket, instead of a walk
+ * over all the VLV keys preceding it, and concurrent updates of different parts of the VLV index update different
+ * bucket records. Bucket records are always modified with {@link WriteableTransaction#update}, by applying a delta to
+ * their count, so that concurrent updates of the same bucket are not lost.
+ */
+final class VLVRankDirectory extends AbstractTree
+{
+  /** Buckets are split in two when they contain more VLV keys than this. */
+  static final int MAX_BUCKET_SIZE = 2048;
+  /** Size of the buckets created by imports, leaving room for them to grow before being split. */
+  static final int IMPORT_BUCKET_SIZE = MAX_BUCKET_SIZE / 2;
+
+  /** The name of the VLV index tree whose keys are counted by this directory. */
+  private final TreeName vlvTreeName;
+
+  VLVRankDirectory(TreeName name, TreeName vlvTreeName)
+  {
+    super(name);
+    this.vlvTreeName = vlvTreeName;
+  }
+
+  /**
+   * Returns an updater of this rank directory. The VLV keys must be provided in ascending order, after they have been
+   * added to or removed from the VLV index.
+   *
+   * @param txn
+   *          the transaction updating the VLV index
+   * @return a new rank directory updater, which must be closed once all the keys have been provided
+   */
+  Updater newUpdater(WriteableTransaction txn)
+  {
+    return new Updater(txn);
+  }
+
+  /**
+   * Returns an importer of this rank directory. The VLV keys must be provided in ascending order.
+   *
+   * @param importer
+   *          the importer writing the VLV index
+   * @return a new rank directory importer, which must be closed once all the keys have been provided
+   */
+  RankImporter newImporter(Importer importer)
+  {
+    return new RankImporter(importer);
+  }
+
+  /**
+   * Positions the provided VLV index cursor on the key at the specified position.
+   *
+   * @param txn
+   *          the transaction reading the VLV index
+   * @param vlvCursor
+   *          a cursor on the VLV index
+   * @param index
+   *          the position of the key, starting at 0
+   * @return {@code true} if the cursor could be positioned, {@code false} if there are not enough keys in the VLV index
+   */
+  boolean positionToIndex(ReadableTransaction txn, Cursor<ByteString, ByteString> vlvCursor, long index)
+  {
+    long position = 0;
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      while (cursor.next())
+      {
+        final long count = getCount(cursor.getValue());
+        if (position + count > index)
+        {
+          return positionToBucketStart(vlvCursor, getPreviousUpperBound(cursor.getValue()))
+              && skip(vlvCursor, index - position);
+        }
+        position += count;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Positions the provided VLV index cursor on the first key greater than or equal to the provided target, and returns
+   * its position.
+   *
+   * @param txn
+   *          the transaction reading the VLV index
+   * @param vlvCursor
+   *          a cursor on the VLV index
+   * @param target
+   *          the target key
+   * @return the position of the first key greater than or equal to the provided target, starting at 0, or -1 if all
+   *         the VLV keys are lower than the target
+   */
+  long positionToKeyOrNext(ReadableTransaction txn, Cursor<ByteString, ByteString> vlvCursor, ByteSequence target)
+  {
+    long position = 0;
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+    {
+      boolean found = cursor.next();
+      while (found && cursor.getKey().compareTo(target) < 0)
+      {
+        position += getCount(cursor.getValue());
+        found = cursor.next();
+      }
+      if (!found || !positionToBucketStart(vlvCursor, getPreviousUpperBound(cursor.getValue())))
+      {
+        return -1;
+      }
+    }
+    while (vlvCursor.getKey().compareTo(target) < 0)
+    {
+      if (!vlvCursor.next())
+      {
+        return -1;
+      }
+      position++;
+    }
+    return position;
+  }
+
+  /** Positions the VLV cursor on the first key greater than the provided upper bound of the previous bucket. */
+  private static boolean positionToBucketStart(Cursor<ByteString, ByteString> vlvCursor, ByteString previousUpperBound)
+  {
+    if (previousUpperBound.isEmpty())
+    {
+      return vlvCursor.positionToIndex(0);
+    }
+    if (!vlvCursor.positionToKeyOrNext(previousUpperBound))
+    {
+      return false;
+    }
+    return !vlvCursor.getKey().equals(previousUpperBound) || vlvCursor.next();
+  }
+
+  private static boolean skip(Cursor<ByteString, ByteString> vlvCursor, long nbKeys)
+  {
+    for (long i = 0; i < nbKeys; i++)
+    {
+      if (!vlvCursor.next())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Splits in two halves each of the provided buckets, if they are still too big. */
+  private void split(WriteableTransaction txn, List<ByteString> upperBounds)
+  {
+    for (ByteString upperBound : upperBounds)
+    {
+      // Lock the bucket record while it is split
+      final ByteString value = readForUpdate(txn, upperBound);
+      final long count = value != null ? getCount(value) : 0;
+      if (count <= MAX_BUCKET_SIZE)
+      {
+        continue;
+      }
+      final ByteString previousUpperBound = getPreviousUpperBound(value);
+      final long firstHalf = count / 2;
+      try (Cursor<ByteString, ByteString> vlvCursor = txn.openCursor(vlvTreeName))
+      {
+        if (positionToBucketStart(vlvCursor, previousUpperBound) && skip(vlvCursor, firstHalf - 1))
+        {
+          final ByteString middle = vlvCursor.getKey();
+          addToCount(txn, middle, firstHalf, previousUpperBound);
+          txn.update(getName(), upperBound, new UpdateFunction()
+          {
+            @Override
+            public ByteSequence computeNewValue(ByteSequence oldValue)
+            {
+              return oldValue != null ? encodeValue(getCount(oldValue.toByteString()) - firstHalf, middle) : null;
+            }
+          });
+        }
+      }
+    }
+  }
+
+  /** Reads a bucket record, taking a write lock on it where the storage supports it. */
+  private ByteString readForUpdate(WriteableTransaction txn, ByteString upperBound)
+  {
+    final ByteString[] value = new ByteString[1];
+    txn.update(getName(), upperBound, new UpdateFunction()
+    {
+      @Override
+      public ByteSequence computeNewValue(ByteSequence oldValue)
+      {
+        value[0] = oldValue != null ? oldValue.toByteString() : null;
+        return oldValue;
+      }
+    });
+    return value[0];
+  }
+
+  /**
+   * Adds a delta to the count of a bucket, creating the bucket if it does not exist, and removing it if it becomes
+   * empty.
+   *
+   * @return the bucket record before the update, or {@code null} if the bucket has been created
+   */
+  private ByteString addToCount(WriteableTransaction txn, ByteString upperBound, final long delta,
+      final ByteString previousUpperBoundIfCreated)
+  {
+    final ByteString[] oldBucket = new ByteString[1];
+    txn.update(getName(), upperBound, new UpdateFunction()
+    {
+      @Override
+      public ByteSequence computeNewValue(ByteSequence oldValue)
+      {
+        if (oldValue == null)
+        {
+          oldBucket[0] = null;
+          return delta > 0 ? encodeValue(delta, previousUpperBoundIfCreated) : null;
+        }
+        oldBucket[0] = oldValue.toByteString();
+        final long newCount = getCount(oldBucket[0]) + delta;
+        return newCount > 0 ? encodeValue(newCount, getPreviousUpperBound(oldBucket[0])) : null;
+      }
+    });
+    return oldBucket[0];
+  }
+
+  /** Removes a bucket record, and returns it, or {@code null} if it did not exist. */
+  private ByteString removeBucket(WriteableTransaction txn, ByteString upperBound)
+  {
+    final ByteString[] oldBucket = new ByteString[1];
+    txn.update(getName(), upperBound, new UpdateFunction()
+    {
+      @Override
+      public ByteSequence computeNewValue(ByteSequence oldValue)
+      {
+        oldBucket[0] = oldValue != null ? oldValue.toByteString() : null;
+        return null;
+      }
+    });
+    return oldBucket[0];
+  }
+
+  private static long getCount(ByteString value)
+  {
+    return value.asReader().readCompactUnsignedLong();
+  }
+
+  private static ByteString getPreviousUpperBound(ByteString value)
+  {
+    final ByteSequenceReader reader = value.asReader();
+    reader.readCompactUnsignedLong();
+    return reader.readByteString(reader.remaining());
+  }
+
+  private static ByteString encodeValue(long count, ByteSequence previousUpperBound)
+  {
+    return new ByteStringBuilder(ByteStringBuilder.MAX_COMPACT_SIZE + previousUpperBound.length())
+        .appendCompactUnsigned(count).appendBytes(previousUpperBound).toByteString();
+  }
+
+  @Override
+  public String keyToString(ByteString key)
+  {
+    return String.valueOf(VLVIndex.decodeEntryIDFromVLVKey(key));
+  }
+
+  @Override
+  public String valueToString(ByteString value)
+  {
+    return String.valueOf(getCount(value));
+  }
+
+  /**
+   * Applies the changes of a VLV index to its rank directory. Consecutive keys belonging to the same bucket only
+   * update the bucket record once.
+   */
+  final class Updater
+  {
+    private final WriteableTransaction txn;
+    private final List<ByteString> bucketsToSplit = new ArrayList<>();
+
+    /** Upper bound of the current bucket, or null if there is no current bucket. */
+    private ByteString upperBound;
+    /** Upper bound of the current bucket as stored, or null if it is a new bucket. */
+    private ByteString storedUpperBound;
+    private ByteString previousUpperBound;
+    private long delta;
+    private boolean isLastBucket;
+
+    private Updater(WriteableTransaction txn)
+    {
+      this.txn = txn;
+    }
+
+    /**
+     * Records the addition or removal of a VLV key.
+     *
+     * @param key
+     *          the VLV key
+     * @param keyDelta
+     *          1 if the key has been added, -1 if it has been removed
+     */
+    void update(ByteString key, long keyDelta)
+    {
+      if (upperBound == null || (!isLastBucket && key.compareTo(upperBound) > 0))
+      {
+        flush();
+        load(key);
+      }
+      if (isLastBucket && key.compareTo(upperBound) > 0)
+      {
+        upperBound = key;
+      }
+      delta += keyDelta;
+    }
+
+    /** Writes the pending changes and splits the buckets which have grown too big. */
+    void close()
+    {
+      flush();
+      split(txn, bucketsToSplit);
+    }
+
+    private void load(ByteString key)
+    {
+      try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+      {
+        if (cursor.positionToKeyOrNext(key))
+        {
+          load(cursor);
+          isLastBucket = !cursor.next();
+        }
+        else if (cursor.positionToLastKey())
+        {
+          load(cursor);
+          isLastBucket = true;
+        }
+        else
+        {
+          upperBound = key;
+          storedUpperBound = null;
+          previousUpperBound = ByteString.empty();
+          isLastBucket = true;
+        }
+      }
+      delta = 0;
+    }
+
+    private void load(Cursor<ByteString, ByteString> cursor)
+    {
+      upperBound = cursor.getKey();
+      storedUpperBound = upperBound;
+      previousUpperBound = getPreviousUpperBound(cursor.getValue());
+    }
+
+    private void flush()
+    {
+      if (upperBound == null)
+      {
+        return;
+      }
+      long bucketDelta = delta;
+      ByteString bucketPreviousUpperBound = previousUpperBound;
+      if (storedUpperBound != null && !storedUpperBound.equals(upperBound))
+      {
+        // The upper bound of the last bucket has been raised: move its count to the new upper bound
+        final ByteString oldBucket = removeBucket(txn, storedUpperBound);
+        if (oldBucket != null)
+        {
+          bucketDelta += getCount(oldBucket);
+          bucketPreviousUpperBound = getPreviousUpperBound(oldBucket);
+        }
+      }
+      final ByteString oldBucket = addToCount(txn, upperBound, bucketDelta, bucketPreviousUpperBound);
+      final long oldCount = oldBucket != null ? getCount(oldBucket) : 0;
+      final long newCount = oldCount + bucketDelta;
+      if (newCount > MAX_BUCKET_SIZE)
+      {
+        bucketsToSplit.add(upperBound);
+      }
+      else if (newCount <= 0 && oldBucket != null)
+      {
+        bucketRemoved(getPreviousUpperBound(oldBucket));
+      }
+      upperBound = null;
+    }
+
+    /** The current bucket has been removed, the next bucket then starts where the current bucket started. */
+    private void bucketRemoved(final ByteString removedPreviousUpperBound)
+    {
+      if (isLastBucket)
+      {
+        return;
+      }
+      final ByteString nextUpperBound;
+      try (Cursor<ByteString, ByteString> cursor = txn.openCursor(getName()))
+      {
+        if (!cursor.positionToKeyOrNext(upperBound))
+        {
+          return;
+        }
+        nextUpperBound = cursor.getKey();
+      }
+      txn.update(getName(), nextUpperBound, new UpdateFunction()
+      {
+        @Override
+        public ByteSequence computeNewValue(ByteSequence oldValue)
+        {
+          if (oldValue == null)
+          {
+            return null;
+          }
+          return encodeValue(getCount(oldValue.toByteString()), removedPreviousUpperBound);
+        }
+      });
+    }
+  }
+
+  /** Builds the rank directory of a VLV index from its keys, provided in ascending order. */
+  final class RankImporter
+  {
+    private final Importer importer;
+    private ByteString previousUpperBound = ByteString.empty();
+    private ByteString lastKey;
+    private long count;
+
+    private RankImporter(Importer importer)
+    {
+      this.importer = importer;
+    }
+
+    /**
+     * Adds the next VLV key.
+     *
+     * @param key
+     *          the VLV key, greater than the previous one
+     */
+    void add(ByteString key)
+    {
+      lastKey = key;
+      if (++count == IMPORT_BUCKET_SIZE)
+      {
+        flush();
+      }
+    }
+
+    /** Writes the last bucket. */
+    void close()
+    {
+      flush();
+    }
+
+    private void flush()
+    {
+      if (count > 0)
+      {
+        importer.put(getName(), lastKey, encodeValue(count, previousUpperBound));
+        previousUpperBound = lastKey;
+        count = 0;
+      }
+    }
+  }
+}
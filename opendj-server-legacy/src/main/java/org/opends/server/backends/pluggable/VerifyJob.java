@@ -72,6 +72,9 @@ class VerifyJob
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** Maximum number of entries read at once from id2entry when checking the entry IDs of an index key. */
+  private static final int ENTRIES_BATCH_SIZE = 64;
+
   /** The verify configuration. */
   private final VerifyConfig verifyConfig;
   /** The root container used for the verify job. */
@@ -383,7 +386,8 @@ class VerifyJob
         Entry entry;
         try
         {
-          entry = ID2Entry.entryFromDatabase(value, rootContainer.getCompressedSchema());
+          entry = ID2Entry.entryFromDatabase(value, rootContainer.getCompressedSchema(),
+              rootContainer.getCompressionDictionaries());
         }
         catch (Exception e)
         {
@@ -547,6 +551,30 @@ class VerifyJob
     }
   }
 
+  /**
+   * Reads from id2entry the entries whose IDs start at the provided position of the provided sorted array, filling
+   * the provided array. Entries which could not be read, either because they are missing or because reading the
+   * batch failed, are left {@code null} so that they get read and reported one by one.
+   */
+  private void prefetchEntries(ReadableTransaction txn, long[] sortedIDs, int from, Entry[] entries)
+  {
+    Arrays.fill(entries, null);
+    final int to = Math.min(from + entries.length, sortedIDs.length);
+    final List<EntryID> entryIDs = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++)
+    {
+      entryIDs.add(new EntryID(sortedIDs[i]));
+    }
+    try
+    {
+      id2entry.get(txn, entryIDs).toArray(entries);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+    }
+  }
+
   /**
    * Increment the counter for a key that has exceeded the
    * entry limit. The counter gives the number of entries that have
@@ -695,24 +723,36 @@ class VerifyJob
         {
           EntryID prevID = null;
 
-          for (EntryID id : entryIDSet)
+          final long[] ids = entryIDSet.toLongArray();
+          final Entry[] prefetchedEntries = new Entry[ENTRIES_BATCH_SIZE];
+          for (int i = 0; i < ids.length; i++)
           {
+            final int batchIndex = i % ENTRIES_BATCH_SIZE;
+            if (batchIndex == 0)
+            {
+              prefetchEntries(txn, ids, i, prefetchedEntries);
+            }
+
+            final EntryID id = new EntryID(ids[i]);
             if (prevID != null && id.equals(prevID) && logger.isTraceEnabled())
             {
               logger.error(ERR_VERIFY_DUPLICATE_REFERENCE, id.longValue(), keyDump(index, key));
             }
             prevID = id;
 
-            Entry entry;
-            try
-            {
-              entry = id2entry.get(txn, id);
-            }
-            catch (Exception e)
+            Entry entry = prefetchedEntries[batchIndex];
+            if (entry == null)
             {
-              logger.traceException(e);
-              errorCount++;
-              continue;
+              try
+              {
+                entry = id2entry.get(txn, id);
+              }
+              catch (Exception e)
+              {
+                logger.traceException(e);
+                errorCount++;
+                continue;
+              }
             }
 
             if (entry == null)
@@ -25,6 +25,8 @@
  */
 package org.opends.server.backends.pluggable.spi;
 
+import java.util.List;
+
 import org.forgerock.opendj.ldap.ByteSequence;
 import org.forgerock.opendj.ldap.ByteString;
 
@@ -44,6 +46,21 @@ public interface ReadableTransaction
    */
   ByteString read(TreeName treeName, ByteSequence key);
 
+  /**
+   * Reads the records' values associated to the provided keys, in the tree whose name is provided.
+   * <p>
+   * The keys must be sorted in ascending order so that implementations can walk the tree once, moving a single
+   * cursor forward, instead of looking up each key from the root of the tree.
+   *
+   * @param treeName
+   *          the tree name
+   * @param sortedKeys
+   *          the records' keys, sorted in ascending order
+   * @return the records' values, in the same order as the provided keys, with a {@code null} value for each key
+   *         having no associated record
+   */
+  List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys);
+
   /**
    * Opens a cursor on the tree whose name is provided.
    *
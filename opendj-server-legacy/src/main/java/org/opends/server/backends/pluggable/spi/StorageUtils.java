@@ -29,10 +29,14 @@ import static org.opends.messages.ConfigMessages.*;
 import static org.opends.server.util.StaticUtils.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.types.DN;
 import org.opends.server.types.FilePermission;
@@ -40,6 +44,12 @@ import org.opends.server.types.FilePermission;
 /** Utility class for implementations of {@link Storage}. */
 public final class StorageUtils
 {
+  /**
+   * Maximum number of records stepped over with {@link Cursor#next()} when looking for the next key of a
+   * {@link #readAll(Cursor, List)} before falling back to a lookup from the root of the tree.
+   */
+  private static final int MAX_RECORDS_SKIPPED = 8;
+
   private StorageUtils()
   {
     // do not instantiate utility classes
@@ -247,4 +257,51 @@ public final class StorageUtils
     return StorageStatus.lockedDown(WARN_DISK_SPACE_LOW_THRESHOLD_CROSSED.get(
         directory.getFreeSpace(), directory.getAbsolutePath(), thresholdInBytes, backendId));
   }
+
+  /**
+   * Reads the values associated to the provided sorted keys by walking the provided cursor forward.
+   * <p>
+   * Keys close to the current position of the cursor are reached by moving to the next records, which avoids
+   * descending the tree from its root for runs of adjacent keys, such as consecutive entry IDs. This can be used by
+   * storage implementations of {@link ReadableTransaction#readAll(TreeName, List)}.
+   *
+   * @param cursor
+   *          the cursor opened on the tree to read
+   * @param sortedKeys
+   *          the records' keys, sorted in ascending order
+   * @return the records' values, in the same order as the provided keys, with a {@code null} value for each key
+   *         having no associated record
+   */
+  public static List<ByteString> readAll(Cursor<ByteString, ByteString> cursor, List<? extends ByteSequence> sortedKeys)
+  {
+    final List<ByteString> values = new ArrayList<>(sortedKeys.size());
+    for (ByteSequence key : sortedKeys)
+    {
+      values.add(moveForwardToKey(cursor, key) ? cursor.getValue() : null);
+    }
+    return values;
+  }
+
+  private static boolean moveForwardToKey(Cursor<ByteString, ByteString> cursor, ByteSequence key)
+  {
+    if (cursor.isDefined())
+    {
+      int cmp = cursor.getKey().compareTo(key);
+      for (int skipped = 0; cmp < 0 && skipped < MAX_RECORDS_SKIPPED; skipped++)
+      {
+        if (!cursor.next())
+        {
+          // end of the tree: this key and all the following ones do not exist
+          return false;
+        }
+        cmp = cursor.getKey().compareTo(key);
+      }
+      if (cmp >= 0)
+      {
+        // keys are sorted: the cursor is positioned on the smallest record key greater than or equal to this key
+        return cmp == 0;
+      }
+    }
+    return cursor.positionToKeyOrNext(key) && cursor.getKey().compareTo(key) == 0;
+  }
 }
@@ -161,6 +161,9 @@ public class CoreConfigManager
     setUseNanoTime(globalConfig.getEtimeResolution() == GlobalCfgDefn.EtimeResolution.NANOSECONDS);
     setMaxAllowedConnections(globalConfig.getMaxAllowedClientConnections());
     setMaxPersistentSearchLimit(globalConfig.getMaxPsearches());
+    setPersistentSearchQueueSize(globalConfig.getPsearchQueueSize());
+    setDisconnectOnPersistentSearchQueueOverflow(
+        globalConfig.getPsearchOverflowPolicy() == GlobalCfgDefn.PsearchOverflowPolicy.DISCONNECT);
     setMaxInternalBufferSize((int) globalConfig.getMaxInternalBufferSize());
 
     // For tools, common audit may not be available
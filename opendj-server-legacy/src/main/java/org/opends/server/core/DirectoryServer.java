@@ -556,6 +556,12 @@ public final class DirectoryServer
   /** The maximum number of concurrent persistent searches. */
   private int maxPSearches;
 
+  /** The maximum number of changes waiting to be sent to a persistent search client. */
+  private int psearchQueueSize;
+
+  /** Whether to disconnect the persistent search clients which cannot keep up with the changes. */
+  private boolean disconnectOnPSearchQueueOverflow;
+
   /** Whether to use collect operation processing times in nanosecond resolution. */
   private boolean useNanoTime;
 
@@ -6187,6 +6193,9 @@ public final class DirectoryServer
       directoryServer.workQueue.waitUntilIdle(ServerShutdownMonitor.WAIT_TIME);
     }
 
+    // Stop sending changes to the persistent searches of the closed connections
+    PersistentSearch.shutdownDispatcher(ServerShutdownMonitor.WAIT_TIME);
+
     // shutdown replication
     for (SynchronizationProvider provider :
          directoryServer.synchronizationProviders)
@@ -6774,6 +6783,56 @@ public final class DirectoryServer
     directoryServer.maxPSearches = maxPSearches;
   }
 
+  /**
+   * Specifies the maximum number of changes which may be waiting to be sent to
+   * the client of a persistent search.
+   *
+   * @param psearchQueueSize  The maximum number of changes which may be waiting
+   *                          to be sent to the client of a persistent search,
+   *                          or 0 if changes are sent synchronously.
+   */
+  public static void setPersistentSearchQueueSize(int psearchQueueSize)
+  {
+    directoryServer.psearchQueueSize = psearchQueueSize;
+  }
+
+  /**
+   * Retrieves the maximum number of changes which may be waiting to be sent to
+   * the client of a persistent search.
+   *
+   * @return  The maximum number of changes which may be waiting to be sent to
+   *          the client of a persistent search, or 0 if changes are sent
+   *          synchronously.
+   */
+  public static int getPersistentSearchQueueSize()
+  {
+    return directoryServer.psearchQueueSize;
+  }
+
+  /**
+   * Specifies whether the clients of persistent searches which cannot keep up
+   * with the rate of changes should be disconnected.
+   *
+   * @param disconnect  {@code true} if the clients should be disconnected, or
+   *                    {@code false} if the changes should be dropped.
+   */
+  public static void setDisconnectOnPersistentSearchQueueOverflow(boolean disconnect)
+  {
+    directoryServer.disconnectOnPSearchQueueOverflow = disconnect;
+  }
+
+  /**
+   * Indicates whether the clients of persistent searches which cannot keep up
+   * with the rate of changes should be disconnected.
+   *
+   * @return  {@code true} if the clients should be disconnected, or
+   *          {@code false} if the changes should be dropped.
+   */
+  public static boolean isDisconnectOnPersistentSearchQueueOverflow()
+  {
+    return directoryServer.disconnectOnPSearchQueueOverflow;
+  }
+
   /**
    *  Registers a new persistent search by increasing the count
    *  of active persistent searches. After receiving a persistent
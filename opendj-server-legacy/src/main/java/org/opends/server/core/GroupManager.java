@@ -127,6 +127,12 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private DITCacheMap<Group<?>> groupInstances;
 
+  /**
+   * The groups in which each DN is a member, updated along with the group
+   * instances.
+   */
+  private final GroupMembershipIndex membershipIndex = new GroupMembershipIndex();
+
   /** Lock to protect internal data structures. */
   private final ReentrantReadWriteLock lock;
 
@@ -312,6 +318,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           if (g.getClass().getName().equals(group.getClass().getName()))
           {
             iterator.remove();
+            membershipIndex.groupRemoved(g);
           }
         }
       }
@@ -379,6 +386,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
               if (g.getClass().getName().equals(group.getClass().getName()))
               {
                 iterator.remove();
+                membershipIndex.groupRemoved(g);
               }
             }
           }
@@ -646,8 +654,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
             try
             {
               Group<?> groupInstance = groupImplementation.newInstance(null, entry);
-              groupInstances.put(entry.getName(), groupInstance);
-              refreshToken++;
+              registerGroupInstance(entry.getName(), groupInstance);
             }
             catch (DirectoryException e)
             {
@@ -684,6 +691,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
         if (backend.handlesEntry(groupEntryDN))
         {
           iterator.remove();
+          membershipIndex.groupRemoved(mapEntry.getValue());
         }
       }
     }
@@ -753,8 +761,13 @@ public class GroupManager extends InternalDirectoryServerPlugin
     lock.writeLock().lock();
     try
     {
-      if (groupInstances.removeSubtree(entry.getName(), null))
+      final List<Group<?>> removedGroups = new ArrayList<>();
+      if (groupInstances.removeSubtree(entry.getName(), removedGroups))
       {
+        for (Group<?> group : removedGroups)
+        {
+          membershipIndex.groupRemoved(group);
+        }
         refreshToken++;
       }
     }
@@ -803,7 +816,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
         if (! oldEntry.getName().equals(newEntry.getName()))
         {
           // This should never happen, but check for it anyway.
-          groupInstances.remove(oldEntry.getName());
+          membershipIndex.groupRemoved(groupInstances.remove(oldEntry.getName()));
         }
         createAndRegisterGroup(newEntry);
       }
@@ -998,8 +1011,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           lock.writeLock().lock();
           try
           {
-            groupInstances.put(entry.getName(), groupInstance);
-            refreshToken++;
+            registerGroupInstance(entry.getName(), groupInstance);
           }
           finally
           {
@@ -1016,6 +1028,97 @@ public class GroupManager extends InternalDirectoryServerPlugin
 
 
 
+  /**
+   * Registers the provided group instance, replacing any group instance
+   * registered with the same DN. The caller must hold the write lock.
+   */
+  private void registerGroupInstance(DN groupDN, Group<?> groupInstance)
+  {
+    final Group<?> previousInstance = groupInstances.put(groupDN, groupInstance);
+    if (previousInstance != null)
+    {
+      membershipIndex.groupRemoved(previousInstance);
+    }
+    refreshToken++;
+    membershipIndex.groupAdded(groupInstance);
+  }
+
+
+
+  /**
+   * Retrieves the groups in which the user with the provided entry is a
+   * member, either directly or through nested groups.
+   *
+   * @param  userEntry  The entry of the user.
+   *
+   * @return  The groups in which the user is a member.
+   */
+  public Set<Group<?>> getGroups(Entry userEntry)
+  {
+    return membershipIndex.getGroups(userEntry.getName(), userEntry);
+  }
+
+
+
+  /**
+   * Retrieves the groups in which the user with the provided DN is a member,
+   * either directly or through nested groups.
+   *
+   * @param  userDN  The DN of the user.
+   *
+   * @return  The groups in which the user is a member.
+   */
+  public Set<Group<?>> getGroups(DN userDN)
+  {
+    return membershipIndex.getGroups(userDN, null);
+  }
+
+
+
+  /**
+   * Notifies the group manager that a member has been added to a static group
+   * without re-registering the group instance.
+   *
+   * @param  group     The group to which the member has been added.
+   * @param  memberDN  The DN of the added member.
+   */
+  public void memberAdded(Group<?> group, DN memberDN)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      membershipIndex.memberAdded(group, memberDN);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
+  /**
+   * Notifies the group manager that a member has been removed from a static
+   * group without re-registering the group instance.
+   *
+   * @param  group     The group from which the member has been removed.
+   * @param  memberDN  The DN of the removed member.
+   */
+  public void memberRemoved(Group<?> group, DN memberDN)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      membershipIndex.memberRemoved(group, memberDN);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+
+
   /**
    * Removes all group instances that might happen to be registered with the
    * group manager.  This method is only intended for testing purposes and
@@ -1027,6 +1130,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
     try
     {
       groupInstances.clear();
+      membershipIndex.clear();
     }
     finally
     {
@@ -0,0 +1,283 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.api.Group;
+import org.opends.server.extensions.StaticGroup;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.MemberList;
+import org.opends.server.types.MembershipException;
+
+/**
+ * Reverse membership index maintained by the {@link GroupManager}: for each
+ * member DN, the static groups which explicitly list it as a member.
+ * <p>
+ * The groups of a user are retrieved by looking up the user DN, then
+ * repeatedly the DNs of the groups found so far in order to follow nested
+ * groups. Groups whose members cannot be enumerated (e.g. dynamic groups) are
+ * not indexed and are evaluated one by one.
+ * <p>
+ * Lookups do not take any lock: the groups associated with a member DN are
+ * stored in an array which is replaced, never modified. Updates must be
+ * performed while holding the group manager write lock.
+ */
+final class GroupMembershipIndex
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  private static final Group<?>[] NO_GROUPS = new Group<?>[0];
+
+  /** The static groups listing each normalized member DN as a member. */
+  private final ConcurrentMap<ByteString, Group<?>[]> memberships = new ConcurrentHashMap<>();
+  /** The normalized member DNs indexed for each static group. */
+  private final Map<Group<?>, Set<ByteString>> indexedMembers = new IdentityHashMap<>();
+  /** The groups whose members are not indexed and must be evaluated. */
+  private final List<Group<?>> unindexedGroups = new CopyOnWriteArrayList<>();
+
+  /**
+   * Indexes the members of a newly registered group instance.
+   *
+   * @param group
+   *          The group instance which has been registered.
+   */
+  void groupAdded(Group<?> group)
+  {
+    if (!(group instanceof StaticGroup))
+    {
+      unindexedGroups.add(group);
+      return;
+    }
+
+    final Set<ByteString> members = new HashSet<>();
+    try (MemberList memberList = group.getMembers())
+    {
+      while (memberList.hasMoreMembers())
+      {
+        members.add(memberList.nextMemberDN().toNormalizedByteString());
+      }
+    }
+    catch (DirectoryException | MembershipException e)
+    {
+      logger.traceException(e);
+      // Evaluate the membership of this group instead
+      unindexedGroups.add(group);
+      return;
+    }
+
+    indexedMembers.put(group, members);
+    for (ByteString member : members)
+    {
+      addMembership(member, group);
+    }
+  }
+
+  /**
+   * Removes the members of a deregistered group instance from this index.
+   *
+   * @param group
+   *          The group instance which has been deregistered.
+   */
+  void groupRemoved(Group<?> group)
+  {
+    if (unindexedGroups.remove(group))
+    {
+      return;
+    }
+
+    final Set<ByteString> members = indexedMembers.remove(group);
+    if (members != null)
+    {
+      for (ByteString member : members)
+      {
+        removeMembership(member, group);
+      }
+    }
+  }
+
+  /**
+   * Indexes a member added to a registered static group.
+   *
+   * @param group
+   *          The group to which a member has been added.
+   * @param memberDN
+   *          The DN of the added member.
+   */
+  void memberAdded(Group<?> group, DN memberDN)
+  {
+    final Set<ByteString> members = indexedMembers.get(group);
+    final ByteString member = memberDN.toNormalizedByteString();
+    if (members != null && members.add(member))
+    {
+      addMembership(member, group);
+    }
+  }
+
+  /**
+   * Removes a member removed from a registered static group from this index.
+   *
+   * @param group
+   *          The group from which a member has been removed.
+   * @param memberDN
+   *          The DN of the removed member.
+   */
+  void memberRemoved(Group<?> group, DN memberDN)
+  {
+    final Set<ByteString> members = indexedMembers.get(group);
+    final ByteString member = memberDN.toNormalizedByteString();
+    if (members != null && members.remove(member))
+    {
+      removeMembership(member, group);
+    }
+  }
+
+  /** Removes all the groups from this index. */
+  void clear()
+  {
+    memberships.clear();
+    indexedMembers.clear();
+    unindexedGroups.clear();
+  }
+
+  /**
+   * Retrieves the groups in which the provided user is a member, either
+   * directly or through nested groups.
+   *
+   * @param userDN
+   *          The DN of the user.
+   * @param userEntry
+   *          The entry of the user, or {@code null} if only its DN is known.
+   * @return The groups in which the provided user is a member.
+   */
+  Set<Group<?>> getGroups(DN userDN, Entry userEntry)
+  {
+    final Set<Group<?>> groups = new LinkedHashSet<>();
+    final Deque<Group<?>> nestedGroups = new ArrayDeque<>();
+    addGroupsOf(userDN, groups, nestedGroups);
+    for (Group<?> group : unindexedGroups)
+    {
+      try
+      {
+        if ((userEntry != null ? group.isMember(userEntry) : group.isMember(userDN))
+            && groups.add(group))
+        {
+          nestedGroups.add(group);
+        }
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+      }
+    }
+
+    // Members of a group are also members of the groups containing this group
+    Group<?> group;
+    while ((group = nestedGroups.poll()) != null)
+    {
+      addGroupsOf(group.getGroupDN(), groups, nestedGroups);
+    }
+    return groups;
+  }
+
+  private void addGroupsOf(DN memberDN, Set<Group<?>> groups, Deque<Group<?>> nestedGroups)
+  {
+    final Group<?>[] directGroups = memberships.get(memberDN.toNormalizedByteString());
+    if (directGroups != null)
+    {
+      for (Group<?> group : directGroups)
+      {
+        if (groups.add(group))
+        {
+          nestedGroups.add(group);
+        }
+      }
+    }
+  }
+
+  private void addMembership(ByteString member, Group<?> group)
+  {
+    final Group<?>[] groups = memberships.get(member);
+    final Group<?>[] newGroups;
+    if (groups == null)
+    {
+      newGroups = new Group<?>[] { group };
+    }
+    else
+    {
+      newGroups = Arrays.copyOf(groups, groups.length + 1);
+      newGroups[groups.length] = group;
+    }
+    memberships.put(member, newGroups);
+  }
+
+  private void removeMembership(ByteString member, Group<?> group)
+  {
+    final Group<?>[] groups = memberships.get(member);
+    if (groups == null)
+    {
+      return;
+    }
+
+    final Group<?>[] newGroups = groups.length > 1 ? new Group<?>[groups.length - 1] : NO_GROUPS;
+    int i = 0;
+    for (Group<?> g : groups)
+    {
+      if (g != group)
+      {
+        if (i == newGroups.length)
+        {
+          // The group was not indexed for this member
+          return;
+        }
+        newGroups[i++] = g;
+      }
+    }
+    if (newGroups.length == 0)
+    {
+      memberships.remove(member);
+    }
+    else
+    {
+      memberships.put(member, newGroups);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static org.opends.server.util.ServerConstants.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.api.EntryCache;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Operation;
+import org.opends.server.types.OperationType;
+
+/**
+ * A QueueingStrategy that directly runs cheap operations on the current
+ * thread, like the {@link SynchronousStrategy}, and hands over the other
+ * operations to another queueing strategy.
+ * <p>
+ * Abandon and compare operations, and base object searches which are not
+ * persistent searches, are run on the current thread as long as they take on
+ * average less than a time budget. The average time of each operation type is
+ * decayed while its operations are handed over, so that they are run on the
+ * current thread again once the cause of their slowness (e.g. a cold cache) is
+ * likely gone.
+ * <p>
+ * Since the current thread is usually an LDAP request handler serving many
+ * connections, compare and search operations are only run inline when they
+ * cannot block it: their target entry must be in the entry cache, so that it
+ * is not read from the backend, and the client must be reading the responses
+ * already sent to it. The other operations are handed over.
+ */
+public class InlineQueueingStrategy implements QueueingStrategy
+{
+  /** The queueing strategy of the operations which are not run inline. */
+  private final QueueingStrategy delegate;
+  /** The time budget of inline operations, or zero if they are never run inline. */
+  private volatile long timeBudgetInNanos;
+  /** The average time taken by the inline operations of each type. */
+  private final AtomicLongArray averageTimesInNanos = new AtomicLongArray(OperationType.values().length);
+
+  /**
+   * Creates a new inline queueing strategy which does not run any operation
+   * inline until a time budget is set.
+   *
+   * @param delegate
+   *          The queueing strategy of the operations which are not run inline.
+   */
+  public InlineQueueingStrategy(QueueingStrategy delegate)
+  {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets the maximum average time of the operations run inline.
+   *
+   * @param timeBudget
+   *          The maximum average time of the operations run inline, or zero
+   *          if no operation should be run inline.
+   * @param unit
+   *          The unit of {@code timeBudget}.
+   */
+  public void setTimeBudget(long timeBudget, TimeUnit unit)
+  {
+    timeBudgetInNanos = unit.toNanos(timeBudget);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void enqueueRequest(Operation operation) throws DirectoryException
+  {
+    final long timeBudget = timeBudgetInNanos;
+    if (timeBudget > 0 && isCheap(operation) && !mayBlock(operation))
+    {
+      final int index = operation.getOperationType().ordinal();
+      final long averageTime = averageTimesInNanos.get(index);
+      if (averageTime <= timeBudget)
+      {
+        runInline(operation, index, averageTime);
+        return;
+      }
+      // Give the operations of this type another chance later
+      averageTimesInNanos.compareAndSet(index, averageTime, averageTime - (averageTime >> 4));
+    }
+    delegate.enqueueRequest(operation);
+  }
+
+  private void runInline(Operation operation, int index, long averageTime) throws DirectoryException
+  {
+    DirectoryServer.checkCanEnqueueRequest(operation, false);
+    final long startTime = System.nanoTime();
+    try
+    {
+      operation.run();
+      operation.operationCompleted();
+    }
+    finally
+    {
+      final long time = System.nanoTime() - startTime;
+      // Exponentially weighted moving average, concurrent updates may be lost
+      averageTimesInNanos.compareAndSet(index, averageTime, averageTime + ((time - averageTime) >> 3));
+    }
+  }
+
+  /** Whether the provided operation is not expected to take long or to block. */
+  private static boolean isCheap(Operation operation)
+  {
+    switch (operation.getOperationType())
+    {
+    case ABANDON:
+    case COMPARE:
+      return true;
+    case SEARCH:
+      return ((SearchOperation) operation).getScope() == SearchScope.BASE_OBJECT
+          && !hasPersistentSearchControl(operation);
+    default:
+      return false;
+    }
+  }
+
+  /** Whether running the provided cheap operation may wait for the backend or for the client. */
+  private static boolean mayBlock(Operation operation)
+  {
+    switch (operation.getOperationType())
+    {
+    case COMPARE:
+      return operation.getClientConnection().isWriteBlocked()
+          || !isCached(((CompareOperation) operation).getRawEntryDN());
+    case SEARCH:
+      return operation.getClientConnection().isWriteBlocked()
+          || !isCached(((SearchOperation) operation).getRawBaseDN());
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isCached(ByteString rawDN)
+  {
+    final EntryCache<?> entryCache = DirectoryServer.getEntryCache();
+    if (entryCache == null || rawDN == null)
+    {
+      return false;
+    }
+    try
+    {
+      return entryCache.containsEntry(DN.decode(rawDN));
+    }
+    catch (DirectoryException e)
+    {
+      // The operation will report the invalid DN
+      return false;
+    }
+  }
+
+  private static boolean hasPersistentSearchControl(Operation operation)
+  {
+    for (Control control : operation.getRequestControls())
+    {
+      if (OID_PERSISTENT_SEARCH.equals(control.getOID()))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -610,6 +610,34 @@ public abstract class PasswordPolicy extends AuthenticationPolicy
 
 
 
+  /**
+   * Retrieves the cache of the passwords successfully verified for the users
+   * of this password policy.
+   *
+   * @return The verified credential cache of this password policy, or
+   *         {@code null} if verified passwords are not cached.
+   */
+  public VerifiedCredentialCache getVerifiedCredentialCache()
+  {
+    return null;
+  }
+
+
+
+  /**
+   * Retrieves the updater writing behind the password policy state updates
+   * performed by the binds of the users of this password policy.
+   *
+   * @return The password policy state updater, or {@code null} if the state
+   *         updates are written by each bind.
+   */
+  PasswordPolicyStateUpdater getStateUpdater()
+  {
+    return null;
+  }
+
+
+
   /** {@inheritDoc} */
   public boolean isPasswordPolicy()
   {
@@ -622,6 +650,9 @@ public abstract class PasswordPolicy extends AuthenticationPolicy
   public PasswordPolicyState createAuthenticationPolicyState(Entry userEntry,
       long time) throws DirectoryException
   {
-    return new PasswordPolicyState(this, userEntry, time);
+    // The state updates not written yet are authoritative
+    final PasswordPolicyStateUpdater stateUpdater = getStateUpdater();
+    final Entry entry = stateUpdater != null ? stateUpdater.applyPendingUpdates(userEntry) : userEntry;
+    return new PasswordPolicyState(this, entry, time);
   }
 }
@@ -32,6 +32,7 @@ import static org.opends.server.schema.SchemaConstants.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -46,6 +47,7 @@ import org.opends.server.admin.server.ConfigurationChangeListener;
 import org.opends.server.admin.std.meta.PasswordPolicyCfgDefn.StateUpdateFailurePolicy;
 import org.opends.server.admin.std.server.PasswordPolicyCfg;
 import org.opends.server.api.*;
+import org.opends.server.monitors.VerifiedCredentialCacheMonitorProvider;
 import org.opends.server.types.*;
 
 /**
@@ -106,6 +108,22 @@ public final class PasswordPolicyFactory implements
      */
     private long requireChangeByTime;
 
+    /**
+     * The cache of the verified passwords, or {@code null} if verified
+     * passwords are not cached. It is replaced whenever the configuration
+     * changes.
+     */
+    private volatile VerifiedCredentialCache verifiedCredentialCache;
+
+    /** The monitor of the verified credential cache. */
+    private VerifiedCredentialCacheMonitorProvider verifiedCredentialCacheMonitor;
+
+    /**
+     * The updater writing behind the password policy state updates, or
+     * {@code null} if they are written by each bind.
+     */
+    private volatile PasswordPolicyStateUpdater stateUpdater;
+
     private final ServerContext serverContext;
 
     /** {@inheritDoc} */
@@ -113,6 +131,15 @@ public final class PasswordPolicyFactory implements
     public void finalizeAuthenticationPolicy()
     {
       configuration.removePasswordPolicyChangeListener(this);
+      if (verifiedCredentialCacheMonitor != null)
+      {
+        DirectoryServer.deregisterMonitorProvider(verifiedCredentialCacheMonitor);
+      }
+      if (stateUpdater != null)
+      {
+        stateUpdater.stop();
+        stateUpdater = null;
+      }
     }
 
     /** {@inheritDoc} */
@@ -123,6 +150,7 @@ public final class PasswordPolicyFactory implements
       try
       {
         updateConfiguration(configuration, true);
+        updateStateUpdater();
       }
       catch (ConfigException ce)
       {
@@ -394,6 +422,23 @@ public final class PasswordPolicyFactory implements
         }
       }
 
+      // Any change to the policy invalidates the passwords verified so far.
+      VerifiedCredentialCache verifiedCredentialCache = null;
+      if (applyChanges && configuration.getVerifiedCredentialCacheSize() > 0)
+      {
+        try
+        {
+          verifiedCredentialCache = new VerifiedCredentialCache(
+              configuration.getVerifiedCredentialCacheSize(), configuration.getVerifiedCredentialCacheTTL());
+        }
+        catch (GeneralSecurityException e)
+        {
+          logger.traceException(e);
+          throw new InitializationException(ERR_PWPOLICY_CANNOT_CREATE_VERIFIED_CREDENTIAL_CACHE.get(
+              configEntryDN, stackTraceToSingleLineString(e)), e);
+        }
+      }
+
       // If we've got this far then the configuration is good and we can commit
       // the changes if required.
       if (applyChanges)
@@ -406,7 +451,65 @@ public final class PasswordPolicyFactory implements
         this.passwordGenerator = passwordGenerator;
         this.passwordValidators = passwordValidators;
         this.requireChangeByTime = requireChangeByTime;
+        this.verifiedCredentialCache = verifiedCredentialCache;
+      }
+    }
+
+
+
+    /** Registers the monitor of the verified credential cache of this policy. */
+    private void registerVerifiedCredentialCacheMonitor()
+    {
+      final String policyName = configuration.dn().rdn().getAttributeValue(0).toString();
+      verifiedCredentialCacheMonitor = new VerifiedCredentialCacheMonitorProvider(policyName, this);
+      verifiedCredentialCacheMonitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(verifiedCredentialCacheMonitor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public VerifiedCredentialCache getVerifiedCredentialCache()
+    {
+      return verifiedCredentialCache;
+    }
+
+
+
+    /**
+     * Starts, restarts or stops writing behind the password policy state
+     * updates, according to the current configuration.
+     */
+    private void updateStateUpdater()
+    {
+      final long interval = configuration.getStateUpdateWriteBehindInterval();
+      final PasswordPolicyStateUpdater oldUpdater = stateUpdater;
+      if (oldUpdater != null && oldUpdater.getInterval() == interval)
+      {
+        return;
       }
+
+      if (interval > 0)
+      {
+        final PasswordPolicyStateUpdater newUpdater = new PasswordPolicyStateUpdater(this, interval);
+        newUpdater.start();
+        stateUpdater = newUpdater;
+      }
+      else
+      {
+        stateUpdater = null;
+      }
+      if (oldUpdater != null)
+      {
+        // Write the updates already queued
+        oldUpdater.stop();
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    PasswordPolicyStateUpdater getStateUpdater()
+    {
+      return stateUpdater;
     }
 
     /** {@inheritDoc} */
@@ -999,6 +1102,8 @@ public final class PasswordPolicyFactory implements
   {
     PasswordPolicyImpl policy = new PasswordPolicyImpl(serverContext, configuration);
     configuration.addPasswordPolicyChangeListener(policy);
+    policy.registerVerifiedCredentialCacheMonitor();
+    policy.updateStateUpdater();
     return policy;
   }
 
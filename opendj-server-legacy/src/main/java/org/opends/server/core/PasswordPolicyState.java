@@ -415,6 +415,7 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
     if (getPasswordChangedTime() != passwordChangedTime)
     {
       this.passwordChangedTime = passwordChangedTime;
+      invalidateVerifiedCredential();
 
       String timeValue = GeneralizedTimeSyntax.format(passwordChangedTime);
       Attribute a = Attributes.create(OP_ATTR_PWPOLICY_CHANGED_TIME, timeValue);
@@ -481,6 +482,7 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
 
     if (isDisabled)
     {
+      invalidateVerifiedCredential();
       Attribute a = Attributes.create(OP_ATTR_ACCOUNT_DISABLED, String.valueOf(true));
       modifications.add(new Modification(ModificationType.REPLACE, a, true));
     }
@@ -847,6 +849,21 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
 
 
 
+  /**
+   * Forgets the password verified for the user, if any, so that the next bind
+   * of the user verifies its password again.
+   */
+  private void invalidateVerifiedCredential()
+  {
+    final VerifiedCredentialCache cache = passwordPolicy.getVerifiedCredentialCache();
+    if (cache != null)
+    {
+      cache.invalidate(userEntry.getName());
+    }
+  }
+
+
+
   /**
     Sets the failure lockout attribute in the entry to the requested time.
 
@@ -860,6 +877,7 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
     }
 
     failureLockedTime = time;
+    invalidateVerifiedCredential();
 
     AttributeType type = DirectoryServer.getAttributeTypeOrDefault(
         OP_ATTR_PWPOLICY_LOCKED_TIME_LC, OP_ATTR_PWPOLICY_LOCKED_TIME);
@@ -2190,6 +2208,14 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
       return false;
     }
 
+    final VerifiedCredentialCache cache = passwordPolicy.getVerifiedCredentialCache();
+    if (cache != null && cache.isVerified(userEntry.getName(), attrList, password, currentTime))
+    {
+      logger.trace("Returning true for user %s because the provided password has already been verified",
+          userDNString);
+      return true;
+    }
+
     for (Attribute a : attrList)
     {
       for (ByteString v : a)
@@ -2218,6 +2244,10 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
                       "encoded with scheme %s", userDNString, schemeName);
             }
 
+            if (cache != null)
+            {
+              cache.verified(userEntry.getName(), attrList, password, currentTime);
+            }
             return true;
           }
         }
@@ -3043,6 +3073,14 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
       return;
     }
 
+    final PasswordPolicyStateUpdater stateUpdater = passwordPolicy.getStateUpdater();
+    if (stateUpdater != null && canIgnoreStateUpdateFailures())
+    {
+      // Failures to write the state are logged by the updater
+      stateUpdater.queueUpdates(userEntry.getName(), passwordPolicy.getPasswordAttribute(), modifications);
+      return;
+    }
+
     // Convert the set of modifications to a set of LDAP modifications.
     ArrayList<RawModification> modList = new ArrayList<>();
     for (Modification m : modifications)
@@ -3061,8 +3099,7 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
 
       // If this is a root user, or if the password policy says that we should ignore these problems,
       // then log a warning message.  Otherwise, cause the bind to fail.
-      if (DirectoryServer.isRootDN(userEntry.getName())
-          || passwordPolicy.getStateUpdateFailurePolicy() == PasswordPolicyCfgDefn.StateUpdateFailurePolicy.IGNORE)
+      if (canIgnoreStateUpdateFailures())
       {
         logger.error(message);
       }
@@ -3072,4 +3109,15 @@ public final class PasswordPolicyState extends AuthenticationPolicyState
       }
     }
   }
+
+  /**
+   * Indicates whether a failure to update the password policy state of the user may be ignored rather than causing
+   * the bind to fail. Only then can the updates be written behind, since the bind has returned by the time they are
+   * written.
+   */
+  private boolean canIgnoreStateUpdateFailures()
+  {
+    return DirectoryServer.isRootDN(userEntry.getName())
+        || passwordPolicy.getStateUpdateFailurePolicy() == PasswordPolicyCfgDefn.StateUpdateFailurePolicy.IGNORE;
+  }
 }
@@ -0,0 +1,448 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.api.plugin.PluginType.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ModificationType;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.plugin.InternalDirectoryServerPlugin;
+import org.opends.server.api.plugin.PluginResult.PostResponse;
+import org.opends.server.api.plugin.PluginResult.PreOperation;
+import org.opends.server.protocols.ldap.LDAPAttribute;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.Modification;
+import org.opends.server.types.RawModification;
+import org.opends.server.types.operation.PostResponseDeleteOperation;
+import org.opends.server.types.operation.PostResponseModifyDNOperation;
+import org.opends.server.types.operation.PreOperationModifyOperation;
+
+/**
+ * Writes behind the password policy state updates performed by binds.
+ * <p>
+ * Instead of modifying the user entry at the end of each bind, the
+ * modifications of the password policy state (last login time, authentication
+ * failures, grace logins, etc.) are queued per user, coalesced, and written
+ * periodically with a single modify operation per user. Until they are
+ * written, the queued modifications are applied to the user entries read by
+ * subsequent binds, so that they remain authoritative: in particular, account
+ * lockout counts every authentication failure.
+ * <p>
+ * The queued modifications are written with one internal modify operation per
+ * user, rather than with a transaction spanning several users: the server has
+ * no operation modifying several entries at once, and writing to the backend
+ * directly would bypass the entry locks, plugins, access control and
+ * replication of the modify operations. Each interval therefore costs one
+ * modify operation, and one replicated change, per user who bound during the
+ * interval, instead of one per bind.
+ * <p>
+ * The updater of a password policy also queues the updates of the users
+ * governed by the subentry password policies which inherit from it: the
+ * password attribute of each user is recorded with its queued updates.
+ * <p>
+ * Queued modifications are discarded when another operation deletes or
+ * renames the user entry, or modifies its password or one of the attributes
+ * they modify (e.g. an administrator unlocking the account): the latest
+ * explicit change wins. Such modify operations discard the modifications
+ * before being applied, while holding the lock of the user entry: a write of
+ * the discarded modifications which has not acquired this lock yet is then
+ * cancelled instead of overwriting the explicit change.
+ * <p>
+ * Failures to write the queued modifications are only logged. Updates are
+ * therefore only written behind for the password policies which ignore state
+ * update failures.
+ */
+final class PasswordPolicyStateUpdater extends InternalDirectoryServerPlugin
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The state updates queued for a user. */
+  private static final class PendingUpdates
+  {
+    /** The modifications queued, and not yet written. Guarded by this object. */
+    private List<Modification> queued = new ArrayList<>();
+    /** The modifications currently being written. Guarded by this object. */
+    private List<Modification> inFlight = Collections.emptyList();
+    /** Whether these updates have been removed from the queue. Guarded by this object. */
+    private boolean isRemoved;
+    /** The password attribute of the password policy governing the user. Guarded by this object. */
+    private AttributeType passwordAttribute;
+  }
+
+  /** The password policy whose state updates are written by this updater. */
+  private final PasswordPolicy passwordPolicy;
+  /** The number of milliseconds between two writes of the queued updates. */
+  private final long interval;
+  private final ConcurrentMap<DN, PendingUpdates> pendingUpdates = new ConcurrentHashMap<>();
+  /** The updates the current thread is writing, if any. */
+  private final ThreadLocal<PendingUpdates> writing = new ThreadLocal<>();
+  private ScheduledExecutorService writer;
+
+  /**
+   * Creates a new password policy state updater.
+   *
+   * @param passwordPolicy
+   *          The password policy whose state updates are written by this
+   *          updater.
+   * @param interval
+   *          The number of milliseconds between two writes of the queued
+   *          updates.
+   */
+  PasswordPolicyStateUpdater(PasswordPolicy passwordPolicy, long interval)
+  {
+    super(passwordPolicy.getDN(),
+        EnumSet.of(PRE_OPERATION_MODIFY, POST_RESPONSE_MODIFY_DN, POST_RESPONSE_DELETE), true);
+    this.passwordPolicy = passwordPolicy;
+    this.interval = interval;
+  }
+
+  /**
+   * Returns the number of milliseconds between two writes of the queued
+   * updates.
+   *
+   * @return the number of milliseconds between two writes of the queued
+   *         updates
+   */
+  long getInterval()
+  {
+    return interval;
+  }
+
+  /** Starts writing queued updates periodically. */
+  void start()
+  {
+    DirectoryServer.registerInternalPlugin(this);
+    writer = Executors.newSingleThreadScheduledExecutor(
+        new DirectoryThread.Factory("Password Policy State Updater for " + passwordPolicy.getDN()));
+    writer.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        writePendingUpdates();
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops writing queued updates periodically, after writing those already queued. */
+  void stop()
+  {
+    writer.shutdown();
+    try
+    {
+      writer.awaitTermination(interval, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      logger.traceException(e);
+      Thread.currentThread().interrupt();
+    }
+    writePendingUpdates();
+    DirectoryServer.deregisterInternalPlugin(this);
+  }
+
+  /**
+   * Queues the provided password policy state modifications of a user.
+   *
+   * @param userDN
+   *          The DN of the user entry.
+   * @param passwordAttribute
+   *          The password attribute of the password policy governing the user.
+   * @param modifications
+   *          The modifications to apply to the user entry.
+   */
+  void queueUpdates(DN userDN, AttributeType passwordAttribute, List<Modification> modifications)
+  {
+    while (true)
+    {
+      PendingUpdates updates = pendingUpdates.get(userDN);
+      if (updates == null)
+      {
+        final PendingUpdates newUpdates = new PendingUpdates();
+        updates = pendingUpdates.putIfAbsent(userDN, newUpdates);
+        if (updates == null)
+        {
+          updates = newUpdates;
+        }
+      }
+
+      synchronized (updates)
+      {
+        if (!updates.isRemoved)
+        {
+          updates.passwordAttribute = passwordAttribute;
+          for (Modification modification : modifications)
+          {
+            coalesce(updates.queued, modification);
+          }
+          return;
+        }
+      }
+      // Removed concurrently, try again
+    }
+  }
+
+  /**
+   * Returns the provided user entry with the queued password policy state
+   * modifications applied.
+   *
+   * @param userEntry
+   *          The user entry read from its backend.
+   * @return A copy of the provided user entry with the queued modifications
+   *         applied, or the provided entry if there is no queued modification.
+   */
+  Entry applyPendingUpdates(Entry userEntry)
+  {
+    final PendingUpdates updates = pendingUpdates.get(userEntry.getName());
+    if (updates == null)
+    {
+      return userEntry;
+    }
+
+    final List<Modification> modifications = new ArrayList<>();
+    synchronized (updates)
+    {
+      modifications.addAll(updates.inFlight);
+      modifications.addAll(updates.queued);
+    }
+    if (modifications.isEmpty())
+    {
+      return userEntry;
+    }
+
+    final Entry entry = userEntry.duplicate(false);
+    for (Modification modification : modifications)
+    {
+      try
+      {
+        // Modifications being written may already be present in the entry
+        entry.applyModification(modification, true);
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+      }
+    }
+    return entry;
+  }
+
+  /** Writes the queued updates of all the users, with a single modify operation per user. */
+  void writePendingUpdates()
+  {
+    for (Map.Entry<DN, PendingUpdates> mapEntry : pendingUpdates.entrySet())
+    {
+      final DN userDN = mapEntry.getKey();
+      final PendingUpdates updates = mapEntry.getValue();
+      final List<Modification> modifications;
+      synchronized (updates)
+      {
+        if (updates.isRemoved || updates.queued.isEmpty())
+        {
+          continue;
+        }
+        modifications = updates.queued;
+        updates.inFlight = modifications;
+        updates.queued = new ArrayList<>();
+      }
+
+      write(userDN, updates, modifications);
+
+      synchronized (updates)
+      {
+        updates.inFlight = Collections.emptyList();
+        if (updates.queued.isEmpty() && !updates.isRemoved)
+        {
+          updates.isRemoved = true;
+          pendingUpdates.remove(userDN, updates);
+        }
+      }
+    }
+  }
+
+  private void write(DN userDN, PendingUpdates updates, List<Modification> modifications)
+  {
+    final List<RawModification> modList = new ArrayList<>(modifications.size());
+    for (Modification m : modifications)
+    {
+      modList.add(RawModification.create(m.getModificationType(), new LDAPAttribute(m.getAttribute())));
+    }
+
+    writing.set(updates);
+    try
+    {
+      final ModifyOperation internalModify =
+          getRootConnection().processModify(ByteString.valueOfUtf8(userDN.toString()), modList);
+      final ResultCode resultCode = internalModify.getResultCode();
+      if (resultCode == ResultCode.NO_SUCH_OBJECT)
+      {
+        logger.trace("Discarding password policy state updates of deleted user %s", userDN);
+      }
+      else if (resultCode == ResultCode.CANCELLED)
+      {
+        logger.trace("Cancelled the write of the discarded password policy state updates of user %s", userDN);
+      }
+      else if (resultCode != ResultCode.SUCCESS)
+      {
+        logger.error(ERR_PWPSTATE_CANNOT_UPDATE_USER_ENTRY.get(userDN, internalModify.getErrorMessage()));
+      }
+    }
+    finally
+    {
+      writing.remove();
+    }
+  }
+
+  /**
+   * Appends a modification to the queued ones. A replace supersedes the
+   * previous modifications of the same attribute.
+   */
+  private static void coalesce(List<Modification> queued, Modification modification)
+  {
+    if (modification.getModificationType() == ModificationType.REPLACE)
+    {
+      final Attribute attribute = modification.getAttribute();
+      for (Iterator<Modification> it = queued.iterator(); it.hasNext();)
+      {
+        final Attribute queuedAttribute = it.next().getAttribute();
+        if (queuedAttribute.getAttributeType().equals(attribute.getAttributeType())
+            && queuedAttribute.optionsEqual(attribute.getOptions()))
+        {
+          it.remove();
+        }
+      }
+    }
+    queued.add(modification);
+  }
+
+  /** Discards the queued updates of a user. */
+  private void discardPendingUpdates(DN userDN)
+  {
+    final PendingUpdates updates = pendingUpdates.remove(userDN);
+    if (updates != null)
+    {
+      synchronized (updates)
+      {
+        updates.isRemoved = true;
+      }
+      logger.trace("Discarding password policy state updates of user %s modified by another operation", userDN);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PreOperation doPreOperation(PreOperationModifyOperation op)
+  {
+    final PendingUpdates writtenUpdates = writing.get();
+    if (writtenUpdates != null)
+    {
+      // Do not overwrite the changes of the operation which discarded these updates
+      synchronized (writtenUpdates)
+      {
+        if (writtenUpdates.isRemoved)
+        {
+          return PreOperation.stopProcessing(ResultCode.CANCELLED,
+              INFO_PWPSTATE_WRITE_BEHIND_DISCARDED.get(op.getEntryDN()));
+        }
+      }
+      return PreOperation.continueOperationProcessing();
+    }
+
+    final PendingUpdates updates = pendingUpdates.get(op.getEntryDN());
+    if (updates == null)
+    {
+      return PreOperation.continueOperationProcessing();
+    }
+
+    final List<AttributeType> pendingTypes = new ArrayList<>();
+    final AttributeType passwordAttribute;
+    synchronized (updates)
+    {
+      passwordAttribute = updates.passwordAttribute;
+      for (Modification m : updates.inFlight)
+      {
+        pendingTypes.add(m.getAttribute().getAttributeType());
+      }
+      for (Modification m : updates.queued)
+      {
+        pendingTypes.add(m.getAttribute().getAttributeType());
+      }
+    }
+
+    for (Modification m : op.getModifications())
+    {
+      final AttributeType type = m.getAttribute().getAttributeType();
+      if (type.equals(passwordAttribute) || pendingTypes.contains(type))
+      {
+        discardPendingUpdates(op.getEntryDN());
+        break;
+      }
+    }
+    return PreOperation.continueOperationProcessing();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PostResponse doPostResponse(PostResponseDeleteOperation op)
+  {
+    if (op.getResultCode() == ResultCode.SUCCESS)
+    {
+      discardPendingUpdates(op.getEntryDN());
+    }
+    return PostResponse.continueOperationProcessing();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PostResponse doPostResponse(PostResponseModifyDNOperation op)
+  {
+    if (op.getResultCode() == ResultCode.SUCCESS)
+    {
+      discardPendingUpdates(op.getEntryDN());
+    }
+    return PostResponse.continueOperationProcessing();
+  }
+}
@@ -28,19 +28,30 @@ package org.opends.server.core;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.api.DirectoryThread;
 import org.opends.server.controls.EntryChangeNotificationControl;
 import org.opends.server.controls.PersistentSearchChangeType;
 import org.opends.server.types.CancelResult;
 import org.opends.server.types.Control;
 import org.opends.server.types.DN;
 import org.opends.server.types.DirectoryException;
+import org.opends.server.types.DisconnectReason;
 import org.opends.server.types.Entry;
 
+import static org.opends.messages.CoreMessages.*;
 import static org.opends.server.controls.PersistentSearchChangeType.*;
 
 /**
@@ -97,7 +108,74 @@ public final class PersistentSearch
   }
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** The maximum number of changes sent in a row to the same client before yielding to others. */
+  private static final int MAX_CHANGES_PER_DISPATCH = 64;
 
+  /**
+   * The threads sending changes to the clients, so that slow clients do not
+   * hold the threads which performed the changes. Created when the first
+   * change is queued and shut down with the server. Guarded by this class.
+   */
+  private static ThreadPoolExecutor dispatcher;
+
+  private static synchronized ThreadPoolExecutor getDispatcher()
+  {
+    if (dispatcher == null)
+    {
+      final int nbThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+      dispatcher = new ThreadPoolExecutor(nbThreads, nbThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new DirectoryThread.Factory("Persistent Search Dispatcher"));
+      dispatcher.allowCoreThreadTimeOut(true);
+    }
+    return dispatcher;
+  }
+
+  /**
+   * Stops the threads sending the changes to the clients of persistent
+   * searches. The changes which have not been sent yet are discarded. This is
+   * invoked when the server shuts down, once the client connections have been
+   * closed.
+   *
+   * @param timeLimit
+   *          The maximum number of milliseconds to wait for the threads to stop.
+   */
+  static void shutdownDispatcher(long timeLimit)
+  {
+    final ThreadPoolExecutor executor;
+    synchronized (PersistentSearch.class)
+    {
+      executor = dispatcher;
+      dispatcher = null;
+    }
+    if (executor == null)
+    {
+      return;
+    }
+
+    executor.shutdownNow();
+    try
+    {
+      executor.awaitTermination(timeLimit, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      logger.traceException(e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** A change waiting to be sent to the client. */
+  private static final class PendingChange
+  {
+    private final Entry entry;
+    private final List<Control> controls;
+
+    private PendingChange(Entry entry, List<Control> controls)
+    {
+      this.entry = entry;
+      this.controls = controls;
+    }
+  }
 
   /** Cancel a persistent search. */
   private static synchronized void cancel(PersistentSearch psearch)
@@ -105,6 +183,7 @@ public final class PersistentSearch
     if (!psearch.isCancelled)
     {
       psearch.isCancelled = true;
+      psearch.pendingChanges.clear();
 
       // The persistent search can no longer be cancelled.
       psearch.searchOperation.getClientConnection().deregisterPersistentSearch(psearch);
@@ -133,7 +212,25 @@ public final class PersistentSearch
   private final Set<PersistentSearchChangeType> changeTypes;
 
   /** Indicates whether or not this persistent search has already been aborted. */
-  private boolean isCancelled;
+  private volatile boolean isCancelled;
+
+  /** The changes waiting to be sent to the client. */
+  private final Queue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+  /** The number of changes waiting to be sent to the client. */
+  private final AtomicInteger nbPendingChanges = new AtomicInteger();
+  /** Indicates whether a dispatcher thread is sending the pending changes. */
+  private final AtomicBoolean isDispatching = new AtomicBoolean();
+  /** Indicates whether changes have already been dropped because the client could not keep up. */
+  private final AtomicBoolean hasDroppedChanges = new AtomicBoolean();
+
+  private final Runnable sendPendingChangesTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      sendPendingChanges();
+    }
+  };
 
   /**
    * Indicates whether entries returned should include the entry change
@@ -409,7 +506,101 @@ public final class PersistentSearch
     return Collections.emptyList();
   }
 
+  /**
+   * Queues the entry so that it is sent to the client by a dispatcher thread,
+   * or sends it right away when changes are not queued.
+   */
   private void sendEntry(Entry entry, List<Control> entryControls)
+  {
+    if (isCancelled)
+    {
+      return;
+    }
+
+    final int queueSize = DirectoryServer.getPersistentSearchQueueSize();
+    if (queueSize == 0 && nbPendingChanges.get() == 0)
+    {
+      sendEntryNow(entry, entryControls);
+      return;
+    }
+
+    if (nbPendingChanges.incrementAndGet() > queueSize && queueSize > 0)
+    {
+      nbPendingChanges.decrementAndGet();
+      handleQueueOverflow(queueSize);
+      return;
+    }
+    pendingChanges.add(new PendingChange(entry, entryControls));
+    scheduleSendPendingChanges();
+  }
+
+  private void scheduleSendPendingChanges()
+  {
+    if (isDispatching.compareAndSet(false, true))
+    {
+      try
+      {
+        getDispatcher().execute(sendPendingChangesTask);
+      }
+      catch (RejectedExecutionException e)
+      {
+        // The server is shutting down: the changes cannot be sent anymore
+        logger.traceException(e);
+        isDispatching.set(false);
+      }
+    }
+  }
+
+  private void sendPendingChanges()
+  {
+    try
+    {
+      for (int i = 0; i < MAX_CHANGES_PER_DISPATCH; i++)
+      {
+        final PendingChange change = pendingChanges.poll();
+        if (change == null)
+        {
+          break;
+        }
+        nbPendingChanges.decrementAndGet();
+        if (!isCancelled)
+        {
+          sendEntryNow(change.entry, change.controls);
+        }
+      }
+    }
+    finally
+    {
+      isDispatching.set(false);
+    }
+
+    // Changes may have been queued after the last poll()
+    if (!pendingChanges.isEmpty())
+    {
+      scheduleSendPendingChanges();
+    }
+  }
+
+  private void handleQueueOverflow(int queueSize)
+  {
+    if (!DirectoryServer.isDisconnectOnPersistentSearchQueueOverflow())
+    {
+      if (hasDroppedChanges.compareAndSet(false, true))
+      {
+        logger.warn(WARN_PSEARCH_QUEUE_OVERFLOW_DROP.get(this, queueSize));
+      }
+      return;
+    }
+
+    if (!isCancelled)
+    {
+      cancel();
+      searchOperation.getClientConnection().disconnect(DisconnectReason.ADMIN_LIMIT_EXCEEDED, false,
+          ERR_PSEARCH_QUEUE_OVERFLOW_DISCONNECT.get(this, queueSize));
+    }
+  }
+
+  private void sendEntryNow(Entry entry, List<Control> entryControls)
   {
     try
     {
@@ -0,0 +1,469 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ConditionResult;
+import org.forgerock.opendj.ldap.DecodeException;
+import org.forgerock.opendj.ldap.schema.MatchingRule;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.types.SubEntry;
+import org.opends.server.types.VirtualAttributeRule;
+
+/**
+ * Dispatches the changes performed against a backend to the persistent searches registered with
+ * it.
+ * <p>
+ * Persistent searches are indexed by base DN and, when their filter requires an equality assertion
+ * which can be indexed, by the normalized value of this assertion. When an entry changes, only the
+ * persistent searches whose base DN is a superior of the entry and whose indexed assertion matches
+ * one of the entry's values are notified, instead of every persistent search registered with the
+ * backend. When virtual attribute rules or collective attribute subentries may provide values of an
+ * indexed attribute for the entry, all the persistent searches indexed on this attribute are
+ * notified. The notified persistent searches still check their scope and filter before returning
+ * the entry.
+ * <p>
+ * Lookups do not take any lock. Registrations and deregistrations are serialized.
+ */
+public final class PersistentSearchRegistry
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The persistent searches registered against the same base DN. */
+  private static final class Node
+  {
+    /** Persistent searches whose filter does not require any indexable equality assertion. */
+    private final Set<PersistentSearch> unindexed = newConcurrentSet();
+    /** Persistent searches indexed by attribute type, then by normalized assertion value. */
+    private final ConcurrentMap<AttributeType, ConcurrentMap<ByteString, Term>> indexed = new ConcurrentHashMap<>();
+
+    private boolean isEmpty()
+    {
+      return unindexed.isEmpty() && indexed.isEmpty();
+    }
+  }
+
+  /** The persistent searches requiring the same equality assertion. */
+  private static final class Term
+  {
+    private final ByteString assertionValue;
+    private final Set<PersistentSearch> psearches = newConcurrentSet();
+
+    private Term(ByteString assertionValue)
+    {
+      this.assertionValue = assertionValue;
+    }
+  }
+
+  /** Where a persistent search has been registered. */
+  private static final class Registration
+  {
+    private final DN baseDN;
+    /** The indexed attribute type, or {@code null} if the persistent search is not indexed. */
+    private final AttributeType attributeType;
+    private final ByteString normalizedValue;
+    private final ByteString assertionValue;
+
+    private Registration(DN baseDN, AttributeType attributeType, ByteString normalizedValue,
+        ByteString assertionValue)
+    {
+      this.baseDN = baseDN;
+      this.attributeType = attributeType;
+      this.normalizedValue = normalizedValue;
+      this.assertionValue = assertionValue;
+    }
+  }
+
+  /** The registered persistent searches, guarded by this registry. */
+  private final Map<PersistentSearch, Registration> registrations = new HashMap<>();
+  /** The registered persistent searches, indexed by base DN. */
+  private final ConcurrentMap<DN, Node> nodes = new ConcurrentHashMap<>();
+
+  /**
+   * Registers the provided persistent search so that it will be notified of the changes performed
+   * on the entries within its scope.
+   *
+   * @param psearch
+   *          The persistent search to register.
+   */
+  public synchronized void register(PersistentSearch psearch)
+  {
+    if (registrations.containsKey(psearch))
+    {
+      return;
+    }
+
+    final SearchOperation searchOperation = psearch.getSearchOperation();
+    Registration registration = toRegistration(searchOperation.getBaseDN(), searchOperation.getFilter());
+    if (registration == null)
+    {
+      registration = new Registration(searchOperation.getBaseDN(), null, null, null);
+    }
+    registrations.put(psearch, registration);
+
+    Node node = nodes.get(registration.baseDN);
+    if (node == null)
+    {
+      node = new Node();
+      nodes.put(registration.baseDN, node);
+    }
+    if (registration.attributeType == null)
+    {
+      node.unindexed.add(psearch);
+      return;
+    }
+
+    ConcurrentMap<ByteString, Term> terms = node.indexed.get(registration.attributeType);
+    if (terms == null)
+    {
+      terms = new ConcurrentHashMap<>();
+      node.indexed.put(registration.attributeType, terms);
+    }
+    Term term = terms.get(registration.normalizedValue);
+    if (term == null)
+    {
+      term = new Term(registration.assertionValue);
+      terms.put(registration.normalizedValue, term);
+    }
+    term.psearches.add(psearch);
+  }
+
+  /**
+   * Deregisters the provided persistent search. It will no longer be notified of any change.
+   *
+   * @param psearch
+   *          The persistent search to deregister.
+   */
+  public synchronized void deregister(PersistentSearch psearch)
+  {
+    final Registration registration = registrations.remove(psearch);
+    if (registration == null)
+    {
+      return;
+    }
+
+    final Node node = nodes.get(registration.baseDN);
+    if (registration.attributeType == null)
+    {
+      node.unindexed.remove(psearch);
+    }
+    else
+    {
+      final ConcurrentMap<ByteString, Term> terms = node.indexed.get(registration.attributeType);
+      final Term term = terms.get(registration.normalizedValue);
+      term.psearches.remove(psearch);
+      if (term.psearches.isEmpty())
+      {
+        terms.remove(registration.normalizedValue);
+        if (terms.isEmpty())
+        {
+          node.indexed.remove(registration.attributeType);
+        }
+      }
+    }
+    if (node.isEmpty())
+    {
+      nodes.remove(registration.baseDN);
+    }
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been added.
+   *
+   * @param entry
+   *          The entry that was added.
+   */
+  public void processAdd(Entry entry)
+  {
+    for (PersistentSearch psearch : getCandidates(entry, entry.getName(), null, null))
+    {
+      psearch.processAdd(entry);
+    }
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been deleted.
+   *
+   * @param entry
+   *          The entry that was deleted.
+   */
+  public void processDelete(Entry entry)
+  {
+    for (PersistentSearch psearch : getCandidates(entry, entry.getName(), null, null))
+    {
+      psearch.processDelete(entry);
+    }
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been modified.
+   *
+   * @param entry
+   *          The entry after it was modified.
+   * @param oldEntry
+   *          The entry before it was modified.
+   */
+  public void processModify(Entry entry, Entry oldEntry)
+  {
+    for (PersistentSearch psearch : getCandidates(entry, oldEntry.getName(), oldEntry, oldEntry.getName()))
+    {
+      psearch.processModify(entry, oldEntry);
+    }
+  }
+
+  /**
+   * Notifies the persistent searches that an entry has been renamed.
+   *
+   * @param entry
+   *          The entry after it was renamed.
+   * @param oldDN
+   *          The DN of the entry before it was renamed.
+   */
+  public void processModifyDN(Entry entry, DN oldDN)
+  {
+    for (PersistentSearch psearch : getCandidates(entry, entry.getName(), entry, oldDN))
+    {
+      psearch.processModifyDN(entry, oldDN);
+    }
+  }
+
+  /**
+   * Returns the persistent searches which may be interested by a change to the provided entries:
+   * those registered with a base DN superior or equal to one of the provided DNs and whose indexed
+   * equality assertion, if any, matches one of the entries' values.
+   */
+  Set<PersistentSearch> getCandidates(Entry entry, DN dn, Entry otherEntry, DN otherDN)
+  {
+    if (nodes.isEmpty())
+    {
+      return Collections.emptySet();
+    }
+
+    final Set<PersistentSearch> candidates = new LinkedHashSet<>();
+    collectCandidates(entry, dn, candidates);
+    if (otherEntry != null)
+    {
+      collectCandidates(otherEntry, otherDN, candidates);
+    }
+    return candidates;
+  }
+
+  private void collectCandidates(Entry entry, DN dn, Set<PersistentSearch> candidates)
+  {
+    for (DN baseDN = dn; baseDN != null; baseDN = baseDN.parent())
+    {
+      collectCandidates(nodes.get(baseDN), entry, candidates);
+    }
+    if (!dn.isRootDN())
+    {
+      collectCandidates(nodes.get(DN.rootDN()), entry, candidates);
+    }
+  }
+
+  private void collectCandidates(Node node, Entry entry, Set<PersistentSearch> candidates)
+  {
+    if (node == null)
+    {
+      return;
+    }
+
+    candidates.addAll(node.unindexed);
+    for (Map.Entry<AttributeType, ConcurrentMap<ByteString, Term>> mapEntry : node.indexed.entrySet())
+    {
+      if (mayHaveComputedValues(mapEntry.getKey(), entry))
+      {
+        // The values computed for the entry are unknown here: let the persistent searches check their filter
+        for (Term term : mapEntry.getValue().values())
+        {
+          candidates.addAll(term.psearches);
+        }
+        continue;
+      }
+
+      final List<Attribute> attributes = entry.getAttribute(mapEntry.getKey());
+      if (attributes != null)
+      {
+        for (Attribute attribute : attributes)
+        {
+          collectCandidates(mapEntry.getKey(), attribute, mapEntry.getValue(), candidates);
+        }
+      }
+    }
+  }
+
+  private void collectCandidates(AttributeType attributeType, Attribute attribute,
+      Map<ByteString, Term> terms, Set<PersistentSearch> candidates)
+  {
+    if (terms.size() < attribute.size())
+    {
+      // Cheaper to evaluate each assertion against the attribute (e.g. large groups)
+      for (Term term : terms.values())
+      {
+        if (attribute.matchesEqualityAssertion(term.assertionValue) == ConditionResult.TRUE)
+        {
+          candidates.addAll(term.psearches);
+        }
+      }
+      return;
+    }
+
+    final MatchingRule rule = attributeType.getEqualityMatchingRule();
+    for (ByteString value : attribute)
+    {
+      final ByteString normalizedValue = normalize(rule, value);
+      final Term term = normalizedValue != null ? terms.get(normalizedValue) : null;
+      if (term != null)
+      {
+        candidates.addAll(term.psearches);
+      }
+    }
+  }
+
+  /**
+   * Returns where to register a persistent search with the provided base DN and filter, or
+   * {@code null} if the filter does not require any indexable equality assertion.
+   */
+  private static Registration toRegistration(DN baseDN, SearchFilter filter)
+  {
+    switch (filter.getFilterType())
+    {
+    case EQUALITY:
+      final AttributeType attributeType = filter.getAttributeType();
+      if (!isIndexable(attributeType))
+      {
+        return null;
+      }
+      final ByteString normalizedValue =
+          normalize(attributeType.getEqualityMatchingRule(), filter.getAssertionValue());
+      return normalizedValue != null
+          ? new Registration(baseDN, attributeType, normalizedValue, filter.getAssertionValue())
+          : null;
+    case AND:
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        final Registration registration = toRegistration(baseDN, component);
+        if (registration != null)
+        {
+          return registration;
+        }
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Operational attributes may be virtual and computed on demand, collective attributes are only
+   * provided by subentries, and values of attributes whose equality matching rule does not apply to
+   * their own syntax cannot be compared with the normalized assertion value.
+   */
+  private static boolean isIndexable(AttributeType attributeType)
+  {
+    final MatchingRule rule = attributeType.getEqualityMatchingRule();
+    return !attributeType.isOperational()
+        && !attributeType.isCollective()
+        && rule != null
+        && rule.getSyntax().getOID().equals(attributeType.getSyntax().getOID());
+  }
+
+  /**
+   * Indicates whether values of the provided attribute type or of one of its subtypes may be
+   * computed for the entry rather than stored in it, by a virtual attribute rule or by a collective
+   * attribute subentry. Both can be added while persistent searches are running, so this is checked
+   * for each change.
+   */
+  private static boolean mayHaveComputedValues(AttributeType attributeType, Entry entry)
+  {
+    for (VirtualAttributeRule rule : DirectoryServer.getVirtualAttributes())
+    {
+      if (isSameOrSubType(rule.getAttributeType(), attributeType))
+      {
+        return true;
+      }
+    }
+
+    final SubentryManager subentryManager = DirectoryServer.getSubentryManager();
+    if (subentryManager != null)
+    {
+      for (SubEntry subentry : subentryManager.getCollectiveSubentries(entry))
+      {
+        for (Attribute attribute : subentry.getCollectiveAttributes())
+        {
+          if (isSameOrSubType(attribute.getAttributeType(), attributeType))
+          {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSameOrSubType(AttributeType type, AttributeType superiorType)
+  {
+    for (AttributeType t = type; t != null; t = t.getSuperiorType())
+    {
+      if (t.equals(superiorType))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static ByteString normalize(MatchingRule rule, ByteString value)
+  {
+    try
+    {
+      return rule.normalizeAttributeValue(value);
+    }
+    catch (DecodeException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  private static Set<PersistentSearch> newConcurrentSet()
+  {
+    return Collections.newSetFromMap(new ConcurrentHashMap<PersistentSearch, Boolean>());
+  }
+}
@@ -603,6 +603,13 @@ public final class SubentryPasswordPolicy extends PasswordPolicy
     return getDefaultPasswordPolicy().getStateUpdateFailurePolicy();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  PasswordPolicyStateUpdater getStateUpdater()
+  {
+    return getDefaultPasswordPolicy().getStateUpdater();
+  }
+
   /** {@inheritDoc} */
   @Override
   public boolean isAuthPasswordSyntax()
@@ -0,0 +1,284 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.DN;
+
+/**
+ * Remembers the passwords successfully verified for the users of a password
+ * policy, so that repeated binds do not need to run expensive password storage
+ * schemes again.
+ * <p>
+ * The plaintext password is never stored: each user is associated with an HMAC
+ * of the verified password and of the encoded password values stored in its
+ * entry, computed with a random key generated for this cache. A verification
+ * is therefore only reused for the same password, as long as the password
+ * values of the user have not changed and until it expires.
+ * <p>
+ * Once the cache is full, a new user replaces the expired verifications, or
+ * the oldest one, among a few sampled users: the cost of an insertion does
+ * not depend on the size of the cache.
+ */
+public final class VerifiedCredentialCache
+{
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  /** The number of users examined to choose the one to evict. */
+  private static final int EVICTION_SAMPLES = 8;
+
+  /** A verified password. */
+  private static final class Verification
+  {
+    private final byte[] mac;
+    private final long expirationTime;
+
+    private Verification(byte[] mac, long expirationTime)
+    {
+      this.mac = mac;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  /** The maximum number of users in this cache. */
+  private final int maxEntries;
+  /** The number of milliseconds during which a verification is valid. */
+  private final long timeToLive;
+  private final ConcurrentMap<DN, Verification> verifications = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  /** The MAC of each thread, initialized with the key of this cache. */
+  private final ThreadLocal<Mac> macs;
+
+  /**
+   * Creates a new verified credential cache.
+   *
+   * @param maxEntries
+   *          The maximum number of users in this cache.
+   * @param timeToLive
+   *          The number of milliseconds during which a verification is valid.
+   * @throws GeneralSecurityException
+   *           If the MAC algorithm is not available.
+   */
+  VerifiedCredentialCache(int maxEntries, long timeToLive) throws GeneralSecurityException
+  {
+    this.maxEntries = maxEntries;
+    this.timeToLive = timeToLive;
+
+    final byte[] keyBytes = new byte[32];
+    new SecureRandom().nextBytes(keyBytes);
+    final SecretKeySpec key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+    // Fail early if the algorithm is not supported
+    Mac.getInstance(MAC_ALGORITHM).init(key);
+    macs = new ThreadLocal<Mac>()
+    {
+      @Override
+      protected Mac initialValue()
+      {
+        try
+        {
+          final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+          mac.init(key);
+          return mac;
+        }
+        catch (GeneralSecurityException e)
+        {
+          // Cannot happen: the algorithm and key have been checked by the constructor
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Indicates whether the provided password has already been verified for the
+   * provided user, and its verification has not expired.
+   *
+   * @param userDN
+   *          The DN of the user.
+   * @param storedPasswords
+   *          The password attributes of the user entry.
+   * @param password
+   *          The password provided by the user.
+   * @param currentTime
+   *          The current time in milliseconds.
+   * @return {@code true} if the password has already been verified.
+   */
+  boolean isVerified(DN userDN, List<Attribute> storedPasswords, ByteString password, long currentTime)
+  {
+    final Verification verification = verifications.get(userDN);
+    if (verification != null)
+    {
+      if (verification.expirationTime <= currentTime)
+      {
+        verifications.remove(userDN, verification);
+      }
+      else if (MessageDigest.isEqual(verification.mac, mac(storedPasswords, password)))
+      {
+        hits.incrementAndGet();
+        return true;
+      }
+    }
+    misses.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Records that the provided password has been successfully verified for the
+   * provided user.
+   *
+   * @param userDN
+   *          The DN of the user.
+   * @param storedPasswords
+   *          The password attributes of the user entry.
+   * @param password
+   *          The password provided by the user.
+   * @param currentTime
+   *          The current time in milliseconds.
+   */
+  void verified(DN userDN, List<Attribute> storedPasswords, ByteString password, long currentTime)
+  {
+    if (verifications.size() >= maxEntries && !verifications.containsKey(userDN))
+    {
+      evict(currentTime);
+    }
+    verifications.put(userDN, new Verification(mac(storedPasswords, password), currentTime + timeToLive));
+  }
+
+  /**
+   * Forgets the verified password of the provided user, if any.
+   *
+   * @param userDN
+   *          The DN of the user.
+   */
+  void invalidate(DN userDN)
+  {
+    verifications.remove(userDN);
+  }
+
+  /** Forgets all the verified passwords. */
+  void clear()
+  {
+    verifications.clear();
+  }
+
+  /**
+   * Returns the number of binds whose password was found in this cache.
+   *
+   * @return the number of binds whose password was found in this cache
+   */
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of binds whose password had to be verified by the
+   * password storage scheme.
+   *
+   * @return the number of binds whose password was not found in this cache
+   */
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of users whose password is currently cached.
+   *
+   * @return the number of users whose password is currently cached
+   */
+  public int size()
+  {
+    return verifications.size();
+  }
+
+  /**
+   * Makes room for a new user, by removing the expired verifications or, if
+   * none has expired, the oldest one among a few sampled users.
+   */
+  private void evict(long currentTime)
+  {
+    boolean evicted = false;
+    Map.Entry<DN, Verification> oldest = null;
+    final Iterator<Map.Entry<DN, Verification>> it = verifications.entrySet().iterator();
+    for (int i = 0; i < EVICTION_SAMPLES && it.hasNext(); i++)
+    {
+      final Map.Entry<DN, Verification> entry = it.next();
+      if (entry.getValue().expirationTime <= currentTime)
+      {
+        it.remove();
+        evicted = true;
+      }
+      else if (oldest == null || entry.getValue().expirationTime < oldest.getValue().expirationTime)
+      {
+        oldest = entry;
+      }
+    }
+    if (!evicted && oldest != null)
+    {
+      verifications.remove(oldest.getKey(), oldest.getValue());
+    }
+  }
+
+  private byte[] mac(List<Attribute> storedPasswords, ByteString password)
+  {
+    final Mac mac = macs.get();
+    for (Attribute attribute : storedPasswords)
+    {
+      for (ByteString value : attribute)
+      {
+        updateWithLength(mac, value);
+      }
+    }
+    updateWithLength(mac, password);
+    return mac.doFinal();
+  }
+
+  /** Prefixes each value with its length so that different sequences of values cannot collide. */
+  private static void updateWithLength(Mac mac, ByteString value)
+  {
+    final int length = value.length();
+    mac.update((byte) (length >>> 24));
+    mac.update((byte) (length >>> 16));
+    mac.update((byte) (length >>> 8));
+    mac.update((byte) length);
+    mac.update(value.toByteArray());
+  }
+}
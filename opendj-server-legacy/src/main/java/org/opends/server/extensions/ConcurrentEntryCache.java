@@ -0,0 +1,881 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.ConcurrentEntryCacheCfg;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.CacheEntry;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache designed for highly
+ * concurrent accesses.
+ * <BR><BR>
+ * Cache lookups never take any lock: the entries are held in concurrent hash
+ * maps indexed by DN and by backend and entry ID. The cache is split into
+ * segments, each entry belonging to the segment designated by the hash code of
+ * its DN, and updates only lock the segment of the entry they update.
+ * <BR><BR>
+ * Each segment keeps track of its entries with the CLOCK algorithm, an
+ * approximation of LRU: reading an entry marks it as referenced, and the entry
+ * to evict is the first unreferenced entry found by the clock hand, which
+ * clears the references of the entries it passes over.
+ * <BR><BR>
+ * Once the cache holds its maximum number of entries, a new entry is only
+ * admitted if it has been accessed more frequently than the entry it would
+ * evict. The frequencies are estimated by a small sketch recording the recent
+ * cache accesses, so that the entries read once by a large search do not flush
+ * the entries which are frequently read. Reads are recorded in the sketch
+ * through small per-thread buffers, so that cache hits do not contend on its
+ * counters.
+ * <BR><BR>
+ * Like the FIFO entry cache, this cache also stops growing once more than a
+ * specified percentage of the available memory within the JVM is consumed,
+ * and may be restricted to the entries matching a set of filters.
+ */
+public class ConcurrentEntryCache
+       extends EntryCache<ConcurrentEntryCacheCfg>
+       implements ConfigurationChangeListener<ConcurrentEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * The reference to the Java runtime used to determine the amount of memory
+   * currently in use.
+   */
+  private static final Runtime runtime = Runtime.getRuntime();
+
+  /** An entry held in the cache, linked in the clock of its segment. */
+  private static final class Node
+  {
+    private final CacheEntry cacheEntry;
+    private final int hash;
+    /** Whether the entry has been read since the clock hand last passed over it. */
+    private volatile boolean referenced;
+
+    /** The neighbours of this node in the clock, guarded by the segment lock. */
+    private Node previous;
+    private Node next;
+    /** Whether this node has been removed from the cache, guarded by the segment lock. */
+    private boolean removed;
+
+    private Node(CacheEntry cacheEntry)
+    {
+      this.cacheEntry = cacheEntry;
+      this.hash = cacheEntry.getDN().hashCode();
+    }
+
+    private DN getDN()
+    {
+      return cacheEntry.getDN();
+    }
+  }
+
+  /** A segment of the cache, holding the clock of the entries whose DN hashes to this segment. */
+  private static final class Segment
+  {
+    private final ReentrantLock lock = new ReentrantLock();
+    /** The clock hand, pointing to the next candidate for eviction, or null if the segment is empty. */
+    private Node hand;
+
+    /** Inserts a node just behind the clock hand, so that it will be the last one considered for eviction. */
+    private void link(Node node)
+    {
+      if (hand == null)
+      {
+        node.previous = node;
+        node.next = node;
+        hand = node;
+      }
+      else
+      {
+        node.next = hand;
+        node.previous = hand.previous;
+        hand.previous.next = node;
+        hand.previous = node;
+      }
+    }
+
+    private void unlink(Node node)
+    {
+      if (node.next == node)
+      {
+        hand = null;
+      }
+      else
+      {
+        if (hand == node)
+        {
+          hand = node.next;
+        }
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+      }
+      node.previous = null;
+      node.next = null;
+    }
+
+    /** Moves the clock hand to the first unreferenced node, clearing the references on its way. */
+    private Node selectVictim()
+    {
+      Node node = hand;
+      while (node.referenced)
+      {
+        node.referenced = false;
+        node = node.next;
+      }
+      hand = node;
+      return node;
+    }
+  }
+
+  /** The mapping between DNs and entries. */
+  private final ConcurrentMap<DN, Node> dnMap = new ConcurrentHashMap<>();
+
+  /** The mapping between entry backends/IDs and entries. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Node>> idMap = new ConcurrentHashMap<>();
+
+  /** The segments of the cache, whose number is a power of two. */
+  private final Segment[] segments;
+
+  /** The number of entries in the cache. */
+  private final AtomicLong cacheCount = new AtomicLong();
+
+  /** The number of entries evicted from the cache to make room for other entries. */
+  private final AtomicLong evictions = new AtomicLong();
+
+  /** The number of entries which have not been admitted because they are less frequently accessed. */
+  private final AtomicLong admissionRejections = new AtomicLong();
+
+  /** Estimates the access frequency of the entries, whether they are cached or not. */
+  private volatile FrequencySketch sketch;
+
+  /**
+   * The maximum amount of memory in bytes that the JVM will be allowed to use
+   * before we need to start purging entries.
+   */
+  private volatile long maxAllowedMemory;
+
+  /** The maximum number of entries that may be held in the cache. */
+  private volatile long maxEntries;
+
+  /** Currently registered configuration object. */
+  private ConcurrentEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this concurrent entry cache. */
+  public ConcurrentEntryCache()
+  {
+    super();
+    final int nbSegments = Integer.highestOneBit(Math.min(256, Math.max(4, 4 * runtime.availableProcessors())));
+    segments = new Segment[nbSegments];
+    for (int i = 0; i < nbSegments; i++)
+    {
+      segments[i] = new Segment();
+    }
+    // All other initialization should be performed in the initializeEntryCache.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeEntryCache(ConcurrentEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addConcurrentChangeListener(this);
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_CONCURRENTCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeConcurrentChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    clear();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    final Node node = dnMap.get(entryDN);
+    if (node == null)
+    {
+      // Record the access, so that the entry gets admitted if it is frequently read.
+      sketch.recordRead(entryDN.hashCode());
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    return hit(node);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(String backendID, long entryID)
+  {
+    // Look the entry up directly, rather than translating the ID to a DN first.
+    final Map<Long, Node> backendMap = idMap.get(backendID);
+    final Node node = backendMap != null ? backendMap.get(entryID) : null;
+    if (node == null)
+    {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    return hit(node);
+  }
+
+  private Entry hit(Node node)
+  {
+    if (!node.referenced)
+    {
+      // Avoid writing to shared memory when the entry is already marked.
+      node.referenced = true;
+    }
+    sketch.recordRead(node.hash);
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    return node.cacheEntry.getEntry();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    final Node node = dnMap.get(entryDN);
+    return node != null ? node.cacheEntry.getEntryID() : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    final Map<Long, Node> backendMap = idMap.get(backendID);
+    final Node node = backendMap != null ? backendMap.get(entryID) : null;
+    return node != null ? node.getDN() : null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    put(entry, backendID, entryID, false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    return put(entry, backendID, entryID, true);
+  }
+
+  /**
+   * Adds the provided entry to the cache, replacing the cached entry with the
+   * same DN if any, unless <CODE>onlyIfAbsent</CODE> is set.
+   *
+   * @return  <CODE>false</CODE> if an entry with the same DN is already cached
+   *          and <CODE>onlyIfAbsent</CODE> is set, <CODE>true</CODE> otherwise,
+   *          even if the entry has not been admitted in the cache.
+   */
+  private boolean put(Entry entry, String backendID, long entryID, boolean onlyIfAbsent)
+  {
+    final Node node = new Node(new CacheEntry(entry, backendID, entryID));
+    final DN entryDN = node.getDN();
+    final FrequencySketch currentSketch = sketch;
+    currentSketch.increment(node.hash);
+    if (cacheCount.get() >= maxEntries)
+    {
+      // Apply the buffered reads before comparing the frequencies, outside the segment lock.
+      currentSketch.drainReadBuffers();
+    }
+
+    final int segmentIndex = node.hash & (segments.length - 1);
+    final Segment segment = segments[segmentIndex];
+    segment.lock.lock();
+    try
+    {
+      final Node existing = dnMap.get(entryDN);
+      if (existing != null && onlyIfAbsent)
+      {
+        return false;
+      }
+
+      // See if the current memory usage is within acceptable constraints.  If
+      // not, then remove an existing entry and don't add the new entry.
+      long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+      if (usedMemory > maxAllowedMemory)
+      {
+        final Node victim = existing != null ? existing : (segment.hand != null ? segment.selectVictim() : null);
+        if (victim != null)
+        {
+          remove(segment, victim);
+          evictions.getAndIncrement();
+        }
+        return true;
+      }
+
+      if (existing != null)
+      {
+        // Replace the cached entry.
+        remove(segment, existing);
+      }
+      else if (cacheCount.get() >= maxEntries && segment.hand != null)
+      {
+        // The cache is full: only admit the new entry if it is accessed more
+        // frequently than the entry it would evict.
+        final Node victim = segment.selectVictim();
+        if (currentSketch.frequency(node.hash) <= currentSketch.frequency(victim.hash))
+        {
+          admissionRejections.getAndIncrement();
+          return true;
+        }
+        remove(segment, victim);
+        evictions.getAndIncrement();
+      }
+      add(segment, node, backendID, entryID);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // We can't be sure there wasn't a conflict, so return false.
+      return false;
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+
+    // The segment of the new entry may have been empty while the cache is full.
+    evictExcessEntries(segmentIndex);
+    return true;
+  }
+
+  /** Adds a node to the cache.  The caller must hold the segment lock. */
+  private void add(Segment segment, Node node, String backendID, long entryID)
+  {
+    segment.link(node);
+    dnMap.put(node.getDN(), node);
+
+    ConcurrentMap<Long, Node> backendMap = idMap.get(backendID);
+    if (backendMap == null)
+    {
+      final ConcurrentMap<Long, Node> newBackendMap = new ConcurrentHashMap<>();
+      backendMap = idMap.putIfAbsent(backendID, newBackendMap);
+      if (backendMap == null)
+      {
+        backendMap = newBackendMap;
+      }
+    }
+    backendMap.put(entryID, node);
+    cacheCount.getAndIncrement();
+  }
+
+  /** Removes a node from the cache.  The caller must hold the segment lock. */
+  private void remove(Segment segment, Node node)
+  {
+    if (node.removed)
+    {
+      return;
+    }
+    node.removed = true;
+    segment.unlink(node);
+    dnMap.remove(node.getDN(), node);
+
+    final Map<Long, Node> backendMap = idMap.get(node.cacheEntry.getBackendID());
+    if (backendMap != null)
+    {
+      // The entry ID may have been reused by an entry with another DN.
+      backendMap.remove(node.cacheEntry.getEntryID(), node);
+    }
+    cacheCount.getAndDecrement();
+  }
+
+  private Segment segmentOf(Node node)
+  {
+    return segments[node.hash & (segments.length - 1)];
+  }
+
+  /**
+   * Evicts entries until the cache holds no more than its maximum number of
+   * entries, starting with the provided segment.
+   */
+  private void evictExcessEntries(int firstSegmentIndex)
+  {
+    for (int i = 0; i < segments.length && cacheCount.get() > maxEntries;)
+    {
+      final Segment segment = segments[(firstSegmentIndex + i) & (segments.length - 1)];
+      segment.lock.lock();
+      try
+      {
+        if (segment.hand == null)
+        {
+          i++;
+          continue;
+        }
+        remove(segment, segment.selectVictim());
+        evictions.getAndIncrement();
+      }
+      finally
+      {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    final Node node = dnMap.get(entryDN);
+    if (node == null)
+    {
+      return;
+    }
+    final Segment segment = segmentOf(node);
+    segment.lock.lock();
+    try
+    {
+      // Make sure the entry has not been replaced in the meantime.
+      final Node current = dnMap.get(entryDN);
+      if (current != null)
+      {
+        remove(segment, current);
+      }
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear()
+  {
+    // Lock all the segments, always in the same order, so that no entry gets
+    // added while the cache is cleared.
+    for (Segment segment : segments)
+    {
+      segment.lock.lock();
+    }
+    try
+    {
+      for (Node node : dnMap.values())
+      {
+        node.removed = true;
+      }
+      for (Segment segment : segments)
+      {
+        segment.hand = null;
+      }
+      dnMap.clear();
+      idMap.clear();
+      cacheCount.set(0);
+    }
+    finally
+    {
+      for (Segment segment : segments)
+      {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    final Map<Long, Node> backendMap = idMap.remove(backendID);
+    if (backendMap == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    for (Node node : backendMap.values())
+    {
+      removeNode(node);
+    }
+  }
+
+  private void removeNode(Node node)
+  {
+    final Segment segment = segmentOf(node);
+    segment.lock.lock();
+    try
+    {
+      remove(segment, node);
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.  If
+    // not, then return.
+    final Map<Long, Node> backendMap = idMap.get(backend.getBackendID());
+    if (backendMap != null)
+    {
+      for (Node node : backendMap.values())
+      {
+        if (node.getDN().isDescendantOf(baseDN))
+        {
+          removeNode(node);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isDescendantOf(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void handleLowMemory()
+  {
+    // See how many entries are in the cache.  If there are less than 1000,
+    // then we'll dump all of them.  Otherwise, we'll dump 10% of the entries.
+    final long numEntries = cacheCount.get();
+    if (numEntries < 1000)
+    {
+      clear();
+      return;
+    }
+
+    final long numToDropPerSegment = numEntries / 10 / segments.length + 1;
+    for (Segment segment : segments)
+    {
+      segment.lock.lock();
+      try
+      {
+        for (long i = 0; i < numToDropPerSegment && segment.hand != null; i++)
+        {
+          remove(segment, segment.selectVictim());
+          evictions.getAndIncrement();
+        }
+      }
+      finally
+      {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    ConcurrentEntryCacheCfg config = (ConcurrentEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      ConcurrentEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons)
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(ConcurrentEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      ConcurrentEntryCacheCfg             configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Local variables to read configuration.
+    Set<SearchFilter> newIncludeFilters = null;
+    Set<SearchFilter> newExcludeFilters = null;
+
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxEntries  = configuration.getMaxEntries();
+
+    // Maximum memory the cache can use.
+    int newMaxMemoryPercent  = configuration.getMaxMemoryPercent();
+    long maxJvmHeapSize      = Runtime.getRuntime().maxMemory();
+    long newMaxAllowedMemory = (maxJvmHeapSize / 100) * newMaxMemoryPercent;
+
+    // Get include and exclude filters.
+    switch (errorHandler.getConfigPhase())
+    {
+    case PHASE_INIT:
+    case PHASE_ACCEPTABLE:
+    case PHASE_APPLY:
+      newIncludeFilters = EntryCacheCommon.getFilters (
+          configuration.getIncludeFilter(),
+          ERR_CACHE_INVALID_INCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      newExcludeFilters = EntryCacheCommon.getFilters (
+          configuration.getExcludeFilter(),
+          ERR_CACHE_INVALID_EXCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      break;
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      if (sketch == null || newMaxEntries != maxEntries)
+      {
+        sketch = new FrequencySketch(newMaxEntries);
+      }
+      maxEntries       = newMaxEntries;
+      maxAllowedMemory = newMaxAllowedMemory;
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+
+      // The maximum number of entries may have been lowered.
+      evictExcessEntries(0);
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    try {
+      final List<Attribute> attrs = EntryCacheCommon.getGenericMonitorData(
+        Long.valueOf(cacheHits.longValue()),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        null,
+        Long.valueOf(maxAllowedMemory),
+        Long.valueOf(cacheCount.get()),
+        Long.valueOf(
+            (maxEntries != Integer.MAX_VALUE && maxEntries != Long.MAX_VALUE) ? maxEntries : 0)
+        );
+      attrs.add(Attributes.create("entryCacheEvictions", String.valueOf(evictions.get())));
+      attrs.add(Attributes.create("entryCacheAdmissionRejections", String.valueOf(admissionRejections.get())));
+      return attrs;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return Collections.emptyList();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(cacheCount.get());
+  }
+
+  /**
+   * Returns the number of entries evicted from the cache to make room for other
+   * entries.
+   *
+   * @return  The number of entries evicted from the cache.
+   */
+  public long getEvictions()
+  {
+    return evictions.get();
+  }
+
+  /**
+   * Returns the number of entries which have not been admitted in the cache
+   * because they are less frequently accessed than the cached entries.
+   *
+   * @return  The number of entries which have not been admitted in the cache.
+   */
+  public long getAdmissionRejections()
+  {
+    return admissionRejections.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // Check dnMap first.
+    for (Node node : dnMap.values()) {
+      final CacheEntry cacheEntry = node.cacheEntry;
+      sb.append(cacheEntry.getDN());
+      sb.append(":");
+      sb.append(cacheEntry.getEntryID());
+      sb.append(":");
+      sb.append(cacheEntry.getBackendID());
+      sb.append(ServerConstants.EOL);
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // dnMap in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, Node>> backendCache : idMap.entrySet()) {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, Node> entry : backendCache.getValue().entrySet()) {
+        final Node node = entry.getValue();
+        if (dnMap.get(node.getDN()) != node) {
+          sb.append(node.getDN());
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A count-min sketch estimating how often keys have been accessed recently, used as the admission filter of
+ * {@link ConcurrentEntryCache}.
+ * <p>
+ * Each key is counted by four 4-bit counters, packed sixteen to a {@code long}, and its estimated frequency is the
+ * smallest of them. Once the number of increments reaches a sample size proportional to the size of the sketch, all
+ * the counters are halved, so that the sketch forgets about keys which are no longer accessed.
+ * <p>
+ * The counters are updated with compare-and-set operations: the sketch does not require any locking. Increments which
+ * race with the periodic halving may be lost, which is harmless for an approximate frequency.
+ * <p>
+ * Reads are frequent and must not contend on the counters: they are recorded in small lossy buffers, striped by thread,
+ * and applied to the counters in batches by the thread which finds its buffer full, or before admission decisions. A
+ * read recorded while the buffer is full and being drained by another thread, or while another thread is recording a
+ * read in the same buffer, is dropped.
+ */
+final class FrequencySketch
+{
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  /** Mask keeping the three lowest bits of each counter, used for halving all the counters at once. */
+  private static final long HALVING_MASK = 0x7777777777777777L;
+  private static final int MAX_COUNT = 15;
+  /** The maximum number of longs in the table, limiting the memory used by the sketch to 2MB. */
+  private static final int MAX_TABLE_LENGTH = 1 << 18;
+  /** The number of reads buffered per stripe before being applied to the counters. */
+  private static final int READ_BUFFER_SIZE = 16;
+  /** The maximum number of read buffers. */
+  private static final int MAX_READ_BUFFERS = 64;
+  /** Marks the non empty slots of the read buffers, since a hash code may be 0. */
+  private static final long READ_MARKER = 1L << 32;
+
+  /** A lossy ring buffer of the hash codes of the keys recently read by some threads. */
+  private static final class ReadBuffer
+  {
+    /** The buffered hash codes, marked with {@link #READ_MARKER}, or 0 for the empty slots. */
+    private final AtomicLongArray hashes = new AtomicLongArray(READ_BUFFER_SIZE);
+    /** The number of slots reserved so far. */
+    private final AtomicLong tail = new AtomicLong();
+    /** The number of slots drained so far, only written while holding the drain lock. */
+    private volatile long head;
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    /** Buffers the provided hash code, returning {@code false} if the buffer is full. */
+    private boolean offer(int hash)
+    {
+      final long currentTail = tail.get();
+      if (currentTail - head >= READ_BUFFER_SIZE)
+      {
+        return false;
+      }
+      if (tail.compareAndSet(currentTail, currentTail + 1))
+      {
+        hashes.lazySet((int) currentTail & (READ_BUFFER_SIZE - 1), READ_MARKER | (hash & 0xffffffffL));
+      }
+      // else another thread is recording a read in this buffer: drop this one
+      return true;
+    }
+  }
+
+  private final AtomicLongArray table;
+  private final int tableMask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+  private final ReadBuffer[] readBuffers;
+
+  /**
+   * Creates a new frequency sketch.
+   *
+   * @param maximumSize
+   *          the maximum number of keys whose frequency must be accurately estimated, typically the maximum number of
+   *          entries in the cache
+   */
+  FrequencySketch(long maximumSize)
+  {
+    final int length = ceilingPowerOfTwo((int) Math.max(16, Math.min(maximumSize, MAX_TABLE_LENGTH)));
+    this.table = new AtomicLongArray(length);
+    this.tableMask = length - 1;
+    this.sampleSize = 10 * length;
+    final int nbReadBuffers =
+        Math.min(ceilingPowerOfTwo(4 * Runtime.getRuntime().availableProcessors()), MAX_READ_BUFFERS);
+    this.readBuffers = new ReadBuffer[nbReadBuffers];
+    for (int i = 0; i < nbReadBuffers; i++)
+    {
+      readBuffers[i] = new ReadBuffer();
+    }
+  }
+
+  /**
+   * Returns the estimated number of times the provided key has been accessed recently.
+   *
+   * @param hash
+   *          the hash code of the key
+   * @return the estimated frequency of the key, between 0 and 15
+   */
+  int frequency(int hash)
+  {
+    final int spread = spread(hash);
+    final int start = (spread & 3) << 2;
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < 4; i++)
+    {
+      final long value = table.get(indexOf(spread, i));
+      frequency = Math.min(frequency, (int) ((value >>> ((start + i) << 2)) & 0xfL));
+    }
+    return frequency;
+  }
+
+  /**
+   * Records an access to the provided key.
+   *
+   * @param hash
+   *          the hash code of the key
+   */
+  void increment(int hash)
+  {
+    if (incrementCounters(hash))
+    {
+      addAdditions(1);
+    }
+  }
+
+  /**
+   * Records a read of the provided key. The read is buffered, and may be dropped under contention: use
+   * {@link #drainReadBuffers()} to apply the buffered reads to the counters.
+   *
+   * @param hash
+   *          the hash code of the key
+   */
+  void recordRead(int hash)
+  {
+    final ReadBuffer buffer = readBuffers[spread((int) Thread.currentThread().getId()) & (readBuffers.length - 1)];
+    if (!buffer.offer(hash))
+    {
+      drain(buffer);
+      // Still full if another thread is draining it: drop this read
+      buffer.offer(hash);
+    }
+  }
+
+  /** Applies the buffered reads to the counters, skipping the buffers being drained by other threads. */
+  void drainReadBuffers()
+  {
+    for (ReadBuffer buffer : readBuffers)
+    {
+      if (buffer.tail.get() != buffer.head)
+      {
+        drain(buffer);
+      }
+    }
+  }
+
+  private void drain(ReadBuffer buffer)
+  {
+    if (!buffer.drainLock.tryLock())
+    {
+      return;
+    }
+    try
+    {
+      int added = 0;
+      long head = buffer.head;
+      final long tail = buffer.tail.get();
+      for (; head < tail; head++)
+      {
+        final int index = (int) head & (READ_BUFFER_SIZE - 1);
+        final long value = buffer.hashes.get(index);
+        if (value == 0)
+        {
+          // The slot is reserved, but its hash code is not written yet
+          break;
+        }
+        buffer.hashes.lazySet(index, 0);
+        if (incrementCounters((int) value))
+        {
+          added++;
+        }
+      }
+      buffer.head = head;
+      if (added > 0)
+      {
+        addAdditions(added);
+      }
+    }
+    finally
+    {
+      buffer.drainLock.unlock();
+    }
+  }
+
+  /** Increments the counters of the provided key, returning whether any of them was incremented. */
+  private boolean incrementCounters(int hash)
+  {
+    final int spread = spread(hash);
+    final int start = (spread & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++)
+    {
+      added |= incrementAt(indexOf(spread, i), start + i);
+    }
+    return added;
+  }
+
+  private void addAdditions(int added)
+  {
+    if (additions.addAndGet(added) >= sampleSize)
+    {
+      reset();
+    }
+  }
+
+  /** Increments the specified counter of the specified long, unless it has reached its maximum value. */
+  private boolean incrementAt(int index, int counter)
+  {
+    final int offset = counter << 2;
+    final long mask = 0xfL << offset;
+    while (true)
+    {
+      final long value = table.get(index);
+      if ((value & mask) == mask)
+      {
+        return false;
+      }
+      if (table.compareAndSet(index, value, value + (1L << offset)))
+      {
+        return true;
+      }
+    }
+  }
+
+  /** Halves all the counters. */
+  private void reset()
+  {
+    final int currentAdditions = additions.get();
+    if (currentAdditions < sampleSize || !additions.compareAndSet(currentAdditions, currentAdditions / 2))
+    {
+      // Another thread is already halving the counters
+      return;
+    }
+    for (int i = 0; i < table.length(); i++)
+    {
+      while (true)
+      {
+        final long value = table.get(i);
+        if (table.compareAndSet(i, value, (value >>> 1) & HALVING_MASK))
+        {
+          break;
+        }
+      }
+    }
+  }
+
+  private int indexOf(int spread, int i)
+  {
+    long hash = (spread + SEEDS[i]) * SEEDS[i];
+    hash += hash >>> 32;
+    return (int) hash & tableMask;
+  }
+
+  /** Applies a supplemental hash function, protecting against poor quality hash codes. */
+  private static int spread(int hash)
+  {
+    int h = hash;
+    h = ((h >>> 16) ^ h) * 0x45d9f3b;
+    h = ((h >>> 16) ^ h) * 0x45d9f3b;
+    return (h >>> 16) ^ h;
+  }
+
+  private static int ceilingPowerOfTwo(int value)
+  {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+}
@@ -28,7 +28,6 @@ package org.opends.server.extensions;
 
 
 
-import java.security.MessageDigest;
 import java.util.Arrays;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -72,10 +71,7 @@ public class MD5PasswordStorageScheme
 
 
   /** The message digest that will actually be used to generate the MD5 hashes. */
-  private MessageDigest messageDigest;
-
-  /** The lock used to provide threadsafe access to the message digest. */
-  private Object digestLock;
+  private ThreadLocalMessageDigest messageDigest;
 
 
 
@@ -100,7 +96,7 @@ public class MD5PasswordStorageScheme
   {
     try
     {
-      messageDigest = MessageDigest.getInstance(MESSAGE_DIGEST_ALGORITHM_MD5);
+      messageDigest = new ThreadLocalMessageDigest(MESSAGE_DIGEST_ALGORITHM_MD5);
     }
     catch (Exception e)
     {
@@ -110,8 +106,6 @@ public class MD5PasswordStorageScheme
           MESSAGE_DIGEST_ALGORITHM_MD5, e);
       throw new InitializationException(message, e);
     }
-
-    digestLock = new Object();
   }
 
 
@@ -133,29 +127,26 @@ public class MD5PasswordStorageScheme
     byte[] digestBytes;
     byte[] plaintextBytes = null;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        // TODO: Can we avoid this copy?
-        plaintextBytes = plaintext.toByteArray();
-        digestBytes = messageDigest.digest(plaintextBytes);
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      // TODO: Can we avoid this copy?
+      plaintextBytes = plaintext.toByteArray();
+      digestBytes = messageDigest.digest(plaintextBytes);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
-            CLASS_NAME, getExceptionMessage(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-                                     message, e);
-      }
-      finally
+      LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
+          CLASS_NAME, getExceptionMessage(e));
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+                                   message, e);
+    }
+    finally
+    {
+      if (plaintextBytes != null)
       {
-        if (plaintextBytes != null)
-        {
-          Arrays.fill(plaintextBytes, (byte) 0);
-        }
+        Arrays.fill(plaintextBytes, (byte) 0);
       }
     }
 
@@ -177,29 +168,26 @@ public class MD5PasswordStorageScheme
     byte[] plaintextBytes = null;
     byte[] digestBytes;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        // TODO: Can we avoid this copy?
-        plaintextBytes = plaintext.toByteArray();
-        digestBytes = messageDigest.digest(plaintextBytes);
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      // TODO: Can we avoid this copy?
+      plaintextBytes = plaintext.toByteArray();
+      digestBytes = messageDigest.digest(plaintextBytes);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
-            CLASS_NAME, getExceptionMessage(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-                                     message, e);
-      }
-      finally
+      LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
+          CLASS_NAME, getExceptionMessage(e));
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+                                   message, e);
+    }
+    finally
+    {
+      if (plaintextBytes != null)
       {
-        if (plaintextBytes != null)
-        {
-          Arrays.fill(plaintextBytes, (byte) 0);
-        }
+        Arrays.fill(plaintextBytes, (byte) 0);
       }
     }
 
@@ -219,27 +207,24 @@ public class MD5PasswordStorageScheme
     byte[] plaintextPasswordBytes = null;
     ByteString userPWDigestBytes;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        // TODO: Can we avoid this copy?
-        plaintextPasswordBytes = plaintextPassword.toByteArray();
-        userPWDigestBytes =
-            ByteString.wrap(messageDigest.digest(plaintextPasswordBytes));
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      // TODO: Can we avoid this copy?
+      plaintextPasswordBytes = plaintextPassword.toByteArray();
+      userPWDigestBytes =
+          ByteString.wrap(messageDigest.digest(plaintextPasswordBytes));
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        return false;
-      }
-      finally
+      return false;
+    }
+    finally
+    {
+      if (plaintextPasswordBytes != null)
       {
-        if (plaintextPasswordBytes != null)
-        {
-          Arrays.fill(plaintextPasswordBytes, (byte) 0);
-        }
+        Arrays.fill(plaintextPasswordBytes, (byte) 0);
       }
     }
 
@@ -0,0 +1,852 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.admin.std.server.OffHeapEntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache that stores the entries
+ * outside of the Java heap, in their compact encoded form, so that very large
+ * caches do not increase the garbage collection pauses.
+ * <BR><BR>
+ * The cache memory is made of direct byte buffers called regions, filled
+ * sequentially like a log. Once all the regions are full, the region holding
+ * the oldest entries is recycled as a whole, evicting all the entries it holds.
+ * Only the index of the cached entries, mapping their DN and their backend and
+ * entry ID to their location in the regions, is held on the heap, and cached
+ * entries are decoded each time they are read.
+ * <BR><BR>
+ * The size of the cache memory is configured with a byte budget, and may be
+ * restricted to the entries matching a set of filters.
+ */
+public class OffHeapEntryCache
+       extends EntryCache<OffHeapEntryCacheCfg>
+       implements ConfigurationChangeListener<OffHeapEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The minimum size of a region. */
+  private static final int MIN_REGION_SIZE = 64 * 1024;
+  /** The maximum size of a region, which is also the maximum size of a cached entry. */
+  private static final int MAX_REGION_SIZE = 1024 * 1024 * 1024;
+  /** The number of regions the cache memory is split into, unless regions would be too small or too big. */
+  private static final int PREFERRED_NB_REGIONS = 32;
+
+  /** The location of a cached entry in the cache memory. */
+  private static final class Slot
+  {
+    private final Region region;
+    private final int generation;
+    private final int offset;
+    private final int length;
+    private final DN dn;
+    private final String backendID;
+    private final long entryID;
+
+    private Slot(Region region, int offset, int length, DN dn, String backendID, long entryID)
+    {
+      this.region = region;
+      this.generation = region.generation;
+      this.offset = offset;
+      this.length = length;
+      this.dn = dn;
+      this.backendID = backendID;
+      this.entryID = entryID;
+    }
+  }
+
+  /** A direct byte buffer, filled sequentially with encoded entries and recycled as a whole. */
+  private static final class Region
+  {
+    private final ByteBuffer buffer;
+    /** Incremented each time the region is recycled, invalidating the slots pointing to this region. */
+    private volatile int generation;
+    /** The number of threads currently copying an entry out of this region. */
+    private final AtomicInteger readers = new AtomicInteger();
+
+    /** The position where to write the next entry, guarded by the write lock. */
+    private int writePosition;
+    /** The slots written in this region since it was last recycled, guarded by the write lock. */
+    private final List<Slot> slots = new ArrayList<>();
+
+    private Region(int size)
+    {
+      this.buffer = ByteBuffer.allocateDirect(size);
+    }
+  }
+
+  /** The encoding of the cached entries: the DN is stored in the slots. */
+  private final EntryEncodeConfig encodeConfig = new EntryEncodeConfig(true, true, true);
+
+  /** The mapping between DNs and entries. */
+  private final ConcurrentMap<DN, Slot> dnMap = new ConcurrentHashMap<>();
+
+  /** The mapping between entry backends/IDs and entries. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Slot>> idMap = new ConcurrentHashMap<>();
+
+  /** The lock guarding the writes to the regions. */
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  /** The regions, allocated on demand, guarded by the write lock. */
+  private Region[] regions = new Region[0];
+  /** The index of the region being filled, guarded by the write lock. */
+  private int currentRegion;
+  /** The size of each region. */
+  private int regionSize;
+
+  /** The total size of the cached entries, in bytes. */
+  private final AtomicLong cacheSize = new AtomicLong();
+
+  /** The number of entries evicted from the cache when recycling a region. */
+  private final AtomicLong evictions = new AtomicLong();
+
+  /** The maximum size of the cache memory, in bytes. */
+  private long maxMemorySize;
+
+  /** Currently registered configuration object. */
+  private OffHeapEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this off-heap entry cache. */
+  public OffHeapEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeEntryCache(OffHeapEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addOffHeapChangeListener(this);
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_OFFHEAPCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeOffHeapChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    writeLock.lock();
+    try
+    {
+      clear();
+      // The direct buffers will be released once garbage collected.
+      regions = new Region[0];
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    return getEntry(dnMap.get(entryDN));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(String backendID, long entryID)
+  {
+    // Look the entry up directly, rather than translating the ID to a DN first.
+    return getEntry(getSlot(backendID, entryID));
+  }
+
+  private Entry getEntry(Slot slot)
+  {
+    final Entry entry = slot != null ? read(slot) : null;
+    if (entry == null)
+    {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    return entry;
+  }
+
+  /**
+   * Copies an entry out of the cache memory and decodes it.
+   *
+   * @return  The entry, or <CODE>null</CODE> if its region has been recycled.
+   */
+  private Entry read(Slot slot)
+  {
+    final Region region = slot.region;
+    final byte[] bytes = new byte[slot.length];
+
+    // Registering as a reader before checking the generation ensures the
+    // region cannot be overwritten until the copy is done.
+    region.readers.getAndIncrement();
+    try
+    {
+      if (region.generation != slot.generation)
+      {
+        return null;
+      }
+      final ByteBuffer buffer = region.buffer.duplicate();
+      buffer.position(slot.offset);
+      buffer.get(bytes);
+    }
+    finally
+    {
+      region.readers.getAndDecrement();
+    }
+
+    try
+    {
+      final Entry entry = Entry.decode(ByteString.wrap(bytes).asReader(), encodeConfig.getCompressedSchema());
+      entry.setDN(slot.dn);
+      return entry;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  private Slot getSlot(String backendID, long entryID)
+  {
+    final Map<Long, Slot> backendMap = idMap.get(backendID);
+    return backendMap != null ? backendMap.get(entryID) : null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    final Slot slot = dnMap.get(entryDN);
+    return slot != null ? slot.entryID : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    final Slot slot = getSlot(backendID, entryID);
+    return slot != null ? slot.dn : null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    put(entry, backendID, entryID, false);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    return put(entry, backendID, entryID, true);
+  }
+
+  /**
+   * Adds the provided entry to the cache, replacing the cached entry with the
+   * same DN if any, unless <CODE>onlyIfAbsent</CODE> is set.
+   *
+   * @return  <CODE>false</CODE> if an entry with the same DN is already cached
+   *          and <CODE>onlyIfAbsent</CODE> is set, <CODE>true</CODE> otherwise,
+   *          even if the entry could not be cached.
+   */
+  private boolean put(Entry entry, String backendID, long entryID, boolean onlyIfAbsent)
+  {
+    final DN entryDN = entry.getName();
+    if (onlyIfAbsent && dnMap.containsKey(entryDN))
+    {
+      return false;
+    }
+
+    // Encode the entry before taking the lock.
+    final ByteStringBuilder buffer = new ByteStringBuilder();
+    try
+    {
+      entry.encode(buffer, encodeConfig);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      return !onlyIfAbsent;
+    }
+
+    writeLock.lock();
+    try
+    {
+      if (onlyIfAbsent && dnMap.containsKey(entryDN))
+      {
+        return false;
+      }
+
+      final Region region = getRegionWithRoom(buffer.length());
+      if (region == null)
+      {
+        // The entry is too big, or no memory could be allocated.
+        return true;
+      }
+      final ByteBuffer regionBuffer = region.buffer.duplicate();
+      regionBuffer.position(region.writePosition);
+      regionBuffer.put(buffer.getBackingArray(), 0, buffer.length());
+
+      final Slot slot = new Slot(region, region.writePosition, buffer.length(), entryDN, backendID, entryID);
+      region.writePosition += buffer.length();
+      region.slots.add(slot);
+
+      final Slot previous = dnMap.put(entryDN, slot);
+      if (previous != null)
+      {
+        unindex(previous);
+      }
+      ConcurrentMap<Long, Slot> backendMap = idMap.get(backendID);
+      if (backendMap == null)
+      {
+        final ConcurrentMap<Long, Slot> newBackendMap = new ConcurrentHashMap<>();
+        backendMap = idMap.putIfAbsent(backendID, newBackendMap);
+        if (backendMap == null)
+        {
+          backendMap = newBackendMap;
+        }
+      }
+      backendMap.put(entryID, slot);
+      cacheSize.addAndGet(slot.length);
+      return true;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // We can't be sure there wasn't a conflict, so return false.
+      return false;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Returns a region with enough room for an entry of the provided length,
+   * recycling the oldest region if needed.  The caller must hold the write
+   * lock.
+   *
+   * @return  The region, or <CODE>null</CODE> if the entry cannot be cached.
+   */
+  private Region getRegionWithRoom(int length)
+  {
+    if (length > regionSize || regions.length == 0)
+    {
+      return null;
+    }
+    Region region = regions[currentRegion];
+    if (region != null && regionSize - region.writePosition >= length)
+    {
+      return region;
+    }
+
+    final int nextRegion = region != null ? (currentRegion + 1) % regions.length : currentRegion;
+    region = regions[nextRegion];
+    if (region == null)
+    {
+      try
+      {
+        region = new Region(regionSize);
+      }
+      catch (OutOfMemoryError e)
+      {
+        // Not enough direct memory: keep using the allocated regions.
+        logger.traceException(e);
+        if (nextRegion == 0)
+        {
+          return null;
+        }
+        regions = Arrays.copyOf(regions, nextRegion);
+        currentRegion = 0;
+        region = regions[0];
+        recycle(region);
+        return region;
+      }
+      regions[nextRegion] = region;
+    }
+    else
+    {
+      recycle(region);
+    }
+    currentRegion = nextRegion;
+    return region;
+  }
+
+  /**
+   * Evicts all the entries held in a region, and waits for the threads copying
+   * entries out of the region before making it available for new entries.  The
+   * caller must hold the write lock.
+   */
+  private void recycle(Region region)
+  {
+    region.generation++;
+    for (Slot slot : region.slots)
+    {
+      if (dnMap.remove(slot.dn, slot))
+      {
+        unindex(slot);
+        evictions.getAndIncrement();
+      }
+    }
+    region.slots.clear();
+    region.writePosition = 0;
+
+    while (region.readers.get() != 0)
+    {
+      Thread.yield();
+    }
+  }
+
+  /** Removes a slot which is no longer referenced by the DN map from the ID map. */
+  private void unindex(Slot slot)
+  {
+    final Map<Long, Slot> backendMap = idMap.get(slot.backendID);
+    if (backendMap != null)
+    {
+      // The entry ID may have been reused by an entry with another DN.
+      backendMap.remove(slot.entryID, slot);
+    }
+    cacheSize.addAndGet(-slot.length);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    // The memory used by the entry will be reclaimed when its region gets
+    // recycled.
+    final Slot slot = dnMap.remove(entryDN);
+    if (slot != null)
+    {
+      unindex(slot);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear()
+  {
+    writeLock.lock();
+    try
+    {
+      for (Region region : regions)
+      {
+        if (region != null)
+        {
+          recycle(region);
+        }
+      }
+      currentRegion = 0;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    final Map<Long, Slot> backendMap = idMap.remove(backendID);
+    if (backendMap == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    for (Slot slot : backendMap.values())
+    {
+      if (dnMap.remove(slot.dn, slot))
+      {
+        cacheSize.addAndGet(-slot.length);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.  If
+    // not, then return.
+    final Map<Long, Slot> backendMap = idMap.get(backend.getBackendID());
+    if (backendMap != null)
+    {
+      for (Slot slot : backendMap.values())
+      {
+        if (slot.dn.isDescendantOf(baseDN) && dnMap.remove(slot.dn, slot))
+        {
+          unindex(slot);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isDescendantOf(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void handleLowMemory()
+  {
+    // The cached entries are not held on the heap, but their index is: evict
+    // the oldest tenth of the entries by recycling the oldest regions.
+    writeLock.lock();
+    try
+    {
+      int nbRegionsToRecycle = Math.max(1, getNbAllocatedRegions() / 10);
+      // The oldest region follows the region being filled, which is the last
+      // one to be recycled.
+      for (int i = 1; i <= regions.length && nbRegionsToRecycle > 0; i++)
+      {
+        final Region region = regions[(currentRegion + i) % regions.length];
+        if (region != null)
+        {
+          recycle(region);
+          nbRegionsToRecycle--;
+        }
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  private int getNbAllocatedRegions()
+  {
+    int nbAllocatedRegions = 0;
+    for (Region region : regions)
+    {
+      if (region != null)
+      {
+        nbAllocatedRegions++;
+      }
+    }
+    return nbAllocatedRegions;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    OffHeapEntryCacheCfg config = (OffHeapEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      OffHeapEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons)
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(OffHeapEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      OffHeapEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Local variables to read configuration.
+    Set<SearchFilter> newIncludeFilters = null;
+    Set<SearchFilter> newExcludeFilters = null;
+
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxMemorySize = configuration.getMaxMemorySize();
+
+    // Get include and exclude filters.
+    switch (errorHandler.getConfigPhase())
+    {
+    case PHASE_INIT:
+    case PHASE_ACCEPTABLE:
+    case PHASE_APPLY:
+      newIncludeFilters = EntryCacheCommon.getFilters (
+          configuration.getIncludeFilter(),
+          ERR_CACHE_INVALID_INCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      newExcludeFilters = EntryCacheCommon.getFilters (
+          configuration.getExcludeFilter(),
+          ERR_CACHE_INVALID_EXCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      break;
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      if (newMaxMemorySize != maxMemorySize)
+      {
+        resize(newMaxMemorySize);
+      }
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** Drops the cached entries, and splits the new cache memory size into regions. */
+  private void resize(long newMaxMemorySize)
+  {
+    writeLock.lock();
+    try
+    {
+      clear();
+      regionSize = (int) Math.max(MIN_REGION_SIZE, Math.min(MAX_REGION_SIZE, newMaxMemorySize / PREFERRED_NB_REGIONS));
+      // Regions are allocated on demand, so that memory is only used when needed.
+      regions = new Region[(int) Math.max(1, newMaxMemorySize / regionSize)];
+      currentRegion = 0;
+      maxMemorySize = newMaxMemorySize;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    try {
+      final List<Attribute> attrs = EntryCacheCommon.getGenericMonitorData(
+        Long.valueOf(cacheHits.longValue()),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        Long.valueOf(cacheSize.get()),
+        Long.valueOf(maxMemorySize),
+        Long.valueOf(dnMap.size()),
+        null
+        );
+      attrs.add(Attributes.create("entryCacheEvictions", String.valueOf(evictions.get())));
+      return attrs;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return Collections.emptyList();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  /**
+   * Returns the number of entries evicted from the cache to make room for other
+   * entries.
+   *
+   * @return  The number of entries evicted from the cache.
+   */
+  public long getEvictions()
+  {
+    return evictions.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // Check dnMap first.
+    for (Slot slot : dnMap.values()) {
+      sb.append(slot.dn);
+      sb.append(":");
+      sb.append(slot.entryID);
+      sb.append(":");
+      sb.append(slot.backendID);
+      sb.append(ServerConstants.EOL);
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // dnMap in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, Slot>> backendCache : idMap.entrySet()) {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, Slot> entry : backendCache.getValue().entrySet()) {
+        final Slot slot = entry.getValue();
+        if (dnMap.get(slot.dn) != slot) {
+          sb.append(slot.dn);
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+}
@@ -31,6 +31,7 @@ package org.opends.server.extensions;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.opends.server.admin.std.server.SaltedSHA1PasswordStorageSchemeCfg;
@@ -85,13 +86,7 @@ public class SaltedSHA1PasswordStorageScheme
 
 
   /** The message digest that will actually be used to generate the SHA-1 hashes. */
-  private MessageDigest messageDigest;
-
-  /** The lock used to provide threadsafe access to the message digest. */
-  private Object digestLock;
-
-  /** The secure random number generator to use to generate the salt values. */
-  private Random random;
+  private ThreadLocalMessageDigest messageDigest;
 
 
 
@@ -115,7 +110,7 @@ public class SaltedSHA1PasswordStorageScheme
   {
     try
     {
-      messageDigest = MessageDigest.getInstance(MESSAGE_DIGEST_ALGORITHM_SHA_1);
+      messageDigest = new ThreadLocalMessageDigest(MESSAGE_DIGEST_ALGORITHM_SHA_1);
     }
     catch (Exception e)
     {
@@ -124,9 +119,6 @@ public class SaltedSHA1PasswordStorageScheme
       LocalizableMessage message = ERR_PWSCHEME_CANNOT_INITIALIZE_MESSAGE_DIGEST.get(MESSAGE_DIGEST_ALGORITHM_SHA_1, e);
       throw new InitializationException(message, e);
     }
-
-    digestLock = new Object();
-    random     = new Random();
   }
 
 
@@ -153,31 +145,28 @@ public class SaltedSHA1PasswordStorageScheme
 
     byte[] digestBytes;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        // Generate the salt and put in the plain+salt array.
-        random.nextBytes(saltBytes);
-        System.arraycopy(saltBytes,0, plainPlusSalt, plainBytesLength,
-                         NUM_SALT_BYTES);
+      // Generate the salt and put in the plain+salt array.
+      ThreadLocalRandom.current().nextBytes(saltBytes);
+      System.arraycopy(saltBytes,0, plainPlusSalt, plainBytesLength,
+                       NUM_SALT_BYTES);
 
-        // Create the hash from the concatenated value.
-        digestBytes = messageDigest.digest(plainPlusSalt);
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      // Create the hash from the concatenated value.
+      digestBytes = messageDigest.digest(plainPlusSalt);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
-            CLASS_NAME, getExceptionMessage(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-                                     message, e);
-      }
-      finally
-      {
-        Arrays.fill(plainPlusSalt, (byte) 0);
-      }
+      LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
+          CLASS_NAME, getExceptionMessage(e));
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+                                   message, e);
+    }
+    finally
+    {
+      Arrays.fill(plainPlusSalt, (byte) 0);
     }
 
     // Append the salt to the hashed value and base64-the whole thing.
@@ -210,31 +199,28 @@ public class SaltedSHA1PasswordStorageScheme
 
     byte[] digestBytes;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        // Generate the salt and put in the plain+salt array.
-        random.nextBytes(saltBytes);
-        System.arraycopy(saltBytes,0, plainPlusSalt, plainBytesLength,
-                         NUM_SALT_BYTES);
+      // Generate the salt and put in the plain+salt array.
+      ThreadLocalRandom.current().nextBytes(saltBytes);
+      System.arraycopy(saltBytes,0, plainPlusSalt, plainBytesLength,
+                       NUM_SALT_BYTES);
 
-        // Create the hash from the concatenated value.
-        digestBytes = messageDigest.digest(plainPlusSalt);
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      // Create the hash from the concatenated value.
+      digestBytes = messageDigest.digest(plainPlusSalt);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
-            CLASS_NAME, getExceptionMessage(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-                                     message, e);
-      }
-      finally
-      {
-        Arrays.fill(plainPlusSalt, (byte) 0);
-      }
+      LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
+          CLASS_NAME, getExceptionMessage(e));
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+                                   message, e);
+    }
+    finally
+    {
+      Arrays.fill(plainPlusSalt, (byte) 0);
     }
 
     // Append the salt to the hashed value and base64-the whole thing.
@@ -291,22 +277,19 @@ public class SaltedSHA1PasswordStorageScheme
 
     byte[] userDigestBytes;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        userDigestBytes = messageDigest.digest(plainPlusSalt);
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      userDigestBytes = messageDigest.digest(plainPlusSalt);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        return false;
-      }
-      finally
-      {
-        Arrays.fill(plainPlusSalt, (byte) 0);
-      }
+      return false;
+    }
+    finally
+    {
+      Arrays.fill(plainPlusSalt, (byte) 0);
     }
 
     return Arrays.equals(digestBytes, userDigestBytes);
@@ -346,31 +329,28 @@ public class SaltedSHA1PasswordStorageScheme
 
     byte[] digestBytes;
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        // Generate the salt and put in the plain+salt array.
-        random.nextBytes(saltBytes);
-        System.arraycopy(saltBytes,0, plainPlusSalt, plaintextLength,
-                         NUM_SALT_BYTES);
+      // Generate the salt and put in the plain+salt array.
+      ThreadLocalRandom.current().nextBytes(saltBytes);
+      System.arraycopy(saltBytes,0, plainPlusSalt, plaintextLength,
+                       NUM_SALT_BYTES);
 
-        // Create the hash from the concatenated value.
-        digestBytes = messageDigest.digest(plainPlusSalt);
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+      // Create the hash from the concatenated value.
+      digestBytes = messageDigest.digest(plainPlusSalt);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
 
-        LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
-            CLASS_NAME, getExceptionMessage(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
-                                     message, e);
-      }
-      finally
-      {
-        Arrays.fill(plainPlusSalt, (byte) 0);
-      }
+      LocalizableMessage message = ERR_PWSCHEME_CANNOT_ENCODE_PASSWORD.get(
+          CLASS_NAME, getExceptionMessage(e));
+      throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+                                   message, e);
+    }
+    finally
+    {
+      Arrays.fill(plainPlusSalt, (byte) 0);
     }
 
 
@@ -413,17 +393,14 @@ public class SaltedSHA1PasswordStorageScheme
     System.arraycopy(saltBytes, 0, plainPlusSaltBytes, plainBytesLength,
                      saltBytes.length);
 
-    synchronized (digestLock)
+    try
     {
-      try
-      {
-        return Arrays.equals(digestBytes,
-                messageDigest.digest(plainPlusSaltBytes));
-      }
-      finally
-      {
-        Arrays.fill(plainPlusSaltBytes, (byte) 0);
-      }
+      return Arrays.equals(digestBytes,
+              messageDigest.digest(plainPlusSaltBytes));
+    }
+    finally
+    {
+      Arrays.fill(plainPlusSaltBytes, (byte) 0);
     }
   }
 
@@ -0,0 +1,600 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.ShardedWorkQueueCfg;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.ShardedWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.DisconnectReason;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+import org.opends.server.util.LatencyHistogram;
+
+/**
+ * A work queue giving each worker thread its own queue, so that submitting
+ * and picking up operations does not contend on a single queue shared by all
+ * the worker threads.
+ * <p>
+ * Operations are queued to the worker selected by hashing their connection ID,
+ * so that the operations of a connection are usually processed by the same
+ * thread. Worker threads whose queue is empty steal operations from the queues
+ * of the other workers, and park when there is nothing to steal: a worker is
+ * unparked when an operation is queued for it, or when an operation is queued
+ * for a busy worker and it is idle.
+ */
+public class ShardedWorkQueue extends WorkQueue<ShardedWorkQueueCfg>
+    implements ConfigurationChangeListener<ShardedWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** How long idle workers park before checking the queues again, in nanoseconds. */
+  private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** An operation waiting to be processed. */
+  private static final class QueuedOperation
+  {
+    private final Operation operation;
+    /** When the operation was submitted, in nanoseconds. */
+    private final long submitTime = System.nanoTime();
+
+    private QueuedOperation(Operation operation)
+    {
+      this.operation = operation;
+    }
+  }
+
+  /** A worker thread and the operations queued for it. */
+  private final class ShardWorkerThread extends DirectoryThread
+  {
+    private final int shardIndex;
+    private final LinkedBlockingQueue<QueuedOperation> opQueue;
+    /** The number of operations submitted to this worker. */
+    private final AtomicLong opsSubmitted = new AtomicLong();
+    /** The number of operations stolen by this worker from the other workers. */
+    private final AtomicLong opsStolen = new AtomicLong();
+    /** Indicates whether this worker is parked, or about to park. */
+    private volatile boolean idle;
+    /** The operation that this worker thread is currently processing. */
+    private volatile Operation operation;
+
+    private ShardWorkerThread(int shardIndex, int capacity)
+    {
+      super("Worker Thread " + shardIndex);
+      this.shardIndex = shardIndex;
+      this.opQueue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public void run()
+    {
+      QueuedOperation queued;
+      while ((queued = nextOperation(this)) != null)
+      {
+        operation = queued.operation;
+        waitTimes.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queued.submitTime));
+        try
+        {
+          operation.run();
+          operation.operationCompleted();
+        }
+        catch (Throwable t)
+        {
+          handleUncaughtException(t);
+        }
+        finally
+        {
+          operation = null;
+        }
+      }
+      if (logger.isTraceEnabled())
+      {
+        logger.trace(getName() + " exiting.");
+      }
+    }
+
+    private void handleUncaughtException(Throwable t)
+    {
+      logger.traceException(t);
+      LocalizableMessage message =
+          ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(getName(), operation, stackTraceToSingleLineString(t));
+      try
+      {
+        logger.error(message);
+
+        // Ensure that the client receives some kind of result so that it does
+        // not hang.
+        operation.setResultCode(DirectoryServer.getServerErrorResultCode());
+        operation.appendErrorMessage(message);
+        operation.getClientConnection().sendResponse(operation);
+      }
+      catch (Throwable t2)
+      {
+        logger.traceException(t2);
+      }
+      try
+      {
+        operation.disconnectClient(DisconnectReason.SERVER_ERROR, true, message);
+      }
+      catch (Throwable t2)
+      {
+        logger.traceException(t2);
+      }
+    }
+
+    /** Wakes up this worker and cancels the operation it is processing. */
+    private void shutDown()
+    {
+      LockSupport.unpark(this);
+      final Operation localOperation = operation;
+      if (localOperation != null)
+      {
+        localOperation.cancel(new CancelRequest(true, INFO_CANCELED_BY_SHUTDOWN.get()));
+      }
+    }
+  }
+
+  /** The worker threads, each with its own queue. */
+  private ShardWorkerThread[] workers;
+  /** The number of idle workers. */
+  private final AtomicInteger idleWorkers = new AtomicInteger();
+  /** The time spent by operations waiting to be processed, in microseconds. */
+  private final LatencyHistogram waitTimes = new LatencyHistogram();
+  /** The number of operations rejected because the queue was full. */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+  /** The maximum number of operations waiting in all the worker queues. */
+  private int maxCapacity;
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public ShardedWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeWorkQueue(ShardedWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    shutdownRequested = false;
+    configuration.addShardedChangeListener(this);
+
+    final int numWorkerThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    maxCapacity = configuration.getMaxWorkQueueCapacity();
+    // Round up, so that each operation can be queued to at least one worker
+    final int maxCapacityPerWorker = (maxCapacity + numWorkerThreads - 1) / numWorkerThreads;
+
+    workers = new ShardWorkerThread[numWorkerThreads];
+    for (int i = 0; i < numWorkerThreads; i++)
+    {
+      workers[i] = new ShardWorkerThread(i, maxCapacityPerWorker);
+    }
+    for (ShardWorkerThread worker : workers)
+    {
+      worker.start();
+    }
+
+    // Create and register a monitor provider for the work queue.
+    try
+    {
+      ShardedWorkQueueMonitor monitor = new ShardedWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, ShardedWorkQueueMonitor.class, e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // Send responses to any operations in the pending queues to indicate that
+    // they won't be processed because the server is shutting down.
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    List<QueuedOperation> pendingOperations = new ArrayList<>();
+    for (ShardWorkerThread worker : workers)
+    {
+      worker.opQueue.drainTo(pendingOperations);
+    }
+    for (QueuedOperation queued : pendingOperations)
+    {
+      final Operation o = queued.operation;
+      try
+      {
+        // The operation has no chance of responding to the cancel
+        // request so avoid waiting for a cancel response.
+        if (o.getCancelResult() == null)
+        {
+          o.abort(cancelRequest);
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+      }
+    }
+
+    // Notify all the worker threads of the shutdown.
+    for (ShardWorkerThread worker : workers)
+    {
+      try
+      {
+        worker.shutDown();
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_NOTIFY_THREAD, worker.getName(), e);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, true);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean trySubmitOperation(Operation operation) throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation, boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    checkNotShutdown();
+
+    final QueuedOperation queued = new QueuedOperation(operation);
+    final ShardWorkerThread worker = workers[(int) ((operation.getConnectionID() & Long.MAX_VALUE) % workers.length)];
+    ShardWorkerThread target = worker;
+    if (!worker.opQueue.offer(queued))
+    {
+      // Use the spare capacity of the other workers before blocking
+      target = offerToOtherWorker(worker, queued);
+      if (target == null)
+      {
+        if (!blockEnqueuingWhenFull)
+        {
+          queueFullRejects.incrementAndGet();
+          throw new DirectoryException(ResultCode.BUSY, WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity));
+        }
+        putToWorker(worker, queued);
+        target = worker;
+      }
+    }
+    target.opsSubmitted.incrementAndGet();
+    wakeUpWorker(target);
+  }
+
+  private void checkNotShutdown() throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      throw new DirectoryException(ResultCode.UNAVAILABLE, WARN_OP_REJECTED_BY_SHUTDOWN.get());
+    }
+  }
+
+  private ShardWorkerThread offerToOtherWorker(ShardWorkerThread worker, QueuedOperation queued)
+  {
+    for (int i = 1; i < workers.length; i++)
+    {
+      final ShardWorkerThread other = workers[(worker.shardIndex + i) % workers.length];
+      if (other.opQueue.offer(queued))
+      {
+        return other;
+      }
+    }
+    return null;
+  }
+
+  private void putToWorker(ShardWorkerThread worker, QueuedOperation queued) throws DirectoryException
+  {
+    try
+    {
+      while (!worker.opQueue.offer(queued, 1, TimeUnit.SECONDS))
+      {
+        checkNotShutdown();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // We cannot handle the interruption here. Reject the request and
+      // re-interrupt this thread.
+      Thread.currentThread().interrupt();
+      queueFullRejects.incrementAndGet();
+      throw new DirectoryException(ResultCode.BUSY, WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get());
+    }
+  }
+
+  /**
+   * Wakes up the worker an operation was just queued for if it is idle,
+   * otherwise another idle worker which can steal the operation.
+   */
+  private void wakeUpWorker(ShardWorkerThread target)
+  {
+    if (target.idle)
+    {
+      LockSupport.unpark(target);
+      return;
+    }
+    if (idleWorkers.get() > 0)
+    {
+      for (int i = 1; i < workers.length; i++)
+      {
+        final ShardWorkerThread other = workers[(target.shardIndex + i) % workers.length];
+        if (other.idle)
+        {
+          LockSupport.unpark(other);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Retrieves the next operation to be processed by the provided worker,
+   * parking until one is available.
+   *
+   * @return the next operation to be processed, or {@code null} if the server
+   *         is shutting down
+   */
+  private QueuedOperation nextOperation(ShardWorkerThread worker)
+  {
+    while (!shutdownRequested)
+    {
+      QueuedOperation queued = pollOrSteal(worker);
+      if (queued != null)
+      {
+        return queued;
+      }
+
+      // Advertise this worker as idle before checking the queues again, so
+      // that operations submitted concurrently either are found here, or wake
+      // this worker up.
+      worker.idle = true;
+      idleWorkers.incrementAndGet();
+      try
+      {
+        queued = pollOrSteal(worker);
+        if (queued != null)
+        {
+          return queued;
+        }
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        // Interrupts are not expected here: clear them to avoid spinning
+        Thread.interrupted();
+      }
+      finally
+      {
+        idleWorkers.decrementAndGet();
+        worker.idle = false;
+      }
+    }
+    return null;
+  }
+
+  private QueuedOperation pollOrSteal(ShardWorkerThread worker)
+  {
+    QueuedOperation queued = worker.opQueue.poll();
+    if (queued != null)
+    {
+      return queued;
+    }
+    for (int i = 1; i < workers.length; i++)
+    {
+      queued = workers[(worker.shardIndex + i) % workers.length].opQueue.poll();
+      if (queued != null)
+      {
+        worker.opsStolen.incrementAndGet();
+        return queued;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    long total = 0;
+    for (ShardWorkerThread worker : workers)
+    {
+      total += worker.opsSubmitted.get();
+    }
+    return total;
+  }
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.get();
+  }
+
+  /**
+   * Retrieves the number of pending operations in the queue of each worker
+   * thread.
+   *
+   * @return The number of pending operations in the queue of each worker
+   *         thread.
+   */
+  public int[] getWorkerQueueSizes()
+  {
+    final int[] sizes = new int[workers.length];
+    for (int i = 0; i < workers.length; i++)
+    {
+      sizes[i] = workers[i].opQueue.size();
+    }
+    return sizes;
+  }
+
+  /**
+   * Retrieves the number of operations stolen by each worker thread from the
+   * queues of the other worker threads.
+   *
+   * @return The number of operations stolen by each worker thread.
+   */
+  public long[] getWorkerOpsStolen()
+  {
+    final long[] stolen = new long[workers.length];
+    for (int i = 0; i < workers.length; i++)
+    {
+      stolen[i] = workers[i].opsStolen.get();
+    }
+    return stolen;
+  }
+
+  /**
+   * Retrieves the histogram of the time spent by operations waiting to be
+   * processed, in microseconds.
+   *
+   * @return The histogram of the time spent by operations waiting to be
+   *         processed, in microseconds.
+   */
+  public LatencyHistogram getWaitTimes()
+  {
+    return waitTimes;
+  }
+
+  /**
+   * Retrieves the number of pending operations in the queue that have not yet
+   * been picked up for processing.
+   *
+   * @return The number of pending operations in the queue that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    int size = 0;
+    for (ShardWorkerThread worker : workers)
+    {
+      size += worker.opQueue.size();
+    }
+    return size;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      ShardedWorkQueueCfg configuration, List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(ShardedWorkQueueCfg configuration)
+  {
+    // The worker queues are created with the worker threads, so changes only
+    // take effect once the work queue is restarted
+    final ConfigChangeResult ccr = new ConfigChangeResult();
+    if (computeNumWorkerThreads(configuration.getNumWorkerThreads()) != workers.length
+        || configuration.getMaxWorkQueueCapacity() != maxCapacity)
+    {
+      ccr.setAdminActionRequired(true);
+    }
+    return ccr;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isIdle()
+  {
+    for (ShardWorkerThread worker : workers)
+    {
+      if (!worker.opQueue.isEmpty() || worker.operation != null)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return workers.length;
+  }
+}
@@ -341,6 +341,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newMemberDNs.add(toCompactDn(nestedGroupDN));
       memberDNs = newMemberDNs;
     }
+    getGroupManager().memberAdded(this, nestedGroupDN);
   }
 
   /** {@inheritDoc} */
@@ -375,6 +376,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newMemberDNs.remove(toCompactDn(nestedGroupDN));
       memberDNs = newMemberDNs;
     }
+    getGroupManager().memberRemoved(this, nestedGroupDN);
   }
 
   /** {@inheritDoc} */
@@ -495,9 +497,9 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   {
     ifNull(userEntry);
 
+    DN userDN = userEntry.getName();
     synchronized (this)
     {
-      DN userDN = userEntry.getName();
       CompactDn compactUserDN = toCompactDn(userDN);
 
       if (memberDNs.contains(compactUserDN))
@@ -518,6 +520,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newMemberDNs.add(compactUserDN);
       memberDNs = newMemberDNs;
     }
+    getGroupManager().memberAdded(this, userDN);
   }
 
   /** {@inheritDoc} */
@@ -553,6 +556,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         nestedGroups = newNestedGroups;
       }
     }
+    getGroupManager().memberRemoved(this, userDN);
   }
 
   private ModifyOperation newModifyOperation(ModificationType modType, DN userDN)
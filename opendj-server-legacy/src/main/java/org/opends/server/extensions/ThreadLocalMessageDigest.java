@@ -0,0 +1,86 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A message digest which may be used concurrently. Each thread computes
+ * digests with its own {@link MessageDigest} instance, so that password
+ * storage schemes do not serialize the passwords encoded and compared by
+ * concurrent operations.
+ */
+final class ThreadLocalMessageDigest
+{
+  /** The name of the message digest algorithm. */
+  private final String algorithm;
+
+  /** The message digest of each thread. */
+  private final ThreadLocal<MessageDigest> messageDigests = new ThreadLocal<MessageDigest>()
+  {
+    @Override
+    protected MessageDigest initialValue()
+    {
+      try
+      {
+        return MessageDigest.getInstance(algorithm);
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+        // Cannot happen: the algorithm has been checked by the constructor
+        throw new IllegalStateException(e);
+      }
+    }
+  };
+
+  /**
+   * Creates a new thread local message digest.
+   *
+   * @param algorithm
+   *          The name of the message digest algorithm.
+   * @throws NoSuchAlgorithmException
+   *           If the algorithm is not supported by any security provider.
+   */
+  ThreadLocalMessageDigest(String algorithm) throws NoSuchAlgorithmException
+  {
+    this.algorithm = algorithm;
+    messageDigests.set(MessageDigest.getInstance(algorithm));
+  }
+
+  /**
+   * Computes the digest of the provided bytes with the message digest of the
+   * current thread.
+   *
+   * @param input
+   *          The bytes to digest.
+   * @return The digest of the provided bytes.
+   */
+  byte[] digest(byte[] input)
+  {
+    return messageDigests.get().digest(input);
+  }
+}
@@ -0,0 +1,565 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.messages.ExtensionMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.VirtualThreadWorkQueueCfg;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.VirtualThreadWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * A work queue processing each operation on its own virtual thread, so that
+ * operations blocked on locks, slow clients or remote servers do not prevent
+ * other operations from being processed.
+ * <p>
+ * The number of operations processed concurrently is capped by a semaphore:
+ * the operations submitted while all the permits are taken wait in a bounded
+ * FIFO queue, and are picked up by the threads of the operations which
+ * complete. When the Java virtual machine does not support virtual threads,
+ * operations are processed by a pool of platform threads which grows with the
+ * number of concurrent operations.
+ * <p>
+ * Before Java 24, a virtual thread blocking inside a {@code synchronized}
+ * block or method pins its carrier thread: this happens for example when an
+ * LDAP client connection writes a response to a slow client, and in the
+ * Berkeley DB JE storage which waits on monitors. Pinned virtual threads
+ * cannot make room for other operations, so the number of operations which
+ * can block at the same time is bounded by the number of carrier threads,
+ * which defaults to the number of processors and can be raised with the
+ * {@code jdk.virtualThreadScheduler.parallelism} system property. The
+ * maximum number of concurrent operations still caps the number of virtual
+ * threads which can be pinned.
+ * <p>
+ * Each worker runs on a new thread, so the values cached in
+ * {@link ThreadLocal}s by the code processing operations, such as the message
+ * digests of the password storage schemes, are created again for each worker
+ * rather than reused across operations: such caches only pay off while a
+ * worker processes several queued operations in a row.
+ * <p>
+ * On shutdown, the operations waiting in the queue are aborted, the
+ * operations being processed are asked to cancel and are given up to
+ * {@value #SHUTDOWN_WAIT_TIME_MS} milliseconds to complete.
+ */
+public class VirtualThreadWorkQueue extends WorkQueue<VirtualThreadWorkQueueCfg>
+    implements ConfigurationChangeListener<VirtualThreadWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** How long to wait for the operations being processed on shutdown, in milliseconds. */
+  private static final long SHUTDOWN_WAIT_TIME_MS = 5000;
+
+  /** An operation waiting to be processed. */
+  private static final class QueuedOperation
+  {
+    private final Operation operation;
+    /** When the operation was submitted, in nanoseconds. */
+    private final long submitTime = System.nanoTime();
+
+    private QueuedOperation(Operation operation)
+    {
+      this.operation = operation;
+    }
+  }
+
+  /** A semaphore whose number of permits may be reduced. */
+  private static final class ResizableSemaphore extends Semaphore
+  {
+    private static final long serialVersionUID = 5180449187683325151L;
+
+    private ResizableSemaphore(int permits)
+    {
+      super(permits);
+    }
+
+    private void resize(int oldPermits, int newPermits)
+    {
+      if (newPermits > oldPermits)
+      {
+        release(newPermits - oldPermits);
+      }
+      else if (newPermits < oldPermits)
+      {
+        // Permits held by running operations are lost as they are released
+        reducePermits(oldPermits - newPermits);
+      }
+    }
+  }
+
+  /** Processes operations, starting with the provided one, until none is waiting. */
+  private final class Worker implements Runnable
+  {
+    private QueuedOperation next;
+
+    private Worker(QueuedOperation first)
+    {
+      this.next = first;
+    }
+
+    @Override
+    public void run()
+    {
+      while (true)
+      {
+        if (next == null)
+        {
+          next = opQueue.poll();
+        }
+        if (next == null)
+        {
+          permits.release();
+          // An operation may have been queued before the permit was released
+          if (opQueue.isEmpty() || !permits.tryAcquire())
+          {
+            return;
+          }
+          continue;
+        }
+        process(next);
+        next = null;
+      }
+    }
+  }
+
+  /** The executor starting a new thread for each worker. */
+  private ExecutorService executor;
+  /** Caps the number of operations processed concurrently. */
+  private ResizableSemaphore permits;
+  /** The operations waiting for a permit. */
+  private LinkedBlockingQueue<QueuedOperation> opQueue;
+
+  /** The maximum number of operations processed concurrently. */
+  private volatile int maxConcurrentOperations;
+  /** The maximum number of operations waiting for a permit. */
+  private int maxCapacity;
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /** The number of operations being processed. */
+  private final AtomicInteger activeOperations = new AtomicInteger();
+  /** The operations being processed, to cancel on shutdown. */
+  private final Set<Operation> runningOperations =
+      Collections.newSetFromMap(new ConcurrentHashMap<Operation, Boolean>());
+  /** The number of operations submitted to this work queue. */
+  private final AtomicLong opsSubmitted = new AtomicLong();
+  /** The number of operations rejected because the queue was full. */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+  /** The total time spent by processed operations waiting for a permit, in nanoseconds. */
+  private final AtomicLong totalWaitTime = new AtomicLong();
+  /** The number of operations which started processing. */
+  private final AtomicLong opsStarted = new AtomicLong();
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public VirtualThreadWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeWorkQueue(VirtualThreadWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    shutdownRequested = false;
+    configuration.addVirtualThreadChangeListener(this);
+
+    maxConcurrentOperations = configuration.getMaxConcurrentOperations();
+    maxCapacity = configuration.getMaxWorkQueueCapacity();
+    permits = new ResizableSemaphore(maxConcurrentOperations);
+    opQueue = new LinkedBlockingQueue<>(maxCapacity);
+    executor = newExecutor();
+
+    // Create and register a monitor provider for the work queue.
+    try
+    {
+      VirtualThreadWorkQueueMonitor monitor = new VirtualThreadWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, VirtualThreadWorkQueueMonitor.class, e);
+    }
+  }
+
+  /**
+   * Returns an executor starting a new virtual thread for each task, or a pool
+   * of platform threads if virtual threads are not supported.
+   */
+  private static ExecutorService newExecutor()
+  {
+    try
+    {
+      // Looked up at runtime, since the server must run on older Java versions
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (ReflectiveOperationException e)
+    {
+      logger.traceException(e);
+      logger.info(NOTE_VIRTUAL_THREAD_WORK_QUEUE_USING_PLATFORM_THREADS);
+      return Executors.newCachedThreadPool(new DirectoryThread.Factory("Worker Thread"));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // Send responses to any operations in the pending queue to indicate that
+    // they won't be processed because the server is shutting down.
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    List<QueuedOperation> pendingOperations = new ArrayList<>();
+    opQueue.drainTo(pendingOperations);
+    for (QueuedOperation queued : pendingOperations)
+    {
+      final Operation o = queued.operation;
+      try
+      {
+        // The operation has no chance of responding to the cancel
+        // request so avoid waiting for a cancel response.
+        if (o.getCancelResult() == null)
+        {
+          o.abort(cancelRequest);
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+      }
+    }
+
+    // Ask the operations being processed to stop, without waiting for each of
+    // them in turn, then give them a chance to complete.
+    executor.shutdown();
+    for (Operation o : runningOperations)
+    {
+      try
+      {
+        o.abort(cancelRequest);
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+      }
+    }
+    try
+    {
+      if (!executor.awaitTermination(SHUTDOWN_WAIT_TIME_MS, TimeUnit.MILLISECONDS) && logger.isTraceEnabled())
+      {
+        logger.trace("%d operations still being processed after shutdown", activeOperations.get());
+      }
+    }
+    catch (InterruptedException e)
+    {
+      logger.traceException(e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, true);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean trySubmitOperation(Operation operation) throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation, boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    checkNotShutdown();
+
+    final QueuedOperation queued = new QueuedOperation(operation);
+    if (permits.tryAcquire())
+    {
+      opsSubmitted.incrementAndGet();
+      startWorker(queued);
+      return;
+    }
+
+    if (blockEnqueuingWhenFull)
+    {
+      try
+      {
+        while (!opQueue.offer(queued, 1, TimeUnit.SECONDS))
+        {
+          checkNotShutdown();
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // We cannot handle the interruption here. Reject the request and
+        // re-interrupt this thread.
+        Thread.currentThread().interrupt();
+        queueFullRejects.incrementAndGet();
+        throw new DirectoryException(ResultCode.BUSY, WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get());
+      }
+    }
+    else if (!opQueue.offer(queued))
+    {
+      queueFullRejects.incrementAndGet();
+      throw new DirectoryException(ResultCode.BUSY, WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity));
+    }
+    opsSubmitted.incrementAndGet();
+
+    // All the workers may have completed before the operation was queued
+    if (permits.tryAcquire())
+    {
+      startWorker(null);
+    }
+  }
+
+  private void checkNotShutdown() throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      throw new DirectoryException(ResultCode.UNAVAILABLE, WARN_OP_REJECTED_BY_SHUTDOWN.get());
+    }
+  }
+
+  private void startWorker(QueuedOperation first) throws DirectoryException
+  {
+    try
+    {
+      executor.execute(new Worker(first));
+    }
+    catch (RejectedExecutionException e)
+    {
+      logger.traceException(e);
+      permits.release();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, WARN_OP_REJECTED_BY_SHUTDOWN.get());
+    }
+  }
+
+  private void process(QueuedOperation queued)
+  {
+    final Operation operation = queued.operation;
+    totalWaitTime.addAndGet(System.nanoTime() - queued.submitTime);
+    opsStarted.incrementAndGet();
+    activeOperations.incrementAndGet();
+    runningOperations.add(operation);
+    try
+    {
+      operation.run();
+      operation.operationCompleted();
+    }
+    catch (Throwable t)
+    {
+      logger.traceException(t);
+
+      LocalizableMessage message = ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(
+          Thread.currentThread().getName(), operation, stackTraceToSingleLineString(t));
+      logger.error(message);
+      try
+      {
+        // Ensure that the client receives some kind of result so that it does
+        // not hang.
+        operation.setResultCode(DirectoryServer.getServerErrorResultCode());
+        operation.appendErrorMessage(message);
+        operation.getClientConnection().sendResponse(operation);
+      }
+      catch (Throwable t2)
+      {
+        logger.traceException(t2);
+      }
+    }
+    finally
+    {
+      runningOperations.remove(operation);
+      activeOperations.decrementAndGet();
+    }
+  }
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    return opsSubmitted.get();
+  }
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.get();
+  }
+
+  /**
+   * Retrieves the number of operations currently being processed.
+   *
+   * @return The number of operations currently being processed.
+   */
+  public int getActiveOperations()
+  {
+    return activeOperations.get();
+  }
+
+  /**
+   * Retrieves the average time spent by operations waiting to be processed.
+   *
+   * @return The average time spent by operations waiting to be processed, in
+   *         microseconds.
+   */
+  public long getAverageWaitTimeInMicros()
+  {
+    final long started = opsStarted.get();
+    return started != 0 ? TimeUnit.NANOSECONDS.toMicros(totalWaitTime.get() / started) : 0;
+  }
+
+  /**
+   * Retrieves the number of pending operations in the queue that have not yet
+   * been picked up for processing.
+   *
+   * @return The number of pending operations in the queue that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    return opQueue.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      VirtualThreadWorkQueueCfg configuration, List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(VirtualThreadWorkQueueCfg configuration)
+  {
+    final ConfigChangeResult ccr = new ConfigChangeResult();
+    final int newMaxConcurrentOperations = configuration.getMaxConcurrentOperations();
+    permits.resize(maxConcurrentOperations, newMaxConcurrentOperations);
+    maxConcurrentOperations = newMaxConcurrentOperations;
+    // Operations may have been waiting for the new permits
+    while (!opQueue.isEmpty() && permits.tryAcquire())
+    {
+      try
+      {
+        startWorker(null);
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+        break;
+      }
+    }
+
+    if (configuration.getMaxWorkQueueCapacity() != maxCapacity)
+    {
+      // The queue capacity cannot be changed while operations are queued
+      ccr.setAdminActionRequired(true);
+    }
+    return ccr;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isIdle()
+  {
+    return opQueue.isEmpty() && activeOperations.get() == 0;
+  }
+
+  /**
+   * Return the maximum number of operations processed concurrently by this
+   * WorkQueue.
+   *
+   * @return the maximum number of operations processed concurrently by this
+   *         WorkQueue
+   */
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return maxConcurrentOperations;
+  }
+}
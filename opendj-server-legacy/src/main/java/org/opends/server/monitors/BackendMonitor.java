@@ -31,6 +31,7 @@ import static org.opends.server.util.ServerConstants.*;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.opends.server.admin.std.server.MonitorProviderCfg;
@@ -63,6 +64,8 @@ public class BackendMonitor
 
   /** The backend with which this monitor is associated. */
   private Backend<?> backend;
+  /** The distribution of the times spent processing operations in the backend. */
+  private final OperationLatencies operationLatencies = new OperationLatencies();
 
   /** The name for this monitor. */
   private String monitorName;
@@ -161,7 +164,24 @@ public class BackendMonitor
     attrs.add(Attributes.create(writabilityModeType, String
         .valueOf(backend.getWritabilityMode())));
 
+    addHistogramAttributes(attrs, operationLatencies);
+
     return attrs;
   }
+
+  /**
+   * Records the time spent processing an operation in the backend.
+   *
+   * @param type
+   *          The type of the operation.
+   * @param time
+   *          The time spent processing the operation in the backend.
+   * @param unit
+   *          The unit of {@code time}.
+   */
+  public void updateOperationMonitoringData(OperationType type, long time, TimeUnit unit)
+  {
+    operationLatencies.record(type, time, unit);
+  }
 }
 
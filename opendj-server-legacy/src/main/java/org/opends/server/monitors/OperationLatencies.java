@@ -0,0 +1,127 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.monitors;
+
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.opends.server.types.OperationType;
+import org.opends.server.util.LatencyHistogram;
+
+/**
+ * The histograms of the processing times of the operations of each type, in
+ * microseconds.
+ * <p>
+ * The histogram of an operation type is only created when an operation of this
+ * type is first recorded, since many components (e.g. the schema or the
+ * monitor backends) only process a few operation types.
+ */
+public final class OperationLatencies
+{
+  private final AtomicReferenceArray<LatencyHistogram> histograms =
+      new AtomicReferenceArray<>(OperationType.values().length);
+
+  /**
+   * Records the processing time of an operation.
+   *
+   * @param type
+   *          The type of the operation.
+   * @param time
+   *          The processing time of the operation.
+   * @param unit
+   *          The unit of {@code time}.
+   */
+  public void record(OperationType type, long time, TimeUnit unit)
+  {
+    final int index = type.ordinal();
+    LatencyHistogram histogram = histograms.get(index);
+    if (histogram == null)
+    {
+      histograms.compareAndSet(index, null, new LatencyHistogram());
+      histogram = histograms.get(index);
+    }
+    histogram.record(unit.toMicros(time));
+  }
+
+  /**
+   * Returns the histogram of the processing times of the operations of the
+   * provided type.
+   *
+   * @param type
+   *          The type of the operations.
+   * @return the histogram of the processing times of the operations of the
+   *         provided type, in microseconds, or {@code null} if no operation of
+   *         this type has been recorded
+   */
+  public LatencyHistogram getHistogram(OperationType type)
+  {
+    return histograms.get(type.ordinal());
+  }
+
+  /**
+   * Returns the prefix of the names of the monitor attributes describing the
+   * histogram of the provided operation type, e.g.
+   * {@code ds-mon-moddn-operations-time-micros}, consistent with the names of
+   * the other operation statistics.
+   *
+   * @param type
+   *          The type of the operations.
+   * @return the prefix of the names of the monitor attributes describing the
+   *         histogram of the provided operation type
+   */
+  public static String getAttributeNamePrefix(OperationType type)
+  {
+    return "ds-mon-" + getAttributeNameKeyword(type) + "-operations-time-micros";
+  }
+
+  private static String getAttributeNameKeyword(OperationType type)
+  {
+    switch (type)
+    {
+    case MODIFY:
+      return "mod";
+    case MODIFY_DN:
+      return "moddn";
+    default:
+      return toLowerCase(type.name());
+    }
+  }
+
+  /** Removes all the processing times recorded so far. */
+  public void clear()
+  {
+    for (int i = 0; i < histograms.length(); i++)
+    {
+      final LatencyHistogram histogram = histograms.get(i);
+      if (histogram != null)
+      {
+        histogram.reset();
+      }
+    }
+  }
+}
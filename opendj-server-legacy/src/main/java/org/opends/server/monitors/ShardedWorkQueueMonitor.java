@@ -0,0 +1,194 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.monitors;
+
+import static org.opends.server.core.DirectoryServer.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.extensions.ShardedWorkQueue;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeBuilder;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.InitializationException;
+
+/**
+ * This class defines a Directory Server monitor that can be used to provide
+ * information about the state of the sharded work queue.
+ */
+public class ShardedWorkQueueMonitor
+       extends MonitorProvider<MonitorProviderCfg>
+       implements Runnable
+{
+  /**
+   * The name to use for the monitor attribute that provides the largest
+   * current backlog of a worker thread.
+   */
+  public static final String ATTR_MAX_WORKER_BACKLOG = "maxWorkerRequestBacklog";
+  /**
+   * The name to use for the monitor attribute that provides the current
+   * backlog of each worker thread.
+   */
+  public static final String ATTR_WORKER_BACKLOG = "workerRequestBacklog";
+  /**
+   * The name to use for the monitor attribute that provides the total number of
+   * requests stolen by worker threads from the queues of other worker threads.
+   */
+  public static final String ATTR_OPS_STOLEN = "requestsStolen";
+  /**
+   * The name to use for the monitor attribute that provides the number of
+   * requests stolen by each worker thread.
+   */
+  public static final String ATTR_WORKER_OPS_STOLEN = "workerRequestsStolen";
+  /**
+   * The prefix of the names of the monitor attributes that describe the time
+   * spent by requests waiting to be processed, in microseconds.
+   */
+  public static final String ATTR_WAIT_TIME = "ds-mon-request-wait-time-micros";
+
+  /** The maximum backlog observed by polling the queue. */
+  private int maxBacklog;
+  /** The total number of times the backlog has been polled. */
+  private long numPolls;
+  /** The total backlog observed from periodic polling. */
+  private long totalBacklog;
+  /** The sharded work queue instance with which this monitor is associated. */
+  private final ShardedWorkQueue workQueue;
+
+
+  /**
+   * Initializes this monitor provider.  Note that no initialization should be
+   * done here, since it should be performed in the
+   * <CODE>initializeMonitorProvider</CODE> class.
+   *
+   * @param  workQueue  The work queue with which this monitor is associated.
+   */
+  public ShardedWorkQueueMonitor(ShardedWorkQueue workQueue)
+  {
+    this.workQueue = workQueue;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeMonitorProvider(MonitorProviderCfg configuration)
+         throws ConfigException, InitializationException
+  {
+    maxBacklog   = 0;
+    totalBacklog = 0;
+    numPolls     = 0;
+    scheduleUpdate(this, 0, 10, TimeUnit.SECONDS);
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return "Work Queue";
+  }
+
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void run()
+  {
+    pollBacklog();
+  }
+
+  private int pollBacklog()
+  {
+    int backlog = workQueue.size();
+    totalBacklog += backlog;
+    numPolls++;
+    if (backlog > maxBacklog)
+    {
+      maxBacklog = backlog;
+    }
+    return backlog;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized ArrayList<Attribute> getMonitorData()
+  {
+    int backlog = pollBacklog();
+    long averageBacklog = (long) (1.0 * totalBacklog / numPolls);
+
+    int[] workerBacklogs = workQueue.getWorkerQueueSizes();
+    int maxWorkerBacklog = 0;
+    AttributeBuilder workerBacklogBuilder = newBuilder(ATTR_WORKER_BACKLOG);
+    for (int i = 0; i < workerBacklogs.length; i++)
+    {
+      maxWorkerBacklog = Math.max(maxWorkerBacklog, workerBacklogs[i]);
+      workerBacklogBuilder.add(i + ": " + workerBacklogs[i]);
+    }
+
+    long[] workerOpsStolen = workQueue.getWorkerOpsStolen();
+    long opsStolen = 0;
+    AttributeBuilder workerOpsStolenBuilder = newBuilder(ATTR_WORKER_OPS_STOLEN);
+    for (int i = 0; i < workerOpsStolen.length; i++)
+    {
+      opsStolen += workerOpsStolen[i];
+      workerOpsStolenBuilder.add(i + ": " + workerOpsStolen[i]);
+    }
+
+    ArrayList<Attribute> monitorAttrs = new ArrayList<>();
+    putAttribute(monitorAttrs, TraditionalWorkQueueMonitor.ATTR_CURRENT_BACKLOG, backlog);
+    putAttribute(monitorAttrs, TraditionalWorkQueueMonitor.ATTR_AVERAGE_BACKLOG, averageBacklog);
+    putAttribute(monitorAttrs, TraditionalWorkQueueMonitor.ATTR_MAX_BACKLOG, maxBacklog);
+    putAttribute(monitorAttrs, TraditionalWorkQueueMonitor.ATTR_OPS_SUBMITTED, workQueue.getOpsSubmitted());
+    putAttribute(monitorAttrs, TraditionalWorkQueueMonitor.ATTR_OPS_REJECTED_QUEUE_FULL,
+        workQueue.getOpsRejectedDueToQueueFull());
+    putAttribute(monitorAttrs, ATTR_MAX_WORKER_BACKLOG, maxWorkerBacklog);
+    monitorAttrs.add(workerBacklogBuilder.toAttribute());
+    putAttribute(monitorAttrs, ATTR_OPS_STOLEN, opsStolen);
+    monitorAttrs.add(workerOpsStolenBuilder.toAttribute());
+    addHistogramAttributes(monitorAttrs, ATTR_WAIT_TIME, workQueue.getWaitTimes());
+    return monitorAttrs;
+  }
+
+  private AttributeBuilder newBuilder(String attrName)
+  {
+    return new AttributeBuilder(getAttributeTypeOrDefault(toLowerCase(attrName), attrName));
+  }
+
+  private void putAttribute(ArrayList<Attribute> monitorAttrs, String attrName, Object value)
+  {
+    AttributeType attrType = getAttributeTypeOrDefault(attrName, attrName, getDefaultIntegerSyntax());
+    monitorAttrs.add(Attributes.create(attrType, String.valueOf(value)));
+  }
+}
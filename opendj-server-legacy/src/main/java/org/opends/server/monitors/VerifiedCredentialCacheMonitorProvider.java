@@ -0,0 +1,109 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.monitors;
+
+import static org.opends.server.core.DirectoryServer.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.PasswordPolicy;
+import org.opends.server.core.VerifiedCredentialCache;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
+
+/**
+ * This class defines a Directory Server monitor that reports how often the
+ * binds of the users of a password policy are served by its verified
+ * credential cache.
+ */
+public class VerifiedCredentialCacheMonitorProvider
+       extends MonitorProvider<MonitorProviderCfg>
+{
+  /** The name of the monitor attribute providing the number of passwords found in the cache. */
+  public static final String ATTR_CACHE_HITS = "verifiedCredentialCacheHits";
+  /** The name of the monitor attribute providing the number of passwords not found in the cache. */
+  public static final String ATTR_CACHE_MISSES = "verifiedCredentialCacheMisses";
+  /** The name of the monitor attribute providing the number of users in the cache. */
+  public static final String ATTR_CACHE_COUNT = "verifiedCredentialCacheCount";
+
+  /** The name of this monitor. */
+  private final String monitorName;
+  /** The password policy whose cache is monitored. */
+  private final PasswordPolicy passwordPolicy;
+
+  /**
+   * Creates a new monitor for the verified credential cache of a password
+   * policy.
+   *
+   * @param policyName
+   *          The name of the password policy.
+   * @param passwordPolicy
+   *          The password policy whose cache is monitored.
+   */
+  public VerifiedCredentialCacheMonitorProvider(String policyName, PasswordPolicy passwordPolicy)
+  {
+    this.monitorName = policyName + " Verified Credential Cache";
+    this.passwordPolicy = passwordPolicy;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeMonitorProvider(MonitorProviderCfg configuration)
+  {
+    // No initialization is required.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return monitorName;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    // The cache is replaced whenever the password policy configuration changes
+    final VerifiedCredentialCache cache = passwordPolicy.getVerifiedCredentialCache();
+
+    final ArrayList<Attribute> monitorAttrs = new ArrayList<>();
+    putAttribute(monitorAttrs, ATTR_CACHE_HITS, cache != null ? cache.getHits() : 0);
+    putAttribute(monitorAttrs, ATTR_CACHE_MISSES, cache != null ? cache.getMisses() : 0);
+    putAttribute(monitorAttrs, ATTR_CACHE_COUNT, cache != null ? cache.size() : 0);
+    return monitorAttrs;
+  }
+
+  private void putAttribute(List<Attribute> monitorAttrs, String attrName, Object value)
+  {
+    AttributeType attrType = getAttributeTypeOrDefault(attrName, attrName, getDefaultIntegerSyntax());
+    monitorAttrs.add(Attributes.create(attrType, String.valueOf(value)));
+  }
+}
@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -408,8 +409,9 @@ final class HTTPClientConnection extends ClientConnection implements HTTPRequest
 
     if (keepStats)
     {
-      this.statTracker.updateRequestMonitoringData(getMethod(), time);
-      this.statTracker.updateOperationMonitoringData(operation.getOperationType(), time);
+      final TimeUnit unit = useNanoTime ? TimeUnit.NANOSECONDS : TimeUnit.MILLISECONDS;
+      this.statTracker.updateRequestMonitoringData(getMethod(), time, unit);
+      this.statTracker.updateOperationMonitoringData(operation.getOperationType(), time, unit);
     }
 
     OperationWithPromise op = this.operationsInProgress.get(operation.getMessageID());
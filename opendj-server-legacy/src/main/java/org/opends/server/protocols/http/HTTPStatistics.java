@@ -25,16 +25,20 @@
  */
 package org.opends.server.protocols.http;
 
+import static org.opends.server.util.StaticUtils.*;
+
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.opends.server.protocols.ldap.LDAPStatistics;
 import org.opends.server.types.Attribute;
+import org.opends.server.util.LatencyHistogram;
 
 /**
  * Collects statistics for HTTP. This class inherits from {@link LDAPStatistics}
@@ -65,6 +69,15 @@ public class HTTPStatistics extends LDAPStatistics
    * static.
    */
   private Map<String, AtomicLong> requestMethodsTotalTime = new HashMap<>();
+  /**
+   * Map containing the distribution of the execution times of the requests per
+   * HTTP methods, in microseconds.
+   * <p>
+   * key: HTTP method => value: histogram of the execution times for requests
+   * using that method.
+   * </p>
+   */
+  private Map<String, LatencyHistogram> requestMethodsLatencies = new HashMap<>();
   /**
    * Total number of requests. The total number may be different than the sum of
    * the supported HTTP methods above because clients could use unsupported HTTP
@@ -89,6 +102,7 @@ public class HTTPStatistics extends LDAPStatistics
     {
       requestMethodsTotalCount.put(method, new AtomicInteger(0));
       requestMethodsTotalTime.put(method, new AtomicLong(0));
+      requestMethodsLatencies.put(method, new LatencyHistogram());
     }
   }
 
@@ -99,6 +113,10 @@ public class HTTPStatistics extends LDAPStatistics
     this.requestMethodsTotalCount.clear();
     this.requestMethodsTotalTime.clear();
     this.requestsTotalCount.set(0);
+    for (LatencyHistogram histogram : requestMethodsLatencies.values())
+    {
+      histogram.reset();
+    }
 
     super.clearStatistics();
   }
@@ -125,6 +143,11 @@ public class HTTPStatistics extends LDAPStatistics
     addAll(results, totalCountsSnapshot, "ds-mon-http-", "-requests-total-count");
     addAll(results, totalTimesSnapshot, "ds-mon-resident-time-http-", "-requests-total-time");
     results.add(createAttribute("ds-mon-http-requests-total-count", Integer.toString(totalCount)));
+    for (Entry<String, LatencyHistogram> entry : requestMethodsLatencies.entrySet())
+    {
+      // e.g. ds-mon-http-get-requests-time-micros-p99
+      addHistogramAttributes(results, "ds-mon-http-" + entry.getKey() + "-requests-time-micros", entry.getValue());
+    }
     return results;
   }
 
@@ -166,16 +189,20 @@ public class HTTPStatistics extends LDAPStatistics
    *          the method of the HTTP request to add to the stats
    * @param time
    *          the time to add to the total
+   * @param unit
+   *          the unit of the time to add to the total
    * @throws NullPointerException
    *           if the httpMethod is null
    */
-  public void updateRequestMonitoringData(String httpMethod, long time)
+  public void updateRequestMonitoringData(String httpMethod, long time, TimeUnit unit)
       throws NullPointerException
   {
-    AtomicLong nb = this.requestMethodsTotalTime.get(httpMethod.toLowerCase());
+    final String method = toLowerCase(httpMethod);
+    AtomicLong nb = this.requestMethodsTotalTime.get(method);
     if (nb != null)
     {
       nb.addAndGet(time);
+      this.requestMethodsLatencies.get(method).record(unit.toMicros(time));
     } // else this is an unsupported HTTP method
   }
 }
@@ -37,6 +37,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
@@ -148,6 +149,8 @@ public final class LDAPClientConnection extends ClientConnection implements
   {
     /** Synchronize concurrent writes to the same connection. */
     private final Lock writeLock = new ReentrantLock();
+    /** Whether the current or last write had to wait for the client. */
+    private volatile boolean isBlocked;
 
     @Override
     public int read(ByteBuffer byteBuffer) throws IOException
@@ -186,7 +189,8 @@ public final class LDAPClientConnection extends ClientConnection implements
         {
           statTracker.updateBytesWritten(bytesWritten);
         }
-        if (!byteBuffer.hasRemaining())
+        isBlocked = byteBuffer.hasRemaining();
+        if (!isBlocked)
         {
           return bytesToWrite;
         }
@@ -420,7 +424,7 @@ public final class LDAPClientConnection extends ClientConnection implements
   private final SocketChannel clientChannel;
 
   /** The byte channel used for blocking writes with time out. */
-  private final ByteChannel timeoutClientChannel;
+  private final TimeoutWriteByteChannel timeoutClientChannel;
 
   /** The string representation of the address of the client. */
   private final String clientAddress;
@@ -448,6 +452,14 @@ public final class LDAPClientConnection extends ClientConnection implements
   private volatile ConnectionSecurityProvider saslPendingProvider;
   private volatile ConnectionSecurityProvider tlsPendingProvider;
 
+  /**
+   * The search result messages waiting to be written to the client, guarded
+   * by the buffered messages lock.
+   */
+  private final ByteStringBuilder bufferedMessages = new ByteStringBuilder();
+  private int nbBufferedMessages;
+  private final Object bufferedMessagesLock = new Object();
+
 
   /**
    * Creates a new LDAP client connection with the provided information.
@@ -713,14 +725,14 @@ public final class LDAPClientConnection extends ClientConnection implements
         }
         this.statTracker.updateOperationMonitoringData(
                 operation.getOperationType(),
-                time);
+                time, useNanoTime ? TimeUnit.NANOSECONDS : TimeUnit.MILLISECONDS);
     }
 
     // Avoid sending the response if one has already been sent. This may happen
     // if operation processing encounters a run-time exception after sending the
     // response: the worker thread exception handling code will attempt to send
     // an error result to the client indicating that a problem occurred.
-    if (removeOperationInProgress(operation.getMessageID()))
+    if (removeOperation(operation.getMessageID()))
     {
       LDAPMessage message = operationToResponseLDAPMessage(operation);
       if (message != null)
@@ -887,7 +899,8 @@ public final class LDAPClientConnection extends ClientConnection implements
         new SearchResultEntryProtocolOp(searchEntry, ldapVersion);
 
     sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchEntry.getControls()));
+        protocolOp, searchEntry.getControls()),
+        canBufferSearchResults(searchOperation));
   }
 
 
@@ -924,7 +937,8 @@ public final class LDAPClientConnection extends ClientConnection implements
         new SearchResultReferenceProtocolOp(searchReference);
 
     sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchReference.getControls()));
+        protocolOp, searchReference.getControls()),
+        canBufferSearchResults(searchOperation));
     return true;
   }
 
@@ -960,6 +974,30 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
 
+  /**
+   * Indicates whether the search results returned by the provided search
+   * operation may be buffered. Persistent searches return search results from
+   * the threads processing the changes, with no completion to flush the buffer,
+   * so their search results are always written immediately.
+   */
+  private boolean canBufferSearchResults(SearchOperation searchOperation)
+  {
+    if (connectionHandler.getMaxBufferedSearchResultSize() == 0)
+    {
+      return false;
+    }
+    for (Control control : searchOperation.getRequestControls())
+    {
+      if (OID_PERSISTENT_SEARCH.equals(control.getOID()))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
   /**
    * Sends the provided LDAP message to the client.
    *
@@ -967,13 +1005,29 @@ public final class LDAPClientConnection extends ClientConnection implements
    *          The LDAP message to send to the client.
    */
   private void sendLDAPMessage(LDAPMessage message)
+  {
+    sendLDAPMessage(message, false);
+  }
+
+
+
+  /**
+   * Sends the provided LDAP message to the client, possibly buffering it so
+   * that it gets written along with the following messages.
+   *
+   * @param message
+   *          The LDAP message to send to the client.
+   * @param canBeBuffered
+   *          Indicates whether the message may be buffered.
+   */
+  private void sendLDAPMessage(LDAPMessage message, boolean canBeBuffered)
   {
     // Use a thread local writer.
     final ASN1WriterHolder holder = getASN1Writer();
     try
     {
       message.write(holder.writer);
-      holder.buffer.copyTo(saslChannel);
+      writeMessage(holder.buffer, canBeBuffered);
 
       if (logger.isTraceEnabled())
       {
@@ -1010,6 +1064,92 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
 
+  /**
+   * Writes an encoded LDAP message to the client. Buffered messages are
+   * written along with the provided message, in a single write, unless the
+   * provided message can be buffered too and the buffer is not full yet.
+   */
+  private void writeMessage(ByteStringBuilder encodedMessage,
+      boolean canBeBuffered) throws IOException
+  {
+    synchronized (bufferedMessagesLock)
+    {
+      if (nbBufferedMessages == 0 && !canBeBuffered)
+      {
+        encodedMessage.copyTo(saslChannel);
+        return;
+      }
+
+      bufferedMessages.appendBytes(encodedMessage);
+      nbBufferedMessages++;
+      if (canBeBuffered
+          && bufferedMessages.length() < connectionHandler.getMaxBufferedSearchResultSize()
+          && nbBufferedMessages < connectionHandler.getMaxBufferedSearchResults())
+      {
+        return;
+      }
+      writeBufferedMessages();
+    }
+  }
+
+
+
+  /**
+   * Writes the buffered messages to the client. The caller must hold the
+   * buffered messages lock.
+   */
+  private void writeBufferedMessages() throws IOException
+  {
+    try
+    {
+      bufferedMessages.copyTo(saslChannel);
+    }
+    finally
+    {
+      // Messages are dropped on failure as the connection gets closed.
+      nbBufferedMessages = 0;
+      bufferedMessages.clearAndTruncate(getMaxInternalBufferSize(),
+          connectionHandler.getMaxBufferedSearchResultSize());
+    }
+  }
+
+
+
+  /**
+   * Writes the buffered messages to the client, if any. This ensures search
+   * results get written when a search operation completes without a response,
+   * for example when it is abandoned.
+   */
+  private void flushBufferedMessages()
+  {
+    synchronized (bufferedMessagesLock)
+    {
+      if (nbBufferedMessages == 0)
+      {
+        return;
+      }
+      try
+      {
+        writeBufferedMessages();
+        return;
+      }
+      catch (ClosedChannelException e)
+      {
+        logger.traceException(e);
+        disconnect(DisconnectReason.IO_ERROR, false,
+            ERR_IO_ERROR_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        disconnect(DisconnectReason.SERVER_ERROR, false,
+            ERR_UNEXPECTED_EXCEPTION_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
+      }
+    }
+  }
+
+
+
   /**
    * Closes the connection to the client, optionally sending it a
    * message indicating the reason for the closure. Note that the
@@ -1287,6 +1427,19 @@ public final class LDAPClientConnection extends ClientConnection implements
    */
   @Override
   public boolean removeOperationInProgress(int messageID)
+  {
+    flushBufferedMessages();
+    return removeOperation(messageID);
+  }
+
+
+
+  /**
+   * Removes the provided operation from the set of operations in progress,
+   * without writing the buffered messages: the operation response will be
+   * written along with them.
+   */
+  private boolean removeOperation(int messageID)
   {
     Operation operation = operationsInProgress.remove(messageID);
     if (operation == null)
@@ -1507,6 +1660,13 @@ public final class LDAPClientConnection extends ClientConnection implements
     return connectionHandler.getMaxBlockedWriteTimeLimit();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public boolean isWriteBlocked()
+  {
+    return timeoutClientChannel.isBlocked;
+  }
+
 
 
   /**
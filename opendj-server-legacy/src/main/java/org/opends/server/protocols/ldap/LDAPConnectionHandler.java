@@ -57,6 +57,7 @@ import org.opends.server.api.*;
 import org.opends.server.api.plugin.PluginResult;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.core.PluginConfigManager;
+import org.opends.server.core.InlineQueueingStrategy;
 import org.opends.server.core.QueueingStrategy;
 import org.opends.server.core.ServerContext;
 import org.opends.server.core.WorkQueueStrategy;
@@ -201,8 +202,8 @@ public final class LDAPConnectionHandler extends
   /** The protocol used by this connection handler. */
   private String protocol;
 
-  /** Queueing strategy. */
-  private final QueueingStrategy queueingStrategy;
+  /** Queueing strategy, running cheap operations inline when configured. */
+  private final InlineQueueingStrategy queueingStrategy;
 
   /**
    * The condition variable that will be used by the start method to wait for
@@ -265,7 +266,7 @@ public final class LDAPConnectionHandler extends
         + " Thread");
 
     this.friendlyName = friendlyName;
-    this.queueingStrategy = strategy;
+    this.queueingStrategy = new InlineQueueingStrategy(strategy);
 
     // No real implementation is required. Do all the work in the
     // initializeConnectionHandler method.
@@ -327,6 +328,7 @@ public final class LDAPConnectionHandler extends
 
     // Apply the changes.
     currentConfig = config;
+    queueingStrategy.setTimeBudget(config.getInlineOperationTimeBudget(), TimeUnit.MILLISECONDS);
     enabled = config.isEnabled();
     allowedClients = config.getAllowedClient();
     deniedClients = config.getDeniedClient();
@@ -599,6 +601,33 @@ public final class LDAPConnectionHandler extends
 
 
 
+  /**
+   * Retrieves the maximum size in bytes of the search results which may be
+   * buffered before being written to client connections.
+   *
+   * @return The maximum size in bytes of the buffered search results, or zero
+   *         if search results should not be buffered.
+   */
+  public int getMaxBufferedSearchResultSize()
+  {
+    return (int) currentConfig.getMaxBufferedSearchResultSize();
+  }
+
+
+
+  /**
+   * Retrieves the maximum number of search results which may be buffered
+   * before being written to client connections.
+   *
+   * @return The maximum number of buffered search results.
+   */
+  public int getMaxBufferedSearchResults()
+  {
+    return currentConfig.getMaxBufferedSearchResults();
+  }
+
+
+
   /** {@inheritDoc} */
   @Override
   public String getProtocol()
@@ -669,6 +698,7 @@ public final class LDAPConnectionHandler extends
     currentConfig = config;
     enabled = config.isEnabled();
     requestHandlerIndex = 0;
+    queueingStrategy.setTimeBudget(config.getInlineOperationTimeBudget(), TimeUnit.MILLISECONDS);
     allowedClients = config.getAllowedClient();
     deniedClients = config.getDeniedClient();
 
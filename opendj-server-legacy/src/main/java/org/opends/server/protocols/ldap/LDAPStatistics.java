@@ -32,6 +32,7 @@ import static org.opends.server.util.ServerConstants.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -39,6 +40,7 @@ import org.forgerock.opendj.config.server.ConfigException;
 import org.opends.server.admin.std.server.MonitorProviderCfg;
 import org.opends.server.api.MonitorProvider;
 import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.OperationLatencies;
 import org.opends.server.types.Attribute;
 import org.opends.server.types.AttributeType;
 import org.opends.server.types.Attributes;
@@ -130,6 +132,8 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
   private AtomicLong abandonOperationTime = new AtomicLong(0);
   private AtomicLong extOperationCount = new AtomicLong(0);
   private AtomicLong extOperationTime = new AtomicLong(0);
+  /** The distribution of the operation times, for reporting percentiles. */
+  private final OperationLatencies operationLatencies = new OperationLatencies();
 
 
   /**
@@ -327,6 +331,8 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
     attrs.add(createAttribute("ds-mon-extended-operations-total-count", tmpExtOperationCount));
     attrs.add(createAttribute("ds-mon-resident-time-extended-operations-total-time", tmpExtOperationTime));
 
+    addHistogramAttributes(attrs, operationLatencies);
+
     return attrs;
   }
 
@@ -388,6 +394,7 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
       abandonOperationTime.set(0);
       extOperationCount.set(0);
       extOperationTime.set(0);
+      operationLatencies.clear();
   }
 
 
@@ -989,9 +996,11 @@ public class LDAPStatistics extends MonitorProvider<MonitorProviderCfg>
    * Update the operation counters and times depending on the OperationType.
    * @param type of the operation.
    * @param time of the operation execution.
+   * @param unit of the time of the operation execution.
    */
 
-  public void updateOperationMonitoringData(OperationType type, long time) {
+  public void updateOperationMonitoringData(OperationType type, long time, TimeUnit unit) {
+      operationLatencies.record(type, time, unit);
       if (type.equals(OperationType.ADD)) {
           addOperationCount.getAndIncrement();
           addOperationTime.getAndAdd(time);
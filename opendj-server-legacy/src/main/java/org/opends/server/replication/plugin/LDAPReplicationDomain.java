@@ -43,7 +43,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -232,10 +231,20 @@ public final class LDAPReplicationDomain extends ReplicationDomain
 
   private final DSRSShutdownSync dsrsShutdownSync;
   /**
-   * The update to replay message queue where the listener thread is going to
+   * The update to replay message lanes where the listener thread is going to
    * push incoming update messages.
    */
-  private final BlockingQueue<UpdateToReplay> updateToReplayQueue;
+  private final ReplayLanes replayLanes;
+  /**
+   * The number of milliseconds spent in the replay lanes by the last update
+   * whose replay started.
+   */
+  private volatile long replayQueueLag;
+  /**
+   * The number of milliseconds between the creation of the last update whose
+   * replay started on its origin server, and the start of its replay.
+   */
+  private volatile long replayLag;
   /** The number of naming conflicts successfully resolved. */
   private final AtomicInteger numResolvedNamingConflicts = new AtomicInteger();
   /** The number of modify conflicts successfully resolved. */
@@ -472,17 +481,17 @@ public final class LDAPReplicationDomain extends ReplicationDomain
    * Creates a new ReplicationDomain using configuration from configEntry.
    *
    * @param configuration    The configuration of this ReplicationDomain.
-   * @param updateToReplayQueue The queue for update messages to replay.
+   * @param replayLanes      The lanes for update messages to replay.
    * @param dsrsShutdownSync Synchronization object for shutdown of combined DS/RS instances.
    * @throws ConfigException In case of invalid configuration.
    */
   LDAPReplicationDomain(ReplicationDomainCfg configuration,
-      BlockingQueue<UpdateToReplay> updateToReplayQueue,
+      ReplayLanes replayLanes,
       DSRSShutdownSync dsrsShutdownSync) throws ConfigException
   {
     super(configuration, -1);
 
-    this.updateToReplayQueue = updateToReplayQueue;
+    this.replayLanes = replayLanes;
     this.dsrsShutdownSync = dsrsShutdownSync;
 
     // Get assured configuration
@@ -2267,6 +2276,19 @@ public final class LDAPReplicationDomain extends ReplicationDomain
     }
   }
 
+  /**
+   * Records that a replay thread is starting to replay the provided update.
+   *
+   * @param update
+   *          The update taken from its replay lane.
+   */
+  void replayStarted(UpdateToReplay update)
+  {
+    final long now = System.currentTimeMillis();
+    replayQueueLag = now - update.getQueuedTime();
+    replayLag = now - update.getUpdateMessage().getCSN().getTime();
+  }
+
   /**
    * Create and replay a synchronized Operation from an UpdateMsg.
    *
@@ -4262,7 +4284,7 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
         // loop until we can offer to the queue or shutdown was initiated
         try
         {
-          if (updateToReplayQueue.offer(updateToReplay, 1, TimeUnit.SECONDS))
+          if (replayLanes.offer(updateToReplay, 1, TimeUnit.SECONDS))
           {
             // successful offer to the queue, let's exit the loop
             break;
@@ -4306,6 +4328,19 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     addMonitorData(attributes, "remote-pending-changes-size",
         remotePendingChanges.getQueueSize());
 
+    // updates of this domain waiting in the replay lanes
+    int replayQueueSize = 0;
+    int maxLaneDepth = 0;
+    for (int depth : replayLanes.getDepths(this))
+    {
+      replayQueueSize += depth;
+      maxLaneDepth = Math.max(maxLaneDepth, depth);
+    }
+    addMonitorData(attributes, "replay-queue-size", replayQueueSize);
+    addMonitorData(attributes, "replay-lane-max-depth", maxLaneDepth);
+    addMonitorData(attributes, "replay-queue-lag", replayQueueLag);
+    addMonitorData(attributes, "replay-lag", replayLag);
+
     return attributes;
   }
 
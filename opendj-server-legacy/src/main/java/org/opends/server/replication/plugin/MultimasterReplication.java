@@ -39,7 +39,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -106,8 +105,8 @@ public class MultimasterReplication
   private ReplicationServerListener replicationServerListener;
   private static final Map<DN, LDAPReplicationDomain> domains = new ConcurrentHashMap<>(4);
   private static final DSRSShutdownSync dsrsShutdownSync = new DSRSShutdownSync();
-  /** The queue of received update messages, to be treated by the ReplayThread threads. */
-  private static final BlockingQueue<UpdateToReplay> updateToReplayQueue = new LinkedBlockingQueue<>(10000);
+  /** The lanes of received update messages, each one drained by its own ReplayThread. */
+  private static final ReplayLanes replayLanes = new ReplayLanes(1, 10000);
   /** The list of ReplayThread threads. */
   private static final List<ReplayThread> replayThreads = new ArrayList<>();
   /** The configurable number of replay threads. */
@@ -202,7 +201,7 @@ public class MultimasterReplication
     try
     {
       final LDAPReplicationDomain domain = new LDAPReplicationDomain(
-          configuration, updateToReplayQueue, dsrsShutdownSync);
+          configuration, replayLanes, dsrsShutdownSync);
       if (domains.isEmpty())
       {
         // Create the threads that will process incoming update messages
@@ -238,7 +237,7 @@ public class MultimasterReplication
       throws ConfigException
   {
     final LDAPReplicationDomain domain =
-        new LDAPReplicationDomain(configuration, queue, dsrsShutdownSync);
+        new LDAPReplicationDomain(configuration, new ReplayLanes(queue), dsrsShutdownSync);
     domains.put(domain.getBaseDN(), domain);
     return domain;
   }
@@ -316,10 +315,11 @@ public class MultimasterReplication
   private static synchronized void createReplayThreads()
   {
     replayThreads.clear();
+    replayLanes.resize(replayThreadNumber);
 
     for (int i = 0; i < replayThreadNumber; i++)
     {
-      ReplayThread replayThread = new ReplayThread(updateToReplayQueue);
+      ReplayThread replayThread = new ReplayThread(replayLanes.getLane(i));
       replayThread.start();
       replayThreads.add(replayThread);
     }
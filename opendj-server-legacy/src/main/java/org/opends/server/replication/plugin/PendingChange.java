@@ -30,6 +30,7 @@ import org.opends.server.replication.common.CSN;
 import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.protocol.LDAPUpdateMsg;
 import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.types.DN;
 import org.opends.server.types.operation.PluginOperation;
 
 /**
@@ -43,6 +44,8 @@ class PendingChange implements Comparable<PendingChange>
   private UpdateMsg msg;
   private final PluginOperation op;
   private ServerState dependencyState;
+  /** The DN under which this change is indexed by the remote pending changes, if any. */
+  private DN indexedDN;
 
   /**
    * Construct a new PendingChange.
@@ -128,6 +131,29 @@ class PendingChange implements Comparable<PendingChange>
     return this.op;
   }
 
+  /**
+   * Get the DN under which this change is indexed. It is the DN of the
+   * message when the change was indexed, and does not follow the later
+   * changes of this DN (e.g. by the naming conflict resolution).
+   *
+   * @return the DN under which this change is indexed, null if it is not
+   *         indexed
+   */
+  public DN getIndexedDN()
+  {
+    return indexedDN;
+  }
+
+  /**
+   * Set the DN under which this change is indexed.
+   *
+   * @param indexedDN the DN under which this change is indexed
+   */
+  public void setIndexedDN(DN indexedDN)
+  {
+    this.indexedDN = indexedDN;
+  }
+
   /**
    * Add the given CSN to the list of dependencies of this PendingChange.
    *
@@ -60,6 +60,13 @@ final class RemotePendingChanges
    */
   private final SortedSet<PendingChange> dependentChanges = new TreeSet<>();
 
+  /**
+   * The pending add changes, indexed by DN, so that the dependencies of the
+   * modify operations, by far the most frequent, can be checked without
+   * scanning all the pending changes.
+   */
+  private final Map<DN, List<PendingChange>> pendingAdds = new HashMap<>();
+
   /** The ServerState that will be updated when LDAPUpdateMsg are fully replayed. */
   private final ServerState state;
 
@@ -96,8 +103,49 @@ final class RemotePendingChanges
   public synchronized boolean putRemoteUpdate(LDAPUpdateMsg update)
   {
     CSN csn = update.getCSN();
-    return pendingChanges.put(csn,
-        new PendingChange(csn, null, update)) == null;
+    final PendingChange change = new PendingChange(csn, null, update);
+    if (pendingChanges.put(csn, change) != null)
+    {
+      return false;
+    }
+    if (update instanceof AddMsg)
+    {
+      final DN dn = update.getDN();
+      List<PendingChange> adds = pendingAdds.get(dn);
+      if (adds == null)
+      {
+        adds = new ArrayList<>(1);
+        pendingAdds.put(dn, adds);
+      }
+      adds.add(change);
+      change.setIndexedDN(dn);
+    }
+    return true;
+  }
+
+  private void removePendingAdd(PendingChange change)
+  {
+    // The DN of the message may have changed since it was indexed
+    final DN dn = change.getIndexedDN();
+    if (dn != null)
+    {
+      final List<PendingChange> adds = pendingAdds.get(dn);
+      if (adds != null && adds.remove(change) && adds.isEmpty())
+      {
+        pendingAdds.remove(dn);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of DNs under which pending add changes are indexed.
+   * Only used by tests.
+   *
+   * @return the number of DNs under which pending add changes are indexed
+   */
+  synchronized int getNumberOfIndexedAdds()
+  {
+    return pendingAdds.size();
   }
 
   /**
@@ -125,6 +173,7 @@ final class RemotePendingChanges
         state.update(firstCSN);
       }
       pendingChanges.remove(firstCSN);
+      removePendingAdd(firstChange);
 
       if (pendingChanges.isEmpty())
       {
@@ -293,30 +342,18 @@ final class RemotePendingChanges
       return false;
     }
 
-    for (PendingChange pendingChange : pendingChanges.values())
+    // Check if an addOperation on the same DN is still pending.
+    final List<PendingChange> adds = pendingAdds.get(targetDN);
+    if (adds != null)
     {
-      if (pendingChange.getCSN().isOlderThan(csn))
+      for (PendingChange pendingChange : adds)
       {
-        final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
-        if (pendingMsg instanceof AddMsg)
+        if (pendingChange.getCSN().isOlderThan(csn))
         {
-          // Check if the operation to be run is an addOperation on a same DN.
-          if (pendingMsg.getDN().equals(targetDN))
-          {
-            hasDependencies = true;
-            addDependency(change, pendingChange);
-          }
+          hasDependencies = true;
+          addDependency(change, pendingChange);
         }
       }
-      else
-      {
-        // We reached an operation that is newer than the operation
-        // for which we are doing the dependency check so it is
-        // not possible to find another operation with some dependency.
-        // break the loop to avoid going through the potentially large
-        // list of pending changes.
-        break;
-      }
     }
     return hasDependencies;
   }
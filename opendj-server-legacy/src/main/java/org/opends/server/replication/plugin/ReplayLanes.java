@@ -0,0 +1,457 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+
+/**
+ * The queues of updates waiting to be replayed, each lane being drained by its
+ * own replay thread.
+ * <p>
+ * An update is queued in the lane selected by the hash of its replication
+ * domain and of the entry it targets (its entryUUID, or its DN if it has none).
+ * The updates of an entry are therefore replayed one after the other, in the
+ * order they were received, while the updates of different entries are
+ * replayed in parallel. Dependencies between the updates of different entries
+ * (e.g. adding a parent and its child) are still detected by the
+ * {@link RemotePendingChanges} of each domain.
+ * <p>
+ * Within a lane, each replication domain has its own bounded queue, and the
+ * replay thread takes the updates of the domains in turn: a busy domain only
+ * blocks the threads queuing its own updates, and cannot delay the replay of
+ * the updates of the other domains by more than one update per domain.
+ */
+final class ReplayLanes
+{
+  /** The result of queuing an update in a lane. */
+  private enum OfferResult
+  {
+    /** The update was queued. */
+    QUEUED,
+    /** The queue of the domain of the update was still full once the timeout elapsed. */
+    TIMED_OUT,
+    /** The lane was replaced by a resize: the update must be queued in the new lanes. */
+    RETIRED
+  }
+
+  /** The updates of a replication domain queued in a lane. */
+  private static final class DomainQueue
+  {
+    private final LDAPReplicationDomain domain;
+    /** Guarded by the lock of the lane. */
+    private final Deque<UpdateToReplay> updates = new ArrayDeque<>();
+    /** The number of updates, readable without holding the lock of the lane. */
+    private volatile int size;
+
+    private DomainQueue(LDAPReplicationDomain domain)
+    {
+      this.domain = domain;
+    }
+
+    private void add(UpdateToReplay update)
+    {
+      updates.add(update);
+      size = updates.size();
+    }
+
+    private UpdateToReplay poll()
+    {
+      final UpdateToReplay update = updates.poll();
+      size = updates.size();
+      return update;
+    }
+  }
+
+  /** A lane, drained by a single replay thread. */
+  static final class Lane
+  {
+    /** The number of updates of a domain which may be queued in this lane. */
+    private final int domainCapacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    /**
+     * The queue of each domain having updates in this lane. Modified while
+     * holding the lock, read without it for monitoring.
+     */
+    private final Map<LDAPReplicationDomain, DomainQueue> queues = new ConcurrentHashMap<>();
+    /** The domain queues having updates, in the order they are drained. Guarded by lock. */
+    private final Deque<DomainQueue> readyQueues = new ArrayDeque<>();
+    /** Whether this lane was replaced by a resize. Guarded by lock. */
+    private boolean retired;
+
+    private Lane(int domainCapacity)
+    {
+      this.domainCapacity = domainCapacity;
+    }
+
+    /**
+     * Retrieves and removes the next update to replay, waiting if necessary
+     * for an update to be queued. The domains having updates queued take
+     * turns.
+     *
+     * @param timeout
+     *          How long to wait before giving up, in units of {@code unit}.
+     * @param unit
+     *          The unit of {@code timeout}.
+     * @return the next update to replay, or {@code null} if none was queued
+     *         before the timeout elapsed
+     * @throws InterruptedException
+     *           If interrupted while waiting.
+     */
+    UpdateToReplay poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+      long nanos = unit.toNanos(timeout);
+      lock.lockInterruptibly();
+      try
+      {
+        while (readyQueues.isEmpty())
+        {
+          if (nanos <= 0)
+          {
+            return null;
+          }
+          nanos = notEmpty.awaitNanos(nanos);
+        }
+        final DomainQueue queue = readyQueues.poll();
+        final UpdateToReplay update = queue.poll();
+        if (queue.updates.isEmpty())
+        {
+          queues.remove(queue.domain);
+        }
+        else
+        {
+          readyQueues.add(queue);
+        }
+        notFull.signalAll();
+        return update;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Returns the updates queued in this lane. Only used by tests.
+     *
+     * @return the updates queued in this lane, in the order they are queued
+     *         for each domain
+     */
+    List<UpdateToReplay> getUpdates()
+    {
+      lock.lock();
+      try
+      {
+        final List<UpdateToReplay> updates = new ArrayList<>();
+        for (DomainQueue queue : readyQueues)
+        {
+          updates.addAll(queue.updates);
+        }
+        return updates;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    private OfferResult offer(UpdateToReplay update, long deadline) throws InterruptedException
+    {
+      final LDAPReplicationDomain domain = update.getReplicationDomain();
+      lock.lockInterruptibly();
+      try
+      {
+        while (!retired && getDepth(domain) >= domainCapacity)
+        {
+          final long nanos = deadline - System.nanoTime();
+          if (nanos <= 0)
+          {
+            return OfferResult.TIMED_OUT;
+          }
+          notFull.awaitNanos(nanos);
+        }
+        if (retired)
+        {
+          return OfferResult.RETIRED;
+        }
+        add(update);
+        return OfferResult.QUEUED;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    /** Queues an update whatever the number of updates already queued. Must hold the lock. */
+    private void add(UpdateToReplay update)
+    {
+      final LDAPReplicationDomain domain = update.getReplicationDomain();
+      DomainQueue queue = queues.get(domain);
+      if (queue == null)
+      {
+        queue = new DomainQueue(domain);
+        queues.put(domain, queue);
+      }
+      if (queue.updates.isEmpty())
+      {
+        readyQueues.add(queue);
+      }
+      queue.add(update);
+      notEmpty.signal();
+    }
+
+    /**
+     * Marks this lane as replaced, waking up the threads waiting to queue
+     * updates in it, and returns the updates it holds.
+     */
+    private List<UpdateToReplay> retire()
+    {
+      lock.lock();
+      try
+      {
+        retired = true;
+        final List<UpdateToReplay> updates = new ArrayList<>();
+        for (DomainQueue queue : readyQueues)
+        {
+          updates.addAll(queue.updates);
+        }
+        readyQueues.clear();
+        queues.clear();
+        notFull.signalAll();
+        return updates;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    private int getDepth(LDAPReplicationDomain domain)
+    {
+      final DomainQueue queue = queues.get(domain);
+      return queue != null ? queue.size : 0;
+    }
+  }
+
+  /** The lanes. Replaced, never modified, when the number of lanes changes. */
+  private volatile List<Lane> lanes;
+  /** The number of updates of a domain which may be queued in all the lanes. */
+  private final int domainCapacity;
+  /** The single queue used instead of the lanes by tests, or {@code null}. */
+  private final BlockingQueue<UpdateToReplay> testQueue;
+
+  /**
+   * Creates new replay lanes.
+   *
+   * @param nbLanes
+   *          The number of lanes.
+   * @param domainCapacity
+   *          The number of updates of each replication domain which may be
+   *          queued in the lanes.
+   */
+  ReplayLanes(int nbLanes, int domainCapacity)
+  {
+    this.domainCapacity = domainCapacity;
+    this.testQueue = null;
+    this.lanes = newLanes(nbLanes);
+  }
+
+  /**
+   * Creates replay lanes made of a single queue provided by the caller, which
+   * is in charge of replaying the queued updates. Only used by tests.
+   *
+   * @param queue
+   *          The single queue.
+   */
+  ReplayLanes(BlockingQueue<UpdateToReplay> queue)
+  {
+    this.domainCapacity = Integer.MAX_VALUE;
+    this.testQueue = queue;
+    this.lanes = Collections.emptyList();
+  }
+
+  /**
+   * Returns the number of lanes.
+   *
+   * @return the number of lanes
+   */
+  int getNumberOfLanes()
+  {
+    return lanes.size();
+  }
+
+  /**
+   * Returns the specified lane.
+   *
+   * @param index
+   *          The index of the lane.
+   * @return the specified lane
+   */
+  Lane getLane(int index)
+  {
+    return lanes.get(index);
+  }
+
+  /**
+   * Queues an update in its lane, waiting if necessary for space to become
+   * available in the queue of its domain.
+   *
+   * @param update
+   *          The update to queue.
+   * @param timeout
+   *          How long to wait before giving up, in units of {@code unit}.
+   * @param unit
+   *          The unit of {@code timeout}.
+   * @return {@code true} if the update was queued, {@code false} if the queue
+   *         of its domain is still full once the timeout elapsed.
+   * @throws InterruptedException
+   *           If interrupted while waiting.
+   */
+  boolean offer(UpdateToReplay update, long timeout, TimeUnit unit) throws InterruptedException
+  {
+    if (testQueue != null)
+    {
+      return testQueue.offer(update, timeout, unit);
+    }
+
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true)
+    {
+      final List<Lane> currentLanes = lanes;
+      switch (currentLanes.get(laneOf(update, currentLanes.size())).offer(update, deadline))
+      {
+      case QUEUED:
+        return true;
+      case TIMED_OUT:
+        return false;
+      default:
+        // The lanes are being resized: wait for the new lanes to be published
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Changes the number of lanes. The updates already queued are moved to their
+   * new lane, in the same order. Must not be called while the lanes are being
+   * drained.
+   *
+   * @param nbLanes
+   *          The new number of lanes.
+   */
+  synchronized void resize(int nbLanes)
+  {
+    if (testQueue != null || nbLanes == lanes.size())
+    {
+      return;
+    }
+
+    // Retire all the lanes before queuing in the new ones, so that an update
+    // cannot be queued in a new lane before the updates of the same entry
+    // still held by an old lane.
+    final List<List<UpdateToReplay>> updates = new ArrayList<>();
+    for (Lane lane : lanes)
+    {
+      updates.add(lane.retire());
+    }
+    final List<Lane> newLanes = newLanes(nbLanes);
+    for (List<UpdateToReplay> laneUpdates : updates)
+    {
+      for (UpdateToReplay update : laneUpdates)
+      {
+        // Never lose the updates already queued, even if the lane overflows
+        final Lane lane = newLanes.get(laneOf(update, nbLanes));
+        lane.lock.lock();
+        try
+        {
+          lane.add(update);
+        }
+        finally
+        {
+          lane.lock.unlock();
+        }
+      }
+    }
+    lanes = newLanes;
+  }
+
+  /**
+   * Returns, for each lane, the number of queued updates of the provided
+   * replication domain.
+   *
+   * @param domain
+   *          The replication domain.
+   * @return the number of queued updates of the domain in each lane
+   */
+  int[] getDepths(LDAPReplicationDomain domain)
+  {
+    if (testQueue != null)
+    {
+      return new int[] { testQueue.size() };
+    }
+    final List<Lane> currentLanes = lanes;
+    final int[] depths = new int[currentLanes.size()];
+    for (int i = 0; i < depths.length; i++)
+    {
+      depths[i] = currentLanes.get(i).getDepth(domain);
+    }
+    return depths;
+  }
+
+  private List<Lane> newLanes(int nbLanes)
+  {
+    final int laneCapacity = Math.max(domainCapacity / nbLanes, 1);
+    final List<Lane> newLanes = new ArrayList<>(nbLanes);
+    for (int i = 0; i < nbLanes; i++)
+    {
+      newLanes.add(new Lane(laneCapacity));
+    }
+    return Collections.unmodifiableList(newLanes);
+  }
+
+  private static int laneOf(UpdateToReplay update, int nbLanes)
+  {
+    final LDAPUpdateMsg msg = update.getUpdateMessage();
+    final String entryUUID = msg.getEntryUUID();
+    final int entryHash = entryUUID != null ? entryUUID.hashCode() : msg.getDN().hashCode();
+    final int hash = 31 * update.getReplicationDomain().getBaseDN().hashCode() + entryHash;
+    return (hash & Integer.MAX_VALUE) % nbLanes;
+  }
+}
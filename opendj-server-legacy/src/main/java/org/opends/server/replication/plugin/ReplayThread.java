@@ -29,7 +29,6 @@ package org.opends.server.replication.plugin;
 import static org.opends.messages.ReplicationMessages.*;
 import static org.opends.server.util.StaticUtils.*;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -40,24 +39,25 @@ import org.opends.server.replication.protocol.LDAPUpdateMsg;
 /**
  * Thread that is used to get message from the replication servers (stored
  * in the updates queue) and replay them in the current server. A configurable
- * number of this thread is created for the whole MultimasterReplication object
- * (i.e: these threads are shared across the ReplicationDomain objects for
- * replaying the updates they receive)
+ * number of this thread is created for the whole MultimasterReplication object,
+ * each one draining its own lane of the {@link ReplayLanes} (i.e: these threads
+ * are shared across the ReplicationDomain objects for replaying the updates
+ * they receive)
  */
 public class ReplayThread extends DirectoryThread
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
-  private final BlockingQueue<UpdateToReplay> updateToReplayQueue;
+  private final ReplayLanes.Lane updateToReplayQueue;
   private AtomicBoolean shutdown = new AtomicBoolean(false);
   private static int count;
 
   /**
    * Constructor for the ReplayThread.
    *
-   * @param updateToReplayQueue The queue of update messages we have to replay
+   * @param updateToReplayQueue The lane of update messages we have to replay
    */
-  public ReplayThread(BlockingQueue<UpdateToReplay> updateToReplayQueue)
+  ReplayThread(ReplayLanes.Lane updateToReplayQueue)
   {
      super("Replica replay thread " + count++);
      this.updateToReplayQueue = updateToReplayQueue;
@@ -96,6 +96,7 @@ public class ReplayThread extends DirectoryThread
           // Find replication domain for that update message
           LDAPUpdateMsg updateMsg = updateToreplay.getUpdateMessage();
           LDAPReplicationDomain domain = updateToreplay.getReplicationDomain();
+          domain.replayStarted(updateToreplay);
           domain.replay(updateMsg, shutdown);
         }
       } catch (Exception e)
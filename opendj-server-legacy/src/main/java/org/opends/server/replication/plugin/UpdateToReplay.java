@@ -38,6 +38,8 @@ public class UpdateToReplay
 {
   private LDAPUpdateMsg updateMessage;
   private LDAPReplicationDomain replicationDomain;
+  /** The time at which the update was queued. */
+  private final long queuedTime = System.currentTimeMillis();
 
   /**
    * Construct the object associating the update message with the replication
@@ -70,4 +72,13 @@ public class UpdateToReplay
   {
     return replicationDomain;
   }
+
+  /**
+   * Getter for the time at which the update was queued.
+   * @return The time at which the update was queued, in milliseconds
+   */
+  public long getQueuedTime()
+  {
+    return queuedTime;
+  }
 }
@@ -338,6 +338,10 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
     {
       return;
     }
+    if (preparedAssuredInfo != null && preparedAssuredInfo.sendAckOnceStored)
+    {
+      sendAckOncePersisted(updateMsg.getCSN(), sourceHandler);
+    }
 
     final List<Integer> assuredServers = getAssuredServers(updateMsg, preparedAssuredInfo);
 
@@ -544,6 +548,44 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
     }
   }
 
+  /**
+   * Sends the ack of an assured update to the server it was received from, once
+   * the changelog has persisted this update. The updates received from this
+   * server keep on being processed meanwhile.
+   */
+  private void sendAckOncePersisted(final CSN csn, final ServerHandler sourceHandler)
+  {
+    try
+    {
+      domainDB.runWhenPersisted(baseDN, csn, new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            sourceHandler.send(new AckMsg(csn));
+          }
+          catch (IOException e)
+          {
+            LocalizableMessageBuilder mb = new LocalizableMessageBuilder();
+            mb.append(ERR_RS_ERROR_SENDING_ACK.get(
+                localReplicationServer.getServerId(), sourceHandler.getServerId(), csn, baseDN));
+            mb.append(" ");
+            mb.append(stackTraceToSingleLineString(e));
+            logger.error(mb.toMessage());
+            stopServer(sourceHandler, false);
+          }
+        }
+      });
+    }
+    catch (ChangelogException e)
+    {
+      logger.error(ERR_CHANGELOG_SHUTDOWN_DATABASE_ERROR, stackTraceToSingleLineString(e));
+      localReplicationServer.shutdown();
+    }
+  }
+
   private void addUpdate(ServerHandler sHandler, UpdateMsg updateMsg,
       NotAssuredUpdateMsg notAssuredUpdateMsg, List<Integer> assuredServers)
   {
@@ -583,6 +625,12 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
        * received. Null if expectedServers is null.
        */
       public ExpectedAcksInfo expectedAcksInfo;
+
+      /**
+       * Whether the ack must be sent to the source server once the update is
+       * stored in the changelog, without waiting for acks from other servers.
+       */
+      public boolean sendAckOnceStored;
   }
 
   /**
@@ -670,7 +718,8 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
 
   /**
    * Process a just received assured update message in Safe Data mode. If the
-   * ack can be sent immediately, it is done here. This will also determine to
+   * ack can be sent as soon as the update is stored in the changelog, it is
+   * flagged in the returned object. This will also determine to
    * which suitable servers an ack should be requested from, and which ones are
    * not eligible for an ack request.
    * This method is an helper method for the put method. Have a look at the put
@@ -680,13 +729,12 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
    *        update was received
    * @return A suitable PreparedAssuredInfo object that contains every needed
    * info to proceed with post to server writers.
-   * @throws IOException When an IO exception happens during the update
-   *         processing.
    */
   private PreparedAssuredInfo processSafeDataUpdateMsg(
-    UpdateMsg update, ServerHandler sourceHandler) throws IOException
+    UpdateMsg update, ServerHandler sourceHandler)
   {
     CSN csn = update.getCSN();
+    PreparedAssuredInfo preparedAssuredInfo = new PreparedAssuredInfo();
     boolean interestedInAcks = false;
     byte safeDataLevel = update.getSafeDataLevel();
     byte groupId = localReplicationServer.getGroupId();
@@ -706,11 +754,11 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
           if (safeDataLevel == (byte) 1)
           {
             /**
-             * Immediately return the ack for an assured message in safe data
-             * mode with safe data level 1, coming from a DS. No need to wait
-             * for more acks
+             * Return the ack for an assured message in safe data mode with
+             * safe data level 1, coming from a DS, as soon as it is stored in
+             * the changelog. No need to wait for more acks
              */
-            sourceHandler.send(new AckMsg(csn));
+            preparedAssuredInfo.sendAckOnceStored = true;
           } else
           {
             /**
@@ -730,7 +778,7 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
            */
           if (safeDataLevel > (byte) 1)
           {
-            sourceHandler.send(new AckMsg(csn));
+            preparedAssuredInfo.sendAckOnceStored = true;
           }
         }
     }
@@ -742,7 +790,6 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
     }
 
     // Return computed structures
-    PreparedAssuredInfo preparedAssuredInfo = new PreparedAssuredInfo();
     int nExpectedServers = expectedServers.size();
     if (interestedInAcks) // interestedInAcks so level > 1
     {
@@ -764,8 +811,8 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
       } else
       {
         // level > 1 and source is a DS but no eligible servers found, send the
-        // ack immediately
-        sourceHandler.send(new AckMsg(csn));
+        // ack as soon as the update is stored
+        preparedAssuredInfo.sendAckOnceStored = true;
       }
     }
 
@@ -208,6 +208,23 @@ public interface ReplicationDomainDB
   boolean publishUpdateMsg(DN baseDN, UpdateMsg updateMsg)
       throws ChangelogException;
 
+  /**
+   * Runs the provided task once the provided change, already published, is
+   * persisted to stable storage. The task may be run by another thread, so that
+   * the caller can keep on publishing changes meanwhile. It is not run if the
+   * change cannot be persisted.
+   *
+   * @param baseDN
+   *          the replication domain baseDN
+   * @param csn
+   *          the CSN of the published change
+   * @param task
+   *          the task to run once the change is persisted
+   * @throws ChangelogException
+   *           If a database problem happened
+   */
+  void runWhenPersisted(DN baseDN, CSN csn, Runnable task) throws ChangelogException;
+
   /**
    * Let the DB know this replica is alive.
    * <p>
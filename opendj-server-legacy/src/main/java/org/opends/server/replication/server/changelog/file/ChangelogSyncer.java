@@ -0,0 +1,200 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+
+/**
+ * Synchronizes the logs of the changelog with the file system on behalf of the
+ * threads storing assured updates, and hands the tasks these threads provided
+ * (e.g. acknowledging the updates) to an executor once their records are
+ * persisted.
+ * <p>
+ * The threads storing updates never wait for the file system. The requests
+ * received while a synchronization runs are batched: the next synchronization
+ * covers all of them, whatever the logs they target, and each log is
+ * synchronized at most once per batch.
+ * <p>
+ * The tasks of a log whose synchronization failed are not run. The tasks never
+ * run on this thread, so that a task blocked on a slow peer does not delay the
+ * synchronization of the other logs, nor the tasks of the other peers.
+ * <p>
+ * Once shutdown is initiated, new requests are rejected and the requests
+ * already received are processed before this thread exits.
+ */
+final class ChangelogSyncer extends DirectoryThread
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** How long to wait for a request before checking whether shutdown was initiated. */
+  private static final long POLL_TIMEOUT_MILLIS = 500;
+  /** How long to wait on shutdown for the tasks being run, in milliseconds. */
+  private static final long TASKS_SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+  /** A task to run once the records appended so far to a log are persisted. */
+  private static final class SyncRequest
+  {
+    private final Log<?, ?> log;
+    private final Runnable task;
+
+    private SyncRequest(Log<?, ?> log, Runnable task)
+    {
+      this.log = log;
+      this.task = task;
+    }
+  }
+
+  private final BlockingQueue<SyncRequest> requests = new LinkedBlockingQueue<>();
+  /** Runs the tasks of the persisted requests, a blocked task only holding one of its threads. */
+  private final ExecutorService taskExecutor =
+      Executors.newCachedThreadPool(new DirectoryThread.Factory("Changelog DB persisted task runner"));
+  /** Guards {@link #acceptRequests}, so that no request is added once the last ones are drained. */
+  private final Object acceptRequestsLock = new Object();
+  private boolean acceptRequests = true;
+
+  /** Creates a new changelog syncer. */
+  ChangelogSyncer()
+  {
+    super("Changelog DB syncer");
+  }
+
+  /**
+   * Runs the provided task once the records appended so far to the provided
+   * log are persisted to the file system. The task is run by another thread
+   * than the caller and this thread.
+   *
+   * @param log
+   *          the log whose records must be persisted
+   * @param task
+   *          the task to run once the records are persisted
+   * @return {@code false} if the request was rejected because this syncer is
+   *         shutting down, in which case the caller must persist the records
+   *         itself
+   */
+  boolean runWhenPersisted(Log<?, ?> log, Runnable task)
+  {
+    synchronized (acceptRequestsLock)
+    {
+      if (acceptRequests)
+      {
+        requests.add(new SyncRequest(log, task));
+      }
+      return acceptRequests;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void run()
+  {
+    try
+    {
+      while (!isShutdownInitiated())
+      {
+        final SyncRequest request = requests.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (request != null)
+        {
+          processBatch(request);
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // shutdown initiated
+    }
+
+    // Do not leave the requests already received behind
+    synchronized (acceptRequestsLock)
+    {
+      acceptRequests = false;
+    }
+    SyncRequest request;
+    while ((request = requests.poll()) != null)
+    {
+      processBatch(request);
+    }
+
+    taskExecutor.shutdown();
+    try
+    {
+      taskExecutor.awaitTermination(TASKS_SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      // do nothing: we are already shutting down
+    }
+  }
+
+  private void processBatch(SyncRequest firstRequest)
+  {
+    final List<SyncRequest> batch = new ArrayList<>();
+    batch.add(firstRequest);
+    requests.drainTo(batch);
+
+    final Map<Log<?, ?>, Boolean> syncedLogs = new IdentityHashMap<>();
+    for (SyncRequest request : batch)
+    {
+      if (!syncedLogs.containsKey(request.log))
+      {
+        syncedLogs.put(request.log, sync(request.log));
+      }
+    }
+    for (SyncRequest request : batch)
+    {
+      if (syncedLogs.get(request.log))
+      {
+        taskExecutor.execute(request.task);
+      }
+    }
+  }
+
+  private boolean sync(Log<?, ?> log)
+  {
+    try
+    {
+      log.syncAppendedRecords();
+      return true;
+    }
+    catch (ChangelogException e)
+    {
+      logger.traceException(e);
+      logger.error(e.getMessageObject());
+      return false;
+    }
+  }
+}
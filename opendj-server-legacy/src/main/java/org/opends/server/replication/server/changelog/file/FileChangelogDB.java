@@ -116,6 +116,8 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
    */
   private volatile long purgeDelayInMillis;
   private final AtomicReference<ChangelogDBPurger> cnPurger = new AtomicReference<>();
+  /** The thread persisting the assured updates, shared by all the replica DBs. */
+  private final AtomicReference<ChangelogSyncer> syncer = new AtomicReference<>();
 
   /** The local replication server. */
   private final ReplicationServer replicationServer;
@@ -289,6 +291,11 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
       replicationEnv = new ReplicationEnvironment(dbDirectory.getAbsolutePath(), replicationServer, TimeService.SYSTEM);
       final ChangelogState changelogState = replicationEnv.getChangelogState();
       initializeToChangelogState(changelogState);
+      final ChangelogSyncer newSyncer = new ChangelogSyncer();
+      if (syncer.compareAndSet(null, newSyncer))
+      {
+        newSyncer.start();
+      }
       if (replicationServer.isChangeNumberEnabled())
       {
         startIndexer();
@@ -338,6 +345,7 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
 
     shutdownCNIndexerAndPurger();
+    shutdownSyncer();
 
     // Remember the first exception because :
     // - we want to try to remove everything we want to remove
@@ -409,6 +417,23 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
   }
 
+  private void shutdownSyncer()
+  {
+    final ChangelogSyncer currentSyncer = syncer.getAndSet(null);
+    if (currentSyncer != null)
+    {
+      currentSyncer.initiateShutdown();
+      try
+      {
+        currentSyncer.join();
+      }
+      catch (InterruptedException e)
+      {
+        // do nothing: we are already shutting down
+      }
+    }
+  }
+
   /**
    * Clears all records from the changelog (does not remove the changelog itself).
    *
@@ -825,6 +850,19 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     return pair.getSecond(); // replica DB was created
   }
 
+  @Override
+  public void runWhenPersisted(final DN baseDN, final CSN csn, final Runnable task) throws ChangelogException
+  {
+    final FileReplicaDB replicaDB = getOrCreateReplicaDB(baseDN, csn.getServerId(), replicationServer).getFirst();
+    final ChangelogSyncer currentSyncer = syncer.get();
+    if (currentSyncer == null || !replicaDB.runWhenPersisted(currentSyncer, task))
+    {
+      // not initialized or shutting down
+      replicaDB.syncToFileSystem();
+      task.run();
+    }
+  }
+
   @Override
   public void replicaHeartbeat(final DN baseDN, final CSN heartbeatCSN) throws ChangelogException
   {
@@ -28,6 +28,7 @@ package org.opends.server.replication.server.changelog.file;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.forgerock.opendj.config.server.ConfigException;
@@ -153,6 +154,10 @@ class FileReplicaDB
 
   /**
    * Adds a new message.
+   * <p>
+   * The message may not be persisted to the file system yet when this method
+   * returns: use {@link #runWhenPersisted(ChangelogSyncer, Runnable)} to be
+   * notified once it is.
    *
    * @param updateMsg
    *          The update message to add.
@@ -181,6 +186,34 @@ class FileReplicaDB
     }
   }
 
+  /**
+   * Runs the provided task once the messages added so far to this replicaDB
+   * are persisted to the file system.
+   *
+   * @param syncer
+   *          the thread which persists the messages and then runs the task
+   * @param task
+   *          the task to run once the messages are persisted
+   * @return {@code false} if the syncer is shutting down and did not accept
+   *         the task
+   */
+  boolean runWhenPersisted(final ChangelogSyncer syncer, final Runnable task)
+  {
+    return syncer.runWhenPersisted(log, task);
+  }
+
+  /**
+   * Synchronously persists to the file system the messages added so far to
+   * this replicaDB.
+   *
+   * @throws ChangelogException
+   *           If the synchronization fails.
+   */
+  void syncToFileSystem() throws ChangelogException
+  {
+    log.syncAppendedRecords();
+  }
+
   /**
    * Get the oldest CSN that has not been purged yet.
    *
@@ -278,6 +311,9 @@ class FileReplicaDB
       {
         create(attributes, "last-change", encode(limits.newestCSN));
       }
+      create(attributes, "sync-count", String.valueOf(log.getSyncCount()));
+      create(attributes, "sync-average-batch-size", String.format(Locale.ROOT, "%.2f", log.getAverageSyncBatchSize()));
+      create(attributes, "sync-average-latency-micros", String.valueOf(log.getAverageSyncLatencyInMicros()));
       return attributes;
     }
 
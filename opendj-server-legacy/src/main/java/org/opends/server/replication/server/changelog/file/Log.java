@@ -42,6 +42,7 @@ import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -188,13 +189,30 @@ final class Log<K extends Comparable<K>, V> implements Closeable
 
   /**
    * The exclusive lock used for log rotation and lifecycle operations on this log:
-   * initialize, clear, sync and close.
+   * initialize, clear and close.
    */
   private final Lock exclusiveLock;
 
-  /** The shared lock used for write operations and accessing {@link #logFiles} map. */
+  /** The shared lock used for write and sync operations and accessing {@link #logFiles} map. */
   private final Lock sharedLock;
 
+  /** The number of records appended to this log since it was opened. */
+  private final AtomicLong appendedRecordsCount = new AtomicLong();
+
+  /**
+   * Synchronization state, used to skip the synchronizations which would not
+   * persist any new record. Fields below are guarded by this object.
+   */
+  private final Object syncLock = new Object();
+  /** The number of appended records which are known to be persisted. */
+  private long syncedRecordsCount;
+  /** The number of synchronizations performed by {@link #syncAppendedRecords()}. */
+  private long syncCount;
+  /** The total number of records persisted by the synchronizations. */
+  private long syncedBatchesSize;
+  /** The total duration of the synchronizations, in nanoseconds. */
+  private long syncDurationInNanos;
+
   /**
    * The replication environment used to create this log. The log is notifying it for any change
    * that must be persisted.
@@ -423,7 +441,7 @@ final class Log<K extends Comparable<K>, V> implements Closeable
    * <p>
    * In order to ensure that record is written out of buffers and persisted
    * to file system, it is necessary to explicitly call the
-   * {@code syncToFileSystem()} method.
+   * {@code syncToFileSystem()} or {@code syncAppendedRecords()} methods.
    * <p>
    * This method is not thread-safe.
    *
@@ -456,6 +474,7 @@ final class Log<K extends Comparable<K>, V> implements Closeable
       {
         headLogFile.append(record);
         lastAppendedKey = record.getKey();
+        appendedRecordsCount.incrementAndGet();
         return;
       }
     }
@@ -482,6 +501,7 @@ final class Log<K extends Comparable<K>, V> implements Closeable
       }
       headLogFile.append(record);
       lastAppendedKey = record.getKey();
+      appendedRecordsCount.incrementAndGet();
     }
     finally
     {
@@ -529,20 +549,107 @@ final class Log<K extends Comparable<K>, V> implements Closeable
    * <p>
    * After a successful call to this method, it is guaranteed that all records
    * added to the log are persisted to the file system.
+   * <p>
+   * Only the head log file needs to be synchronized: read-only log files are
+   * synchronized when the head log file is rotated.
    *
    * @throws ChangelogException
    *           If the synchronization fails.
    */
   public void syncToFileSystem() throws ChangelogException
   {
-    exclusiveLock.lock();
+    sharedLock.lock();
     try
     {
-      getHeadLogFile().syncToFileSystem();
+      if (!isClosed)
+      {
+        getHeadLogFile().syncToFileSystem();
+      }
     }
     finally
     {
-      exclusiveLock.unlock();
+      sharedLock.unlock();
+    }
+  }
+
+  /**
+   * Synchronizes with the file system the records appended to this log since
+   * the last synchronization, if any.
+   * <p>
+   * A single synchronization persists all the records appended before it
+   * started, whatever their number: callers batch the synchronizations
+   * requested by several appenders into a single call to this method.
+   *
+   * @throws ChangelogException
+   *           If the synchronization fails.
+   */
+  public void syncAppendedRecords() throws ChangelogException
+  {
+    // Records appended after this point may not be covered by this synchronization
+    final long batchEnd = appendedRecordsCount.get();
+    synchronized (syncLock)
+    {
+      if (syncedRecordsCount >= batchEnd)
+      {
+        return;
+      }
+    }
+
+    final long startTime = System.nanoTime();
+    syncToFileSystem();
+    synchronized (syncLock)
+    {
+      if (syncedRecordsCount < batchEnd)
+      {
+        syncCount++;
+        syncedBatchesSize += batchEnd - syncedRecordsCount;
+        syncDurationInNanos += System.nanoTime() - startTime;
+        syncedRecordsCount = batchEnd;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of synchronizations with the file system performed by
+   * {@link #syncAppendedRecords()}.
+   *
+   * @return the number of synchronizations
+   */
+  long getSyncCount()
+  {
+    synchronized (syncLock)
+    {
+      return syncCount;
+    }
+  }
+
+  /**
+   * Returns the average number of records persisted by each synchronization
+   * performed by {@link #syncAppendedRecords()}.
+   *
+   * @return the average number of records persisted by a synchronization, or
+   *         0 if there was no synchronization
+   */
+  double getAverageSyncBatchSize()
+  {
+    synchronized (syncLock)
+    {
+      return syncCount != 0 ? (double) syncedBatchesSize / syncCount : 0;
+    }
+  }
+
+  /**
+   * Returns the average duration of the synchronizations performed by
+   * {@link #syncAppendedRecords()}, in microseconds.
+   *
+   * @return the average duration of a synchronization in microseconds, or 0 if
+   *         there was no synchronization
+   */
+  long getAverageSyncLatencyInMicros()
+  {
+    synchronized (syncLock)
+    {
+      return syncCount != 0 ? syncDurationInNanos / syncCount / 1000 : 0;
     }
   }
 
@@ -204,15 +204,7 @@ public final class AttributeBuilder implements Iterable<ByteString>
       try
       {
         MatchingRule eqRule = getAttributeType().getEqualityMatchingRule();
-        final Assertion assertion = eqRule.getAssertion(assertionValue);
-        for (AttributeValue value : values)
-        {
-          if (assertion.matches(value.getNormalizedValue()).toBoolean())
-          {
-            return ConditionResult.TRUE;
-          }
-        }
-        return ConditionResult.FALSE;
+        return matchesEqualityAssertion(eqRule.getAssertion(assertionValue));
       }
       catch (DecodeException e)
       {
@@ -220,6 +212,18 @@ public final class AttributeBuilder implements Iterable<ByteString>
       }
     }
 
+    private ConditionResult matchesEqualityAssertion(Assertion assertion)
+    {
+      for (AttributeValue value : values)
+      {
+        if (assertion.matches(value.getNormalizedValue()).toBoolean())
+        {
+          return ConditionResult.TRUE;
+        }
+      }
+      return ConditionResult.FALSE;
+    }
+
     @Override
     public final AttributeType getAttributeType()
     {
@@ -1143,6 +1147,50 @@ public final class AttributeBuilder implements Iterable<ByteString>
     return new AttributeValue(attributeType, attributeValue);
   }
 
+  /**
+   * Indicates whether the provided attribute has a value matching the provided
+   * equality assertion. The values of real attributes are normalized only
+   * once, then compared with all the assertions.
+   *
+   * @param attribute
+   *          The attribute whose values are compared with the assertion.
+   * @param assertion
+   *          The equality assertion prepared by the equality matching rule of
+   *          the attribute type.
+   * @return {@link ConditionResult#TRUE} if at least one value matches the
+   *         assertion, {@link ConditionResult#FALSE} if none does, or
+   *         {@link ConditionResult#UNDEFINED} if a value could not be
+   *         normalized and none matches.
+   */
+  static ConditionResult matchesEqualityAssertion(Attribute attribute, Assertion assertion)
+  {
+    if (attribute instanceof RealAttribute)
+    {
+      return ((RealAttribute) attribute).matchesEqualityAssertion(assertion);
+    }
+
+    final MatchingRule eqRule = attribute.getAttributeType().getEqualityMatchingRule();
+    ConditionResult result = ConditionResult.FALSE;
+    for (ByteString value : attribute)
+    {
+      try
+      {
+        if (assertion.matches(eqRule.normalizeAttributeValue(value)).toBoolean())
+        {
+          return ConditionResult.TRUE;
+        }
+      }
+      catch (DecodeException e)
+      {
+        logger.traceException(e);
+        result = ConditionResult.UNDEFINED;
+      }
+    }
+    return result;
+  }
+
+
+
   private static ByteString normalize(AttributeType attributeType, ByteString attributeValue)
   {
     try
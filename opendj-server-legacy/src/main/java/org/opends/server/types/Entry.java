@@ -3473,6 +3473,42 @@ public class Entry
   public static Entry decode(ByteSequenceReader entryBuffer,
                              CompressedSchema compressedSchema)
          throws DirectoryException
+  {
+    return decode(entryBuffer, compressedSchema, null);
+  }
+
+
+
+  /**
+   * Decodes the provided byte array as an entry, only decoding the
+   * attributes whose type is part of the provided set.
+   * <p>
+   * The DN and the object classes of the entry are always decoded.
+   * The values of the other attributes are skipped without being
+   * copied, which makes this method much cheaper than a full decoding
+   * when only a few attributes of the entry are needed, for example
+   * for evaluating a search filter. The returned entry must not be
+   * returned to clients, nor cached.
+   *
+   * @param  entryBuffer       The byte buffer containing the data to
+   *                           be decoded.
+   * @param  compressedSchema  The compressed schema manager to use
+   *                           when decoding tokenized schema
+   *                           elements.
+   * @param  attributeTypes    The types of the attributes to decode,
+   *                           including their subtypes if they are
+   *                           needed, or {@code null} if all the
+   *                           attributes must be decoded.
+   *
+   * @return  The decoded entry.
+   *
+   * @throws  DirectoryException  If the provided byte array cannot be
+   *                              decoded as an entry.
+   */
+  public static Entry decode(ByteSequenceReader entryBuffer,
+                             CompressedSchema compressedSchema,
+                             Set<AttributeType> attributeTypes)
+         throws DirectoryException
   {
     try
     {
@@ -3533,9 +3569,9 @@ public class Entry
       // Now, we should iterate through the user and operational attributes and
       // decode each one.
       Map<AttributeType, List<Attribute>> userAttributes =
-          decodeAttributes(version, entryBuffer, config);
+          decodeAttributes(version, entryBuffer, config, attributeTypes);
       Map<AttributeType, List<Attribute>> operationalAttributes =
-          decodeAttributes(version, entryBuffer, config);
+          decodeAttributes(version, entryBuffer, config, attributeTypes);
 
 
       // We've got everything that we need, so create and return the entry.
@@ -3659,6 +3695,8 @@ public class Entry
    *                     entry.
    * @param  config  The configuration that may be used to control how
    *                 the entry is encoded.
+   * @param  attributeTypes  The types of the attributes to decode, or
+   *                         {@code null} for decoding all of them.
    *
    * @return  A map of the decoded object classes.
    * @throws  DirectoryException  If a problem occurs while attempting
@@ -3666,7 +3704,8 @@ public class Entry
    */
   private static Map<AttributeType, List<Attribute>>
   decodeAttributes(Byte ver, ByteSequenceReader entryBuffer,
-                   EntryEncodeConfig config) throws DirectoryException
+                   EntryEncodeConfig config, Set<AttributeType> attributeTypes)
+      throws DirectoryException
   {
     // Next is the total number of attributes.  It may be a
     // single byte or multiple bytes.
@@ -3685,7 +3724,12 @@ public class Entry
           entryBuffer.readBERLength();
         }
         // Decode the attribute.
-        Attribute a = config.getCompressedSchema().decodeAttribute(entryBuffer);
+        Attribute a = config.getCompressedSchema().decodeAttribute(entryBuffer, attributeTypes);
+        if (a == null)
+        {
+          // The attribute is not needed and has been skipped.
+          continue;
+        }
         List<Attribute> attrList = attributes.get(a.getAttributeType());
         if (attrList == null)
         {
@@ -3714,6 +3758,21 @@ public class Entry
 
         AttributeType attributeType;
         int semicolonPos = name.indexOf(';');
+        if (attributeTypes != null)
+        {
+          String typeName = semicolonPos > 0 ? name.substring(0, semicolonPos) : name;
+          AttributeType type = DirectoryServer.getAttributeTypeOrDefault(toLowerCase(typeName), typeName);
+          if (!attributeTypes.contains(type))
+          {
+            // The attribute is not needed: skip its values.
+            int numValues = entryBuffer.readBERLength();
+            for (int j = 0; j < numValues; j++)
+            {
+              entryBuffer.skip(entryBuffer.readBERLength());
+            }
+            continue;
+          }
+        }
         if (semicolonPos > 0)
         {
           builder.setAttributeType(name.substring(0, semicolonPos));
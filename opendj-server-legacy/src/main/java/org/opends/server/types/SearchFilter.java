@@ -96,6 +96,12 @@ public final class SearchFilter
   /** The matching rule ID for this search filter. */
   private final String matchingRuleID;
 
+  /**
+   * The compiled form of this filter, created the first time it is matched
+   * against an entry.
+   */
+  private volatile SearchFilterMatcher matcher;
+
 
 
   /**
@@ -2115,6 +2121,18 @@ public final class SearchFilter
 
 
 
+  /**
+   * Retrieves the set of options for the attribute type of this filter.
+   *
+   * @return  The set of options for the attribute type of this filter.
+   */
+  Set<String> getAttributeOptions()
+  {
+    return attributeOptions;
+  }
+
+
+
   /**
    * Retrieves the assertion value for this filter.
    *
@@ -2206,7 +2224,10 @@ public final class SearchFilter
   public boolean matchesEntry(Entry entry)
          throws DirectoryException
   {
-    ConditionResult result = matchesEntryInternal(this, entry, 0);
+    // The interpreter traces the evaluation of each filter component
+    ConditionResult result = logger.isTraceEnabled()
+        ? matchesEntryInternal(this, entry, 0)
+        : getMatcher().matches(entry);
     switch (result)
     {
       case TRUE:
@@ -2222,6 +2243,23 @@ public final class SearchFilter
 
 
 
+  /**
+   * Returns the compiled form of this filter, compiling it if needed. Filters
+   * are immutable, so concurrent compilations yield equivalent matchers.
+   */
+  private SearchFilterMatcher getMatcher()
+  {
+    SearchFilterMatcher m = matcher;
+    if (m == null)
+    {
+      m = SearchFilterMatcher.compile(this);
+      matcher = m;
+    }
+    return m;
+  }
+
+
+
   /**
    * Indicates whether the this filter matches the provided entry.
    *
@@ -2242,7 +2280,7 @@ public final class SearchFilter
    * @throws  DirectoryException  If a problem is encountered during
    *                              processing.
    */
-  private ConditionResult matchesEntryInternal(
+  ConditionResult matchesEntryInternal(
                                SearchFilter completeFilter,
                                Entry entry, int depth)
           throws DirectoryException
@@ -2346,6 +2384,9 @@ public final class SearchFilter
         throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message);
       }
 
+      // A FALSE component makes the AND filter FALSE, even if another
+      // component is UNDEFINED (RFC 4511 section 4.5.1.7).
+      ConditionResult andResult = ConditionResult.TRUE;
       for (SearchFilter f : filterComponents)
       {
         ConditionResult result =
@@ -2370,7 +2411,8 @@ public final class SearchFilter
              "Undefined result for AND component %s in filter " +
              "%s for entry %s", f, completeFilter, entry.getName());
             }
-            return result;
+            andResult = result;
+            break;
           default:
             LocalizableMessage message =
                 ERR_SEARCH_FILTER_INVALID_RESULT_TYPE.
@@ -2379,15 +2421,14 @@ public final class SearchFilter
         }
       }
 
-      // If we have gotten here, then all the components must have
-      // matched.
+      // If we have gotten here, then none of the components was FALSE.
       if (logger.isTraceEnabled())
       {
         logger.trace(
-            "Returning TRUE for AND component %s in filter %s " +
-            "for entry %s", this, completeFilter, entry.getName());
+            "Returning %s for AND component %s in filter %s " +
+            "for entry %s", andResult, this, completeFilter, entry.getName());
       }
-      return ConditionResult.TRUE;
+      return andResult;
     }
   }
 
@@ -0,0 +1,512 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.types;
+
+import static org.opends.server.util.ServerConstants.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.Assertion;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ConditionResult;
+import org.forgerock.opendj.ldap.DecodeException;
+import org.forgerock.opendj.ldap.schema.MatchingRule;
+
+/**
+ * A search filter compiled for matching entries.
+ * <p>
+ * Compiling a filter resolves once the matching rules of its components and
+ * prepares their assertions, which are otherwise created again for every
+ * attribute of every entry evaluated. The components of AND and OR filters are
+ * reordered so that the cheapest ones are evaluated first, which is allowed
+ * since their result does not depend on the evaluation order.
+ * <p>
+ * The components which cannot be compiled (extensible match filters and
+ * invalid filters) are evaluated by {@link SearchFilter} itself, so that both
+ * return the same results and raise the same errors.
+ */
+abstract class SearchFilterMatcher
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The relative cost of the components which cannot be compiled. */
+  private static final int INTERPRETED_COST = 10;
+
+  /** Orders matchers from the cheapest to the most expensive. */
+  private static final Comparator<SearchFilterMatcher> BY_COST = new Comparator<SearchFilterMatcher>()
+  {
+    @Override
+    public int compare(SearchFilterMatcher m1, SearchFilterMatcher m2)
+    {
+      return Integer.compare(m1.cost, m2.cost);
+    }
+  };
+
+  /** The relative cost of evaluating this matcher against an entry. */
+  private final int cost;
+
+  private SearchFilterMatcher(int cost)
+  {
+    this.cost = cost;
+  }
+
+  /**
+   * Indicates whether the compiled filter matches the provided entry.
+   *
+   * @param entry
+   *          The entry for which to make the determination.
+   * @return {@code TRUE} if the compiled filter matches the provided entry,
+   *         {@code FALSE} if it does not, or {@code UNDEFINED} if the result is
+   *         undefined.
+   * @throws DirectoryException
+   *           If a problem is encountered during processing.
+   */
+  abstract ConditionResult matches(Entry entry) throws DirectoryException;
+
+  /**
+   * Compiles the provided search filter.
+   *
+   * @param filter
+   *          The search filter to compile.
+   * @return The compiled search filter.
+   */
+  static SearchFilterMatcher compile(SearchFilter filter)
+  {
+    return compile(filter, filter, 0);
+  }
+
+  private static SearchFilterMatcher compile(SearchFilter filter, SearchFilter completeFilter, int depth)
+  {
+    final FilterType filterType = filter.getFilterType();
+    if (filterType == null)
+    {
+      return new Interpreted(filter, completeFilter, depth);
+    }
+
+    switch (filterType)
+    {
+    case AND:
+    case OR:
+      final Set<SearchFilter> components = filter.getFilterComponents();
+      if (components != null && components.isEmpty())
+      {
+        // RFC 4526 absolute true (&) and false (|) filters
+        return filterType == FilterType.AND ? Constant.TRUE : Constant.FALSE;
+      }
+      else if (components == null || depth >= MAX_NESTED_FILTER_DEPTH)
+      {
+        return new Interpreted(filter, completeFilter, depth);
+      }
+      final SearchFilterMatcher[] matchers = new SearchFilterMatcher[components.size()];
+      int i = 0;
+      for (SearchFilter component : components)
+      {
+        matchers[i++] = compile(component, completeFilter, depth + 1);
+      }
+      Arrays.sort(matchers, BY_COST);
+      return filterType == FilterType.AND ? new And(matchers) : new Or(matchers);
+
+    case NOT:
+      if (filter.getNotComponent() == null || depth >= MAX_NESTED_FILTER_DEPTH)
+      {
+        return new Interpreted(filter, completeFilter, depth);
+      }
+      return new Not(compile(filter.getNotComponent(), completeFilter, depth + 1));
+
+    case PRESENT:
+      if (filter.getAttributeType() == null)
+      {
+        return new Interpreted(filter, completeFilter, depth);
+      }
+      return new Present(filter);
+
+    case EQUALITY:
+    case GREATER_OR_EQUAL:
+    case LESS_OR_EQUAL:
+    case APPROXIMATE_MATCH:
+      if (filter.getAttributeType() == null || filter.getAssertionValue() == null)
+      {
+        return new Interpreted(filter, completeFilter, depth);
+      }
+      return new AssertionMatcher(filter);
+
+    case SUBSTRING:
+      if (filter.getAttributeType() == null
+          || (filter.getSubInitialElement() == null
+              && filter.getSubFinalElement() == null
+              && (filter.getSubAnyElements() == null || filter.getSubAnyElements().isEmpty())))
+      {
+        return new Interpreted(filter, completeFilter, depth);
+      }
+      return new AssertionMatcher(filter);
+
+    default:
+      return new Interpreted(filter, completeFilter, depth);
+    }
+  }
+
+  /** The RFC 4526 absolute true and false filters. */
+  private static final class Constant extends SearchFilterMatcher
+  {
+    private static final Constant TRUE = new Constant(ConditionResult.TRUE);
+    private static final Constant FALSE = new Constant(ConditionResult.FALSE);
+
+    private final ConditionResult result;
+
+    private Constant(ConditionResult result)
+    {
+      super(0);
+      this.result = result;
+    }
+
+    @Override
+    ConditionResult matches(Entry entry)
+    {
+      return result;
+    }
+  }
+
+  /** An AND filter, which is false as soon as one of its components is false. */
+  private static final class And extends SearchFilterMatcher
+  {
+    private final SearchFilterMatcher[] components;
+
+    private And(SearchFilterMatcher[] components)
+    {
+      super(1 + sumOfCosts(components));
+      this.components = components;
+    }
+
+    @Override
+    ConditionResult matches(Entry entry) throws DirectoryException
+    {
+      ConditionResult result = ConditionResult.TRUE;
+      for (SearchFilterMatcher component : components)
+      {
+        switch (component.matches(entry))
+        {
+        case FALSE:
+          return ConditionResult.FALSE;
+        case UNDEFINED:
+          result = ConditionResult.UNDEFINED;
+          break;
+        default:
+          break;
+        }
+      }
+      return result;
+    }
+  }
+
+  /** An OR filter, which is true as soon as one of its components is true. */
+  private static final class Or extends SearchFilterMatcher
+  {
+    private final SearchFilterMatcher[] components;
+
+    private Or(SearchFilterMatcher[] components)
+    {
+      super(1 + sumOfCosts(components));
+      this.components = components;
+    }
+
+    @Override
+    ConditionResult matches(Entry entry) throws DirectoryException
+    {
+      ConditionResult result = ConditionResult.FALSE;
+      for (SearchFilterMatcher component : components)
+      {
+        switch (component.matches(entry))
+        {
+        case TRUE:
+          return ConditionResult.TRUE;
+        case UNDEFINED:
+          result = ConditionResult.UNDEFINED;
+          break;
+        default:
+          break;
+        }
+      }
+      return result;
+    }
+  }
+
+  /** A NOT filter. */
+  private static final class Not extends SearchFilterMatcher
+  {
+    private final SearchFilterMatcher component;
+
+    private Not(SearchFilterMatcher component)
+    {
+      super(1 + component.cost);
+      this.component = component;
+    }
+
+    @Override
+    ConditionResult matches(Entry entry) throws DirectoryException
+    {
+      switch (component.matches(entry))
+      {
+      case TRUE:
+        return ConditionResult.FALSE;
+      case FALSE:
+        return ConditionResult.TRUE;
+      default:
+        return ConditionResult.UNDEFINED;
+      }
+    }
+  }
+
+  /** A presence filter. */
+  private static final class Present extends SearchFilterMatcher
+  {
+    private final AttributeType attributeType;
+    private final Set<String> attributeOptions;
+
+    private Present(SearchFilter filter)
+    {
+      super(1);
+      this.attributeType = filter.getAttributeType();
+      this.attributeOptions = filter.getAttributeOptions();
+    }
+
+    @Override
+    ConditionResult matches(Entry entry)
+    {
+      return ConditionResult.valueOf(entry.hasAttribute(attributeType, attributeOptions));
+    }
+  }
+
+  /**
+   * An equality, substring, greater-or-equal, less-or-equal or approximate
+   * filter, whose assertion is prepared once and for all.
+   */
+  private static final class AssertionMatcher extends SearchFilterMatcher
+  {
+    private final SearchFilter filter;
+    private final FilterType filterType;
+    private final AttributeType attributeType;
+    private final Set<String> attributeOptions;
+    /** The matching rule used by this filter, or {@code null} if the attribute type does not have one. */
+    private final MatchingRule matchingRule;
+    /** The prepared assertion, or {@code null} if the assertion value is invalid for the matching rule. */
+    private final Assertion assertion;
+
+    private AssertionMatcher(SearchFilter filter)
+    {
+      super(costOf(filter.getFilterType()));
+      this.filter = filter;
+      this.filterType = filter.getFilterType();
+      this.attributeType = filter.getAttributeType();
+      this.attributeOptions = filter.getAttributeOptions();
+      this.matchingRule = getMatchingRule(filterType, attributeType);
+      this.assertion = matchingRule != null ? getAssertion(filter, matchingRule) : null;
+    }
+
+    @Override
+    ConditionResult matches(Entry entry)
+    {
+      final List<Attribute> attrs = entry.getAttribute(attributeType, attributeOptions);
+      if (attrs == null || attrs.isEmpty())
+      {
+        return ConditionResult.FALSE;
+      }
+      if (matchingRule == null && filterType == FilterType.EQUALITY)
+      {
+        return ConditionResult.UNDEFINED;
+      }
+
+      ConditionResult result = ConditionResult.FALSE;
+      for (Attribute a : attrs)
+      {
+        // Virtual attribute values are matched by their provider, and the
+        // values of subtypes with their own matching rules
+        final boolean isPrepared = !a.isVirtual() && a.getAttributeType().equals(attributeType);
+        switch (isPrepared ? matchesPreparedAssertion(a) : matchesAssertionValue(a))
+        {
+        case TRUE:
+          return ConditionResult.TRUE;
+        case UNDEFINED:
+          result = ConditionResult.UNDEFINED;
+          break;
+        default:
+          break;
+        }
+      }
+      return result;
+    }
+
+    private ConditionResult matchesPreparedAssertion(Attribute a)
+    {
+      if (assertion == null)
+      {
+        return ConditionResult.UNDEFINED;
+      }
+      else if (filterType == FilterType.EQUALITY)
+      {
+        // Reuse the normalized values cached by the attribute
+        return AttributeBuilder.matchesEqualityAssertion(a, assertion);
+      }
+
+      ConditionResult result = ConditionResult.FALSE;
+      for (ByteString value : a)
+      {
+        try
+        {
+          if (assertion.matches(matchingRule.normalizeAttributeValue(value)).toBoolean())
+          {
+            return ConditionResult.TRUE;
+          }
+        }
+        catch (DecodeException e)
+        {
+          logger.traceException(e);
+          // We couldn't normalize one of the attribute values. If we
+          // can't find a definite match, then we should return "undefined".
+          result = ConditionResult.UNDEFINED;
+        }
+      }
+      return result;
+    }
+
+    private ConditionResult matchesAssertionValue(Attribute a)
+    {
+      switch (filterType)
+      {
+      case EQUALITY:
+        return a.matchesEqualityAssertion(filter.getAssertionValue());
+      case SUBSTRING:
+        return a.matchesSubstring(
+            filter.getSubInitialElement(), filter.getSubAnyElements(), filter.getSubFinalElement());
+      case GREATER_OR_EQUAL:
+        return a.greaterThanOrEqualTo(filter.getAssertionValue());
+      case LESS_OR_EQUAL:
+        return a.lessThanOrEqualTo(filter.getAssertionValue());
+      case APPROXIMATE_MATCH:
+        return a.approximatelyEqualTo(filter.getAssertionValue());
+      default:
+        return ConditionResult.UNDEFINED;
+      }
+    }
+
+    private static MatchingRule getMatchingRule(FilterType filterType, AttributeType attributeType)
+    {
+      switch (filterType)
+      {
+      case EQUALITY:
+        return attributeType.getEqualityMatchingRule();
+      case SUBSTRING:
+        return attributeType.getSubstringMatchingRule();
+      case GREATER_OR_EQUAL:
+      case LESS_OR_EQUAL:
+        return attributeType.getOrderingMatchingRule();
+      case APPROXIMATE_MATCH:
+        return attributeType.getApproximateMatchingRule();
+      default:
+        return null;
+      }
+    }
+
+    private static Assertion getAssertion(SearchFilter filter, MatchingRule matchingRule)
+    {
+      try
+      {
+        switch (filter.getFilterType())
+        {
+        case SUBSTRING:
+          return matchingRule.getSubstringAssertion(
+              filter.getSubInitialElement(), filter.getSubAnyElements(), filter.getSubFinalElement());
+        case GREATER_OR_EQUAL:
+          return matchingRule.getGreaterOrEqualAssertion(filter.getAssertionValue());
+        case LESS_OR_EQUAL:
+          return matchingRule.getLessOrEqualAssertion(filter.getAssertionValue());
+        default:
+          return matchingRule.getAssertion(filter.getAssertionValue());
+        }
+      }
+      catch (DecodeException e)
+      {
+        logger.traceException(e);
+        return null;
+      }
+    }
+
+    /**
+     * Equality assertions are usually the most selective and compare values
+     * normalized once, whereas the other assertions normalize every value.
+     */
+    private static int costOf(FilterType filterType)
+    {
+      switch (filterType)
+      {
+      case EQUALITY:
+        return 2;
+      case GREATER_OR_EQUAL:
+      case LESS_OR_EQUAL:
+        return 3;
+      case APPROXIMATE_MATCH:
+        return 4;
+      default:
+        return 5;
+      }
+    }
+  }
+
+  /** A filter component evaluated by {@link SearchFilter} itself. */
+  private static final class Interpreted extends SearchFilterMatcher
+  {
+    private final SearchFilter filter;
+    private final SearchFilter completeFilter;
+    private final int depth;
+
+    private Interpreted(SearchFilter filter, SearchFilter completeFilter, int depth)
+    {
+      super(INTERPRETED_COST);
+      this.filter = filter;
+      this.completeFilter = completeFilter;
+      this.depth = depth;
+    }
+
+    @Override
+    ConditionResult matches(Entry entry) throws DirectoryException
+    {
+      return filter.matchesEntryInternal(completeFilter, entry, depth);
+    }
+  }
+
+  private static int sumOfCosts(SearchFilterMatcher[] matchers)
+  {
+    int cost = 0;
+    for (SearchFilterMatcher matcher : matchers)
+    {
+      cost += matcher.cost;
+    }
+    return cost;
+  }
+}
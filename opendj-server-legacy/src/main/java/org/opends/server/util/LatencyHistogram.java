@@ -0,0 +1,262 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, typically latencies, recorded
+ * concurrently by many threads.
+ * <p>
+ * Values are counted in logarithmic buckets, in the spirit of HDR histograms:
+ * the values lower than {@value #SUB_BUCKETS} have their own bucket, and each
+ * power of two above is split into {@value #SUB_BUCKETS} buckets of equal
+ * width. The relative error on the reported percentiles is therefore lower
+ * than 1/{@value #SUB_BUCKETS}, whatever the magnitude of the values. Values
+ * of 2<sup>36</sup> and above (about 19 hours in microseconds) are counted in
+ * the last bucket.
+ * <p>
+ * The counters are striped by thread, so that threads recording values do not
+ * contend on the same cache lines. Reading the histogram sums the stripes in
+ * a {@link Snapshot}, which is not atomic with respect to concurrent updates.
+ */
+public final class LatencyHistogram
+{
+  /** The number of bits of the sub-bucket index within a power of two. */
+  private static final int SUB_BITS = 3;
+  /** The number of buckets of each power of two. */
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  /** The exponent of the highest power of two with its own buckets. */
+  private static final int MAX_EXPONENT = 35;
+  /** The number of buckets of this histogram. */
+  public static final int NB_BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) << SUB_BITS;
+  /** The maximum number of stripes of a histogram. */
+  private static final int MAX_STRIPES = 8;
+  /**
+   * The number of counters of each stripe: the bucket counts, followed by the
+   * sum of the recorded values.
+   */
+  private static final int STRIPE_LENGTH = NB_BUCKETS + 1;
+
+  /** The number of stripes, minus one. */
+  private final int stripeMask;
+  /** The counters of all the stripes. */
+  private final AtomicLongArray counters;
+
+  /** Creates a new empty histogram. */
+  public LatencyHistogram()
+  {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    final int stripes = Math.min(Integer.highestOneBit(Math.max(processors, 1) * 2 - 1), MAX_STRIPES);
+    stripeMask = stripes - 1;
+    counters = new AtomicLongArray(stripes * STRIPE_LENGTH);
+  }
+
+  /**
+   * Records the provided value in this histogram.
+   *
+   * @param value
+   *          The value to record. Negative values, which may result from
+   *          clock adjustments, are recorded as zero.
+   */
+  public void record(long value)
+  {
+    final long v = Math.max(value, 0);
+    final int offset = ((int) Thread.currentThread().getId() & stripeMask) * STRIPE_LENGTH;
+    counters.incrementAndGet(offset + getBucketIndex(v));
+    counters.addAndGet(offset + NB_BUCKETS, v);
+  }
+
+  /**
+   * Removes all the values recorded so far. Values recorded concurrently may
+   * or may not be removed.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < counters.length(); i++)
+    {
+      counters.set(i, 0);
+    }
+  }
+
+  /**
+   * Returns a point-in-time copy of this histogram.
+   *
+   * @return a point-in-time copy of this histogram
+   */
+  public Snapshot getSnapshot()
+  {
+    final long[] bucketCounts = new long[NB_BUCKETS];
+    long total = 0;
+    for (int offset = 0; offset < counters.length(); offset += STRIPE_LENGTH)
+    {
+      for (int i = 0; i < NB_BUCKETS; i++)
+      {
+        bucketCounts[i] += counters.get(offset + i);
+      }
+      total += counters.get(offset + NB_BUCKETS);
+    }
+    return new Snapshot(bucketCounts, total);
+  }
+
+  /**
+   * Returns the index of the bucket counting the provided value.
+   *
+   * @param value
+   *          A non-negative value.
+   * @return the index of the bucket counting the provided value
+   */
+  static int getBucketIndex(long value)
+  {
+    if (value < SUB_BUCKETS)
+    {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT)
+    {
+      return NB_BUCKETS - 1;
+    }
+    final int subBucket = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BITS + 1) << SUB_BITS) + subBucket;
+  }
+
+  /**
+   * Returns the lowest value counted by the provided bucket.
+   *
+   * @param bucketIndex
+   *          The index of a bucket.
+   * @return the lowest value counted by the provided bucket
+   */
+  public static long getBucketLowerBound(int bucketIndex)
+  {
+    if (bucketIndex < SUB_BUCKETS)
+    {
+      return bucketIndex;
+    }
+    final int subBucket = bucketIndex & (SUB_BUCKETS - 1);
+    return ((long) (SUB_BUCKETS + subBucket)) << ((bucketIndex >> SUB_BITS) - 1);
+  }
+
+  /**
+   * Returns the highest value counted by the provided bucket.
+   *
+   * @param bucketIndex
+   *          The index of a bucket.
+   * @return the highest value counted by the provided bucket
+   */
+  public static long getBucketUpperBound(int bucketIndex)
+  {
+    if (bucketIndex == NB_BUCKETS - 1)
+    {
+      return Long.MAX_VALUE;
+    }
+    return getBucketLowerBound(bucketIndex + 1) - 1;
+  }
+
+  /** A point-in-time copy of a latency histogram. */
+  public static final class Snapshot
+  {
+    private final long[] bucketCounts;
+    private final long count;
+    private final long total;
+
+    private Snapshot(long[] bucketCounts, long total)
+    {
+      this.bucketCounts = bucketCounts;
+      this.total = total;
+      long c = 0;
+      for (long bucketCount : bucketCounts)
+      {
+        c += bucketCount;
+      }
+      this.count = c;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+      return count;
+    }
+
+    /**
+     * Returns the average of the recorded values.
+     *
+     * @return the average of the recorded values, or zero if no value was
+     *         recorded
+     */
+    public long getMean()
+    {
+      return count != 0 ? total / count : 0;
+    }
+
+    /**
+     * Returns the number of recorded values counted by the provided bucket.
+     *
+     * @param bucketIndex
+     *          The index of a bucket.
+     * @return the number of recorded values counted by the provided bucket
+     */
+    public long getBucketCount(int bucketIndex)
+    {
+      return bucketCounts[bucketIndex];
+    }
+
+    /**
+     * Returns the value below which the provided percentage of the recorded
+     * values fall. The returned value is the highest value of the bucket
+     * counting this percentile, except for the last bucket whose lowest value
+     * is returned.
+     *
+     * @param percentile
+     *          A percentage between 0 and 100.
+     * @return the value below which the provided percentage of the recorded
+     *         values fall, or zero if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+      if (count == 0)
+      {
+        return 0;
+      }
+      final long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+      long cumulativeCount = 0;
+      for (int i = 0; i < NB_BUCKETS - 1; i++)
+      {
+        cumulativeCount += bucketCounts[i];
+        if (cumulativeCount >= rank)
+        {
+          return getBucketUpperBound(i);
+        }
+      }
+      return getBucketLowerBound(NB_BUCKETS - 1);
+    }
+  }
+}
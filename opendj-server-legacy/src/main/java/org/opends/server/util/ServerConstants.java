@@ -2161,6 +2161,15 @@ public final class ServerConstants
 
 
 
+  /**
+   * The OID for the control that can be included in search requests to ask
+   * the backend to evaluate the candidate entries using several threads.
+   */
+  public static final String OID_PARALLEL_SEARCH_CONTROL =
+       "1.3.6.1.4.1.26027.1.5.5";
+
+
+
   /**
    * The OID to include in the supportedFeatures list of the Directory Server
    * to indicate that it supports requesting attributes by objectclass.
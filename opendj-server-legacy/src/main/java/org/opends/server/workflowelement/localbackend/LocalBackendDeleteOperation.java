@@ -42,7 +42,6 @@ import org.opends.server.core.AccessControlConfigManager;
 import org.opends.server.core.DeleteOperation;
 import org.opends.server.core.DeleteOperationWrapper;
 import org.opends.server.core.DirectoryServer;
-import org.opends.server.core.PersistentSearch;
 import org.opends.server.types.CanceledOperationException;
 import org.opends.server.types.Control;
 import org.opends.server.types.DN;
@@ -175,10 +174,7 @@ public class LocalBackendDeleteOperation
         @Override
         public void run()
         {
-          for (PersistentSearch psearch : backend.getPersistentSearches())
-          {
-            psearch.processDelete(entry);
-          }
+          backend.getPersistentSearchRegistry().processDelete(entry);
         }
       });
     }
@@ -47,7 +47,6 @@ import org.opends.server.core.AccessControlConfigManager;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.core.ModifyDNOperation;
 import org.opends.server.core.ModifyDNOperationWrapper;
-import org.opends.server.core.PersistentSearch;
 import org.opends.server.types.Attribute;
 import org.opends.server.types.AttributeType;
 import org.opends.server.types.Attributes;
@@ -212,10 +211,7 @@ public class LocalBackendModifyDNOperation
         @Override
         public void run()
         {
-          for (PersistentSearch psearch : backend.getPersistentSearches())
-          {
-            psearch.processModifyDN(newEntry, currentEntry.getName());
-          }
+          backend.getPersistentSearchRegistry().processModifyDN(newEntry, currentEntry.getName());
         }
       });
     }
@@ -61,7 +61,6 @@ import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.ModifyOperationWrapper;
 import org.opends.server.core.PasswordPolicy;
 import org.opends.server.core.PasswordPolicyState;
-import org.opends.server.core.PersistentSearch;
 import org.opends.server.schema.AuthPasswordSyntax;
 import org.opends.server.schema.UserPasswordSyntax;
 import org.opends.server.types.AcceptRejectWarn;
@@ -308,10 +307,7 @@ public class LocalBackendModifyOperation
         @Override
         public void run()
         {
-          for (PersistentSearch psearch : backend.getPersistentSearches())
-          {
-            psearch.processModify(modifiedEntry, currentEntry);
-          }
+          backend.getPersistentSearchRegistry().processModify(modifiedEntry, currentEntry);
         }
       });
     }
@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.LocalizableMessageBuilder;
@@ -48,6 +49,7 @@ import org.opends.server.controls.LDAPPreReadResponseControl;
 import org.opends.server.controls.ProxiedAuthV1Control;
 import org.opends.server.controls.ProxiedAuthV2Control;
 import org.opends.server.core.*;
+import org.opends.server.monitors.BackendMonitor;
 import org.opends.server.types.*;
 
 import static org.opends.messages.CoreMessages.*;
@@ -723,6 +725,23 @@ public class LocalBackendWorkflowElement
    *           if this operation should be canceled
    */
   private void execute(Operation operation) throws CanceledOperationException {
+    final long startTime = System.nanoTime();
+    try
+    {
+      executeOperation(operation);
+    }
+    finally
+    {
+      final BackendMonitor monitor = backend.getBackendMonitor();
+      if (monitor != null)
+      {
+        monitor.updateOperationMonitoringData(
+            operation.getOperationType(), System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private void executeOperation(Operation operation) throws CanceledOperationException {
     switch (operation.getOperationType())
     {
       case BIND:
@@ -0,0 +1,287 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.opends.server.protocols.internal.Requests.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ConditionResult;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.LDIFExportConfig;
+import org.opends.server.types.SearchResultEntry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** A set of test cases for the memory backend and its indexes. */
+@SuppressWarnings("javadoc")
+public class MemoryBackendTestCase extends BackendTestCase
+{
+  private static final String BACKEND_ID = "indexedMemory";
+
+  private MemoryBackend backend;
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+
+    backend = new MemoryBackend();
+    backend.setBackendID(BACKEND_ID);
+    backend.setBaseDNs(new DN[] { DN.valueOf("o=memory") });
+    backend.setIndexedAttributeTypes(
+        Collections.singleton(DirectoryServer.getAttributeTypeOrNull("uid")),
+        Collections.singleton(DirectoryServer.getAttributeTypeOrNull("mail")));
+    backend.openBackend();
+    DirectoryServer.registerBackend(backend);
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception
+  {
+    backend.clearMemoryBackend();
+    backend.finalizeBackend();
+    DirectoryServer.deregisterBackend(backend);
+  }
+
+  @BeforeMethod
+  public void populate() throws Exception
+  {
+    backend.clearMemoryBackend();
+    for (Entry entry : TestCaseUtils.makeEntries(
+        "dn: o=memory",
+        "objectClass: top",
+        "objectClass: organization",
+        "o: memory",
+        "",
+        "dn: ou=People,o=memory",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: People",
+        "",
+        "dn: uid=user.1,ou=People,o=memory",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: inetOrgPerson",
+        "uid: user.1",
+        "cn: User 1",
+        "sn: 1",
+        "mail: user.1@example.com",
+        "",
+        "dn: uid=user.2,ou=People,o=memory",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: inetOrgPerson",
+        "uid: user.2",
+        "cn: User 2",
+        "sn: 2",
+        "",
+        "dn: ou=Groups,o=memory",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: Groups"))
+    {
+      backend.addEntry(entry, null);
+    }
+  }
+
+  @Test
+  public void testEqualityIndexedSearch() throws Exception
+  {
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(uid=USER.2)"))
+        .containsExactly("uid=user.2,ou=People,o=memory");
+    assertThat(search("ou=Groups,o=memory", SearchScope.WHOLE_SUBTREE, "(uid=user.2)")).isEmpty();
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(uid=user.3)")).isEmpty();
+  }
+
+  @Test
+  public void testPresenceIndexedSearch() throws Exception
+  {
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(mail=*)"))
+        .containsExactly("uid=user.1,ou=People,o=memory");
+  }
+
+  @Test
+  public void testCompositeFilters() throws Exception
+  {
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(|(uid=user.1)(uid=user.2))"))
+        .containsExactly("uid=user.1,ou=People,o=memory", "uid=user.2,ou=People,o=memory");
+    // The unindexed component is evaluated against the indexed candidates
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(&(uid=user.1)(sn=2))")).isEmpty();
+    // An unindexed component in an OR prevents using the indexes
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(|(uid=user.1)(ou=Groups))"))
+        .containsExactly("ou=Groups,o=memory", "uid=user.1,ou=People,o=memory");
+  }
+
+  @Test
+  public void testUnindexedSearchReturnsParentsFirst() throws Exception
+  {
+    final List<String> dns = search("o=memory", SearchScope.WHOLE_SUBTREE, "(objectClass=*)");
+    assertThat(dns).hasSize(5);
+    assertThat(dns.indexOf("o=memory")).isEqualTo(0);
+    assertThat(dns.indexOf("ou=People,o=memory")).isLessThan(dns.indexOf("uid=user.1,ou=People,o=memory"));
+    assertThat(search("ou=People,o=memory", SearchScope.SINGLE_LEVEL, "(objectClass=*)"))
+        .containsOnly("uid=user.1,ou=People,o=memory", "uid=user.2,ou=People,o=memory");
+    assertThat(search("o=memory", SearchScope.SUBORDINATES, "(ou=*)"))
+        .containsOnly("ou=People,o=memory", "ou=Groups,o=memory");
+  }
+
+  @Test
+  public void testIndexesAreMaintained() throws Exception
+  {
+    final DN userDN = DN.valueOf("uid=user.2,ou=People,o=memory");
+    final Entry newEntry = backend.getEntry(userDN).duplicate(false);
+    newEntry.addAttribute(Attributes.create("mail", "user.2@example.com"), new LinkedList<ByteString>());
+    backend.replaceEntry(backend.getEntry(userDN), newEntry, null);
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(mail=*)"))
+        .containsExactly("uid=user.1,ou=People,o=memory", "uid=user.2,ou=People,o=memory");
+
+    backend.deleteEntry(DN.valueOf("uid=user.1,ou=People,o=memory"), null);
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(|(uid=user.1)(mail=*))"))
+        .containsExactly("uid=user.2,ou=People,o=memory");
+    assertThat(backend.getEntryCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void testReplaceEntryUpdatesChangedIndexKeys() throws Exception
+  {
+    final DN userDN = DN.valueOf("uid=user.1,ou=People,o=memory");
+    final Entry newEntry = backend.getEntry(userDN).duplicate(false);
+    newEntry.replaceAttribute(Attributes.create("mail", "user.1@example.org"));
+    backend.replaceEntry(backend.getEntry(userDN), newEntry, null);
+
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(mail=user.1@example.com)")).isEmpty();
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(mail=user.1@example.org)"))
+        .containsExactly("uid=user.1,ou=People,o=memory");
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(&(uid=user.1)(mail=*))"))
+        .containsExactly("uid=user.1,ou=People,o=memory");
+    assertThat(backend.getEntryCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void testRenameEntryMovesIndexKeys() throws Exception
+  {
+    final DN userDN = DN.valueOf("uid=user.1,ou=People,o=memory");
+    final Entry renamedEntry = backend.getEntry(userDN).duplicate(false);
+    renamedEntry.setDN(DN.valueOf("uid=user.1,ou=Groups,o=memory"));
+    backend.renameEntry(userDN, renamedEntry, null);
+
+    assertThat(backend.entryExists(userDN)).isFalse();
+    assertThat(search("o=memory", SearchScope.WHOLE_SUBTREE, "(&(uid=user.1)(mail=*))"))
+        .containsExactly("uid=user.1,ou=Groups,o=memory");
+    assertThat(backend.getNumberOfChildren(DN.valueOf("ou=People,o=memory"))).isEqualTo(1);
+    assertThat(backend.getNumberOfChildren(DN.valueOf("ou=Groups,o=memory"))).isEqualTo(1);
+    assertThat(backend.getEntryCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void testEntryRemainsVisibleWhileReplaced() throws Exception
+  {
+    final DN userDN = DN.valueOf("uid=user.2,ou=People,o=memory");
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicInteger misses = new AtomicInteger();
+    final Thread reader = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        while (!done.get())
+        {
+          if (backend.getEntry(userDN) == null || !backend.entryExists(userDN))
+          {
+            misses.incrementAndGet();
+          }
+        }
+      }
+    });
+    reader.start();
+    try
+    {
+      for (int i = 0; i < 1000; i++)
+      {
+        final Entry newEntry = backend.getEntry(userDN).duplicate(false);
+        newEntry.replaceAttribute(Attributes.create("description", "version " + i));
+        backend.replaceEntry(backend.getEntry(userDN), newEntry, null);
+      }
+    }
+    finally
+    {
+      done.set(true);
+      reader.join();
+    }
+    assertThat(misses.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSubordinates() throws Exception
+  {
+    assertThat(backend.getNumberOfEntriesInBaseDN(DN.valueOf("o=memory"))).isEqualTo(5);
+    assertThat(backend.getNumberOfChildren(DN.valueOf("ou=People,o=memory"))).isEqualTo(2);
+    assertThat(backend.hasSubordinates(DN.valueOf("ou=Groups,o=memory"))).isEqualTo(ConditionResult.FALSE);
+    assertThat(backend.hasSubordinates(DN.valueOf("ou=Unknown,o=memory"))).isEqualTo(ConditionResult.UNDEFINED);
+  }
+
+  @Test
+  public void testExportLDIFWritesParentsFirst() throws Exception
+  {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    backend.exportLDIF(new LDIFExportConfig(output));
+    final String ldif = output.toString("UTF-8");
+    assertThat(ldif.indexOf("dn: o=memory")).isLessThan(ldif.indexOf("dn: ou=People,o=memory"));
+    assertThat(ldif.indexOf("dn: ou=People,o=memory")).isLessThan(ldif.indexOf("dn: uid=user.1,ou=People,o=memory"));
+  }
+
+  private List<String> search(String baseDN, SearchScope scope, String filter) throws Exception
+  {
+    final InternalSearchOperation search =
+        getRootConnection().processSearch(newSearchRequest(DN.valueOf(baseDN), scope, filter));
+    assertThat(search.getResultCode()).isEqualTo(ResultCode.SUCCESS);
+    final List<String> dns = new ArrayList<>();
+    for (SearchResultEntry entry : search.getSearchEntries())
+    {
+      dns.add(entry.getName().toString());
+    }
+    return dns;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.opends.server.DirectoryServerTestCase;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class CompressionCodecTest extends DirectoryServerTestCase
+{
+  private static final Random RANDOM = new Random(0);
+
+  @DataProvider
+  public Object[][] codecs()
+  {
+    return new Object[][] {
+      { CompressionCodec.DEFLATE },
+      { CompressionCodec.LZ4 },
+      { CompressionCodec.DEFLATE_WITH_DICTIONARY },
+    };
+  }
+
+  @Test(dataProvider = "codecs")
+  public void testRoundTrip(CompressionCodec codec) throws Exception
+  {
+    final List<ByteString> samples = newSamples(200);
+    final byte[] dictionary =
+        codec.usesDictionary() ? PersistentCompressionDictionaries.train(samples.subList(0, 100), 4096) : null;
+
+    for (ByteString sample : samples)
+    {
+      final ByteStringBuilder data = new ByteStringBuilder().appendBytes(sample);
+      final ByteStringBuilder compressed = new ByteStringBuilder();
+      codec.compress(data, dictionary, compressed);
+
+      final ByteStringBuilder decompressed = new ByteStringBuilder();
+      codec.decompress(compressed, dictionary, data.length(), decompressed);
+      assertThat(decompressed.toByteString()).isEqualTo(sample);
+    }
+  }
+
+  @Test(dataProvider = "codecs")
+  public void testRoundTripIncompressibleData(CompressionCodec codec) throws Exception
+  {
+    final byte[] bytes = new byte[1000];
+    RANDOM.nextBytes(bytes);
+    final byte[] dictionary = codec.usesDictionary() ? new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 } : null;
+
+    for (int length : new int[] { 1, 12, 13, 100, bytes.length })
+    {
+      final ByteStringBuilder data = new ByteStringBuilder().appendBytes(bytes, 0, length);
+      final ByteStringBuilder compressed = new ByteStringBuilder();
+      codec.compress(data, dictionary, compressed);
+
+      final ByteStringBuilder decompressed = new ByteStringBuilder();
+      codec.decompress(compressed, dictionary, length, decompressed);
+      assertThat(decompressed.toByteString()).isEqualTo(data.toByteString());
+    }
+  }
+
+  @Test
+  public void testDictionaryImprovesCompressionRatio() throws Exception
+  {
+    final List<ByteString> samples = newSamples(300);
+    final byte[] dictionary = PersistentCompressionDictionaries.train(
+        samples.subList(0, 200), PersistentCompressionDictionaries.MAX_DICTIONARY_SIZE);
+    assertThat(dictionary.length)
+        .isGreaterThan(0)
+        .isLessThanOrEqualTo(PersistentCompressionDictionaries.MAX_DICTIONARY_SIZE);
+
+    int withoutDictionary = 0;
+    int withDictionary = 0;
+    for (ByteString sample : samples.subList(200, 300))
+    {
+      final ByteStringBuilder data = new ByteStringBuilder().appendBytes(sample);
+      final ByteStringBuilder compressed = new ByteStringBuilder();
+      CompressionCodec.DEFLATE.compress(data, null, compressed);
+      withoutDictionary += compressed.length();
+
+      compressed.clear();
+      CompressionCodec.DEFLATE_WITH_DICTIONARY.compress(data, dictionary, compressed);
+      withDictionary += compressed.length();
+    }
+    assertThat(withDictionary).isLessThan(withoutDictionary);
+  }
+
+  @Test
+  public void testCodecIdentifiers()
+  {
+    assertThat(CompressionCodec.DEFLATE.getID()).isEqualTo(DnKeyFormat.FORMAT_VERSION);
+    for (Object[] codec : codecs())
+    {
+      assertThat(CompressionCodec.forID(((CompressionCodec) codec[0]).getID())).isSameAs(codec[0]);
+    }
+    assertThat(CompressionCodec.forID((byte) 0x7F)).isNull();
+  }
+
+  private static List<ByteString> newSamples(int nbSamples)
+  {
+    final String[] givenNames = { "Aaron", "Betty", "Carl", "Dana", "Eve", "Frank" };
+    final List<ByteString> samples = new ArrayList<>(nbSamples);
+    for (int i = 0; i < nbSamples; i++)
+    {
+      final String givenName = givenNames[RANDOM.nextInt(givenNames.length)];
+      final String sn = "Smith" + RANDOM.nextInt(1000);
+      samples.add(ByteString.valueOfUtf8("dn: uid=user." + i + ",ou=People,dc=example,dc=com\n"
+          + "objectClass: top\nobjectClass: person\nobjectClass: organizationalPerson\n"
+          + "objectClass: inetOrgPerson\ngivenName: " + givenName + "\nsn: " + sn + "\n"
+          + "cn: " + givenName + " " + sn + "\nuid: user." + i + "\nmail: user." + i + "@example.com\n"
+          + "telephoneNumber: +1 " + RANDOM.nextInt(1000) + " " + RANDOM.nextInt(10000) + "\n"
+          + "description: This is the description for " + givenName + " " + sn + ".\n"));
+    }
+    return samples;
+  }
+}
@@ -229,6 +229,40 @@ public class DN2IDTest extends DirectoryServerTestCase
                    get("cn=foofoo,ou=People,dc=example,dc=com"));
   }
 
+  @Test
+  public void testReadAllSortedKeys() throws Exception
+  {
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        for (long i = 1; i <= 39; i += 2)
+        {
+          txn.put(dn2IDTreeName, id(i).toByteString(), ByteString.valueOfLong(i));
+        }
+      }
+    });
+
+    final List<ByteString> keys = new ArrayList<>();
+    for (long i : new long[] { 0, 1, 2, 3, 5, 7, 8, 33, 39, 41 })
+    {
+      keys.add(id(i).toByteString());
+    }
+    final List<ByteString> values = storage.read(new ReadOperation<List<ByteString>>()
+    {
+      @Override
+      public List<ByteString> run(ReadableTransaction txn) throws Exception
+      {
+        return txn.readAll(dn2IDTreeName, keys);
+      }
+    });
+
+    assertThat(values).containsExactly(null, ByteString.valueOfLong(1), null, ByteString.valueOfLong(3),
+        ByteString.valueOfLong(5), ByteString.valueOfLong(7), null, ByteString.valueOfLong(33),
+        ByteString.valueOfLong(39), null);
+  }
+
   private EntryID get(final String dn) throws Exception
   {
     return storage.read(new ReadOperation<EntryID>()
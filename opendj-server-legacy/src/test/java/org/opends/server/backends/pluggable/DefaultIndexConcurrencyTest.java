@@ -0,0 +1,251 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.forgerock.opendj.ldap.ByteString.valueOfUtf8;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.ConfigurationMock.*;
+import static org.opends.server.backends.pluggable.EntryIDSet.*;
+import static org.opends.server.backends.pluggable.State.IndexFlag.*;
+import static org.opends.server.util.CollectionUtils.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.std.server.PDBBackendCfg;
+import org.opends.server.backends.pdb.PDBStorage;
+import org.opends.server.backends.pluggable.spi.AccessMode;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteOperation;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+import org.opends.server.core.MemoryQuota;
+import org.opends.server.core.ServerContext;
+import org.opends.server.extensions.DiskSpaceMonitor;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Tests the updates of a segmented index key by concurrent transactions. */
+@Test(groups = { "precommit", "pluggablebackend" }, sequential = true)
+public class DefaultIndexConcurrencyTest extends DirectoryServerTestCase
+{
+  private static final ByteString KEY = valueOfUtf8("key");
+  private static final int NB_THREADS = 16;
+
+  private PDBStorage storage;
+  private ExecutorService parallelExecutor;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void setUp() throws Exception
+  {
+    ServerContext serverContext = mock(ServerContext.class);
+    when(serverContext.getMemoryQuota()).thenReturn(new MemoryQuota());
+    when(serverContext.getDiskSpaceMonitor()).thenReturn(mock(DiskSpaceMonitor.class));
+
+    storage = new PDBStorage(createBackendCfg(), serverContext);
+    storage.open(AccessMode.READ_WRITE);
+    parallelExecutor = Executors.newFixedThreadPool(NB_THREADS);
+  }
+
+  @AfterMethod
+  public void tearDown()
+  {
+    parallelExecutor.shutdownNow();
+    storage.close();
+    storage.removeStorageFiles();
+  }
+
+  @Test
+  public void testConcurrentAddsToSegmentedKey() throws Exception
+  {
+    final DefaultIndex index = openSegmentedIndex("concurrent-adds", 0);
+    // Spans the inline to segmented transition, and several segments
+    final int nbIDs = 3 * (1 << DefaultIndex.SEGMENT_BITS);
+    final List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < nbIDs; i++)
+    {
+      futures.add(parallelExecutor.submit(newUpdate(index, null, newDefinedSet(i))));
+    }
+    waitFor(futures);
+
+    final EntryIDSet ids = get(index);
+    assertThat(ids.isDefined()).isTrue();
+    assertThat(ids.size()).isEqualTo(nbIDs);
+    assertThat(getHeader(index)).isEqualTo("[SEGMENTED] " + nbIDs);
+  }
+
+  @Test
+  public void testConcurrentAddsAndDeletesOfSegmentedKey() throws Exception
+  {
+    final DefaultIndex index = openSegmentedIndex("concurrent-adds-deletes", 0);
+    final int nbIDs = 2 * (1 << DefaultIndex.SEGMENT_BITS);
+    final List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < nbIDs; i++)
+    {
+      futures.add(parallelExecutor.submit(newUpdate(index, null, newDefinedSet(i))));
+    }
+    waitFor(futures);
+
+    // Delete the even IDs while adding new ones
+    futures.clear();
+    for (int i = 0; i < nbIDs; i += 2)
+    {
+      futures.add(parallelExecutor.submit(newUpdate(index, newDefinedSet(i), null)));
+      futures.add(parallelExecutor.submit(newUpdate(index, null, newDefinedSet(nbIDs + i))));
+    }
+    waitFor(futures);
+
+    assertThat(get(index).size()).isEqualTo(nbIDs);
+    assertThat(get(index).contains(new EntryID(0))).isFalse();
+    assertThat(get(index).contains(new EntryID(1))).isTrue();
+    assertThat(getHeader(index)).isEqualTo("[SEGMENTED] " + nbIDs);
+  }
+
+  @Test
+  public void testConcurrentAddsReachIndexEntryLimit() throws Exception
+  {
+    final int indexEntryLimit = 1000;
+    final DefaultIndex index = openSegmentedIndex("concurrent-limit", indexEntryLimit);
+    final List<Future<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < indexEntryLimit + NB_THREADS; i++)
+    {
+      futures.add(parallelExecutor.submit(newUpdate(index, null, newDefinedSet(i))));
+    }
+    waitFor(futures);
+
+    assertThat(get(index).isDefined()).isFalse();
+  }
+
+  private Callable<Void> newUpdate(final DefaultIndex index, final EntryIDSet deletedIDs,
+      final EntryIDSet addedIDs)
+  {
+    return new Callable<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        storage.write(new WriteOperation()
+        {
+          @Override
+          public void run(WriteableTransaction txn) throws Exception
+          {
+            index.update(txn, KEY, deletedIDs, addedIDs);
+          }
+        });
+        return null;
+      }
+    };
+  }
+
+  private static void waitFor(List<Future<Void>> futures) throws Exception
+  {
+    for (Future<Void> future : futures)
+    {
+      future.get();
+    }
+  }
+
+  private DefaultIndex openSegmentedIndex(String name, int indexEntryLimit) throws Exception
+  {
+    final State state = mock(State.class);
+    when(state.getIndexFlags(any(ReadableTransaction.class), any(TreeName.class)))
+        .thenReturn(EnumSet.of(TRUSTED, BITMAP, SEGMENTED));
+    final DefaultIndex index =
+        new DefaultIndex(new TreeName("dc=test,dc=com", name), state, indexEntryLimit, mock(EntryContainer.class));
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        index.open(txn, true);
+      }
+    });
+    return index;
+  }
+
+  private EntryIDSet get(final DefaultIndex index) throws Exception
+  {
+    return storage.read(new ReadOperation<EntryIDSet>()
+    {
+      @Override
+      public EntryIDSet run(ReadableTransaction txn) throws Exception
+      {
+        return index.get(txn, KEY);
+      }
+    });
+  }
+
+  private String getHeader(final DefaultIndex index) throws Exception
+  {
+    return storage.read(new ReadOperation<String>()
+    {
+      @Override
+      public String run(ReadableTransaction txn) throws Exception
+      {
+        return index.valueToString(txn.read(index.getName(), DefaultIndex.toHeaderKey(KEY)));
+      }
+    });
+  }
+
+  private PDBBackendCfg createBackendCfg() throws ConfigException, DirectoryException
+  {
+    String homeDirName = "pdb_segmented_index_test";
+    PDBBackendCfg backendCfg = legacyMockCfg(PDBBackendCfg.class);
+
+    when(backendCfg.getBackendId()).thenReturn("persTest" + homeDirName);
+    when(backendCfg.getDBDirectory()).thenReturn(homeDirName);
+    when(backendCfg.getDBDirectoryPermissions()).thenReturn("755");
+    when(backendCfg.getDBCacheSize()).thenReturn(0L);
+    when(backendCfg.getDBCachePercent()).thenReturn(20);
+    when(backendCfg.getBaseDN()).thenReturn(newTreeSet(DN.valueOf("dc=test,dc=com")));
+    when(backendCfg.dn()).thenReturn(DN.valueOf("dc=test,dc=com"));
+    when(backendCfg.listBackendIndexes()).thenReturn(new String[0]);
+    when(backendCfg.listBackendVLVIndexes()).thenReturn(new String[0]);
+    return backendCfg;
+  }
+}
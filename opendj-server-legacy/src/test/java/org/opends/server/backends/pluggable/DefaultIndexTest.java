@@ -33,9 +33,11 @@ import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.State.IndexFlag.*;
 import static org.opends.server.backends.pluggable.Utils.assertIdsEquals;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -43,6 +45,7 @@ import java.util.TreeMap;
 
 import org.forgerock.opendj.ldap.ByteSequence;
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.opends.server.DirectoryServerTestCase;
 import org.opends.server.backends.pluggable.State.IndexFlag;
 import org.opends.server.backends.pluggable.spi.Cursor;
@@ -107,6 +110,134 @@ public class DefaultIndexTest extends DirectoryServerTestCase
     assertThat(txn.read(index.getName(), valueOfUtf8("key"))).isNull();
   }
 
+  @Test
+  public void testSegmentedSmallIdSetIsStoredInHeader() {
+    final DefaultIndex segmentedIndex = newSegmentedIndex(0);
+    segmentedIndex.update(txn, valueOfUtf8("key"), null, newDefinedSet(1, 2, 3));
+
+    assertThat(txn.getRecordCount(segmentedIndex.getName())).isEqualTo(1);
+    assertIdsEquals(segmentedIndex.get(txn, valueOfUtf8("key")), 1, 2, 3);
+  }
+
+  @Test
+  public void testSegmentedUpdateOnlyRewritesTouchedSegments() {
+    final DefaultIndex segmentedIndex = newSegmentedIndex(0);
+    final ByteString key = valueOfUtf8("key");
+    // 3 segments of 4096 IDs
+    final long[] ids = range(0, 3 * 4096, 8);
+    segmentedIndex.update(txn, key, null, newDefinedSet(ids));
+
+    assertThat(txn.getRecordCount(segmentedIndex.getName())).isEqualTo(4);
+    assertIdsEquals(segmentedIndex.get(txn, key), ids);
+
+    final ByteString header = txn.read(segmentedIndex.getName(), DefaultIndex.toHeaderKey(key));
+    final ByteString firstSegment = readSegment(segmentedIndex, key, 0);
+    segmentedIndex.update(txn, key, newDefinedSet(4096 + 8), newDefinedSet(2 * 4096 + 1));
+
+    assertThat(readSegment(segmentedIndex, key, 0)).isSameAs(firstSegment);
+    assertThat(txn.read(segmentedIndex.getName(), DefaultIndex.toHeaderKey(key))).isEqualTo(header);
+    assertThat(segmentedIndex.get(txn, key).size()).isEqualTo(ids.length);
+    assertThat(segmentedIndex.get(txn, key).contains(new EntryID(4096 + 8))).isFalse();
+    assertThat(segmentedIndex.get(txn, key).contains(new EntryID(2 * 4096 + 1))).isTrue();
+  }
+
+  @Test
+  public void testSegmentedEmptySegmentsAreRemoved() {
+    final DefaultIndex segmentedIndex = newSegmentedIndex(0);
+    final ByteString key = valueOfUtf8("key");
+    final long[] ids = range(0, 2 * 4096, 8);
+    segmentedIndex.update(txn, key, null, newDefinedSet(ids));
+
+    segmentedIndex.update(txn, key, newDefinedSet(range(4096, 2 * 4096, 8)), null);
+    assertThat(txn.getRecordCount(segmentedIndex.getName())).isEqualTo(2);
+    assertIdsEquals(segmentedIndex.get(txn, key), range(0, 4096, 8));
+
+    segmentedIndex.update(txn, key, newDefinedSet(range(0, 4096, 8)), null);
+    assertThat(txn.getRecordCount(segmentedIndex.getName())).isEqualTo(0);
+  }
+
+  @Test
+  public void testSegmentedIndexEntryLimit() {
+    final DefaultIndex segmentedIndex = newSegmentedIndex(1000);
+    final ByteString key = valueOfUtf8("key");
+    segmentedIndex.update(txn, key, null, newDefinedSet(range(0, 900, 1)));
+    segmentedIndex.update(txn, key, null, newDefinedSet(range(900, 1000, 1)));
+
+    assertThat(segmentedIndex.get(txn, key).isDefined()).isFalse();
+    assertThat(txn.getRecordCount(segmentedIndex.getName())).isEqualTo(1);
+  }
+
+  @Test
+  public void testSegmentedCursorMergesSegments() {
+    final DefaultIndex segmentedIndex = newSegmentedIndex(0);
+    final long[] ids = range(0, 2 * 4096, 8);
+    segmentedIndex.update(txn, valueOfUtf8("a"), null, newDefinedSet(ids));
+    segmentedIndex.update(txn, valueOfUtf8("a\0"), null, newDefinedSet(1));
+    segmentedIndex.update(txn, valueOfUtf8("b"), null, newDefinedSet(2, 3));
+
+    try (Cursor<ByteString, EntryIDSet> cursor = segmentedIndex.openCursor(txn))
+    {
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("a"));
+      assertIdsEquals(cursor.getValue(), ids);
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("a\0"));
+      assertIdsEquals(cursor.getValue(), 1);
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("b"));
+      assertIdsEquals(cursor.getValue(), 2, 3);
+      assertThat(cursor.next()).isFalse();
+
+      assertThat(cursor.positionToKey(valueOfUtf8("a"))).isTrue();
+      assertIdsEquals(cursor.getValue(), ids);
+      assertThat(cursor.positionToKeyOrNext(valueOfUtf8("a\1"))).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("b"));
+    }
+  }
+
+  @Test
+  public void testSegmentedCursorPositionToIndex() {
+    final DefaultIndex segmentedIndex = newSegmentedIndex(0);
+    final long[] ids = range(0, 2 * 4096, 8);
+    segmentedIndex.update(txn, valueOfUtf8("a"), null, newDefinedSet(ids));
+    segmentedIndex.update(txn, valueOfUtf8("b"), null, newDefinedSet(2, 3));
+
+    try (Cursor<ByteString, EntryIDSet> cursor = segmentedIndex.openCursor(txn))
+    {
+      assertThat(cursor.positionToIndex(1)).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("b"));
+      assertThat(cursor.positionToIndex(0)).isTrue();
+      assertThat(cursor.getKey()).isEqualTo(valueOfUtf8("a"));
+      assertIdsEquals(cursor.getValue(), ids);
+      assertThat(cursor.positionToIndex(2)).isFalse();
+      assertThat(cursor.isDefined()).isFalse();
+    }
+  }
+
+  private DefaultIndex newSegmentedIndex(int indexLimit)
+  {
+    final DefaultIndex segmentedIndex = newIndex("segmented", indexLimit, EnumSet.of(TRUSTED, BITMAP, SEGMENTED));
+    segmentedIndex.open(txn, true);
+    return segmentedIndex;
+  }
+
+  private ByteString readSegment(DefaultIndex segmentedIndex, ByteString key, long segment)
+  {
+    final ByteString segmentKey =
+        new ByteStringBuilder().appendBytes(DefaultIndex.toHeaderKey(key)).appendLong(segment).toByteString();
+    return txn.read(segmentedIndex.getName(), segmentKey);
+  }
+
+  private static long[] range(long from, long to, long step)
+  {
+    final long[] ids = new long[(int) ((to - from + step - 1) / step)];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = from + i * step;
+    }
+    return ids;
+  }
+
   private void update(EntryIDSet deletedIDSet, EntryIDSet addedIDSet) {
     index.update(txn, valueOfUtf8("key"), deletedIDSet, addedIDSet);
   }
@@ -141,6 +272,17 @@ public class DefaultIndexTest extends DirectoryServerTestCase
       return getTree(treeName).get(key);
     }
 
+    @Override
+    public List<ByteString> readAll(TreeName treeName, List<? extends ByteSequence> sortedKeys)
+    {
+      final List<ByteString> values = new ArrayList<>(sortedKeys.size());
+      for (ByteSequence key : sortedKeys)
+      {
+        values.add(read(treeName, key));
+      }
+      return values;
+    }
+
     private TreeMap<ByteString, ByteString> getTree(TreeName treeName) {
       final TreeMap<ByteString, ByteString> tree = storage.get(treeName);
       if ( tree == null ) {
@@ -206,7 +348,14 @@ public class DefaultIndexTest extends DirectoryServerTestCase
           current = null;
 
           it = tree.tailMap(key.toByteString()).entrySet().iterator();
-          return it.hasNext() && it.next().getKey().equals(key.toByteString());
+          if (it.hasNext()) {
+            current = it.next();
+            if (current.getKey().equals(key.toByteString())) {
+              return true;
+            }
+            current = null;
+          }
+          return false;
         }
 
         @Override
@@ -216,7 +365,7 @@ public class DefaultIndexTest extends DirectoryServerTestCase
 
           it = tree.tailMap(key.toByteString()).entrySet().iterator();
           if( it.hasNext() ) {
-            it.next();
+            current = it.next();
             return true;
           }
           return false;
@@ -225,25 +374,29 @@ public class DefaultIndexTest extends DirectoryServerTestCase
         @Override
         public boolean positionToLastKey()
         {
-          current = null;
-
-          while(it.hasNext()) {
-            next();
-          }
-
-          return true;
+          // Same contract as the storage cursors, which VLVRankDirectory relies on: positioned on the last record,
+          // or undefined and false when the tree is empty
+          current = tree.lastEntry();
+          it = current != null ? tree.tailMap(current.getKey(), false).entrySet().iterator() : it;
+          return current != null;
         }
 
         @Override
         public boolean positionToIndex(int index)
         {
+          // Same contract as the storage cursors: positioned on the record at the zero based index,
+          // or undefined and false when there are not enough records
           current = null;
           it = tree.entrySet().iterator();
           int i;
-          for(i = 0 ; i < index && it.hasNext() ; i++ ) {
+          for(i = 0 ; i <= index && it.hasNext() ; i++ ) {
             next();
           }
-          return i == index;
+          if (i != index + 1) {
+            current = null;
+            return false;
+          }
+          return true;
         }
       };
     }
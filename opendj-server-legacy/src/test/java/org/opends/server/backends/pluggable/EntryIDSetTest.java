@@ -297,6 +297,44 @@ public class EntryIDSetTest extends DirectoryServerTestCase
     assertThat(union.isDefined()).isFalse();
   }
 
+  @Test
+  public void testNewSetFromIntersections()
+  {
+    EntryIDSet intersection = newSetFromIntersection(
+        Arrays.asList(newDefinedSet(1, 2, 3, 4, 5, 6, 7, 8), newDefinedSet(2, 4, 6, 8), newDefinedSet(4, 5, 8)));
+    assertIdsEquals(intersection, 4, 8);
+
+    intersection = newSetFromIntersection(Arrays.asList(newDefinedSet(1, 2, 3), newUndefinedSet()));
+    assertIdsEquals(intersection, 1, 2, 3);
+
+    intersection = newSetFromIntersection(Arrays.asList(newDefinedSet(1, 2, 3), newDefinedSet()));
+    assertIdsEquals(intersection);
+
+    intersection = newSetFromIntersection(Arrays.asList(newUndefinedSet(), newUndefinedSet()));
+    assertThat(intersection.isDefined()).isFalse();
+  }
+
+  @Test
+  public void testSkewedRetainAll()
+  {
+    final long[] ids = new long[1000];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = i * 3;
+    }
+    final EntryIDSet retained = newDefinedSet(0, 4, 9, 2997, 3000);
+    retained.retainAll(newDefinedSet(ids));
+    assertIdsEquals(retained, 0, 9, 2997);
+  }
+
+  @Test
+  public void testNewSetFromOverlappingUnions()
+  {
+    final EntryIDSet union =
+        newSetFromUnion(Arrays.asList(newDefinedSet(5, 7, 9), newDefinedSet(1, 5, 6), newDefinedSet(2, 9, 10)));
+    assertIdsEquals(union, 1, 2, 5, 6, 7, 9, 10);
+  }
+
   @Test
   public void testRetainAll()
   {
@@ -316,9 +354,100 @@ public class EntryIDSetTest extends DirectoryServerTestCase
     assertIdsEquals(retained, 1, 3, 5, 7, 9);
   }
 
+  @Test
+  public void testBitmapAddRemove()
+  {
+    final EntryIDSet set = newBitmapSet(6, 8, 10, 12);
+
+    assertThat(set.add(id(4))).isTrue();
+    assertThat(set.add(id(70000))).isTrue();
+    assertThat(set.add(id(10))).isFalse();
+    assertIdsEquals(set, 4, 6, 8, 10, 12, 70000);
+
+    assertThat(set.remove(id(70000))).isTrue();
+    assertThat(set.remove(id(11))).isFalse();
+    assertIdsEquals(set, 4, 6, 8, 10, 12);
+    assertThat(set.contains(id(8))).isTrue();
+    assertThat(set.contains(id(9))).isFalse();
+  }
+
+  @Test
+  public void testBitmapRetainAll()
+  {
+    EntryIDSet retained = newBitmapSet(2, 4, 6, 8, 65536, 65538);
+    retained.retainAll(newBitmapSet(1, 2, 3, 5, 6, 7, 8, 65538));
+    assertIdsEquals(retained, 2, 6, 8, 65538);
+
+    retained = newBitmapSet(2, 4, 6, 8);
+    retained.retainAll(newDefinedSet(1, 3, 4, 5, 7, 9));
+    assertIdsEquals(retained, 4);
+
+    retained = newUndefinedSet();
+    retained.retainAll(newBitmapSet(1, 3, 5));
+    assertIdsEquals(retained, 1, 3, 5);
+  }
+
+  @Test
+  public void testBitmapAddAllAndRemoveAll()
+  {
+    final EntryIDSet set = newBitmapSet(10, 12);
+
+    set.addAll(newBitmapSet(6, 8, 100000));
+    assertIdsEquals(set, 6, 8, 10, 12, 100000);
+
+    set.addAll(newDefinedSet(9, 12));
+    assertIdsEquals(set, 6, 8, 9, 10, 12, 100000);
+
+    set.removeAll(newBitmapSet(8, 12, 100000));
+    assertIdsEquals(set, 6, 9, 10);
+
+    set.removeAll(newDefinedSet(6, 7));
+    assertIdsEquals(set, 9, 10);
+  }
+
+  @Test
+  public void testBitmapDenseContainers()
+  {
+    final long[] evens = new long[10000];
+    final long[] multiplesOfThree = new long[10000];
+    for (int i = 0; i < evens.length; i++)
+    {
+      evens[i] = i * 2;
+      multiplesOfThree[i] = i * 3;
+    }
+
+    final EntryIDSet intersection = newBitmapSet(evens);
+    intersection.retainAll(newBitmapSet(multiplesOfThree));
+    final EntryIDSet expectedIntersection = newDefinedSet(evens);
+    expectedIntersection.retainAll(newDefinedSet(multiplesOfThree));
+    assertThat(intersection.toLongArray()).isEqualTo(expectedIntersection.toLongArray());
+
+    final EntryIDSet union = newBitmapSet(evens);
+    union.addAll(newBitmapSet(multiplesOfThree));
+    final EntryIDSet expectedUnion = newDefinedSet(evens);
+    expectedUnion.addAll(newDefinedSet(multiplesOfThree));
+    assertThat(union.toLongArray()).isEqualTo(expectedUnion.toLongArray());
+
+    final EntryIDSet difference = newBitmapSet(evens);
+    difference.removeAll(newBitmapSet(multiplesOfThree));
+    final EntryIDSet expectedDifference = newDefinedSet(evens);
+    expectedDifference.removeAll(newDefinedSet(multiplesOfThree));
+    assertThat(difference.toLongArray()).isEqualTo(expectedDifference.toLongArray());
+
+    final EntryIDSet decoded = CODEC_V3.decode(KEY, CODEC_V3.encode(union));
+    assertThat(decoded.toLongArray()).isEqualTo(expectedUnion.toLongArray());
+  }
+
+  @Test
+  public void testNewSetFromUnionsOfBitmaps()
+  {
+    final EntryIDSet union = newSetFromUnion(Arrays.asList(newBitmapSet(1, 2, 3), newBitmapSet(3, 4, 70000)));
+    assertIdsEquals(union, 1, 2, 3, 4, 70000);
+  }
+
   @DataProvider(name = "codecs")
   public static Object[][] codecs() {
-     return new Object[][] { { CODEC_V1 }, { CODEC_V2 } };
+     return new Object[][] { { CODEC_V1 }, { CODEC_V2 }, { CODEC_V3 } };
   }
 
 }
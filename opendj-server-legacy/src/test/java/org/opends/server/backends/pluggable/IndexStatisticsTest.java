@@ -0,0 +1,147 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.backends.pluggable.EntryIDSet.*;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.backends.pluggable.AttributeIndex.IndexFilterType;
+import org.opends.server.types.SearchFilter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class IndexStatisticsTest extends DirectoryServerTestCase
+{
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @Test
+  public void testUnknownEstimate() throws Exception
+  {
+    final IndexStatistics statistics = new IndexStatistics();
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter("(cn=foo)"))).isEqualTo(IndexStatistics.UNKNOWN);
+  }
+
+  @Test
+  public void testSampledFilterEstimate() throws Exception
+  {
+    final IndexStatistics statistics = new IndexStatistics();
+    statistics.record(IndexFilterType.EQUALITY, filter("(cn=foo)"), newDefinedSet(1, 2, 3));
+    statistics.record(IndexFilterType.EQUALITY, filter("(cn=bar)"), newUndefinedSet());
+
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter("(cn=foo)"))).isEqualTo(3);
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter("(cn=bar)"))).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testHistogramEstimate() throws Exception
+  {
+    final IndexStatistics statistics = new IndexStatistics();
+    statistics.record(IndexFilterType.EQUALITY, filter("(cn=a)"), newDefinedSet(1, 2, 3, 4, 5));
+    statistics.record(IndexFilterType.EQUALITY, filter("(cn=b)"), newDefinedSet(1, 2, 3, 4, 5, 6));
+    statistics.record(IndexFilterType.EQUALITY, filter("(cn=c)"), newUndefinedSet());
+
+    // Median of the recorded cardinalities, rounded up to the next power of 2 minus one
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter("(cn=d)"))).isEqualTo(7);
+    assertThat(statistics.estimate(IndexFilterType.SUBSTRING, filter("(cn=d*)"))).isEqualTo(IndexStatistics.UNKNOWN);
+  }
+
+  @Test
+  public void testStaleSampledEstimateRecovers() throws Exception
+  {
+    final IndexStatistics statistics = new IndexStatistics();
+    final SearchFilter filter = filter("(cn=bar)");
+    statistics.record(IndexFilterType.EQUALITY, filter, newUndefinedSet());
+
+    // The filter is skipped while the estimate is used, until it expires
+    for (int i = 1; i < IndexStatistics.MAX_ESTIMATE_USES; i++)
+    {
+      assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter)).isEqualTo(Long.MAX_VALUE);
+    }
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter)).isEqualTo(IndexStatistics.UNKNOWN);
+
+    // Entries were deleted meanwhile: the new evaluation refreshes the estimate
+    statistics.record(IndexFilterType.EQUALITY, filter, newDefinedSet(1, 2));
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter)).isEqualTo(2);
+  }
+
+  @Test
+  public void testStaleHistogramEstimateRecovers() throws Exception
+  {
+    final IndexStatistics statistics = new IndexStatistics();
+    for (int i = 0; i < IndexStatistics.HISTOGRAM_DECAY_PERIOD; i++)
+    {
+      statistics.record(IndexFilterType.EQUALITY, filter("(cn=undefined" + i + ")"), newUndefinedSet());
+    }
+
+    // Unsampled filters are regularly reported as unknown so that they get evaluated
+    final SearchFilter filter = filter("(cn=other)");
+    for (int i = 1; i < IndexStatistics.MAX_ESTIMATE_USES; i++)
+    {
+      assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter)).isEqualTo(Long.MAX_VALUE);
+    }
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter)).isEqualTo(IndexStatistics.UNKNOWN);
+
+    // Old undefined results decay, the recent selective ones win
+    for (int i = 0; i < IndexStatistics.HISTOGRAM_DECAY_PERIOD; i++)
+    {
+      statistics.record(IndexFilterType.EQUALITY, filter("(cn=defined" + i + ")"), newDefinedSet(1, 2, 3));
+    }
+    assertThat(statistics.estimate(IndexFilterType.EQUALITY, filter)).isEqualTo(3);
+  }
+
+  @Test
+  public void testSampledFiltersAreBounded() throws Exception
+  {
+    final IndexStatistics statistics = new IndexStatistics();
+    for (int i = 0; i < 2 * IndexStatistics.MAX_SAMPLED_FILTERS; i++)
+    {
+      statistics.record(IndexFilterType.EQUALITY, filter("(cn=user" + i + ")"), newDefinedSet(1));
+    }
+
+    // Only the sampled filters are estimated, the substring histogram being empty
+    int nbSampled = 0;
+    for (int i = 0; i < 2 * IndexStatistics.MAX_SAMPLED_FILTERS; i++)
+    {
+      if (statistics.estimate(IndexFilterType.SUBSTRING, filter("(cn=user" + i + ")")) == 1)
+      {
+        nbSampled++;
+      }
+    }
+    assertThat(nbSampled).isLessThanOrEqualTo(IndexStatistics.MAX_SAMPLED_FILTERS);
+  }
+
+  private static SearchFilter filter(String filter) throws Exception
+  {
+    return SearchFilter.createFilterFromString(filter);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.backends.pluggable.ParallelSearchEvaluator.CandidateEvaluator;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
+import org.opends.server.types.DirectoryException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class ParallelSearchEvaluatorTest extends DirectoryServerTestCase
+{
+  private ParallelSearchEvaluator evaluator;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception
+  {
+    final Storage storage = mock(Storage.class);
+    final ReadableTransaction txn = mock(ReadableTransaction.class);
+    when(storage.read(any(ReadOperation.class))).thenAnswer(new Answer<Object>()
+    {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable
+      {
+        return ((ReadOperation<?>) invocation.getArguments()[0]).run(txn);
+      }
+    });
+    evaluator = new ParallelSearchEvaluator("test", storage, 4);
+  }
+
+  @AfterMethod
+  public void tearDown()
+  {
+    evaluator.shutdown();
+  }
+
+  @Test
+  public void testEveryCandidateIsEvaluatedOnce() throws Exception
+  {
+    final int nbCandidates = evaluator.getWindowSize() - 3;
+    final AtomicIntegerArray evaluations = new AtomicIntegerArray(nbCandidates);
+    evaluator.evaluate(nbCandidates, new CandidateEvaluator()
+    {
+      @Override
+      public void evaluate(ReadableTransaction txn, int from, int to) throws Exception
+      {
+        assertThat(txn).isNotNull();
+        for (int i = from; i < to; i++)
+        {
+          evaluations.incrementAndGet(i);
+        }
+      }
+    });
+
+    for (int i = 0; i < nbCandidates; i++)
+    {
+      assertThat(evaluations.get(i)).as("candidate " + i).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testDirectoryExceptionIsRethrown() throws Exception
+  {
+    final DirectoryException expected = new DirectoryException(ResultCode.OTHER, LocalizableMessage.raw("expected"));
+    try
+    {
+      evaluator.evaluate(evaluator.getWindowSize(), new CandidateEvaluator()
+      {
+        @Override
+        public void evaluate(ReadableTransaction txn, int from, int to) throws Exception
+        {
+          if (from == 0)
+          {
+            throw expected;
+          }
+        }
+      });
+      failBecauseExceptionWasNotThrown(DirectoryException.class);
+    }
+    catch (DirectoryException e)
+    {
+      assertThat(e).isSameAs(expected);
+    }
+  }
+
+  @Test
+  public void testOtherExceptionIsWrapped() throws Exception
+  {
+    try
+    {
+      evaluator.evaluate(1, new CandidateEvaluator()
+      {
+        @Override
+        public void evaluate(ReadableTransaction txn, int from, int to) throws Exception
+        {
+          throw new IllegalStateException();
+        }
+      });
+      failBecauseExceptionWasNotThrown(DirectoryException.class);
+    }
+    catch (DirectoryException e)
+    {
+      assertThat(e.getMessageObject().toString()).contains("IllegalStateException");
+    }
+  }
+
+  @Test
+  public void testEvaluationAfterShutdown() throws Exception
+  {
+    evaluator.shutdown();
+
+    final AtomicIntegerArray evaluations = new AtomicIntegerArray(10);
+    evaluator.evaluate(10, new CandidateEvaluator()
+    {
+      @Override
+      public void evaluate(ReadableTransaction txn, int from, int to) throws Exception
+      {
+        for (int i = from; i < to; i++)
+        {
+          evaluations.incrementAndGet(i);
+        }
+      }
+    });
+    for (int i = 0; i < 10; i++)
+    {
+      assertThat(evaluations.get(i)).isEqualTo(1);
+    }
+  }
+}
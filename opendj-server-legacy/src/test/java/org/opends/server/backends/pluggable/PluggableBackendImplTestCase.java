@@ -40,6 +40,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -63,6 +64,7 @@ import org.opends.server.api.ClientConnection;
 import org.opends.server.backends.RebuildConfig;
 import org.opends.server.backends.VerifyConfig;
 import org.opends.server.backends.RebuildConfig.RebuildMode;
+import org.opends.server.backends.pluggable.State.IndexFlag;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.ReadOnlyStorageException;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
@@ -71,6 +73,7 @@ import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.TreeName;
 import org.opends.server.backends.pluggable.spi.WriteOperation;
 import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+import org.opends.server.controls.PagedResultsControl;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.protocols.internal.InternalClientConnection;
 import org.opends.server.protocols.internal.InternalSearchOperation;
@@ -78,6 +81,7 @@ import org.opends.server.protocols.internal.SearchRequest;
 import org.opends.server.types.AttributeType;
 import org.opends.server.types.BackupConfig;
 import org.opends.server.types.BackupDirectory;
+import org.opends.server.types.Control;
 import org.opends.server.types.DN;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
@@ -110,6 +114,12 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
   private DN badEntryDN;
   private String backupID;
 
+  /** Layout of the attribute indexes once they have been rebuilt. */
+  private static final EnumSet<IndexFlag> REBUILT_ATTRIBUTE_INDEX_LAYOUT =
+      EnumSet.of(IndexFlag.BITMAP, IndexFlag.SEGMENTED);
+  /** Layout of the VLV indexes once they have been rebuilt. */
+  private static final EnumSet<IndexFlag> REBUILT_VLV_INDEX_LAYOUT = EnumSet.of(IndexFlag.RANKED);
+
   private Map<String, IndexType[]> backendIndexes = new HashMap<>();
   {
     backendIndexes.put("entryUUID", new IndexType[] { IndexType.EQUALITY });
@@ -784,6 +794,67 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     assertThat(runSearch(request, false)).isEmpty();
   }
 
+  @DataProvider
+  protected Object[][] indexedAndUnindexedFilters()
+  {
+    return new Object[][] { { "(objectClass=*)" }, { "(sn=*)" } };
+  }
+
+  @Test(dataProvider = "indexedAndUnindexedFilters")
+  public void testSizeLimitedSearch(String filter) throws Exception
+  {
+    final int nbEntries = runSearch(newSearchRequest(testBaseDN, SearchScope.WHOLE_SUBTREE, filter), true).size();
+    assertThat(nbEntries).isGreaterThan(2);
+
+    SearchRequest request = newSearchRequest(testBaseDN, SearchScope.WHOLE_SUBTREE, filter).setSizeLimit(2);
+    InternalSearchOperation search = getRootConnection().processSearch(request);
+    assertEquals(search.getResultCode(), ResultCode.SIZE_LIMIT_EXCEEDED);
+    assertEquals(search.getSearchEntries().size(), 2);
+
+    request = newSearchRequest(testBaseDN, SearchScope.WHOLE_SUBTREE, filter).setSizeLimit(nbEntries);
+    search = getRootConnection().processSearch(request);
+    assertEquals(search.getResultCode(), ResultCode.SUCCESS);
+    assertEquals(search.getSearchEntries().size(), nbEntries);
+  }
+
+  @Test(dataProvider = "indexedAndUnindexedFilters")
+  public void testPagedSearch(String filter) throws Exception
+  {
+    final int nbEntries = runSearch(newSearchRequest(testBaseDN, SearchScope.WHOLE_SUBTREE, filter), true).size();
+
+    final Set<DN> returnedDNs = new HashSet<>();
+    ByteString cookie = ByteString.empty();
+    do
+    {
+      final SearchRequest request = newSearchRequest(testBaseDN, SearchScope.WHOLE_SUBTREE, filter)
+          .addControl(new PagedResultsControl(true, 2, cookie));
+      final InternalSearchOperation search = getRootConnection().processSearch(request);
+      assertEquals(search.getResultCode(), ResultCode.SUCCESS);
+      assertThat(search.getSearchEntries().size()).isLessThanOrEqualTo(2);
+      for (SearchResultEntry entry : search.getSearchEntries())
+      {
+        assertTrue(returnedDNs.add(entry.getName()), "Entry returned twice: " + entry.getName());
+      }
+      cookie = getPagedResultsCookie(search);
+    }
+    while (cookie.length() != 0);
+    assertEquals(returnedDNs.size(), nbEntries);
+  }
+
+  private ByteString getPagedResultsCookie(InternalSearchOperation search)
+  {
+    ByteString cookie = null;
+    for (Control control : search.getResponseControls())
+    {
+      if (control instanceof PagedResultsControl)
+      {
+        cookie = ((PagedResultsControl) control).getCookie();
+      }
+    }
+    assertNotNull(cookie, "Missing paged results response control");
+    return cookie;
+  }
+
   @Test
   public void testSearchIsConsideredUnindexedBasedOnLookThroughLimit() throws DirectoryException {
     final int nbEntries = topEntries.size() + entries.size() + workEntries.size();
@@ -883,6 +954,7 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
 
     // Import wants the backend to be configured but not initialized. Finalizing resets the status.
     assertTrue(backend.supports(BackendOperation.LDIF_IMPORT), "Import not supported");
+    final Map<TreeName, EnumSet<IndexFlag>> layoutsBeforeImport = getIndexLayouts();
     backend.finalizeBackend();
 
     ByteArrayInputStream ldifImportContent = new ByteArrayInputStream(ldifOutputContent.toByteArray());
@@ -901,6 +973,8 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
                  "No entries should be rejected. Content was:\n" + rejectedEntries.toString());
 
     backend.openBackend();
+    // A full import keeps the layout of the existing indexes
+    assertThat(getIndexLayouts()).isEqualTo(layoutsBeforeImport);
     assertEquals(backend.getEntryCount(), getTotalNumberOfLDIFEntries(), "Not enough entries in DIT.");
     /** +1 for the testBaseDN itself */
     assertEquals(backend.getNumberOfEntriesInBaseDN(testBaseDN), getTotalNumberOfLDIFEntries(),
@@ -935,6 +1009,8 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
   {
     final EntryContainer entryContainer =  backend.getRootContainer().getEntryContainers().iterator().next();
 
+    final State state = new State(new TreeName(entryContainer.getTreePrefix(), SuffixContainer.STATE_INDEX_NAME));
+
     // Delete all the indexes
     backend.getRootContainer().getStorage().write(new WriteOperation()
     {
@@ -947,6 +1023,8 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
         for(VLVIndex idx : entryContainer.getVLVIndexes())
         {
           idx.setTrusted(txn, false);
+          // VLV indexes of an empty backend maintain a rank directory: check the rebuild starts maintaining it
+          state.removeFlagsFromIndex(txn, idx.getName(), IndexFlag.RANKED);
           idx.delete(txn);
         }
         for(AttributeIndex attribute : entryContainer.getAttributeIndexes())
@@ -968,6 +1046,20 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     backend.rebuildBackend(rebuildConf, DirectoryServer.getInstance().getServerContext());
     backend.openBackend();
 
+    // Rebuilt indexes are migrated to the latest layout
+    final EntryContainer rebuiltEntryContainer = backend.getRootContainer().getEntryContainer(testBaseDN);
+    for (AttributeIndex attribute : rebuiltEntryContainer.getAttributeIndexes())
+    {
+      for (Index index : attribute.getNameToIndexes().values())
+      {
+        assertThat(getLayout(index)).as(index.getName().toString()).isEqualTo(REBUILT_ATTRIBUTE_INDEX_LAYOUT);
+      }
+    }
+    for (VLVIndex index : rebuiltEntryContainer.getVLVIndexes())
+    {
+      assertThat(getLayout(index)).as(index.getName().toString()).isEqualTo(REBUILT_VLV_INDEX_LAYOUT);
+    }
+
     VerifyConfig config = new VerifyConfig();
     config.setBaseDN(DN.valueOf("dc=test,dc=com"));
     config.addCompleteIndex("dn2id");
@@ -1017,10 +1109,29 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     rebuildConf.setBaseDN(DN.valueOf("dc=test,dc=com"));
     rebuildConf.setRebuildMode(RebuildMode.DEGRADED);
 
+    final Map<TreeName, EnumSet<IndexFlag>> layoutsBeforeRebuild = getIndexLayouts();
     backend.closeBackend();
     backend.rebuildBackend(rebuildConf, DirectoryServer.getInstance().getServerContext());
     backend.openBackend();
 
+    // Only the rebuilt indexes are migrated to the latest layout
+    final EntryContainer rebuiltEntryContainer = backend.getRootContainer().getEntryContainer(testBaseDN);
+    for (AttributeIndex attribute : rebuiltEntryContainer.getAttributeIndexes())
+    {
+      final boolean rebuilt = dirtyIndexes.contains(attribute.getAttributeType().getNameOrOID());
+      for (Index index : attribute.getNameToIndexes().values())
+      {
+        final EnumSet<IndexFlag> expectedLayout =
+            rebuilt ? REBUILT_ATTRIBUTE_INDEX_LAYOUT : layoutsBeforeRebuild.get(index.getName());
+        assertThat(getLayout(index)).as(index.getName().toString()).isEqualTo(expectedLayout);
+      }
+    }
+    for (VLVIndex index : rebuiltEntryContainer.getVLVIndexes())
+    {
+      final EnumSet<IndexFlag> expectedLayout = layoutsBeforeRebuild.get(index.getName());
+      assertThat(getLayout(index)).as(index.getName().toString()).isEqualTo(expectedLayout);
+    }
+
     VerifyConfig config = new VerifyConfig();
     config.setBaseDN(DN.valueOf("dc=test,dc=com"));
     config.addCompleteIndex("dn2id");
@@ -1040,6 +1151,44 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     assertThat(backend.verifyBackend(config)).isEqualTo(0);
   }
 
+  /** Returns the layout of the attribute and VLV indexes of the test base DN, as the index flags describing it. */
+  private Map<TreeName, EnumSet<IndexFlag>> getIndexLayouts()
+  {
+    final EntryContainer entryContainer = backend.getRootContainer().getEntryContainer(testBaseDN);
+    final Map<TreeName, EnumSet<IndexFlag>> layouts = new HashMap<>();
+    for (AttributeIndex attribute : entryContainer.getAttributeIndexes())
+    {
+      for (Index index : attribute.getNameToIndexes().values())
+      {
+        layouts.put(index.getName(), getLayout(index));
+      }
+    }
+    for (VLVIndex index : entryContainer.getVLVIndexes())
+    {
+      layouts.put(index.getName(), getLayout(index));
+    }
+    return layouts;
+  }
+
+  private static EnumSet<IndexFlag> getLayout(Index index)
+  {
+    final EnumSet<IndexFlag> layout = EnumSet.noneOf(IndexFlag.class);
+    if (((DefaultIndex) index).usesBitmapEncoding())
+    {
+      layout.add(IndexFlag.BITMAP);
+    }
+    if (((DefaultIndex) index).isSegmented())
+    {
+      layout.add(IndexFlag.SEGMENTED);
+    }
+    return layout;
+  }
+
+  private static EnumSet<IndexFlag> getLayout(VLVIndex index)
+  {
+    return index.isRanked() ? EnumSet.of(IndexFlag.RANKED) : EnumSet.noneOf(IndexFlag.class);
+  }
+
   @Test
   public void testVerifyID2ChildrenCount() throws Exception
   {
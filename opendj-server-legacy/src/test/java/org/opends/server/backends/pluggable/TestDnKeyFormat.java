@@ -27,8 +27,10 @@
 package org.opends.server.backends.pluggable;
 
 import java.io.ByteArrayInputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ByteStringBuilder;
@@ -369,7 +371,7 @@ public class TestDnKeyFormat extends DirectoryServerTestCase {
             new DataConfig(false, false, null));
 
         entryAfter = ID2Entry.entryFromDatabase(bytes,
-                          DirectoryServer.getDefaultCompressedSchema());
+                          DirectoryServer.getDefaultCompressedSchema(), null);
 
         // check DN and number of attributes
         assertEquals(entryBefore.getAttributes().size(), entryAfter
@@ -524,6 +526,46 @@ public class TestDnKeyFormat extends DirectoryServerTestCase {
     }
   }
 
+  /**
+   * Tests the partial decoding of entries, where only some attributes are decoded.
+   *
+   * @throws Exception
+   *           If the test failed unexpectedly.
+   */
+  @Test(dataProvider = "encodeConfigs")
+  public void testPartialEntryDecoding(EntryEncodeConfig config) throws Exception
+  {
+    ensureServerIsUpAndRunning();
+
+    final AttributeType snType = DirectoryServer.getAttributeTypeOrDefault("sn");
+    final AttributeType cnType = DirectoryServer.getAttributeTypeOrDefault("cn");
+    final Set<AttributeType> attributeTypes = Collections.singleton(snType);
+
+    byte[] originalLDIFBytes = StaticUtils.getBytes(ldifString);
+    try (final LDIFReader reader = new LDIFReader(new LDIFImportConfig(new ByteArrayInputStream(originalLDIFBytes))))
+    {
+      Entry entryBefore;
+      while ((entryBefore = reader.readEntry(false)) != null) {
+        ByteStringBuilder bsb = new ByteStringBuilder();
+        entryBefore.encode(bsb, config);
+        Entry partialEntry = Entry.decode(bsb.asReader(), DirectoryServer.getDefaultCompressedSchema(), attributeTypes);
+
+        if (!config.excludeDN())
+        {
+          assertEquals(partialEntry.getName(), entryBefore.getName());
+        }
+        assertEquals(partialEntry.getObjectClasses(), entryBefore.getObjectClasses());
+        assertEquals(partialEntry.getAttribute(snType), entryBefore.getAttribute(snType));
+        assertThat(partialEntry.getAttribute(cnType)).isNull();
+        for (AttributeType type : partialEntry.getUserAttributes().keySet())
+        {
+          assertEquals(type, snType);
+        }
+        assertThat(partialEntry.getOperationalAttributes()).isEmpty();
+      }
+    }
+  }
+
   @DataProvider
   private Object[][] findDnKeyParentData()
   {
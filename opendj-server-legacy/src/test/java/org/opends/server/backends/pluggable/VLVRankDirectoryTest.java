@@ -0,0 +1,250 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.backends.pluggable.DefaultIndexTest.DummyWriteableTransaction;
+import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Importer;
+import org.opends.server.backends.pluggable.spi.SequentialCursor;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend" }, sequential = true)
+public class VLVRankDirectoryTest extends DirectoryServerTestCase
+{
+  private final TreeName vlvTreeName = new TreeName("dc=example,dc=com", "vlv.test");
+  private VLVRankDirectory ranks;
+  private WriteableTransaction txn;
+  private TreeSet<ByteString> keys;
+
+  @BeforeMethod
+  public void setUp()
+  {
+    txn = new DummyWriteableTransaction();
+    txn.openTree(vlvTreeName, true);
+    ranks = new VLVRankDirectory(new TreeName("dc=example,dc=com", "rank.vlv.test"), vlvTreeName);
+    ranks.open(txn, true);
+    keys = new TreeSet<>();
+  }
+
+  @Test
+  public void testPositionToIndexWithAddedKeys()
+  {
+    // Add keys in both directions to create and split buckets all over the index
+    for (int i = 0; i < 10; i++)
+    {
+      update(range(i * 1000, i * 1000 + 500), null);
+    }
+    for (int i = 9; i >= 0; i--)
+    {
+      update(range(i * 1000 + 500, i * 1000 + 1000), null);
+    }
+
+    assertThat(txn.getRecordCount(ranks.getName())).isGreaterThan(2);
+    assertRanks();
+  }
+
+  @Test
+  public void testBucketsAreSplit()
+  {
+    update(range(0, 3 * VLVRankDirectory.MAX_BUCKET_SIZE), null);
+    update(range(3 * VLVRankDirectory.MAX_BUCKET_SIZE, 3 * VLVRankDirectory.MAX_BUCKET_SIZE + 1), null);
+
+    assertThat(txn.getRecordCount(ranks.getName())).isGreaterThan(1);
+    assertRanks();
+  }
+
+  @Test
+  public void testPositionToIndexWithRemovedKeys()
+  {
+    update(range(0, 10000), null);
+    update(null, range(2000, 6000));
+    update(null, range(0, 10));
+    update(null, range(9990, 10000));
+
+    assertRanks();
+  }
+
+  @Test
+  public void testEmptyBucketsAreRemoved()
+  {
+    update(range(0, 10000), null);
+    update(null, range(0, 10000));
+
+    assertThat(txn.getRecordCount(ranks.getName())).isEqualTo(0);
+    update(range(500, 600), null);
+    assertRanks();
+  }
+
+  @Test
+  public void testPositionToKeyOrNext()
+  {
+    update(range(0, 10000, 2), null);
+
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(vlvTreeName))
+    {
+      assertThat(ranks.positionToKeyOrNext(txn, cursor, key(0))).isEqualTo(0);
+      assertThat(ranks.positionToKeyOrNext(txn, cursor, key(5001))).isEqualTo(2501);
+      assertThat(cursor.getKey()).isEqualTo(key(5002));
+      assertThat(ranks.positionToKeyOrNext(txn, cursor, key(9998))).isEqualTo(4999);
+      assertThat(ranks.positionToKeyOrNext(txn, cursor, key(9999))).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void testImport()
+  {
+    final VLVRankDirectory.RankImporter importer = ranks.newImporter(asImporter(txn));
+    final int nbKeys = 5 * VLVRankDirectory.IMPORT_BUCKET_SIZE + 10;
+    for (ByteString key : range(0, nbKeys))
+    {
+      txn.put(vlvTreeName, key, ByteString.empty());
+      keys.add(key);
+      importer.add(key);
+    }
+    importer.close();
+
+    assertThat(txn.getRecordCount(ranks.getName())).isEqualTo(6);
+    assertRanks();
+
+    update(range(nbKeys, nbKeys + 100), range(0, 100));
+    assertRanks();
+  }
+
+  private void assertRanks()
+  {
+    final List<ByteString> expectedKeys = new ArrayList<>(keys);
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(vlvTreeName))
+    {
+      for (int i = 0; i < expectedKeys.size(); i += 97)
+      {
+        assertThat(ranks.positionToIndex(txn, cursor, i)).isTrue();
+        assertThat(cursor.getKey()).isEqualTo(expectedKeys.get(i));
+      }
+      assertThat(ranks.positionToIndex(txn, cursor, expectedKeys.size())).isFalse();
+    }
+  }
+
+  private void update(List<ByteString> addedKeys, List<ByteString> deletedKeys)
+  {
+    final TreeSet<ByteString> changes = new TreeSet<>();
+    if (addedKeys != null)
+    {
+      changes.addAll(addedKeys);
+    }
+    if (deletedKeys != null)
+    {
+      changes.addAll(deletedKeys);
+    }
+
+    final VLVRankDirectory.Updater updater = ranks.newUpdater(txn);
+    for (ByteString key : changes)
+    {
+      if (addedKeys != null && addedKeys.contains(key))
+      {
+        txn.put(vlvTreeName, key, ByteString.empty());
+        keys.add(key);
+        updater.update(key, 1);
+      }
+      else
+      {
+        txn.delete(vlvTreeName, key);
+        keys.remove(key);
+        updater.update(key, -1);
+      }
+    }
+    updater.close();
+  }
+
+  private static List<ByteString> range(long from, long to)
+  {
+    return range(from, to, 1);
+  }
+
+  private static List<ByteString> range(long from, long to, long step)
+  {
+    final List<ByteString> range = new ArrayList<>();
+    for (long i = from; i < to; i += step)
+    {
+      range.add(key(i));
+    }
+    return range;
+  }
+
+  private static ByteString key(long i)
+  {
+    return ByteString.valueOfLong(i);
+  }
+
+  private static Importer asImporter(final WriteableTransaction txn)
+  {
+    return new Importer()
+    {
+      @Override
+      public void clearTree(TreeName treeName)
+      {
+        txn.deleteTree(treeName);
+        txn.openTree(treeName, true);
+      }
+
+      @Override
+      public void put(TreeName treeName, ByteSequence key, ByteSequence value)
+      {
+        txn.put(treeName, key, value);
+      }
+
+      @Override
+      public ByteString read(TreeName treeName, ByteSequence key)
+      {
+        return txn.read(treeName, key);
+      }
+
+      @Override
+      public SequentialCursor<ByteString, ByteString> openCursor(TreeName treeName)
+      {
+        return txn.openCursor(treeName);
+      }
+
+      @Override
+      public void close()
+      {
+        // Nothing to do
+      }
+    };
+  }
+}
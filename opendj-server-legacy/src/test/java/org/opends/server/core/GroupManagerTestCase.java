@@ -26,6 +26,8 @@
  */
 package org.opends.server.core;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -211,6 +213,62 @@ public class GroupManagerTestCase
     assertTrue(group1Instance.isMember(user5DN));
   }
 
+  /**
+   * Tests the reverse membership lookups of the group manager with nested
+   * static groups, a circular nesting and a nested dynamic group.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testGetGroupsNested() throws Exception {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+    addNestedGroupTestEntries();
+    DN group1DN = DN.valueOf("cn=group 1,ou=Groups,o=test");
+    DN group2DN = DN.valueOf("cn=group 2,ou=Groups,o=test");
+    DN group3DN = DN.valueOf("cn=group 3,ou=Groups,o=test");
+    DN group4DN = DN.valueOf("cn=group 4,ou=Groups,o=test");
+    DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+    DN user2DN = DN.valueOf("uid=user.2,ou=People,o=test");
+    DN user3DN = DN.valueOf("uid=user.3,ou=People,o=test");
+    DN user5DN = DN.valueOf("uid=user.5,ou=People,o=test");
+    Group group1Instance = groupManager.getGroupInstance(group1DN);
+    Group group2Instance = groupManager.getGroupInstance(group2DN);
+    Group group3Instance = groupManager.getGroupInstance(group3DN);
+    Group group4Instance = groupManager.getGroupInstance(group4DN);
+    group1Instance.addNestedGroup(group2DN);
+    group2Instance.addNestedGroup(group3DN);
+    group3Instance.addNestedGroup(group4DN);
+    group1Instance.addMember(DirectoryServer.getEntry(user1DN));
+    group2Instance.addMember(DirectoryServer.getEntry(user2DN));
+    group3Instance.addMember(DirectoryServer.getEntry(user3DN));
+
+    assertEquals(groupManager.getGroups(user1DN), newGroupSet(group1Instance));
+    assertEquals(groupManager.getGroups(user2DN),
+        newGroupSet(group1Instance, group2Instance));
+    assertEquals(groupManager.getGroups(DirectoryServer.getEntry(user3DN)),
+        newGroupSet(group1Instance, group2Instance, group3Instance));
+    // User 5 matches the URL of the dynamic group "group 4"
+    assertEquals(groupManager.getGroups(DirectoryServer.getEntry(user5DN)),
+        newGroupSet(group1Instance, group2Instance, group3Instance, group4Instance));
+
+    // Circular nesting
+    group3Instance.addNestedGroup(group1DN);
+    assertEquals(groupManager.getGroups(user1DN),
+        newGroupSet(group1Instance, group2Instance, group3Instance));
+
+    group2Instance.removeNestedGroup(group3DN);
+    group1Instance.removeMember(user1DN);
+    assertEquals(groupManager.getGroups(user1DN), newGroupSet());
+    assertEquals(groupManager.getGroups(user3DN), newGroupSet(group3Instance));
+  }
+
+  private static Set<Group<?>> newGroupSet(Group<?>... groups)
+  {
+    return new HashSet<Group<?>>(Arrays.asList(groups));
+  }
+
   /**
    * Invokes membership and nested group APIs using a group instance that has
    * been changed by the group manager via ldap modify.
@@ -0,0 +1,237 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static org.mockito.Mockito.*;
+import static org.opends.server.util.ServerConstants.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.ClientConnection;
+import org.opends.server.api.EntryCache;
+import org.opends.server.protocols.ldap.LDAPControl;
+import org.opends.server.types.AuthenticationInfo;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.Operation;
+import org.opends.server.types.OperationType;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class InlineQueueingStrategyTest extends DirectoryServerTestCase
+{
+  private static final String CACHED_DN = "o=cached";
+  private static final String UNCACHED_DN = "o=uncached";
+
+  private EntryCache<?> entryCache;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    entryCache = DirectoryServer.getEntryCache();
+    final EntryCache<?> mockedEntryCache = mock(EntryCache.class);
+    when(mockedEntryCache.containsEntry(DN.valueOf(CACHED_DN))).thenReturn(true);
+    DirectoryServer.setEntryCache(mockedEntryCache);
+  }
+
+  @AfterClass
+  public void restoreEntryCache()
+  {
+    DirectoryServer.setEntryCache(entryCache);
+  }
+
+  private <T extends Operation> T getMockedOperation(Class<T> operationClass, OperationType operationType)
+  {
+    final T operation = mock(operationClass);
+    final ClientConnection connection = mock(ClientConnection.class);
+    when(operation.getClientConnection()).thenReturn(connection);
+    when(operation.getOperationType()).thenReturn(operationType);
+    when(operation.getRequestControls()).thenReturn(Collections.<Control> emptyList());
+    when(connection.getAuthenticationInfo()).thenReturn(new AuthenticationInfo());
+    when(connection.isConnectionValid()).thenReturn(true);
+    return operation;
+  }
+
+  private CompareOperation getMockedCompare(String entryDN)
+  {
+    final CompareOperation compare = getMockedOperation(CompareOperation.class, OperationType.COMPARE);
+    when(compare.getRawEntryDN()).thenReturn(ByteString.valueOf(entryDN));
+    return compare;
+  }
+
+  private SearchOperation getMockedSearch(SearchScope scope, List<Control> controls)
+  {
+    final SearchOperation search = getMockedOperation(SearchOperation.class, OperationType.SEARCH);
+    when(search.getRawBaseDN()).thenReturn(ByteString.valueOf(CACHED_DN));
+    when(search.getScope()).thenReturn(scope);
+    when(search.getRequestControls()).thenReturn(controls);
+    return search;
+  }
+
+  private InlineQueueingStrategy newStrategy(QueueingStrategy delegate, long timeBudgetInMillis)
+  {
+    final InlineQueueingStrategy strategy = new InlineQueueingStrategy(delegate);
+    strategy.setTimeBudget(timeBudgetInMillis, TimeUnit.MILLISECONDS);
+    return strategy;
+  }
+
+  private void assertRunInline(Operation operation, QueueingStrategy delegate) throws Exception
+  {
+    verify(operation, times(1)).run();
+    verify(operation, times(1)).operationCompleted();
+    verify(delegate, never()).enqueueRequest(operation);
+  }
+
+  private void assertHandedOver(Operation operation, QueueingStrategy delegate) throws Exception
+  {
+    verify(operation, never()).run();
+    verify(delegate, times(1)).enqueueRequest(operation);
+  }
+
+  @Test
+  public void doNotRunInlineWithoutTimeBudget() throws Exception
+  {
+    final QueueingStrategy delegate = mock(QueueingStrategy.class);
+    final InlineQueueingStrategy strategy = newStrategy(delegate, 0);
+    final CompareOperation compare = getMockedCompare(CACHED_DN);
+    strategy.enqueueRequest(compare);
+
+    assertHandedOver(compare, delegate);
+  }
+
+  @Test
+  public void runCheapOperationsInline() throws Exception
+  {
+    final QueueingStrategy delegate = mock(QueueingStrategy.class);
+    final InlineQueueingStrategy strategy = newStrategy(delegate, 1000);
+    final AbandonOperation abandon = getMockedOperation(AbandonOperation.class, OperationType.ABANDON);
+    final CompareOperation compare = getMockedCompare(CACHED_DN);
+    final SearchOperation baseSearch = getMockedSearch(SearchScope.BASE_OBJECT, Collections.<Control> emptyList());
+    strategy.enqueueRequest(abandon);
+    strategy.enqueueRequest(compare);
+    strategy.enqueueRequest(baseSearch);
+
+    assertRunInline(abandon, delegate);
+    assertRunInline(compare, delegate);
+    assertRunInline(baseSearch, delegate);
+  }
+
+  @Test
+  public void handOverOtherOperations() throws Exception
+  {
+    final QueueingStrategy delegate = mock(QueueingStrategy.class);
+    final InlineQueueingStrategy strategy = newStrategy(delegate, 1000);
+    final BindOperation bind = getMockedOperation(BindOperation.class, OperationType.BIND);
+    final ModifyOperation modify = getMockedOperation(ModifyOperation.class, OperationType.MODIFY);
+    final SearchOperation subtreeSearch =
+        getMockedSearch(SearchScope.WHOLE_SUBTREE, Collections.<Control> emptyList());
+    final SearchOperation persistentSearch = getMockedSearch(SearchScope.BASE_OBJECT,
+        Collections.<Control> singletonList(new LDAPControl(OID_PERSISTENT_SEARCH)));
+    strategy.enqueueRequest(bind);
+    strategy.enqueueRequest(modify);
+    strategy.enqueueRequest(subtreeSearch);
+    strategy.enqueueRequest(persistentSearch);
+
+    assertHandedOver(bind, delegate);
+    assertHandedOver(modify, delegate);
+    assertHandedOver(subtreeSearch, delegate);
+    assertHandedOver(persistentSearch, delegate);
+  }
+
+  @Test
+  public void handOverOperationsExceedingTimeBudget() throws Exception
+  {
+    final QueueingStrategy delegate = mock(QueueingStrategy.class);
+    final InlineQueueingStrategy strategy = newStrategy(delegate, 1);
+    final CompareOperation slowCompare = getMockedCompare(CACHED_DN);
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        Thread.sleep(100);
+        return null;
+      }
+    }).when(slowCompare).run();
+    strategy.enqueueRequest(slowCompare);
+    assertRunInline(slowCompare, delegate);
+
+    final CompareOperation compare = getMockedCompare(CACHED_DN);
+    strategy.enqueueRequest(compare);
+    assertHandedOver(compare, delegate);
+
+    // Other operation types are still run inline
+    final AbandonOperation abandon = getMockedOperation(AbandonOperation.class, OperationType.ABANDON);
+    strategy.enqueueRequest(abandon);
+    assertRunInline(abandon, delegate);
+  }
+
+  @Test
+  public void handOverOperationsOnUncachedEntries() throws Exception
+  {
+    final QueueingStrategy delegate = mock(QueueingStrategy.class);
+    final InlineQueueingStrategy strategy = newStrategy(delegate, 1000);
+    final CompareOperation compare = getMockedCompare(UNCACHED_DN);
+    final SearchOperation baseSearch = getMockedSearch(SearchScope.BASE_OBJECT, Collections.<Control> emptyList());
+    when(baseSearch.getRawBaseDN()).thenReturn(ByteString.valueOf(UNCACHED_DN));
+    final CompareOperation invalidDNCompare = getMockedCompare("invalid");
+    strategy.enqueueRequest(compare);
+    strategy.enqueueRequest(baseSearch);
+    strategy.enqueueRequest(invalidDNCompare);
+
+    assertHandedOver(compare, delegate);
+    assertHandedOver(baseSearch, delegate);
+    assertHandedOver(invalidDNCompare, delegate);
+  }
+
+  @Test
+  public void handOverOperationsWhenWritesAreBlocked() throws Exception
+  {
+    final QueueingStrategy delegate = mock(QueueingStrategy.class);
+    final InlineQueueingStrategy strategy = newStrategy(delegate, 1000);
+    final CompareOperation compare = getMockedCompare(CACHED_DN);
+    when(compare.getClientConnection().isWriteBlocked()).thenReturn(true);
+    final AbandonOperation abandon = getMockedOperation(AbandonOperation.class, OperationType.ABANDON);
+    when(abandon.getClientConnection().isWriteBlocked()).thenReturn(true);
+    strategy.enqueueRequest(compare);
+    strategy.enqueueRequest(abandon);
+
+    assertHandedOver(compare, delegate);
+    // Abandon operations do not send any response
+    assertRunInline(abandon, delegate);
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static java.util.Arrays.*;
+
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.testng.Assert.*;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ModificationType;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.LockManager.DNLock;
+import org.opends.server.types.Modification;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the write-behind of password policy state updates.
+ */
+@SuppressWarnings("javadoc")
+public class PasswordPolicyStateUpdaterTestCase extends CoreTestCase
+{
+  private DN userDN;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    TestCaseUtils.initializeTestBackend(true);
+    TestCaseUtils.addEntry(
+        "dn: uid=test.user,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: test.user",
+        "givenName: Test",
+        "sn: User",
+        "cn: Test User",
+        "userPassword: password");
+    userDN = DN.valueOf("uid=test.user,o=test");
+
+    TestCaseUtils.dsconfig(
+        "set-password-policy-prop",
+        "--policy-name", "Default Password Policy",
+        "--set", "lockout-failure-count:3",
+        "--set", "state-update-failure-policy:ignore",
+        "--set", "state-update-write-behind-interval:1 h");
+  }
+
+  @AfterClass
+  public void resetPasswordPolicy() throws Exception
+  {
+    TestCaseUtils.dsconfig(
+        "set-password-policy-prop",
+        "--policy-name", "Default Password Policy",
+        "--reset", "lockout-failure-count",
+        "--reset", "state-update-failure-policy",
+        "--reset", "state-update-write-behind-interval");
+  }
+
+  @Test
+  public void testQueuedUpdatesAreCoalescedAndWritten() throws Exception
+  {
+    final PasswordPolicyStateUpdater updater =
+        new PasswordPolicyStateUpdater(DirectoryServer.getDefaultPasswordPolicy(), 1000);
+    final AttributeType userPassword = DirectoryServer.getAttributeTypeOrNull("userpassword");
+    updater.queueUpdates(userDN, userPassword, asList(
+        new Modification(ModificationType.REPLACE, Attributes.create("description", "first"), true),
+        new Modification(ModificationType.ADD, Attributes.create("l", "somewhere"), true)));
+    updater.queueUpdates(userDN, userPassword, asList(
+        new Modification(ModificationType.REPLACE, Attributes.create("description", "second"), true)));
+
+    final Entry entry = DirectoryServer.getEntry(userDN);
+    assertFalse(entry.hasAttribute(DirectoryServer.getAttributeTypeOrNull("description")));
+    final Entry updatedEntry = updater.applyPendingUpdates(entry);
+    assertTrue(updatedEntry.hasValue(DirectoryServer.getAttributeTypeOrNull("description"), null,
+        ByteString.valueOf("second")));
+
+    updater.writePendingUpdates();
+
+    final Entry writtenEntry = DirectoryServer.getEntry(userDN);
+    assertSame(updater.applyPendingUpdates(writtenEntry), writtenEntry);
+    assertEquals(writtenEntry.getAttribute("description").get(0).size(), 1);
+    assertTrue(writtenEntry.hasValue(DirectoryServer.getAttributeTypeOrNull("description"), null,
+        ByteString.valueOf("second")));
+    assertTrue(writtenEntry.hasAttribute(DirectoryServer.getAttributeTypeOrNull("l")));
+  }
+
+  @Test
+  public void testLockoutAfterFailedBinds() throws Exception
+  {
+    final DN dn = addUser("lockout.user");
+    lockAccount(dn);
+
+    // The failures are only queued
+    final Entry entry = DirectoryServer.getEntry(dn);
+    assertFalse(entry.hasAttribute(DirectoryServer.getAttributeTypeOrNull("pwdfailuretime")));
+    assertFalse(entry.hasAttribute(DirectoryServer.getAttributeTypeOrNull("pwdaccountlockedtime")));
+
+    getStateUpdater().writePendingUpdates();
+
+    final Entry writtenEntry = DirectoryServer.getEntry(dn);
+    assertTrue(writtenEntry.hasAttribute(DirectoryServer.getAttributeTypeOrNull("pwdaccountlockedtime")));
+    assertFalse(TestCaseUtils.canBind(dn.toString(), "password"));
+  }
+
+  @Test
+  public void testUnlockDiscardsQueuedUpdates() throws Exception
+  {
+    final DN dn = addUser("unlocked.user");
+    lockAccount(dn);
+
+    final ModifyOperation unlock = getRootConnection().processModify(dn, asList(
+        new Modification(ModificationType.REPLACE, Attributes.empty("pwdFailureTime")),
+        new Modification(ModificationType.REPLACE, Attributes.empty("pwdAccountLockedTime"))));
+    assertEquals(unlock.getResultCode(), ResultCode.SUCCESS);
+    getStateUpdater().writePendingUpdates();
+
+    assertTrue(TestCaseUtils.canBind(dn.toString(), "password"));
+    getStateUpdater().writePendingUpdates();
+    assertFalse(DirectoryServer.getEntry(dn).hasAttribute(
+        DirectoryServer.getAttributeTypeOrNull("pwdaccountlockedtime")));
+  }
+
+  @Test
+  public void testPasswordResetCancelsWriteInFlight() throws Exception
+  {
+    final DN dn = addUser("reset.user");
+    lockAccount(dn);
+
+    final PasswordPolicyStateUpdater updater = getStateUpdater();
+    final Thread writer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        updater.writePendingUpdates();
+      }
+    }, "Password policy state writer");
+
+    // Hold the entry lock so that the write blocks once its updates are in flight
+    final DNLock entryLock = DirectoryServer.getLockManager().tryWriteLockEntry(dn);
+    assertNotNull(entryLock);
+    try
+    {
+      writer.start();
+      waitUntilBlocked(writer);
+
+      final ModifyOperation reset = getRootConnection().processModify(dn, asList(
+          new Modification(ModificationType.REPLACE, Attributes.create("userPassword", "newpassword"))));
+      assertEquals(reset.getResultCode(), ResultCode.SUCCESS);
+    }
+    finally
+    {
+      entryLock.unlock();
+    }
+    writer.join(10000);
+    assertFalse(writer.isAlive());
+
+    assertFalse(DirectoryServer.getEntry(dn).hasAttribute(
+        DirectoryServer.getAttributeTypeOrNull("pwdaccountlockedtime")));
+    assertTrue(TestCaseUtils.canBind(dn.toString(), "newpassword"));
+  }
+
+  @Test
+  public void testUserPasswordAttributeChangeDiscardsQueuedUpdates() throws Exception
+  {
+    final DN dn = addUser("subentry.user");
+    // As queued for a user governed by a subentry policy storing its passwords in another attribute
+    getStateUpdater().queueUpdates(dn, DirectoryServer.getAttributeTypeOrNull("description"), asList(
+        new Modification(ModificationType.ADD, Attributes.create("l", "somewhere"), true)));
+
+    final ModifyOperation passwordChange = getRootConnection().processModify(dn, asList(
+        new Modification(ModificationType.REPLACE, Attributes.create("description", "newpassword"))));
+    assertEquals(passwordChange.getResultCode(), ResultCode.SUCCESS);
+    getStateUpdater().writePendingUpdates();
+
+    assertFalse(DirectoryServer.getEntry(dn).hasAttribute(DirectoryServer.getAttributeTypeOrNull("l")));
+  }
+
+  @Test
+  public void testDeleteDiscardsQueuedUpdates() throws Exception
+  {
+    final DN dn = addUser("deleted.user");
+    lockAccount(dn);
+
+    TestCaseUtils.deleteEntry(dn);
+    getStateUpdater().writePendingUpdates();
+    addUser("deleted.user");
+
+    assertTrue(TestCaseUtils.canBind(dn.toString(), "password"));
+    getStateUpdater().writePendingUpdates();
+    assertFalse(DirectoryServer.getEntry(dn).hasAttribute(
+        DirectoryServer.getAttributeTypeOrNull("pwdfailuretime")));
+  }
+
+  private static PasswordPolicyStateUpdater getStateUpdater()
+  {
+    final PasswordPolicyStateUpdater updater = DirectoryServer.getDefaultPasswordPolicy().getStateUpdater();
+    assertNotNull(updater);
+    return updater;
+  }
+
+  private static DN addUser(String uid) throws Exception
+  {
+    final Entry entry = TestCaseUtils.makeEntry(
+        "dn: uid=" + uid + ",o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: " + uid,
+        "givenName: Test",
+        "sn: User",
+        "cn: Test User",
+        "userPassword: password");
+    TestCaseUtils.addEntry(entry);
+    return entry.getName();
+  }
+
+  /** Locks the account of the user with as many failed binds as the lockout failure count. */
+  private static void lockAccount(DN dn) throws Exception
+  {
+    for (int i = 0; i < 3; i++)
+    {
+      assertFalse(TestCaseUtils.canBind(dn.toString(), "wrong"));
+    }
+    assertFalse(TestCaseUtils.canBind(dn.toString(), "password"));
+  }
+
+  private static void waitUntilBlocked(Thread thread) throws InterruptedException
+  {
+    final long timeout = System.currentTimeMillis() + 10000;
+    while (thread.getState() != Thread.State.TIMED_WAITING)
+    {
+      assertTrue(System.currentTimeMillis() < timeout, "The write did not block on the entry lock");
+      Thread.sleep(10);
+    }
+  }
+}
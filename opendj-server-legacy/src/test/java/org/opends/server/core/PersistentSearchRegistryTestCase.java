@@ -0,0 +1,190 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.EnumSet;
+
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.ClientConnection;
+import org.opends.server.controls.PersistentSearchChangeType;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchFilter;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the dispatching of changes to the persistent searches interested by them.
+ */
+@SuppressWarnings("javadoc")
+public class PersistentSearchRegistryTestCase extends CoreTestCase
+{
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    TestCaseUtils.initializeTestBackend(true);
+  }
+
+  @Test
+  public void testBaseDN() throws Exception
+  {
+    final PersistentSearchRegistry registry = new PersistentSearchRegistry();
+    final PersistentSearch underA = register(registry, "ou=a,o=test", "(objectClass=*)");
+    final PersistentSearch underB = register(registry, "ou=b,o=test", "(objectClass=*)");
+    final PersistentSearch underSuffix = register(registry, "o=test", "(objectClass=*)");
+    final PersistentSearch underRootDN = register(registry, "", "(objectClass=*)");
+
+    assertThat(getCandidates(registry, newUser("uid=user.0,ou=a,o=test", "user.0")))
+        .containsOnly(underA, underSuffix, underRootDN);
+    assertThat(getCandidates(registry, newUser("uid=user.0,ou=b,o=test", "user.0")))
+        .containsOnly(underB, underSuffix, underRootDN);
+    assertThat(getCandidates(registry, newUser("uid=user.0,o=test", "user.0")))
+        .containsOnly(underSuffix, underRootDN);
+    assertThat(underA).isNotIn(getCandidates(registry, newUser("uid=user.0,ou=other,o=test", "user.0")));
+  }
+
+  @Test
+  public void testEqualityAssertion() throws Exception
+  {
+    final PersistentSearchRegistry registry = new PersistentSearchRegistry();
+    final PersistentSearch user1 = register(registry, "o=test", "(uid=user.1)");
+    final PersistentSearch user2 = register(registry, "o=test", "(&(objectClass=person)(uid=USER.2))");
+    final PersistentSearch anyUser = register(registry, "o=test", "(|(uid=user.1)(uid=user.2))");
+    final PersistentSearch notUser = register(registry, "o=test", "(!(uid=user.1))");
+
+    assertThat(getCandidates(registry, newUser("uid=user.1,o=test", "user.1")))
+        .containsOnly(user1, anyUser, notUser);
+    // Assertion values are normalized
+    assertThat(getCandidates(registry, newUser("uid=user.2,o=test", "User.2")))
+        .containsOnly(user2, anyUser, notUser);
+    assertThat(getCandidates(registry, newUser("uid=user.3,o=test", "user.3")))
+        .containsOnly(anyUser, notUser);
+  }
+
+  @Test
+  public void testModifyMatchesOldAndNewEntries() throws Exception
+  {
+    final PersistentSearchRegistry registry = new PersistentSearchRegistry();
+    final PersistentSearch user1 = register(registry, "o=test", "(uid=user.1)");
+    final PersistentSearch user2 = register(registry, "o=test", "(uid=user.2)");
+    register(registry, "o=test", "(uid=user.3)");
+
+    final Entry oldEntry = newUser("uid=user.1,o=test", "user.1");
+    final Entry newEntry = newUser("uid=user.1,o=test", "user.2");
+    assertThat(registry.getCandidates(newEntry, oldEntry.getName(), oldEntry, oldEntry.getName()))
+        .containsOnly(user1, user2);
+  }
+
+  @Test
+  public void testDeregister() throws Exception
+  {
+    final PersistentSearchRegistry registry = new PersistentSearchRegistry();
+    final PersistentSearch indexed = register(registry, "o=test", "(uid=user.1)");
+    final PersistentSearch unindexed = register(registry, "o=test", "(objectClass=*)");
+    final Entry entry = newUser("uid=user.1,o=test", "user.1");
+    assertThat(getCandidates(registry, entry)).containsOnly(indexed, unindexed);
+
+    registry.deregister(indexed);
+    assertThat(getCandidates(registry, entry)).containsOnly(unindexed);
+    registry.deregister(unindexed);
+    assertThat(getCandidates(registry, entry)).isEmpty();
+
+    // Deregistering twice is harmless, and persistent searches can be registered again
+    registry.deregister(indexed);
+    registry.register(indexed);
+    assertThat(getCandidates(registry, entry)).containsOnly(indexed);
+  }
+
+  @Test
+  public void testCollectiveAttributeValues() throws Exception
+  {
+    final PersistentSearchRegistry registry = new PersistentSearchRegistry();
+    final PersistentSearch inParis = register(registry, "o=test", "(l=Paris)");
+    final Entry user = newUser("uid=user.1,o=test", "user.1");
+    assertThat(getCandidates(registry, user)).isEmpty();
+
+    TestCaseUtils.addEntry(
+        "dn: cn=Paris Users,o=test",
+        "objectClass: top",
+        "objectClass: subentry",
+        "objectClass: collectiveAttributeSubentry",
+        "objectClass: extensibleObject",
+        "cn: Paris Users",
+        "l;collective: Paris",
+        "subtreeSpecification: {}");
+    try
+    {
+      // The entry does not hold the collective values: the filter must be evaluated
+      assertThat(getCandidates(registry, user)).containsOnly(inParis);
+    }
+    finally
+    {
+      TestCaseUtils.deleteEntry(DN.valueOf("cn=Paris Users,o=test"));
+    }
+    assertThat(getCandidates(registry, user)).isEmpty();
+  }
+
+  private static Iterable<PersistentSearch> getCandidates(PersistentSearchRegistry registry, Entry entry)
+  {
+    return registry.getCandidates(entry, entry.getName(), null, null);
+  }
+
+  private static PersistentSearch register(PersistentSearchRegistry registry, String baseDN, String filter)
+      throws Exception
+  {
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    when(searchOperation.getBaseDN()).thenReturn(DN.valueOf(baseDN));
+    when(searchOperation.getScope()).thenReturn(SearchScope.WHOLE_SUBTREE);
+    when(searchOperation.getFilter()).thenReturn(SearchFilter.createFilterFromString(filter));
+    when(searchOperation.getClientConnection()).thenReturn(mock(ClientConnection.class));
+    when(searchOperation.returnEntry(any(Entry.class), anyListOf(Control.class))).thenReturn(true);
+
+    final PersistentSearch psearch =
+        new PersistentSearch(searchOperation, EnumSet.allOf(PersistentSearchChangeType.class), true, false);
+    registry.register(psearch);
+    return psearch;
+  }
+
+  private static Entry newUser(String dn, String uid) throws Exception
+  {
+    return TestCaseUtils.makeEntry(
+        "dn: " + dn,
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: " + uid,
+        "cn: " + uid,
+        "sn: " + uid);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.ClientConnection;
+import org.opends.server.controls.PersistentSearchChangeType;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.DisconnectReason;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchFilter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the delivery of changes to the clients of persistent searches.
+ */
+@SuppressWarnings("javadoc")
+public class PersistentSearchTestCase extends CoreTestCase
+{
+  private int queueSize;
+  private boolean disconnectOnOverflow;
+
+  /** A client which records the entries it receives, and which can be held while receiving the first one. */
+  private static final class Client implements Answer<Boolean>
+  {
+    private final SearchOperation searchOperation = mock(SearchOperation.class);
+    private final ClientConnection connection = mock(ClientConnection.class);
+    private final List<Entry> receivedEntries = Collections.synchronizedList(new ArrayList<Entry>());
+    private final List<Thread> senderThreads = Collections.synchronizedList(new ArrayList<Thread>());
+    private final CountDownLatch receiving = new CountDownLatch(1);
+    private final CountDownLatch released;
+    private final CountDownLatch allReceived;
+
+    private Client(boolean held, int expectedEntries) throws Exception
+    {
+      released = new CountDownLatch(held ? 1 : 0);
+      allReceived = new CountDownLatch(expectedEntries);
+      when(searchOperation.getBaseDN()).thenReturn(DN.valueOf("o=test"));
+      when(searchOperation.getScope()).thenReturn(SearchScope.WHOLE_SUBTREE);
+      when(searchOperation.getFilter()).thenReturn(SearchFilter.objectClassPresent());
+      when(searchOperation.getClientConnection()).thenReturn(connection);
+      when(searchOperation.returnEntry(any(Entry.class), anyListOf(Control.class))).thenAnswer(this);
+    }
+
+    @Override
+    public Boolean answer(InvocationOnMock invocation) throws Throwable
+    {
+      senderThreads.add(Thread.currentThread());
+      receiving.countDown();
+      released.await(10, TimeUnit.SECONDS);
+      receivedEntries.add((Entry) invocation.getArguments()[0]);
+      allReceived.countDown();
+      return true;
+    }
+
+    private PersistentSearch newPersistentSearch()
+    {
+      return new PersistentSearch(searchOperation, EnumSet.allOf(PersistentSearchChangeType.class), true, false);
+    }
+
+    private void awaitAllReceived() throws InterruptedException
+    {
+      assertThat(allReceived.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void saveQueueSettings()
+  {
+    queueSize = DirectoryServer.getPersistentSearchQueueSize();
+    disconnectOnOverflow = DirectoryServer.isDisconnectOnPersistentSearchQueueOverflow();
+  }
+
+  @AfterMethod
+  public void restoreQueueSettings()
+  {
+    DirectoryServer.setPersistentSearchQueueSize(queueSize);
+    DirectoryServer.setDisconnectOnPersistentSearchQueueOverflow(disconnectOnOverflow);
+  }
+
+  @Test
+  public void testChangesAreSentSynchronouslyByDefault() throws Exception
+  {
+    assertThat(DirectoryServer.getPersistentSearchQueueSize()).isEqualTo(0);
+
+    final Client client = new Client(false, 1);
+    final Entry entry = newEntry(1);
+    client.newPersistentSearch().processAdd(entry);
+
+    assertThat(client.receivedEntries).containsExactly(entry);
+    assertThat(client.senderThreads).containsExactly(Thread.currentThread());
+  }
+
+  @Test
+  public void testChangesAreSentAsynchronouslyInOrder() throws Exception
+  {
+    DirectoryServer.setPersistentSearchQueueSize(10);
+
+    final Client client = new Client(true, 3);
+    final PersistentSearch psearch = client.newPersistentSearch();
+    final Entry[] entries = { newEntry(1), newEntry(2), newEntry(3) };
+    for (Entry entry : entries)
+    {
+      // Does not wait for the held client
+      psearch.processAdd(entry);
+    }
+    client.released.countDown();
+    client.awaitAllReceived();
+
+    assertThat(client.receivedEntries).containsExactly(entries);
+    assertThat(client.senderThreads).doesNotContain(Thread.currentThread());
+  }
+
+  @Test
+  public void testQueueOverflowDisconnectsClient() throws Exception
+  {
+    DirectoryServer.setPersistentSearchQueueSize(2);
+    DirectoryServer.setDisconnectOnPersistentSearchQueueOverflow(true);
+
+    final Client client = new Client(true, 1);
+    final PersistentSearch psearch = client.newPersistentSearch();
+    // Cancelling the persistent search deregisters it
+    DirectoryServer.registerPersistentSearch();
+    psearch.processAdd(newEntry(1));
+    assertThat(client.receiving.await(10, TimeUnit.SECONDS)).isTrue();
+    psearch.processAdd(newEntry(2));
+    psearch.processAdd(newEntry(3));
+    verify(client.connection, never()).disconnect(any(DisconnectReason.class), anyBoolean(),
+        any(LocalizableMessage.class));
+
+    psearch.processAdd(newEntry(4));
+    verify(client.connection).disconnect(eq(DisconnectReason.ADMIN_LIMIT_EXCEEDED), eq(false),
+        any(LocalizableMessage.class));
+
+    // The changes queued for the cancelled search are discarded
+    client.released.countDown();
+    client.awaitAllReceived();
+    psearch.processAdd(newEntry(5));
+    assertThat(client.receivedEntries).hasSize(1);
+  }
+
+  @Test
+  public void testQueueOverflowDropsChanges() throws Exception
+  {
+    DirectoryServer.setPersistentSearchQueueSize(2);
+    DirectoryServer.setDisconnectOnPersistentSearchQueueOverflow(false);
+
+    final Client client = new Client(true, 3);
+    final PersistentSearch psearch = client.newPersistentSearch();
+    final Entry[] entries = { newEntry(1), newEntry(2), newEntry(3), newEntry(4), newEntry(5) };
+    psearch.processAdd(entries[0]);
+    assertThat(client.receiving.await(10, TimeUnit.SECONDS)).isTrue();
+    for (int i = 1; i < entries.length; i++)
+    {
+      psearch.processAdd(entries[i]);
+    }
+    client.released.countDown();
+    client.awaitAllReceived();
+
+    // Changes which could not be queued are dropped, the client stays connected
+    assertThat(client.receivedEntries).containsExactly(entries[0], entries[1], entries[2]);
+    verify(client.connection, never()).disconnect(any(DisconnectReason.class), anyBoolean(),
+        any(LocalizableMessage.class));
+  }
+
+  private static Entry newEntry(int i) throws Exception
+  {
+    return TestCaseUtils.makeEntry(
+        "dn: uid=user." + i + ",o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user." + i,
+        "cn: user." + i,
+        "sn: user." + i);
+  }
+}
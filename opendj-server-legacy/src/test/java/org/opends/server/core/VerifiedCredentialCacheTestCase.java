@@ -0,0 +1,148 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import static java.util.Collections.*;
+
+import static org.testng.Assert.*;
+
+import java.util.List;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for the cache of verified passwords of a password policy.
+ */
+@SuppressWarnings("javadoc")
+public class VerifiedCredentialCacheTestCase extends CoreTestCase
+{
+  private static final ByteString PASSWORD = ByteString.valueOf("password");
+
+  private DN user1;
+  private DN user2;
+  private List<Attribute> storedPassword;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    user1 = DN.valueOf("uid=user.1,o=test");
+    user2 = DN.valueOf("uid=user.2,o=test");
+    storedPassword = singletonList(Attributes.create("userPassword", "{SSHA}stored"));
+  }
+
+  @Test
+  public void testVerifiedPassword() throws Exception
+  {
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(10, 1000);
+    assertFalse(cache.isVerified(user1, storedPassword, PASSWORD, 0));
+
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+    assertTrue(cache.isVerified(user1, storedPassword, PASSWORD, 999));
+    assertFalse(cache.isVerified(user1, storedPassword, ByteString.valueOf("wrong"), 999));
+    assertFalse(cache.isVerified(user2, storedPassword, PASSWORD, 999));
+    assertEquals(cache.getHits(), 1);
+    assertEquals(cache.getMisses(), 3);
+  }
+
+  @Test
+  public void testExpiredVerification() throws Exception
+  {
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(10, 1000);
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+
+    assertFalse(cache.isVerified(user1, storedPassword, PASSWORD, 1000));
+    assertEquals(cache.size(), 0);
+  }
+
+  @Test
+  public void testStoredPasswordChanged() throws Exception
+  {
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(10, 1000);
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+
+    final List<Attribute> newPassword = singletonList(Attributes.create("userPassword", "{SSHA}changed"));
+    assertFalse(cache.isVerified(user1, newPassword, PASSWORD, 0));
+  }
+
+  @Test
+  public void testInvalidate() throws Exception
+  {
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(10, 1000);
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+    cache.verified(user2, storedPassword, PASSWORD, 0);
+
+    cache.invalidate(user1);
+    assertFalse(cache.isVerified(user1, storedPassword, PASSWORD, 0));
+    assertTrue(cache.isVerified(user2, storedPassword, PASSWORD, 0));
+  }
+
+  @Test
+  public void testCacheIsBounded() throws Exception
+  {
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(1, 1000);
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+    cache.verified(user2, storedPassword, PASSWORD, 0);
+
+    assertEquals(cache.size(), 1);
+    assertTrue(cache.isVerified(user2, storedPassword, PASSWORD, 0));
+  }
+
+  @Test
+  public void testOldestVerificationIsEvicted() throws Exception
+  {
+    final DN user3 = DN.valueOf("uid=user.3,o=test");
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(2, 1000);
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+    cache.verified(user2, storedPassword, PASSWORD, 1);
+    cache.verified(user3, storedPassword, PASSWORD, 2);
+
+    assertEquals(cache.size(), 2);
+    assertFalse(cache.isVerified(user1, storedPassword, PASSWORD, 2));
+    assertTrue(cache.isVerified(user2, storedPassword, PASSWORD, 2));
+    assertTrue(cache.isVerified(user3, storedPassword, PASSWORD, 2));
+  }
+
+  @Test
+  public void testExpiredVerificationIsEvictedFirst() throws Exception
+  {
+    final DN user3 = DN.valueOf("uid=user.3,o=test");
+    final VerifiedCredentialCache cache = new VerifiedCredentialCache(2, 1000);
+    cache.verified(user1, storedPassword, PASSWORD, 0);
+    cache.verified(user2, storedPassword, PASSWORD, 500);
+    cache.verified(user3, storedPassword, PASSWORD, 1000);
+
+    assertEquals(cache.size(), 2);
+    assertTrue(cache.isVerified(user2, storedPassword, PASSWORD, 1000));
+    assertTrue(cache.isVerified(user3, storedPassword, PASSWORD, 1000));
+  }
+}
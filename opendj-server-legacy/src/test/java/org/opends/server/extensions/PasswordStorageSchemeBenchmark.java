@@ -0,0 +1,190 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.admin.std.server.PBKDF2PasswordStorageSchemeCfg;
+import org.opends.server.admin.std.server.SaltedMD5PasswordStorageSchemeCfg;
+import org.opends.server.admin.std.server.SaltedSHA1PasswordStorageSchemeCfg;
+import org.opends.server.admin.std.server.SaltedSHA256PasswordStorageSchemeCfg;
+import org.opends.server.admin.std.server.SaltedSHA384PasswordStorageSchemeCfg;
+import org.opends.server.admin.std.server.SaltedSHA512PasswordStorageSchemeCfg;
+import org.opends.server.api.PasswordStorageScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of the password storage schemes when the passwords
+ * of concurrent bind operations are encoded and compared.
+ * <p>
+ * This is not a unit test: run {@link #main(String[])} from the test
+ * classpath in order to measure each scheme with 1 to 64 threads.
+ */
+@SuppressWarnings("javadoc")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordStorageSchemeBenchmark
+{
+  private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+  private static final ByteString PASSWORD = ByteString.valueOf("password");
+  private static final ByteString WRONG_PASSWORD = ByteString.valueOf("wrong password");
+
+  @Param({ "SSHA", "SSHA256", "SSHA384", "SSHA512", "SMD5", "PBKDF2", "SHA256-CRYPT", "SHA512-CRYPT" })
+  public String scheme;
+
+  /** The tested scheme, or {@code null} for the SHA-2 crypt algorithms. */
+  private PasswordStorageScheme<?> storageScheme;
+  private ByteString encodedPassword;
+  private String cryptedPassword;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    switch (scheme)
+    {
+    case "SSHA":
+      final SaltedSHA1PasswordStorageScheme ssha = new SaltedSHA1PasswordStorageScheme();
+      ssha.initializePasswordStorageScheme(mock(SaltedSHA1PasswordStorageSchemeCfg.class));
+      storageScheme = ssha;
+      break;
+    case "SSHA256":
+      final SaltedSHA256PasswordStorageScheme ssha256 = new SaltedSHA256PasswordStorageScheme();
+      ssha256.initializePasswordStorageScheme(mock(SaltedSHA256PasswordStorageSchemeCfg.class));
+      storageScheme = ssha256;
+      break;
+    case "SSHA384":
+      final SaltedSHA384PasswordStorageScheme ssha384 = new SaltedSHA384PasswordStorageScheme();
+      ssha384.initializePasswordStorageScheme(mock(SaltedSHA384PasswordStorageSchemeCfg.class));
+      storageScheme = ssha384;
+      break;
+    case "SSHA512":
+      final SaltedSHA512PasswordStorageScheme ssha512 = new SaltedSHA512PasswordStorageScheme();
+      ssha512.initializePasswordStorageScheme(mock(SaltedSHA512PasswordStorageSchemeCfg.class));
+      storageScheme = ssha512;
+      break;
+    case "SMD5":
+      final SaltedMD5PasswordStorageScheme smd5 = new SaltedMD5PasswordStorageScheme();
+      smd5.initializePasswordStorageScheme(mock(SaltedMD5PasswordStorageSchemeCfg.class));
+      storageScheme = smd5;
+      break;
+    case "PBKDF2":
+      final PBKDF2PasswordStorageSchemeCfg configuration = mock(PBKDF2PasswordStorageSchemeCfg.class);
+      when(configuration.getPBKDF2Iterations()).thenReturn(10000);
+      final PBKDF2PasswordStorageScheme pbkdf2 = new PBKDF2PasswordStorageScheme();
+      pbkdf2.initializePasswordStorageScheme(configuration);
+      storageScheme = pbkdf2;
+      break;
+    case "SHA256-CRYPT":
+      cryptedPassword = Sha2Crypt.sha256Crypt(PASSWORD.toByteArray());
+      return;
+    case "SHA512-CRYPT":
+      cryptedPassword = Sha2Crypt.sha512Crypt(PASSWORD.toByteArray());
+      return;
+    default:
+      throw new IllegalArgumentException(scheme);
+    }
+    encodedPassword = storageScheme.encodePassword(PASSWORD);
+  }
+
+  /** Encodes a password, as done when a password is added or modified. */
+  @Benchmark
+  public Object encodePassword() throws Exception
+  {
+    if (storageScheme == null)
+    {
+      return "SHA256-CRYPT".equals(scheme)
+          ? Sha2Crypt.sha256Crypt(PASSWORD.toByteArray())
+          : Sha2Crypt.sha512Crypt(PASSWORD.toByteArray());
+    }
+    return storageScheme.encodePassword(PASSWORD);
+  }
+
+  /** Compares a password with its encoded value, as done by bind operations. */
+  @Benchmark
+  public boolean passwordMatches() throws Exception
+  {
+    return matches(PASSWORD);
+  }
+
+  /** Compares a wrong password with the encoded value, as done by failed bind operations. */
+  @Benchmark
+  public boolean passwordDoesNotMatch() throws Exception
+  {
+    return matches(WRONG_PASSWORD);
+  }
+
+  private boolean matches(ByteString password) throws Exception
+  {
+    if (storageScheme == null)
+    {
+      final String crypted = "SHA256-CRYPT".equals(scheme)
+          ? Sha2Crypt.sha256Crypt(password.toByteArray(), cryptedPassword)
+          : Sha2Crypt.sha512Crypt(password.toByteArray(), cryptedPassword);
+      return crypted.equals(cryptedPassword);
+    }
+    return storageScheme.passwordMatches(password, encodedPassword);
+  }
+
+  /**
+   * Runs the benchmarks with an increasing number of threads.
+   *
+   * @param args
+   *          Optional regular expression restricting the benchmarks to run.
+   */
+  public static void main(String[] args) throws Exception
+  {
+    final String include = args.length > 0 ? args[0] : PasswordStorageSchemeBenchmark.class.getSimpleName();
+    for (int threads : THREADS)
+    {
+      final Options options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
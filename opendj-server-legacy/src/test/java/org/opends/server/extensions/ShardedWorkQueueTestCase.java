@@ -0,0 +1,240 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.std.server.ShardedWorkQueueCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.plugins.DelayPreOpPlugin;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.protocols.internal.SearchRequest;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.opends.server.protocols.internal.Requests.*;
+import static org.testng.Assert.*;
+
+/**
+ * A set of test cases for the sharded work queue.
+ * <p>
+ * All the internal operations use the same connection, so they are all queued
+ * to the same worker unless its queue is full.
+ */
+@SuppressWarnings("javadoc")
+public class ShardedWorkQueueTestCase extends ExtensionsTestCase
+{
+  /** The monitor of the server work queue, replaced by the monitor of the tested work queues. */
+  private MonitorProvider<?> serverWorkQueueMonitor;
+  private ShardedWorkQueue workQueue;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    TestCaseUtils.initializeTestBackend(true);
+  }
+
+  @BeforeMethod
+  public void saveWorkQueueMonitor()
+  {
+    serverWorkQueueMonitor = DirectoryServer.getMonitorProvider("work queue");
+  }
+
+  @AfterMethod
+  public void finalizeWorkQueue()
+  {
+    if (workQueue != null)
+    {
+      workQueue.finalizeWorkQueue(INFO_CANCELED_BY_SHUTDOWN.get());
+      workQueue = null;
+    }
+    if (serverWorkQueueMonitor != null)
+    {
+      DirectoryServer.deregisterMonitorProvider(serverWorkQueueMonitor);
+      DirectoryServer.registerMonitorProvider(serverWorkQueueMonitor);
+    }
+  }
+
+  private ShardedWorkQueue newWorkQueue(int numWorkerThreads, int maxCapacity) throws Exception
+  {
+    ShardedWorkQueueCfg configuration = mock(ShardedWorkQueueCfg.class);
+    when(configuration.getNumWorkerThreads()).thenReturn(numWorkerThreads);
+    when(configuration.getMaxWorkQueueCapacity()).thenReturn(maxCapacity);
+
+    workQueue = new ShardedWorkQueue();
+    workQueue.initializeWorkQueue(configuration);
+    return workQueue;
+  }
+
+  private InternalSearchOperation newDelayedSearch(long delay) throws Exception
+  {
+    SearchRequest request = newSearchRequest(DN.valueOf("o=test"), SearchScope.BASE_OBJECT)
+        .addControl(DelayPreOpPlugin.createDelayControlList(delay));
+    return new InternalSearchOperation(getRootConnection(), nextOperationID(), nextMessageID(), request);
+  }
+
+  /** Submits long operations until all the workers are busy processing one. */
+  private void occupyAllWorkers(ShardedWorkQueue queue) throws Exception
+  {
+    for (int i = 0; i < queue.getNumWorkerThreads(); i++)
+    {
+      queue.submitOperation(newDelayedSearch(5000));
+    }
+    // Each worker picks up at most one of these operations
+    waitFor(queue, 0);
+  }
+
+  private void waitFor(ShardedWorkQueue queue, int size) throws InterruptedException
+  {
+    long stopTime = System.currentTimeMillis() + 2000;
+    while (queue.size() != size && System.currentTimeMillis() < stopTime)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(queue.size(), size);
+  }
+
+  private void waitForResult(InternalSearchOperation operation, ResultCode expected, long timeout)
+      throws InterruptedException
+  {
+    long stopTime = System.currentTimeMillis() + timeout;
+    while (operation.getResultCode() != expected && System.currentTimeMillis() < stopTime)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(operation.getResultCode(), expected);
+  }
+
+  private static long sum(long[] values)
+  {
+    long sum = 0;
+    for (long value : values)
+    {
+      sum += value;
+    }
+    return sum;
+  }
+
+  @Test
+  public void testSubmittedOperationsAreProcessed() throws Exception
+  {
+    ShardedWorkQueue queue = newWorkQueue(2, 10);
+
+    for (int i = 0; i < 5; i++)
+    {
+      queue.submitOperation(newDelayedSearch(100));
+    }
+
+    assertTrue(queue.waitUntilIdle(10000));
+    assertEquals(queue.getOpsSubmitted(), 5);
+    assertEquals(queue.size(), 0);
+    assertEquals(queue.getWaitTimes().getSnapshot().getCount(), 5);
+  }
+
+  @Test
+  public void testIdleWorkerStealsOperations() throws Exception
+  {
+    ShardedWorkQueue queue = newWorkQueue(2, 10);
+
+    queue.submitOperation(newDelayedSearch(5000));
+    InternalSearchOperation second = newDelayedSearch(0);
+    queue.submitOperation(second);
+
+    // Both operations are queued to the same worker: the second one can only
+    // complete before the first one if the other worker steals one of them
+    waitForResult(second, ResultCode.SUCCESS, 2000);
+    assertTrue(sum(queue.getWorkerOpsStolen()) >= 1);
+  }
+
+  @Test
+  public void testOperationsSpillToOtherWorkerQueues() throws Exception
+  {
+    // Each worker queue can hold a single operation
+    ShardedWorkQueue queue = newWorkQueue(2, 2);
+    occupyAllWorkers(queue);
+
+    queue.submitOperation(newDelayedSearch(0));
+    queue.submitOperation(newDelayedSearch(0));
+
+    assertEquals(queue.getWorkerQueueSizes(), new int[] { 1, 1 });
+    assertEquals(queue.size(), 2);
+    assertEquals(queue.getOpsSubmitted(), 4);
+  }
+
+  @Test
+  public void testOperationsRejectedWhenAllQueuesFull() throws Exception
+  {
+    ShardedWorkQueue queue = newWorkQueue(2, 2);
+    occupyAllWorkers(queue);
+
+    assertTrue(queue.trySubmitOperation(newDelayedSearch(0)));
+    assertTrue(queue.trySubmitOperation(newDelayedSearch(0)));
+    assertFalse(queue.trySubmitOperation(newDelayedSearch(0)));
+
+    assertEquals(queue.getOpsRejectedDueToQueueFull(), 1);
+    assertEquals(queue.getOpsSubmitted(), 4);
+    assertEquals(queue.size(), 2);
+  }
+
+  @Test
+  public void testShutdownCancelsOperations() throws Exception
+  {
+    ShardedWorkQueue queue = newWorkQueue(1, 10);
+
+    InternalSearchOperation running = newDelayedSearch(5000);
+    InternalSearchOperation queued = newDelayedSearch(0);
+    queue.submitOperation(running);
+    waitFor(queue, 0);
+    queue.submitOperation(queued);
+
+    workQueue = null;
+    queue.finalizeWorkQueue(INFO_CANCELED_BY_SHUTDOWN.get());
+
+    waitForResult(running, ResultCode.CANCELLED, 2000);
+    assertNotNull(queued.getCancelRequest());
+    assertEquals(queue.size(), 0);
+    assertTrue(queue.waitUntilIdle(2000));
+    try
+    {
+      queue.submitOperation(newDelayedSearch(0));
+      fail("Expected the operation to be rejected");
+    }
+    catch (DirectoryException e)
+    {
+      assertEquals(e.getResultCode(), ResultCode.UNAVAILABLE);
+    }
+  }
+}
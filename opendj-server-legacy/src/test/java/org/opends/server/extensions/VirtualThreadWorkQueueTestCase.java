@@ -0,0 +1,206 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.std.server.VirtualThreadWorkQueueCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.plugins.DelayPreOpPlugin;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.protocols.internal.SearchRequest;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.opends.server.protocols.internal.Requests.*;
+import static org.testng.Assert.*;
+
+/**
+ * A set of test cases for the virtual thread work queue.
+ */
+@SuppressWarnings("javadoc")
+public class VirtualThreadWorkQueueTestCase extends ExtensionsTestCase
+{
+  /** The monitor of the server work queue, replaced by the monitor of the tested work queues. */
+  private MonitorProvider<?> serverWorkQueueMonitor;
+  private VirtualThreadWorkQueue workQueue;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    TestCaseUtils.initializeTestBackend(true);
+  }
+
+  @BeforeMethod
+  public void saveWorkQueueMonitor()
+  {
+    serverWorkQueueMonitor = DirectoryServer.getMonitorProvider("work queue");
+  }
+
+  @AfterMethod
+  public void finalizeWorkQueue()
+  {
+    if (workQueue != null)
+    {
+      workQueue.finalizeWorkQueue(INFO_CANCELED_BY_SHUTDOWN.get());
+      workQueue = null;
+    }
+    if (serverWorkQueueMonitor != null)
+    {
+      DirectoryServer.deregisterMonitorProvider(serverWorkQueueMonitor);
+      DirectoryServer.registerMonitorProvider(serverWorkQueueMonitor);
+    }
+  }
+
+  private VirtualThreadWorkQueue newWorkQueue(int maxConcurrentOperations, int maxCapacity) throws Exception
+  {
+    workQueue = new VirtualThreadWorkQueue();
+    workQueue.initializeWorkQueue(newConfiguration(maxConcurrentOperations, maxCapacity));
+    return workQueue;
+  }
+
+  private VirtualThreadWorkQueueCfg newConfiguration(int maxConcurrentOperations, int maxCapacity)
+  {
+    VirtualThreadWorkQueueCfg configuration = mock(VirtualThreadWorkQueueCfg.class);
+    when(configuration.getMaxConcurrentOperations()).thenReturn(maxConcurrentOperations);
+    when(configuration.getMaxWorkQueueCapacity()).thenReturn(maxCapacity);
+    return configuration;
+  }
+
+  private InternalSearchOperation newDelayedSearch(long delay) throws Exception
+  {
+    SearchRequest request = newSearchRequest(DN.valueOf("o=test"), SearchScope.BASE_OBJECT)
+        .addControl(DelayPreOpPlugin.createDelayControlList(delay));
+    return new InternalSearchOperation(getRootConnection(), nextOperationID(), nextMessageID(), request);
+  }
+
+  @Test
+  public void testSubmittedOperationsAreProcessed() throws Exception
+  {
+    VirtualThreadWorkQueue queue = newWorkQueue(2, 10);
+
+    List<InternalSearchOperation> operations = new ArrayList<>();
+    for (int i = 0; i < 5; i++)
+    {
+      InternalSearchOperation operation = newDelayedSearch(200);
+      operations.add(operation);
+      queue.submitOperation(operation);
+    }
+    assertTrue(queue.getActiveOperations() <= 2);
+
+    assertTrue(queue.waitUntilIdle(10000));
+    assertEquals(queue.getOpsSubmitted(), 5);
+    assertEquals(queue.size(), 0);
+    assertEquals(queue.getActiveOperations(), 0);
+    for (InternalSearchOperation operation : operations)
+    {
+      assertEquals(operation.getResultCode(), ResultCode.SUCCESS);
+    }
+  }
+
+  @Test
+  public void testOperationsRejectedWhenQueueFull() throws Exception
+  {
+    VirtualThreadWorkQueue queue = newWorkQueue(1, 1);
+
+    assertTrue(queue.trySubmitOperation(newDelayedSearch(2000)));
+    assertTrue(queue.trySubmitOperation(newDelayedSearch(0)));
+    assertFalse(queue.trySubmitOperation(newDelayedSearch(0)));
+    assertEquals(queue.getOpsRejectedDueToQueueFull(), 1);
+    assertEquals(queue.size(), 1);
+
+    assertTrue(queue.waitUntilIdle(10000));
+    assertEquals(queue.getOpsSubmitted(), 2);
+  }
+
+  @Test
+  public void testIncreasingMaxConcurrentOperationsStartsQueuedOperations() throws Exception
+  {
+    VirtualThreadWorkQueue queue = newWorkQueue(1, 10);
+
+    queue.submitOperation(newDelayedSearch(5000));
+    InternalSearchOperation queued = newDelayedSearch(0);
+    queue.submitOperation(queued);
+    assertEquals(queue.size(), 1);
+
+    queue.applyConfigurationChange(newConfiguration(2, 10));
+    assertEquals(queue.getNumWorkerThreads(), 2);
+
+    long stopTime = System.currentTimeMillis() + 2000;
+    while (queued.getResultCode() != ResultCode.SUCCESS && System.currentTimeMillis() < stopTime)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(queued.getResultCode(), ResultCode.SUCCESS);
+    assertEquals(queue.size(), 0);
+  }
+
+  @Test
+  public void testShutdownCancelsOperations() throws Exception
+  {
+    VirtualThreadWorkQueue queue = newWorkQueue(1, 10);
+
+    InternalSearchOperation running = newDelayedSearch(5000);
+    InternalSearchOperation queued = newDelayedSearch(0);
+    queue.submitOperation(running);
+    queue.submitOperation(queued);
+    while (queue.getActiveOperations() == 0)
+    {
+      Thread.sleep(10);
+    }
+
+    long startTime = System.currentTimeMillis();
+    workQueue = null;
+    queue.finalizeWorkQueue(INFO_CANCELED_BY_SHUTDOWN.get());
+    assertTrue(System.currentTimeMillis() - startTime < 4000);
+
+    assertTrue(queue.isIdle());
+    assertEquals(running.getResultCode(), ResultCode.CANCELLED);
+    assertNotNull(queued.getCancelRequest());
+    try
+    {
+      queue.submitOperation(newDelayedSearch(0));
+      fail("Expected the operation to be rejected");
+    }
+    catch (DirectoryException e)
+    {
+      assertEquals(e.getResultCode(), ResultCode.UNAVAILABLE);
+    }
+  }
+}
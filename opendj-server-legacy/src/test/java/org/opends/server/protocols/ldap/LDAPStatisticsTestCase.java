@@ -0,0 +1,85 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.protocols.ldap;
+
+import static org.testng.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.OperationType;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * A set of test cases for the operation time histograms of the LDAP
+ * statistics.
+ */
+@SuppressWarnings("javadoc")
+public class LDAPStatisticsTestCase extends LdapTestCase
+{
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @Test
+  public void testOperationTimeHistograms()
+  {
+    final LDAPStatistics statistics = new LDAPStatistics("Test Statistics");
+    statistics.updateOperationMonitoringData(OperationType.SEARCH, 200000, TimeUnit.NANOSECONDS);
+    statistics.updateOperationMonitoringData(OperationType.SEARCH, 5, TimeUnit.MILLISECONDS);
+    statistics.updateOperationMonitoringData(OperationType.MODIFY_DN, 1, TimeUnit.MILLISECONDS);
+
+    List<Attribute> attrs = statistics.getMonitorData();
+    assertEquals(getValue(attrs, "ds-mon-search-operations-time-micros-count"), "2");
+    assertTrue(Long.parseLong(getValue(attrs, "ds-mon-search-operations-time-micros-p50")) >= 200);
+    assertTrue(Long.parseLong(getValue(attrs, "ds-mon-search-operations-time-micros-p99")) >= 5000);
+    assertNotNull(getValue(attrs, "ds-mon-search-operations-time-micros-histogram"));
+    assertEquals(getValue(attrs, "ds-mon-moddn-operations-time-micros-count"), "1");
+    assertNull(getValue(attrs, "ds-mon-add-operations-time-micros-count"));
+
+    statistics.clearStatistics();
+    attrs = statistics.getMonitorData();
+    assertEquals(getValue(attrs, "ds-mon-search-operations-time-micros-count"), "0");
+    assertNull(getValue(attrs, "ds-mon-search-operations-time-micros-histogram"));
+  }
+
+  private String getValue(List<Attribute> attrs, String attrName)
+  {
+    for (Attribute attr : attrs)
+    {
+      if (attr.getName().equalsIgnoreCase(attrName))
+      {
+        return attr.iterator().next().toString();
+      }
+    }
+    return null;
+  }
+}
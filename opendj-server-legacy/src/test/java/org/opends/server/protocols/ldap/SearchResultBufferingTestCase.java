@@ -0,0 +1,208 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.protocols.ldap;
+
+import java.net.Socket;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DereferenceAliasesPolicy;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.ConnectionHandler;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.tools.LDAPReader;
+import org.opends.server.tools.LDAPWriter;
+import org.opends.server.util.StaticUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.opends.server.protocols.ldap.LDAPConstants.*;
+import static org.testng.Assert.*;
+
+/**
+ * Tests that search results are all returned to the client, in order, whether
+ * they are buffered or not by the LDAP client connection.
+ */
+public class SearchResultBufferingTestCase extends LdapTestCase
+{
+  private static final int NB_ENTRIES = 100;
+
+  /**
+   * Ensure that the Directory Server is running and the test backend holds
+   * enough entries.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    TestCaseUtils.initializeTestBackend(true);
+    for (int i = 0; i < NB_ENTRIES; i++)
+    {
+      TestCaseUtils.addEntry(
+          "dn: uid=user." + i + ",o=test",
+          "objectClass: top",
+          "objectClass: person",
+          "objectClass: organizationalPerson",
+          "objectClass: inetOrgPerson",
+          "uid: user." + i,
+          "givenName: User",
+          "sn: " + i,
+          "cn: User " + i);
+    }
+  }
+
+  /**
+   * Restores the default buffering settings.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @AfterClass
+  public void restoreBufferingSettings() throws Exception
+  {
+    setBufferingSettings(null, null);
+  }
+
+  @DataProvider
+  public Object[][] bufferingSettings()
+  {
+    return new Object[][] {
+      // Buffering disabled
+      { "0 b", "64" },
+      // Flushed on the number of buffered search results
+      { "1 mb", "3" },
+      // Flushed on the size of buffered search results
+      { "1 kb", "1000" },
+      // Only flushed when the search completes
+      { "1 mb", "1000" },
+    };
+  }
+
+  /**
+   * Tests that a search returns all the matching entries followed by the
+   * search result done message.
+   *
+   * @param  maxSize     The maximum size of the buffered search results.
+   * @param  maxResults  The maximum number of buffered search results.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test(dataProvider = "bufferingSettings")
+  public void testSearchReturnsAllEntries(String maxSize, String maxResults)
+      throws Exception
+  {
+    setBufferingSettings(maxSize, maxResults);
+
+    Socket s = new Socket("127.0.0.1", TestCaseUtils.getServerLdapPort());
+    LDAPReader r = new LDAPReader(s);
+    LDAPWriter w = new LDAPWriter(s);
+    try
+    {
+      BindRequestProtocolOp bindRequest =
+          new BindRequestProtocolOp(
+              ByteString.valueOfUtf8("cn=Directory Manager"), 3,
+              ByteString.valueOfUtf8("password"));
+      w.writeMessage(new LDAPMessage(1, bindRequest));
+      LDAPMessage message = r.readMessage();
+      assertEquals(message.getBindResponseProtocolOp().getResultCode(),
+          LDAPResultCode.SUCCESS);
+
+      SearchRequestProtocolOp searchRequest =
+          new SearchRequestProtocolOp(ByteString.valueOfUtf8("o=test"),
+              SearchScope.SINGLE_LEVEL, DereferenceAliasesPolicy.NEVER, 0, 0,
+              false, LDAPFilter.decode("(uid=user.*)"), null);
+      w.writeMessage(new LDAPMessage(2, searchRequest));
+
+      int nbEntries = 0;
+      message = r.readMessage();
+      while (message.getProtocolOpType() == OP_TYPE_SEARCH_RESULT_ENTRY)
+      {
+        assertEquals(message.getMessageID(), 2);
+        nbEntries++;
+        message = r.readMessage();
+      }
+
+      assertEquals(message.getProtocolOpType(), OP_TYPE_SEARCH_RESULT_DONE);
+      assertEquals(message.getSearchResultDoneProtocolOp().getResultCode(),
+          LDAPResultCode.SUCCESS);
+      assertEquals(nbEntries, NB_ENTRIES);
+    }
+    finally
+    {
+      StaticUtils.close(r, w);
+      StaticUtils.close(s);
+    }
+  }
+
+  /**
+   * Tests that search results are not buffered by default, as a search
+   * returning entries slowly would delay its first results.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testBufferingDisabledByDefault() throws Exception
+  {
+    setBufferingSettings(null, null);
+
+    boolean foundLDAPConnectionHandler = false;
+    for (ConnectionHandler<?> handler : DirectoryServer.getConnectionHandlers())
+    {
+      if (handler instanceof LDAPConnectionHandler)
+      {
+        foundLDAPConnectionHandler = true;
+        assertEquals(((LDAPConnectionHandler) handler).getMaxBufferedSearchResultSize(), 0);
+      }
+    }
+    assertTrue(foundLDAPConnectionHandler);
+  }
+
+  private void setBufferingSettings(String maxSize, String maxResults)
+      throws Exception
+  {
+    if (maxSize == null)
+    {
+      TestCaseUtils.applyModifications(true,
+          "dn: cn=LDAP Connection Handler,cn=Connection Handlers,cn=config",
+          "changetype: modify",
+          "replace: ds-cfg-max-buffered-search-result-size",
+          "-",
+          "replace: ds-cfg-max-buffered-search-results");
+      return;
+    }
+    TestCaseUtils.applyModifications(true,
+        "dn: cn=LDAP Connection Handler,cn=Connection Handlers,cn=config",
+        "changetype: modify",
+        "replace: ds-cfg-max-buffered-search-result-size",
+        "ds-cfg-max-buffered-search-result-size: " + maxSize,
+        "-",
+        "replace: ds-cfg-max-buffered-search-results",
+        "ds-cfg-max-buffered-search-results: " + maxResults);
+  }
+}
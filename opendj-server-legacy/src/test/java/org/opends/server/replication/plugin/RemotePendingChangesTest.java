@@ -0,0 +1,158 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.forgerock.opendj.ldap.ModificationType;
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.common.CSNGenerator;
+import org.opends.server.replication.common.ServerState;
+import org.opends.server.replication.protocol.AddMsg;
+import org.opends.server.replication.protocol.ModifyMsg;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.Modification;
+import org.opends.server.types.Operation;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.opends.server.TestCaseUtils.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.testng.Assert.*;
+
+/** Tests the dependencies computed between the remote changes to replay. */
+@SuppressWarnings("javadoc")
+public class RemotePendingChangesTest extends ReplicationTestCase
+{
+  private static final String PARENT_UUID = "00000000-0000-0000-0000-000000000000";
+  private static final String ENTRY_UUID = "11111111-1111-1111-1111-111111111111";
+
+  private RemotePendingChanges pendingChanges;
+  private CSNGenerator gen;
+
+  @BeforeMethod
+  public void setUpPendingChanges() throws Exception
+  {
+    pendingChanges = new RemotePendingChanges(new ServerState());
+    gen = new CSNGenerator(201, 0);
+  }
+
+  @Test
+  public void testModifyDependsOnOlderAddOfTheSameEntry() throws Exception
+  {
+    final AddMsg add = addMsg(gen.newCSN(), "uid=user.0");
+    final ModifyMsg modify = modifyMsg(gen.newCSN(), "uid=user.0");
+    assertTrue(pendingChanges.putRemoteUpdate(add));
+    assertTrue(pendingChanges.putRemoteUpdate(modify));
+
+    assertTrue(pendingChanges.checkDependencies(createOperation(modify), modify));
+    assertNull(pendingChanges.getNextUpdate());
+
+    pendingChanges.commit(add.getCSN());
+    assertSame(pendingChanges.getNextUpdate(), modify);
+  }
+
+  @Test
+  public void testModifyDoesNotDependOnAddOfAnotherEntry() throws Exception
+  {
+    final AddMsg add = addMsg(gen.newCSN(), "uid=user.0");
+    final ModifyMsg modify = modifyMsg(gen.newCSN(), "uid=user.1");
+    assertTrue(pendingChanges.putRemoteUpdate(add));
+    assertTrue(pendingChanges.putRemoteUpdate(modify));
+
+    assertFalse(pendingChanges.checkDependencies(createOperation(modify), modify));
+  }
+
+  @Test
+  public void testModifyDoesNotDependOnNewerAdd() throws Exception
+  {
+    final ModifyMsg modify = modifyMsg(gen.newCSN(), "uid=user.0");
+    final AddMsg add = addMsg(gen.newCSN(), "uid=user.0");
+    assertTrue(pendingChanges.putRemoteUpdate(modify));
+    assertTrue(pendingChanges.putRemoteUpdate(add));
+
+    assertFalse(pendingChanges.checkDependencies(createOperation(modify), modify));
+  }
+
+  @Test
+  public void testModifyDoesNotDependOnCommittedAdd() throws Exception
+  {
+    final AddMsg add = addMsg(gen.newCSN(), "uid=user.0");
+    final ModifyMsg modify = modifyMsg(gen.newCSN(), "uid=user.0");
+    assertTrue(pendingChanges.putRemoteUpdate(add));
+    pendingChanges.commit(add.getCSN());
+    assertTrue(pendingChanges.putRemoteUpdate(modify));
+
+    assertFalse(pendingChanges.checkDependencies(createOperation(modify), modify));
+    assertEquals(pendingChanges.getNumberOfIndexedAdds(), 0);
+  }
+
+  @Test
+  public void testAddRenamedByConflictResolutionIsNotLeaked() throws Exception
+  {
+    final AddMsg add = addMsg(gen.newCSN(), "uid=user.0");
+    assertTrue(pendingChanges.putRemoteUpdate(add));
+    assertEquals(pendingChanges.getNumberOfIndexedAdds(), 1);
+
+    // As done by the naming conflict resolution before replaying the add again
+    add.setDN(DN.valueOf("entryuuid=" + ENTRY_UUID + "+uid=user.0," + TEST_ROOT_DN_STRING));
+    pendingChanges.commit(add.getCSN());
+
+    assertEquals(pendingChanges.getQueueSize(), 0);
+    assertEquals(pendingChanges.getNumberOfIndexedAdds(), 0);
+  }
+
+  private static Operation createOperation(ModifyMsg modify) throws Exception
+  {
+    return modify.createOperation(getRootConnection());
+  }
+
+  private static AddMsg addMsg(CSN csn, String rdn) throws Exception
+  {
+    final Entry entry = makeEntry(
+        "dn: " + rdn + "," + TEST_ROOT_DN_STRING,
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "sn: User",
+        "cn: Test User");
+    return new AddMsg(csn, entry.getName(), ENTRY_UUID, PARENT_UUID,
+        entry.getObjectClassAttribute(), entry.getAttributes(), new ArrayList<Attribute>());
+  }
+
+  private static ModifyMsg modifyMsg(CSN csn, String rdn) throws Exception
+  {
+    final Modification mod =
+        new Modification(ModificationType.REPLACE, Attributes.create("description", "new value"));
+    return new ModifyMsg(csn, DN.valueOf(rdn + "," + TEST_ROOT_DN_STRING), Collections.singletonList(mod), ENTRY_UUID);
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ModificationType;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSNGenerator;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+import org.opends.server.replication.protocol.ModifyMsg;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Modification;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.opends.server.TestCaseUtils.*;
+import static org.testng.Assert.*;
+
+/** Tests the routing of the updates to replay in the replay lanes. */
+@SuppressWarnings("javadoc")
+public class ReplayLanesTest extends ReplicationTestCase
+{
+  private DN baseDN;
+  private LDAPReplicationDomain domain;
+  private DN otherBaseDN;
+  /** Another domain, never started, only used to queue updates. */
+  private LDAPReplicationDomain otherDomain;
+  private CSNGenerator gen;
+
+  @BeforeClass
+  public void setUpDomain() throws Exception
+  {
+    baseDN = DN.valueOf(TEST_ROOT_DN_STRING);
+    TestCaseUtils.initializeTestBackend(true);
+
+    final DomainFakeCfg conf = new DomainFakeCfg(baseDN, 1, new TreeSet<String>());
+    domain = MultimasterReplication.createNewDomain(conf, new TestSynchronousReplayQueue());
+    domain.start();
+
+    otherBaseDN = DN.valueOf("dc=example,dc=com");
+    TestCaseUtils.clearBackend("userRoot", otherBaseDN.toString());
+    final DomainFakeCfg otherConf = new DomainFakeCfg(otherBaseDN, 1, new TreeSet<String>());
+    otherDomain = MultimasterReplication.createNewDomain(otherConf, new TestSynchronousReplayQueue());
+
+    gen = new CSNGenerator(201, 0);
+  }
+
+  @AfterClass
+  public void tearDownDomain() throws Exception
+  {
+    MultimasterReplication.deleteDomain(baseDN);
+    MultimasterReplication.deleteDomain(otherBaseDN);
+  }
+
+  @Test
+  public void testUpdatesOfAnEntryAreQueuedInOrderInTheSameLane() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(8, 1000);
+    final List<UpdateToReplay> updates = new ArrayList<>();
+    for (int i = 0; i < 10; i++)
+    {
+      final UpdateToReplay update = update("uid=user.0", "00000000-0000-0000-0000-000000000000");
+      updates.add(update);
+      assertTrue(lanes.offer(update, 0, TimeUnit.MILLISECONDS));
+      // Interleave the updates of other entries
+      assertTrue(lanes.offer(update("uid=user." + (i + 1), uuid(i + 1)), 0, TimeUnit.MILLISECONDS));
+    }
+
+    assertEquals(updatesOf(lanes, "00000000-0000-0000-0000-000000000000"), updates);
+  }
+
+  @Test
+  public void testUpdatesWithoutEntryUUIDAreRoutedByDN() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(8, 1000);
+    final UpdateToReplay first = update("uid=no.uuid", null);
+    final UpdateToReplay second = update("uid=no.uuid", null);
+    assertTrue(lanes.offer(first, 0, TimeUnit.MILLISECONDS));
+    assertTrue(lanes.offer(second, 0, TimeUnit.MILLISECONDS));
+
+    assertEquals(laneOf(lanes, first), Arrays.asList(first, second));
+  }
+
+  @Test
+  public void testUpdatesOfDifferentEntriesAreSpreadOverTheLanes() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(4, 1000);
+    for (int i = 0; i < 100; i++)
+    {
+      assertTrue(lanes.offer(update("uid=user." + i, uuid(i)), 0, TimeUnit.MILLISECONDS));
+    }
+
+    final int[] depths = lanes.getDepths(domain);
+    assertEquals(depths.length, 4);
+    int total = 0;
+    for (int depth : depths)
+    {
+      assertTrue(depth > 0, "All the updates were queued in the same lanes");
+      total += depth;
+    }
+    assertEquals(total, 100);
+  }
+
+  @Test
+  public void testOfferTimesOutWhenTheLaneIsFull() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(1, 2);
+    assertTrue(lanes.offer(update("uid=user.0", uuid(0)), 0, TimeUnit.MILLISECONDS));
+    assertTrue(lanes.offer(update("uid=user.1", uuid(1)), 0, TimeUnit.MILLISECONDS));
+    assertFalse(lanes.offer(update("uid=user.2", uuid(2)), 10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testResizeKeepsTheUpdatesInOrder() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(4, 1000);
+    final List<List<UpdateToReplay>> updatesPerEntry = new ArrayList<>();
+    for (int i = 0; i < 20; i++)
+    {
+      updatesPerEntry.add(new ArrayList<UpdateToReplay>());
+    }
+    for (int n = 0; n < 5; n++)
+    {
+      for (int i = 0; i < 20; i++)
+      {
+        final UpdateToReplay update = update("uid=user." + i, uuid(i));
+        updatesPerEntry.get(i).add(update);
+        assertTrue(lanes.offer(update, 0, TimeUnit.MILLISECONDS));
+      }
+    }
+
+    lanes.resize(3);
+
+    assertEquals(lanes.getNumberOfLanes(), 3);
+    for (int i = 0; i < 20; i++)
+    {
+      assertEquals(updatesOf(lanes, uuid(i)), updatesPerEntry.get(i));
+    }
+  }
+
+  @Test
+  public void testResizeNeverLosesUpdates() throws Exception
+  {
+    // Each of the 8 lanes can only hold 1 update once resized
+    final ReplayLanes lanes = new ReplayLanes(1, 8);
+    for (int i = 0; i < 8; i++)
+    {
+      assertTrue(lanes.offer(update("uid=user." + i, uuid(i)), 0, TimeUnit.MILLISECONDS));
+    }
+
+    lanes.resize(8);
+
+    int total = 0;
+    for (int depth : lanes.getDepths(domain))
+    {
+      total += depth;
+    }
+    assertEquals(total, 8);
+  }
+
+  @Test
+  public void testBusyDomainDoesNotBlockOtherDomains() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(1, 2);
+    assertTrue(lanes.offer(update("uid=user.0", uuid(0)), 0, TimeUnit.MILLISECONDS));
+    assertTrue(lanes.offer(update("uid=user.1", uuid(1)), 0, TimeUnit.MILLISECONDS));
+    assertFalse(lanes.offer(update("uid=user.2", uuid(2)), 10, TimeUnit.MILLISECONDS));
+
+    assertTrue(lanes.offer(update(otherDomain, "uid=user.0", uuid(0)), 0, TimeUnit.MILLISECONDS));
+    assertEquals(lanes.getDepths(domain)[0], 2);
+    assertEquals(lanes.getDepths(otherDomain)[0], 1);
+  }
+
+  @Test
+  public void testDomainsTakeTurnsInALane() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(1, 100);
+    final UpdateToReplay first = update("uid=user.0", uuid(0));
+    final UpdateToReplay second = update("uid=user.1", uuid(1));
+    final UpdateToReplay third = update("uid=user.2", uuid(2));
+    final UpdateToReplay other = update(otherDomain, "uid=user.0", uuid(0));
+    for (UpdateToReplay update : Arrays.asList(first, second, third, other))
+    {
+      assertTrue(lanes.offer(update, 0, TimeUnit.MILLISECONDS));
+    }
+
+    final ReplayLanes.Lane lane = lanes.getLane(0);
+    assertSame(lane.poll(0, TimeUnit.MILLISECONDS), first);
+    assertSame(lane.poll(0, TimeUnit.MILLISECONDS), other);
+    assertSame(lane.poll(0, TimeUnit.MILLISECONDS), second);
+    assertSame(lane.poll(0, TimeUnit.MILLISECONDS), third);
+    assertNull(lane.poll(0, TimeUnit.MILLISECONDS));
+    assertEquals(lanes.getDepths(domain)[0], 0);
+  }
+
+  @Test
+  public void testWaitingOfferDoesNotBlockResize() throws Exception
+  {
+    final ReplayLanes lanes = new ReplayLanes(1, 1);
+    final UpdateToReplay queued = update("uid=user.0", uuid(0));
+    assertTrue(lanes.offer(queued, 0, TimeUnit.MILLISECONDS));
+
+    final UpdateToReplay waiting = update("uid=user.1", uuid(1));
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try
+    {
+      final Future<Boolean> offered = executor.submit(new Callable<Boolean>()
+      {
+        @Override
+        public Boolean call() throws Exception
+        {
+          return lanes.offer(waiting, 10, TimeUnit.SECONDS);
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(offered.isDone());
+
+      final long startTime = System.currentTimeMillis();
+      lanes.resize(2);
+      assertTrue(System.currentTimeMillis() - startTime < 1000);
+
+      // Make room for the waiting update, in case it targets the same new lane
+      for (int i = 0; i < lanes.getNumberOfLanes(); i++)
+      {
+        if (lanes.getLane(i).getUpdates().contains(queued))
+        {
+          assertSame(lanes.getLane(i).poll(0, TimeUnit.MILLISECONDS), queued);
+        }
+      }
+      assertTrue(offered.get(5, TimeUnit.SECONDS));
+      assertEquals(laneOf(lanes, waiting), Arrays.asList(waiting));
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  private UpdateToReplay update(String rdn, String entryUUID) throws Exception
+  {
+    return update(domain, rdn, entryUUID);
+  }
+
+  private UpdateToReplay update(LDAPReplicationDomain replicationDomain, String rdn, String entryUUID)
+      throws Exception
+  {
+    final List<Modification> mods = Collections.singletonList(
+        new Modification(ModificationType.REPLACE, Attributes.create("description", "new value")));
+    final DN dn = DN.valueOf(rdn + "," + replicationDomain.getBaseDN());
+    final LDAPUpdateMsg msg = new ModifyMsg(gen.newCSN(), dn, mods, entryUUID);
+    return new UpdateToReplay(msg, replicationDomain);
+  }
+
+  private static String uuid(int i)
+  {
+    return String.format("00000000-0000-0000-0000-%012d", i);
+  }
+
+  private static List<UpdateToReplay> laneOf(ReplayLanes lanes, UpdateToReplay update)
+  {
+    for (int i = 0; i < lanes.getNumberOfLanes(); i++)
+    {
+      final List<UpdateToReplay> laneUpdates = lanes.getLane(i).getUpdates();
+      if (laneUpdates.contains(update))
+      {
+        return laneUpdates;
+      }
+    }
+    fail("The update was not queued: " + update.getUpdateMessage());
+    return null;
+  }
+
+  /** Returns the updates of an entry, checking they are all queued in the same lane. */
+  private static List<UpdateToReplay> updatesOf(ReplayLanes lanes, String entryUUID)
+  {
+    List<UpdateToReplay> result = null;
+    for (int i = 0; i < lanes.getNumberOfLanes(); i++)
+    {
+      final List<UpdateToReplay> laneUpdates = new ArrayList<>();
+      for (UpdateToReplay update : lanes.getLane(i).getUpdates())
+      {
+        if (entryUUID.equals(update.getUpdateMessage().getEntryUUID()))
+        {
+          laneUpdates.add(update);
+        }
+      }
+      if (!laneUpdates.isEmpty())
+      {
+        assertNull(result, "The updates of entry " + entryUUID + " were queued in several lanes");
+        result = laneUpdates;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+import org.opends.server.replication.server.changelog.file.Log.LogRotationParameters;
+import org.opends.server.util.StaticUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(sequential=true)
+public class ChangelogSyncerTest extends DirectoryServerTestCase
+{
+  /** Use a directory dedicated to this test class. */
+  private static final File LOG_DIRECTORY = new File(TestCaseUtils.getUnitTestRootPath(), "changelog-syncer-unit");
+
+  private static final long NO_TIME_BASED_LOG_ROTATION = 0;
+
+  @BeforeMethod
+  public void initialize() throws Exception
+  {
+    if (LOG_DIRECTORY.exists())
+    {
+      StaticUtils.recursiveDelete(LOG_DIRECTORY);
+    }
+  }
+
+  @Test
+  public void testRequestsAreBatchedAcrossLogs() throws Exception
+  {
+    try (Log<String, String> log1 = openLog("replica1");
+        Log<String, String> log2 = openLog("replica2"))
+    {
+      final ChangelogSyncer syncer = new ChangelogSyncer();
+      final CountDownLatch persisted = new CountDownLatch(4);
+      // Queue the requests before starting the syncer so that they are processed as a single batch
+      for (int i = 1; i <= 2; i++)
+      {
+        log1.append(Record.from(String.format("key%03d", i), "value" + i));
+        syncer.runWhenPersisted(log1, countDown(persisted));
+        log2.append(Record.from(String.format("key%03d", i), "value" + i));
+        syncer.runWhenPersisted(log2, countDown(persisted));
+      }
+
+      syncer.start();
+      try
+      {
+        assertThat(persisted.await(10, TimeUnit.SECONDS)).isTrue();
+      }
+      finally
+      {
+        shutdown(syncer);
+      }
+
+      assertThat(log1.getSyncCount()).isEqualTo(1);
+      assertThat(log1.getAverageSyncBatchSize()).isEqualTo(2.0);
+      assertThat(log2.getSyncCount()).isEqualTo(1);
+      assertThat(log2.getAverageSyncBatchSize()).isEqualTo(2.0);
+    }
+  }
+
+  @Test
+  public void testRequestsAreProcessedOnShutdown() throws Exception
+  {
+    try (Log<String, String> log = openLog("replica1"))
+    {
+      final ChangelogSyncer syncer = new ChangelogSyncer();
+      syncer.start();
+      final CountDownLatch persisted = new CountDownLatch(1);
+      log.append(Record.from("key001", "value1"));
+      syncer.runWhenPersisted(log, countDown(persisted));
+      shutdown(syncer);
+
+      assertThat(persisted.getCount()).isEqualTo(0);
+      assertThat(log.getSyncCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testRequestsAreRejectedAfterShutdown() throws Exception
+  {
+    try (Log<String, String> log = openLog("replica1"))
+    {
+      final ChangelogSyncer syncer = new ChangelogSyncer();
+      syncer.start();
+      shutdown(syncer);
+
+      final CountDownLatch persisted = new CountDownLatch(1);
+      assertThat(syncer.runWhenPersisted(log, countDown(persisted))).isFalse();
+      assertThat(persisted.getCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testBlockedTaskDoesNotDelayOtherLogs() throws Exception
+  {
+    try (Log<String, String> log1 = openLog("replica1");
+        Log<String, String> log2 = openLog("replica2"))
+    {
+      final ChangelogSyncer syncer = new ChangelogSyncer();
+      syncer.start();
+      final CountDownLatch unblock = new CountDownLatch(1);
+      try
+      {
+        log1.append(Record.from("key001", "value1"));
+        assertThat(syncer.runWhenPersisted(log1, await(unblock))).isTrue();
+
+        final CountDownLatch persisted = new CountDownLatch(1);
+        log2.append(Record.from("key001", "value1"));
+        assertThat(syncer.runWhenPersisted(log2, countDown(persisted))).isTrue();
+        assertThat(persisted.await(10, TimeUnit.SECONDS)).isTrue();
+      }
+      finally
+      {
+        unblock.countDown();
+        shutdown(syncer);
+      }
+    }
+  }
+
+  private Log<String, String> openLog(String name) throws ChangelogException
+  {
+    final LogRotationParameters rotationParams = new LogRotationParameters(1024 * 1024,
+        NO_TIME_BASED_LOG_ROTATION, NO_TIME_BASED_LOG_ROTATION);
+    final ReplicationEnvironment replicationEnv = mock(ReplicationEnvironment.class);
+    return Log.openLog(replicationEnv, new File(LOG_DIRECTORY, name), LogFileTest.RECORD_PARSER, rotationParams);
+  }
+
+  private Runnable countDown(final CountDownLatch latch)
+  {
+    return new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        latch.countDown();
+      }
+    };
+  }
+
+  private Runnable await(final CountDownLatch latch)
+  {
+    return new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+
+  private void shutdown(ChangelogSyncer syncer) throws InterruptedException
+  {
+    syncer.initiateShutdown();
+    syncer.join(10000);
+    assertThat(syncer.isAlive()).isFalse();
+  }
+}
@@ -347,6 +347,28 @@ public class LogTest extends DirectoryServerTestCase
     }
   }
 
+  @Test
+  public void testSyncAppendedRecords() throws Exception
+  {
+    try (Log<String, String> log = openLog(LogFileTest.RECORD_PARSER))
+    {
+      log.append(Record.from("key011", "value11"));
+      log.append(Record.from("key012", "value12"));
+      log.syncAppendedRecords();
+      assertThat(log.getSyncCount()).isEqualTo(1);
+      assertThat(log.getAverageSyncBatchSize()).isEqualTo(2.0);
+
+      // Nothing appended since the last synchronization
+      log.syncAppendedRecords();
+      assertThat(log.getSyncCount()).isEqualTo(1);
+
+      log.append(Record.from("key013", "value13"));
+      log.syncAppendedRecords();
+      assertThat(log.getSyncCount()).isEqualTo(2);
+      assertThat(log.getAverageSyncBatchSize()).isEqualTo(1.5);
+    }
+  }
+
   @Test
   public void testClear() throws Exception
   {
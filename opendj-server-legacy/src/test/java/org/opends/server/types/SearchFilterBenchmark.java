@@ -0,0 +1,127 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.types;
+
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ConditionResult;
+import org.opends.server.TestCaseUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of the compiled search filters with the one of the
+ * filter interpreter, when matching the candidate entries of an unindexed
+ * search.
+ * <p>
+ * This is not a unit test: run {@link #main(String[])} from the test
+ * classpath in order to measure each filter.
+ */
+@SuppressWarnings("javadoc")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchFilterBenchmark
+{
+  @Param({
+    "(uid=user.500)",
+    "(cn=*Smith*)",
+    "(employeeNumber>=500)",
+    "(&(objectClass=person)(mail=user.5*)(sn=Smith))",
+    "(|(givenName=Jane)(sn=Doe)(telephoneNumber=*555*)(uid=user.1))",
+    "(&(cn=*John*)(!(l=Paris))(|(title~=engineer)(objectClass=inetOrgPerson)))"
+  })
+  public String filter;
+
+  private SearchFilter searchFilter;
+  private Entry entry;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+    searchFilter = SearchFilter.createFilterFromString(filter);
+    entry = TestCaseUtils.makeEntry(
+        "dn: uid=user.1,ou=people,dc=example,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.1",
+        "cn: John Smith",
+        "sn: Smith",
+        "givenName: John",
+        "mail: user.1@example.com",
+        "employeeNumber: 1",
+        "telephoneNumber: +1 408 555 1212",
+        "l: San Francisco",
+        "title: Software Engineer");
+  }
+
+  /** Matches the entry with the compiled filter, as done by searches. */
+  @Benchmark
+  public boolean compiled() throws Exception
+  {
+    return searchFilter.matchesEntry(entry);
+  }
+
+  /** Matches the entry by interpreting the filter. */
+  @Benchmark
+  public boolean interpreted() throws Exception
+  {
+    return searchFilter.matchesEntryInternal(searchFilter, entry, 0) == ConditionResult.TRUE;
+  }
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args
+   *          Optional regular expression restricting the benchmarks to run.
+   */
+  public static void main(String[] args) throws Exception
+  {
+    final String include = args.length > 0 ? args[0] : SearchFilterBenchmark.class.getSimpleName();
+    final Options options = new OptionsBuilder()
+        .include(include)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -34,6 +34,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ConditionResult;
 import org.opends.server.DirectoryServerTestCase;
 import org.opends.server.TestCaseUtils;
 import org.opends.server.core.DirectoryServer;
@@ -441,6 +442,20 @@ public class SearchFilterTests extends DirectoryServerTestCase {
     final SearchFilter filter = SearchFilter.createFilterFromString(filterStr);
     boolean matches = filter.matchesEntry(entry);
     Assert.assertEquals(matches, expectMatch, "Filter=" + filter + "\nEntry=" + entry);
+
+    // The compiled filter must agree with the interpreter
+    boolean interpreted = filter.matchesEntryInternal(filter, entry, 0) == ConditionResult.TRUE;
+    Assert.assertEquals(interpreted, expectMatch, "Interpreted filter=" + filter + "\nEntry=" + entry);
+  }
+
+  @Test
+  public void testCompiledFilterReordersComponents() throws Exception {
+    Entry entry = TestCaseUtils.entryFromLdifString(JOHN_SMITH_LDIF);
+
+    runSingleMatchTest(entry, "(&(cn=*Jo*i*th*)(title~=tattoos)(sn<=Smith)(cn=John Smith)(objectclass=*))", true);
+    runSingleMatchTest(entry, "(&(cn=*Jo*i*th*)(title~=tattoos)(sn<=Smith)(cn=Jane Smith)(objectclass=*))", false);
+    runSingleMatchTest(entry, "(|(cn=*Joh*ohn*)(sn:caseExactMatch:=Smith)(cn=Jane Smith)(description=*))", true);
+    runSingleMatchTest(entry, "(|(cn=*Joh*ohn*)(sn:caseExactMatch:=smith)(cn=Jane Smith)(description=*))", false);
   }
 
   ////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,130 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.util;
+
+import static org.testng.Assert.*;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * A set of test cases for the latency histogram class.
+ */
+@SuppressWarnings("javadoc")
+public class LatencyHistogramTestCase extends UtilTestCase
+{
+  @DataProvider
+  public Object[][] values()
+  {
+    return new Object[][] {
+      { 0L }, { 1L }, { 7L }, { 8L }, { 15L }, { 16L }, { 17L }, { 1000L }, { 123456789L },
+      { (1L << 36) - 1 }, { 1L << 36 }, { Long.MAX_VALUE },
+    };
+  }
+
+  @Test(dataProvider = "values")
+  public void testValueIsWithinBucketBounds(long value)
+  {
+    final int bucket = LatencyHistogram.getBucketIndex(value);
+    assertTrue(bucket >= 0 && bucket < LatencyHistogram.NB_BUCKETS);
+    assertTrue(LatencyHistogram.getBucketLowerBound(bucket) <= value);
+    assertTrue(value <= LatencyHistogram.getBucketUpperBound(bucket));
+  }
+
+  @Test
+  public void testBucketsAreContiguous()
+  {
+    assertEquals(LatencyHistogram.getBucketLowerBound(0), 0);
+    for (int i = 1; i < LatencyHistogram.NB_BUCKETS; i++)
+    {
+      assertEquals(LatencyHistogram.getBucketLowerBound(i), LatencyHistogram.getBucketUpperBound(i - 1) + 1);
+      assertEquals(LatencyHistogram.getBucketIndex(LatencyHistogram.getBucketLowerBound(i)), i);
+    }
+    assertEquals(LatencyHistogram.getBucketUpperBound(LatencyHistogram.NB_BUCKETS - 1), Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testEmptyHistogram()
+  {
+    final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().getSnapshot();
+    assertEquals(snapshot.getCount(), 0);
+    assertEquals(snapshot.getMean(), 0);
+    assertEquals(snapshot.getValueAtPercentile(99), 0);
+  }
+
+  @Test
+  public void testPercentiles()
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++)
+    {
+      histogram.record(i);
+    }
+    histogram.record(-5);
+
+    final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+    assertEquals(snapshot.getCount(), 1001);
+    assertEquals(snapshot.getMean(), 500500 / 1001);
+    assertEquals(snapshot.getBucketCount(0), 1);
+    assertWithinRelativeError(snapshot.getValueAtPercentile(50), 500);
+    assertWithinRelativeError(snapshot.getValueAtPercentile(90), 900);
+    assertWithinRelativeError(snapshot.getValueAtPercentile(99), 990);
+    assertEquals(snapshot.getValueAtPercentile(100), LatencyHistogram.getBucketUpperBound(
+        LatencyHistogram.getBucketIndex(1000)));
+  }
+
+  @Test
+  public void testConcurrentRecording() throws Exception
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < 10000; j++)
+          {
+            histogram.record(j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+    assertEquals(histogram.getSnapshot().getCount(), threads.length * 10000);
+  }
+
+  private void assertWithinRelativeError(long actual, long expected)
+  {
+    assertTrue(actual >= expected && actual <= expected + expected / 8, actual + " is not close to " + expected);
+  }
+}